@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.vertx.starter.database;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.json.JsonArray;
+
+/**
+ * Converter for {@link io.vertx.starter.database.Page}.
+ *
+ * NOTE: This class has been automatically generated from the {@link io.vertx.starter.database.Page} original class using Vert.x codegen.
+ */
+public class PageConverter {
+
+  public static void fromJson(JsonObject json, Page obj) {
+    if (json.getValue("content") instanceof String) {
+      obj.setContent((String)json.getValue("content"));
+    }
+    if (json.getValue("id") instanceof Number) {
+      obj.setId(((Number)json.getValue("id")).intValue());
+    }
+    if (json.getValue("name") instanceof String) {
+      obj.setName((String)json.getValue("name"));
+    }
+  }
+
+  public static void toJson(Page obj, JsonObject json) {
+    if (obj.getContent() != null) {
+      json.put("content", obj.getContent());
+    }
+    json.put("id", obj.getId());
+    if (obj.getName() != null) {
+      json.put("name", obj.getName());
+    }
+  }
+}
\ No newline at end of file
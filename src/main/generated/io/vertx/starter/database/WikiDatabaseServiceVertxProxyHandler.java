@@ -40,7 +40,9 @@ import io.vertx.serviceproxy.ProxyHandler;
 import io.vertx.serviceproxy.ServiceException;
 import io.vertx.serviceproxy.ServiceExceptionMessageCodec;
 import io.vertx.core.json.JsonArray;
+import io.vertx.starter.database.PageSummary;
 import java.util.List;
+import io.vertx.starter.database.Page;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
@@ -127,12 +129,68 @@ public class WikiDatabaseServiceVertxProxyHandler extends ProxyHandler {
           service.fetchAllPages(createHandler(msg));
           break;
         }
+        case "fetchAllPageSummaries": {
+          service.fetchAllPageSummaries(res -> {
+            if (res.failed()) {
+              if (res.cause() instanceof ServiceException) {
+                msg.reply(res.cause());
+              } else {
+                msg.reply(new ServiceException(-1, res.cause().getMessage()));
+              }
+            } else {
+              msg.reply(new JsonArray(res.result().stream().map(PageSummary::toJson).collect(Collectors.toList())));
+            }
+         });
+          break;
+        }
+        case "completePageName": {
+          service.completePageName((java.lang.String)json.getValue("prefix"), json.getValue("limit") == null ? null : (json.getLong("limit").intValue()), res -> {
+            if (res.failed()) {
+              if (res.cause() instanceof ServiceException) {
+                msg.reply(res.cause());
+              } else {
+                msg.reply(new ServiceException(-1, res.cause().getMessage()));
+              }
+            } else {
+              msg.reply(new JsonArray(res.result().stream().map(PageSummary::toJson).collect(Collectors.toList())));
+            }
+         });
+          break;
+        }
         case "fetchPage": {
-          service.fetchPage((java.lang.String)json.getValue("name"), createHandler(msg));
+          service.fetchPage((java.lang.String)json.getValue("name"), res -> {
+            if (res.failed()) {
+              if (res.cause() instanceof ServiceException) {
+                msg.reply(res.cause());
+              } else {
+                msg.reply(new ServiceException(-1, res.cause().getMessage()));
+              }
+            } else {
+              msg.reply(res.result() == null ? null : res.result().toJson());
+            }
+         });
           break;
         }
         case "fetchPageById": {
-          service.fetchPageById(json.getValue("id") == null ? null : (json.getLong("id").intValue()), createHandler(msg));
+          service.fetchPageById(json.getValue("id") == null ? null : (json.getLong("id").intValue()), res -> {
+            if (res.failed()) {
+              if (res.cause() instanceof ServiceException) {
+                msg.reply(res.cause());
+              } else {
+                msg.reply(new ServiceException(-1, res.cause().getMessage()));
+              }
+            } else {
+              msg.reply(res.result() == null ? null : res.result().toJson());
+            }
+         });
+          break;
+        }
+        case "pageExists": {
+          service.pageExists(json.getValue("id") == null ? null : (json.getLong("id").intValue()), createHandler(msg));
+          break;
+        }
+        case "fetchPageContentChunk": {
+          service.fetchPageContentChunk(json.getValue("id") == null ? null : (json.getLong("id").intValue()), json.getValue("position") == null ? null : (json.getLong("position").longValue()), json.getValue("length") == null ? null : (json.getLong("length").intValue()), createHandler(msg));
           break;
         }
         case "createPage": {
@@ -143,12 +201,114 @@ public class WikiDatabaseServiceVertxProxyHandler extends ProxyHandler {
           service.savePage(json.getValue("id") == null ? null : (json.getLong("id").intValue()), (java.lang.String)json.getValue("markdown"), createHandler(msg));
           break;
         }
+        case "patchPage": {
+          service.patchPage(json.getValue("id") == null ? null : (json.getLong("id").intValue()), (java.lang.String)json.getValue("baseHash"), (io.vertx.core.json.JsonArray)json.getValue("edits"), createHandler(msg));
+          break;
+        }
         case "deletePage": {
           service.deletePage(json.getValue("id") == null ? null : (json.getLong("id").intValue()), createHandler(msg));
           break;
         }
         case "fetchAllPagesData": {
-          service.fetchAllPagesData(createListHandler(msg));
+          service.fetchAllPagesData(res -> {
+            if (res.failed()) {
+              if (res.cause() instanceof ServiceException) {
+                msg.reply(res.cause());
+              } else {
+                msg.reply(new ServiceException(-1, res.cause().getMessage()));
+              }
+            } else {
+              msg.reply(new JsonArray(res.result().stream().map(Page::toJson).collect(Collectors.toList())));
+            }
+         });
+          break;
+        }
+        case "fetchPagesBatch": {
+          service.fetchPagesBatch(json.getValue("afterId") == null ? null : (json.getLong("afterId").intValue()), json.getValue("limit") == null ? null : (json.getLong("limit").intValue()), res -> {
+            if (res.failed()) {
+              if (res.cause() instanceof ServiceException) {
+                msg.reply(res.cause());
+              } else {
+                msg.reply(new ServiceException(-1, res.cause().getMessage()));
+              }
+            } else {
+              msg.reply(new JsonArray(res.result().stream().map(Page::toJson).collect(Collectors.toList())));
+            }
+         });
+          break;
+        }
+        case "fetchLastChangeSequence": {
+          service.fetchLastChangeSequence(createHandler(msg));
+          break;
+        }
+        case "fetchChangesSince": {
+          service.fetchChangesSince(json.getValue("since") == null ? null : (json.getLong("since").longValue()), createHandler(msg));
+          break;
+        }
+        case "fetchBacklinks": {
+          service.fetchBacklinks(json.getValue("id") == null ? null : (json.getLong("id").intValue()), res -> {
+            if (res.failed()) {
+              if (res.cause() instanceof ServiceException) {
+                msg.reply(res.cause());
+              } else {
+                msg.reply(new ServiceException(-1, res.cause().getMessage()));
+              }
+            } else {
+              msg.reply(new JsonArray(res.result().stream().map(PageSummary::toJson).collect(Collectors.toList())));
+            }
+         });
+          break;
+        }
+        case "fetchBacklinksByName": {
+          service.fetchBacklinksByName((java.lang.String)json.getValue("name"), res -> {
+            if (res.failed()) {
+              if (res.cause() instanceof ServiceException) {
+                msg.reply(res.cause());
+              } else {
+                msg.reply(new ServiceException(-1, res.cause().getMessage()));
+              }
+            } else {
+              msg.reply(new JsonArray(res.result().stream().map(PageSummary::toJson).collect(Collectors.toList())));
+            }
+         });
+          break;
+        }
+        case "fetchOrphanPages": {
+          service.fetchOrphanPages(res -> {
+            if (res.failed()) {
+              if (res.cause() instanceof ServiceException) {
+                msg.reply(res.cause());
+              } else {
+                msg.reply(new ServiceException(-1, res.cause().getMessage()));
+              }
+            } else {
+              msg.reply(new JsonArray(res.result().stream().map(PageSummary::toJson).collect(Collectors.toList())));
+            }
+         });
+          break;
+        }
+        case "fetchLinkedNames": {
+          service.fetchLinkedNames(convertList(json.getJsonArray("names").getList()), createListHandler(msg));
+          break;
+        }
+        case "saveAttachment": {
+          service.saveAttachment(json.getValue("pageId") == null ? null : (json.getLong("pageId").intValue()), (io.vertx.core.json.JsonObject)json.getValue("attachment"), createHandler(msg));
+          break;
+        }
+        case "fetchAttachments": {
+          service.fetchAttachments(json.getValue("pageId") == null ? null : (json.getLong("pageId").intValue()), createHandler(msg));
+          break;
+        }
+        case "fetchAttachment": {
+          service.fetchAttachment(json.getValue("pageId") == null ? null : (json.getLong("pageId").intValue()), (java.lang.String)json.getValue("name"), createHandler(msg));
+          break;
+        }
+        case "deleteAttachment": {
+          service.deleteAttachment(json.getValue("pageId") == null ? null : (json.getLong("pageId").intValue()), (java.lang.String)json.getValue("name"), createHandler(msg));
+          break;
+        }
+        case "fetchExecutionStats": {
+          service.fetchExecutionStats(createHandler(msg));
           break;
         }
         default: {
@@ -20,7 +20,9 @@ import java.util.Map;
 import rx.Observable;
 import rx.Single;
 import io.vertx.core.json.JsonArray;
+import io.vertx.starter.database.PageSummary;
 import java.util.List;
+import io.vertx.starter.database.Page;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
@@ -61,28 +63,122 @@ public class WikiDatabaseService {
     }));
   }
 
-  public WikiDatabaseService fetchPage(String name, Handler<AsyncResult<JsonObject>> resultHandler) { 
+  public WikiDatabaseService fetchAllPageSummaries(Handler<AsyncResult<List<PageSummary>>> resultHandler) { 
+    delegate.fetchAllPageSummaries(resultHandler);
+    return this;
+  }
+
+  public Single<List<PageSummary>> rxFetchAllPageSummaries() { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      fetchAllPageSummaries(fut);
+    }));
+  }
+
+  public WikiDatabaseService completePageName(String prefix, int limit, Handler<AsyncResult<List<PageSummary>>> resultHandler) { 
+    delegate.completePageName(prefix, limit, resultHandler);
+    return this;
+  }
+
+  public Single<List<PageSummary>> rxCompletePageName(String prefix, int limit) { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      completePageName(prefix, limit, fut);
+    }));
+  }
+
+  /**
+   * @param name 
+   * @param resultHandler called with null when there is no such page
+   * @return 
+   */
+  public WikiDatabaseService fetchPage(String name, Handler<AsyncResult<Page>> resultHandler) { 
     delegate.fetchPage(name, resultHandler);
     return this;
   }
 
-  public Single<JsonObject> rxFetchPage(String name) { 
+  /**
+   * @param name 
+   * @return 
+   */
+  public Single<Page> rxFetchPage(String name) { 
     return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
       fetchPage(name, fut);
     }));
   }
 
-  public WikiDatabaseService fetchPageById(int id, Handler<AsyncResult<JsonObject>> resultHandler) { 
+  /**
+   * @param id 
+   * @param resultHandler called with null when there is no such page
+   * @return 
+   */
+  public WikiDatabaseService fetchPageById(int id, Handler<AsyncResult<Page>> resultHandler) { 
     delegate.fetchPageById(id, resultHandler);
     return this;
   }
 
-  public Single<JsonObject> rxFetchPageById(int id) { 
+  /**
+   * @param id 
+   * @return 
+   */
+  public Single<Page> rxFetchPageById(int id) { 
     return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
       fetchPageById(id, fut);
     }));
   }
 
+  /**
+   * Tell whether a page exists from the name index, without reading the page
+   * @param id 
+   * @param resultHandler 
+   * @return 
+   */
+  public WikiDatabaseService pageExists(int id, Handler<AsyncResult<Boolean>> resultHandler) { 
+    delegate.pageExists(id, resultHandler);
+    return this;
+  }
+
+  /**
+   * Tell whether a page exists from the name index, without reading the page
+   * @param id 
+   * @return 
+   */
+  public Single<Boolean> rxPageExists(int id) { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      pageExists(id, fut);
+    }));
+  }
+
+  /**
+   * Fetch a chunk of the content of a page, so that large pages can be streamed without holding the whole
+   * content in one message. The result holds <code>found</code>, the UTF-8 size of the content in
+   * <code>bytes</code> when known, the <code>version</code> of the content, changed by every save, the
+   * <code>chunk</code>, and the <code>next</code> position to fetch, -1 after the last chunk.
+   * @param id 
+   * @param position 0 for the first chunk, the <code>next</code> position of the previous chunk otherwise
+   * @param length maximum length of the chunk, in characters
+   * @param resultHandler 
+   * @return 
+   */
+  public WikiDatabaseService fetchPageContentChunk(int id, long position, int length, Handler<AsyncResult<JsonObject>> resultHandler) { 
+    delegate.fetchPageContentChunk(id, position, length, resultHandler);
+    return this;
+  }
+
+  /**
+   * Fetch a chunk of the content of a page, so that large pages can be streamed without holding the whole
+   * content in one message. The result holds <code>found</code>, the UTF-8 size of the content in
+   * <code>bytes</code> when known, the <code>version</code> of the content, changed by every save, the
+   * <code>chunk</code>, and the <code>next</code> position to fetch, -1 after the last chunk.
+   * @param id 
+   * @param position 0 for the first chunk, the <code>next</code> position of the previous chunk otherwise
+   * @param length maximum length of the chunk, in characters
+   * @return 
+   */
+  public Single<JsonObject> rxFetchPageContentChunk(int id, long position, int length) { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      fetchPageContentChunk(id, position, length, fut);
+    }));
+  }
+
   public WikiDatabaseService createPage(String title, String markdown, Handler<AsyncResult<Void>> resultHandler) { 
     delegate.createPage(title, markdown, resultHandler);
     return this;
@@ -105,6 +201,34 @@ public class WikiDatabaseService {
     }));
   }
 
+  /**
+   * Save a page by applying a diff to its current content, when the current content is still the version the
+   * diff was made against. See {@link io.vertx.starter.database.rxjava.PageDiff}.
+   * @param id 
+   * @param baseHash {@link io.vertx.starter.database.rxjava.PageDiff#hash} of the content the diff was made against
+   * @param edits well formed edits
+   * @param resultHandler called with <code>{status, hash, bytes}</code>: the status is <code>saved</code>, <code>conflict</code> when the page changed since the base, <code>invalid</code> when the edits do not fit the base or <code>missing</code> when there is no such page; the hash and size in bytes are the ones of the content after the call
+   * @return 
+   */
+  public WikiDatabaseService patchPage(int id, String baseHash, JsonArray edits, Handler<AsyncResult<JsonObject>> resultHandler) { 
+    delegate.patchPage(id, baseHash, edits, resultHandler);
+    return this;
+  }
+
+  /**
+   * Save a page by applying a diff to its current content, when the current content is still the version the
+   * diff was made against. See {@link io.vertx.starter.database.rxjava.PageDiff}.
+   * @param id 
+   * @param baseHash {@link io.vertx.starter.database.rxjava.PageDiff#hash} of the content the diff was made against
+   * @param edits well formed edits
+   * @return 
+   */
+  public Single<JsonObject> rxPatchPage(int id, String baseHash, JsonArray edits) { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      patchPage(id, baseHash, edits, fut);
+    }));
+  }
+
   public WikiDatabaseService deletePage(int id, Handler<AsyncResult<Void>> resultHandler) { 
     delegate.deletePage(id, resultHandler);
     return this;
@@ -116,17 +240,249 @@ public class WikiDatabaseService {
     }));
   }
 
-  public WikiDatabaseService fetchAllPagesData(Handler<AsyncResult<List<JsonObject>>> resultHandler) { 
+  public WikiDatabaseService fetchAllPagesData(Handler<AsyncResult<List<Page>>> resultHandler) { 
     delegate.fetchAllPagesData(resultHandler);
     return this;
   }
 
-  public Single<List<JsonObject>> rxFetchAllPagesData() { 
+  public Single<List<Page>> rxFetchAllPagesData() { 
     return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
       fetchAllPagesData(fut);
     }));
   }
 
+  /**
+   * Fetch the pages one batch at a time, for bulk jobs that must not hold every page at once
+   * @param afterId last id of the previous batch, -1 for the first batch
+   * @param limit maximum number of pages in the batch
+   * @param resultHandler called with the pages following <code>afterId</code> in ascending id order, empty after the last batch
+   * @return 
+   */
+  public WikiDatabaseService fetchPagesBatch(int afterId, int limit, Handler<AsyncResult<List<Page>>> resultHandler) { 
+    delegate.fetchPagesBatch(afterId, limit, resultHandler);
+    return this;
+  }
+
+  /**
+   * Fetch the pages one batch at a time, for bulk jobs that must not hold every page at once
+   * @param afterId last id of the previous batch, -1 for the first batch
+   * @param limit maximum number of pages in the batch
+   * @return 
+   */
+  public Single<List<Page>> rxFetchPagesBatch(int afterId, int limit) { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      fetchPagesBatch(afterId, limit, fut);
+    }));
+  }
+
+  public WikiDatabaseService fetchLastChangeSequence(Handler<AsyncResult<Long>> resultHandler) { 
+    delegate.fetchLastChangeSequence(resultHandler);
+    return this;
+  }
+
+  public Single<Long> rxFetchLastChangeSequence() { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      fetchLastChangeSequence(fut);
+    }));
+  }
+
+  public WikiDatabaseService fetchChangesSince(long since, Handler<AsyncResult<JsonObject>> resultHandler) { 
+    delegate.fetchChangesSince(since, resultHandler);
+    return this;
+  }
+
+  public Single<JsonObject> rxFetchChangesSince(long since) { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      fetchChangesSince(since, fut);
+    }));
+  }
+
+  /**
+   * @param id 
+   * @param resultHandler called with the pages linking to the page, in ascending name order, or with null when there is no such page
+   * @return 
+   */
+  public WikiDatabaseService fetchBacklinks(int id, Handler<AsyncResult<List<PageSummary>>> resultHandler) { 
+    delegate.fetchBacklinks(id, resultHandler);
+    return this;
+  }
+
+  /**
+   * @param id 
+   * @return 
+   */
+  public Single<List<PageSummary>> rxFetchBacklinks(int id) { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      fetchBacklinks(id, fut);
+    }));
+  }
+
+  /**
+   * @param name 
+   * @param resultHandler called with the pages linking to a page name, in ascending name order, whether there is a page with that name or not, used to gather the backlinks across shards
+   * @return 
+   */
+  public WikiDatabaseService fetchBacklinksByName(String name, Handler<AsyncResult<List<PageSummary>>> resultHandler) { 
+    delegate.fetchBacklinksByName(name, resultHandler);
+    return this;
+  }
+
+  /**
+   * @param name 
+   * @return 
+   */
+  public Single<List<PageSummary>> rxFetchBacklinksByName(String name) { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      fetchBacklinksByName(name, fut);
+    }));
+  }
+
+  /**
+   * @param resultHandler called with the pages no other page links to, in ascending name order
+   * @return 
+   */
+  public WikiDatabaseService fetchOrphanPages(Handler<AsyncResult<List<PageSummary>>> resultHandler) { 
+    delegate.fetchOrphanPages(resultHandler);
+    return this;
+  }
+
+  /**
+   * @return 
+   */
+  public Single<List<PageSummary>> rxFetchOrphanPages() { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      fetchOrphanPages(fut);
+    }));
+  }
+
+  /**
+   * @param names 
+   * @param resultHandler called with the names among some page names that a page links to, links of a page to itself aside, used to find the orphan pages across shards
+   * @return 
+   */
+  public WikiDatabaseService fetchLinkedNames(List<String> names, Handler<AsyncResult<List<String>>> resultHandler) { 
+    delegate.fetchLinkedNames(names, resultHandler);
+    return this;
+  }
+
+  /**
+   * @param names 
+   * @return 
+   */
+  public Single<List<String>> rxFetchLinkedNames(List<String> names) { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      fetchLinkedNames(names, fut);
+    }));
+  }
+
+  /**
+   * Record an attachment of a page, replacing the attachment of the same name. The attachment files are kept
+   * by the HTTP verticles, only their metadata is in the database.
+   * @param pageId 
+   * @param attachment <code>{name, hash, size, contentType, created}</code>
+   * @param resultHandler called with false when there is no such page
+   * @return 
+   */
+  public WikiDatabaseService saveAttachment(int pageId, JsonObject attachment, Handler<AsyncResult<Boolean>> resultHandler) { 
+    delegate.saveAttachment(pageId, attachment, resultHandler);
+    return this;
+  }
+
+  /**
+   * Record an attachment of a page, replacing the attachment of the same name. The attachment files are kept
+   * by the HTTP verticles, only their metadata is in the database.
+   * @param pageId 
+   * @param attachment <code>{name, hash, size, contentType, created}</code>
+   * @return 
+   */
+  public Single<Boolean> rxSaveAttachment(int pageId, JsonObject attachment) { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      saveAttachment(pageId, attachment, fut);
+    }));
+  }
+
+  /**
+   * @param pageId 
+   * @param resultHandler called with the attachments of a page, in ascending name order
+   * @return 
+   */
+  public WikiDatabaseService fetchAttachments(int pageId, Handler<AsyncResult<JsonArray>> resultHandler) { 
+    delegate.fetchAttachments(pageId, resultHandler);
+    return this;
+  }
+
+  /**
+   * @param pageId 
+   * @return 
+   */
+  public Single<JsonArray> rxFetchAttachments(int pageId) { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      fetchAttachments(pageId, fut);
+    }));
+  }
+
+  /**
+   * @param pageId 
+   * @param name 
+   * @param resultHandler called with null when there is no such attachment
+   * @return 
+   */
+  public WikiDatabaseService fetchAttachment(int pageId, String name, Handler<AsyncResult<JsonObject>> resultHandler) { 
+    delegate.fetchAttachment(pageId, name, resultHandler);
+    return this;
+  }
+
+  /**
+   * @param pageId 
+   * @param name 
+   * @return 
+   */
+  public Single<JsonObject> rxFetchAttachment(int pageId, String name) { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      fetchAttachment(pageId, name, fut);
+    }));
+  }
+
+  /**
+   * @param pageId 
+   * @param name 
+   * @param resultHandler called with whether there was such an attachment
+   * @return 
+   */
+  public WikiDatabaseService deleteAttachment(int pageId, String name, Handler<AsyncResult<Boolean>> resultHandler) { 
+    delegate.deleteAttachment(pageId, name, resultHandler);
+    return this;
+  }
+
+  /**
+   * @param pageId 
+   * @param name 
+   * @return 
+   */
+  public Single<Boolean> rxDeleteAttachment(int pageId, String name) { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      deleteAttachment(pageId, name, fut);
+    }));
+  }
+
+  /**
+   * @param resultHandler called with the concurrency caps, load and queue and run time percentiles of the execution lanes, and the counts of the coalesced page reads
+   * @return 
+   */
+  public WikiDatabaseService fetchExecutionStats(Handler<AsyncResult<JsonObject>> resultHandler) { 
+    delegate.fetchExecutionStats(resultHandler);
+    return this;
+  }
+
+  /**
+   * @return 
+   */
+  public Single<JsonObject> rxFetchExecutionStats() { 
+    return Single.create(new io.vertx.rx.java.SingleOnSubscribeAdapter<>(fut -> {
+      fetchExecutionStats(fut);
+    }));
+  }
+
 
   public static  WikiDatabaseService newInstance(io.vertx.starter.database.WikiDatabaseService arg) {
     return arg != null ? new WikiDatabaseService(arg) : null;
@@ -20,6 +20,8 @@ var utils = require('vertx-js/util/utils');
 var io = Packages.io;
 var JsonObject = io.vertx.core.json.JsonObject;
 var JWikiDatabaseService = Java.type('io.vertx.starter.database.WikiDatabaseService');
+var PageSummary = Java.type('io.vertx.starter.database.PageSummary');
+var Page = Java.type('io.vertx.starter.database.Page');
 
 /**
  Created by wujun on 2017/7/19.
@@ -54,16 +56,58 @@ var WikiDatabaseService = function(j_val) {
   /**
 
    @public
-   @param name {string} 
    @param resultHandler {function} 
    @return {WikiDatabaseService}
    */
+  this.fetchAllPageSummaries = function(resultHandler) {
+    var __args = arguments;
+    if (__args.length === 1 && typeof __args[0] === 'function') {
+      j_wikiDatabaseService["fetchAllPageSummaries(io.vertx.core.Handler)"](function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(utils.convReturnListSetDataObject(ar.result()), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+
+   @public
+   @param prefix {string} 
+   @param limit {number} 
+   @param resultHandler {function} 
+   @return {WikiDatabaseService}
+   */
+  this.completePageName = function(prefix, limit, resultHandler) {
+    var __args = arguments;
+    if (__args.length === 3 && typeof __args[0] === 'string' && typeof __args[1] ==='number' && typeof __args[2] === 'function') {
+      j_wikiDatabaseService["completePageName(java.lang.String,int,io.vertx.core.Handler)"](prefix, limit, function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(utils.convReturnListSetDataObject(ar.result()), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+
+   @public
+   @param name {string} 
+   @param resultHandler {function} called with null when there is no such page 
+   @return {WikiDatabaseService} 
+   */
   this.fetchPage = function(name, resultHandler) {
     var __args = arguments;
     if (__args.length === 2 && typeof __args[0] === 'string' && typeof __args[1] === 'function') {
       j_wikiDatabaseService["fetchPage(java.lang.String,io.vertx.core.Handler)"](name, function(ar) {
       if (ar.succeeded()) {
-        resultHandler(utils.convReturnJson(ar.result()), null);
+        resultHandler(utils.convReturnDataObject(ar.result()), null);
       } else {
         resultHandler(null, ar.cause());
       }
@@ -76,13 +120,62 @@ var WikiDatabaseService = function(j_val) {
 
    @public
    @param id {number} 
-   @param resultHandler {function} 
-   @return {WikiDatabaseService}
+   @param resultHandler {function} called with null when there is no such page 
+   @return {WikiDatabaseService} 
    */
   this.fetchPageById = function(id, resultHandler) {
     var __args = arguments;
     if (__args.length === 2 && typeof __args[0] ==='number' && typeof __args[1] === 'function') {
       j_wikiDatabaseService["fetchPageById(int,io.vertx.core.Handler)"](id, function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(utils.convReturnDataObject(ar.result()), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+   Tell whether a page exists from the name index, without reading the page
+
+   @public
+   @param id {number} 
+   @param resultHandler {function} 
+   @return {WikiDatabaseService} 
+   */
+  this.pageExists = function(id, resultHandler) {
+    var __args = arguments;
+    if (__args.length === 2 && typeof __args[0] ==='number' && typeof __args[1] === 'function') {
+      j_wikiDatabaseService["pageExists(int,io.vertx.core.Handler)"](id, function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(ar.result(), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+   Fetch a chunk of the content of a page, so that large pages can be streamed without holding the whole
+   content in one message. The result holds <code>found</code>, the UTF-8 size of the content in
+   <code>bytes</code> when known, the <code>version</code> of the content, changed by every save, the
+   <code>chunk</code>, and the <code>next</code> position to fetch, -1 after the last chunk.
+
+   @public
+   @param id {number} 
+   @param position {number} 0 for the first chunk, the <code>next</code> position of the previous chunk otherwise 
+   @param length {number} maximum length of the chunk, in characters 
+   @param resultHandler {function} 
+   @return {WikiDatabaseService} 
+   */
+  this.fetchPageContentChunk = function(id, position, length, resultHandler) {
+    var __args = arguments;
+    if (__args.length === 4 && typeof __args[0] ==='number' && typeof __args[1] ==='number' && typeof __args[2] ==='number' && typeof __args[3] === 'function') {
+      j_wikiDatabaseService["fetchPageContentChunk(int,long,int,io.vertx.core.Handler)"](id, position, length, function(ar) {
       if (ar.succeeded()) {
         resultHandler(utils.convReturnJson(ar.result()), null);
       } else {
@@ -137,6 +230,31 @@ var WikiDatabaseService = function(j_val) {
     } else throw new TypeError('function invoked with invalid arguments');
   };
 
+  /**
+   Save a page by applying a diff to its current content, when the current content is still the version the
+   diff was made against. See {@link PageDiff}.
+
+   @public
+   @param id {number} 
+   @param baseHash {string} {@link PageDiff#hash} of the content the diff was made against 
+   @param edits {todo} well formed edits 
+   @param resultHandler {function} called with <code>{status, hash, bytes}</code>: the status is <code>saved</code>, <code>conflict</code> when the page changed since the base, <code>invalid</code> when the edits do not fit the base or <code>missing</code> when there is no such page; the hash and size in bytes are the ones of the content after the call 
+   @return {WikiDatabaseService} 
+   */
+  this.patchPage = function(id, baseHash, edits, resultHandler) {
+    var __args = arguments;
+    if (__args.length === 4 && typeof __args[0] ==='number' && typeof __args[1] === 'string' && typeof __args[2] === 'object' && __args[2] instanceof Array && typeof __args[3] === 'function') {
+      j_wikiDatabaseService["patchPage(int,java.lang.String,io.vertx.core.json.JsonArray,io.vertx.core.Handler)"](id, baseHash, utils.convParamJsonArray(edits), function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(utils.convReturnJson(ar.result()), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
   /**
 
    @public
@@ -169,7 +287,263 @@ var WikiDatabaseService = function(j_val) {
     if (__args.length === 1 && typeof __args[0] === 'function') {
       j_wikiDatabaseService["fetchAllPagesData(io.vertx.core.Handler)"](function(ar) {
       if (ar.succeeded()) {
-        resultHandler(utils.convReturnListSetJson(ar.result()), null);
+        resultHandler(utils.convReturnListSetDataObject(ar.result()), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+   Fetch the pages one batch at a time, for bulk jobs that must not hold every page at once
+
+   @public
+   @param afterId {number} last id of the previous batch, -1 for the first batch 
+   @param limit {number} maximum number of pages in the batch 
+   @param resultHandler {function} called with the pages following <code>afterId</code> in ascending id order, empty after the last batch 
+   @return {WikiDatabaseService} 
+   */
+  this.fetchPagesBatch = function(afterId, limit, resultHandler) {
+    var __args = arguments;
+    if (__args.length === 3 && typeof __args[0] ==='number' && typeof __args[1] ==='number' && typeof __args[2] === 'function') {
+      j_wikiDatabaseService["fetchPagesBatch(int,int,io.vertx.core.Handler)"](afterId, limit, function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(utils.convReturnListSetDataObject(ar.result()), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+
+   @public
+   @param resultHandler {function} 
+   @return {WikiDatabaseService}
+   */
+  this.fetchLastChangeSequence = function(resultHandler) {
+    var __args = arguments;
+    if (__args.length === 1 && typeof __args[0] === 'function') {
+      j_wikiDatabaseService["fetchLastChangeSequence(io.vertx.core.Handler)"](function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(utils.convReturnLong(ar.result()), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+
+   @public
+   @param since {number} 
+   @param resultHandler {function} 
+   @return {WikiDatabaseService}
+   */
+  this.fetchChangesSince = function(since, resultHandler) {
+    var __args = arguments;
+    if (__args.length === 2 && typeof __args[0] ==='number' && typeof __args[1] === 'function') {
+      j_wikiDatabaseService["fetchChangesSince(long,io.vertx.core.Handler)"](since, function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(utils.convReturnJson(ar.result()), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+
+   @public
+   @param id {number} 
+   @param resultHandler {function} called with the pages linking to the page, in ascending name order, or with null when there is no such page 
+   @return {WikiDatabaseService} 
+   */
+  this.fetchBacklinks = function(id, resultHandler) {
+    var __args = arguments;
+    if (__args.length === 2 && typeof __args[0] ==='number' && typeof __args[1] === 'function') {
+      j_wikiDatabaseService["fetchBacklinks(int,io.vertx.core.Handler)"](id, function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(utils.convReturnListSetDataObject(ar.result()), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+
+   @public
+   @param name {string} 
+   @param resultHandler {function} called with the pages linking to a page name, in ascending name order, whether there is a page with that name or not, used to gather the backlinks across shards 
+   @return {WikiDatabaseService} 
+   */
+  this.fetchBacklinksByName = function(name, resultHandler) {
+    var __args = arguments;
+    if (__args.length === 2 && typeof __args[0] === 'string' && typeof __args[1] === 'function') {
+      j_wikiDatabaseService["fetchBacklinksByName(java.lang.String,io.vertx.core.Handler)"](name, function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(utils.convReturnListSetDataObject(ar.result()), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+
+   @public
+   @param resultHandler {function} called with the pages no other page links to, in ascending name order 
+   @return {WikiDatabaseService} 
+   */
+  this.fetchOrphanPages = function(resultHandler) {
+    var __args = arguments;
+    if (__args.length === 1 && typeof __args[0] === 'function') {
+      j_wikiDatabaseService["fetchOrphanPages(io.vertx.core.Handler)"](function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(utils.convReturnListSetDataObject(ar.result()), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+
+   @public
+   @param names {Array.<string>} 
+   @param resultHandler {function} called with the names among some page names that a page links to, links of a page to itself aside, used to find the orphan pages across shards 
+   @return {WikiDatabaseService} 
+   */
+  this.fetchLinkedNames = function(names, resultHandler) {
+    var __args = arguments;
+    if (__args.length === 2 && typeof __args[0] === 'object' && __args[0] instanceof Array && typeof __args[1] === 'function') {
+      j_wikiDatabaseService["fetchLinkedNames(java.util.List,io.vertx.core.Handler)"](utils.convParamListBasicOther(names), function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(ar.result(), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+   Record an attachment of a page, replacing the attachment of the same name. The attachment files are kept
+   by the HTTP verticles, only their metadata is in the database.
+
+   @public
+   @param pageId {number} 
+   @param attachment {Object} <code>{name, hash, size, contentType, created}</code> 
+   @param resultHandler {function} called with false when there is no such page 
+   @return {WikiDatabaseService} 
+   */
+  this.saveAttachment = function(pageId, attachment, resultHandler) {
+    var __args = arguments;
+    if (__args.length === 3 && typeof __args[0] ==='number' && (typeof __args[1] === 'object' && __args[1] != null) && typeof __args[2] === 'function') {
+      j_wikiDatabaseService["saveAttachment(int,io.vertx.core.json.JsonObject,io.vertx.core.Handler)"](pageId, utils.convParamJsonObject(attachment), function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(ar.result(), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+
+   @public
+   @param pageId {number} 
+   @param resultHandler {function} called with the attachments of a page, in ascending name order 
+   @return {WikiDatabaseService} 
+   */
+  this.fetchAttachments = function(pageId, resultHandler) {
+    var __args = arguments;
+    if (__args.length === 2 && typeof __args[0] ==='number' && typeof __args[1] === 'function') {
+      j_wikiDatabaseService["fetchAttachments(int,io.vertx.core.Handler)"](pageId, function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(utils.convReturnJson(ar.result()), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+
+   @public
+   @param pageId {number} 
+   @param name {string} 
+   @param resultHandler {function} called with null when there is no such attachment 
+   @return {WikiDatabaseService} 
+   */
+  this.fetchAttachment = function(pageId, name, resultHandler) {
+    var __args = arguments;
+    if (__args.length === 3 && typeof __args[0] ==='number' && typeof __args[1] === 'string' && typeof __args[2] === 'function') {
+      j_wikiDatabaseService["fetchAttachment(int,java.lang.String,io.vertx.core.Handler)"](pageId, name, function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(utils.convReturnJson(ar.result()), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+
+   @public
+   @param pageId {number} 
+   @param name {string} 
+   @param resultHandler {function} called with whether there was such an attachment 
+   @return {WikiDatabaseService} 
+   */
+  this.deleteAttachment = function(pageId, name, resultHandler) {
+    var __args = arguments;
+    if (__args.length === 3 && typeof __args[0] ==='number' && typeof __args[1] === 'string' && typeof __args[2] === 'function') {
+      j_wikiDatabaseService["deleteAttachment(int,java.lang.String,io.vertx.core.Handler)"](pageId, name, function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(ar.result(), null);
+      } else {
+        resultHandler(null, ar.cause());
+      }
+    });
+      return that;
+    } else throw new TypeError('function invoked with invalid arguments');
+  };
+
+  /**
+
+   @public
+   @param resultHandler {function} called with the concurrency caps, load and queue and run time percentiles of the execution lanes, and the counts of the coalesced page reads 
+   @return {WikiDatabaseService} 
+   */
+  this.fetchExecutionStats = function(resultHandler) {
+    var __args = arguments;
+    if (__args.length === 1 && typeof __args[0] === 'function') {
+      j_wikiDatabaseService["fetchExecutionStats(io.vertx.core.Handler)"](function(ar) {
+      if (ar.succeeded()) {
+        resultHandler(utils.convReturnJson(ar.result()), null);
       } else {
         resultHandler(null, ar.cause());
       }
@@ -2,23 +2,78 @@ package io.vertx.starter;
 
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
 import io.vertx.rxjava.core.AbstractVerticle;
+import io.vertx.rxjava.core.shareddata.LocalMap;
+import io.vertx.starter.database.WikiDatabaseVerticle;
+import io.vertx.starter.http.HttpServerVerticle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
 import rx.Single;
 
+import java.util.List;
+
 public class MainVerticle extends AbstractVerticle {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MainVerticle.class);
+
+  public static final String CONFIG_WARMUP_ENABLED = "warmup.enabled";
+  public static final String CONFIG_WARMUP_ROUNDS = "warmup.rounds";
+  public static final String CONFIG_WARMUP_PAGES = "warmup.pages";
+
+  public static final String HEALTH_MAP = "wiki.health";
+  public static final String HEALTH_READY = "ready";
+  public static final String HEALTH_WARMUP = "warmup";
 
   @Override
   public void start(Future<Void> startFuture) throws Exception {
 
-    Single<String> dbVerticleDeployment = vertx.rxDeployVerticle(
-      "io.vertx.starter.database.WikiDatabaseVerticle");
+    // One database verticle per shard, each knowing its shard
+    int shards = Math.max(1, config().getInteger(WikiDatabaseVerticle.CONFIG_WIKIDB_SHARDS, 1));
+    Single<List<String>> dbVerticleDeployment = Observable.range(0, shards)
+      .flatMap(shard -> vertx.rxDeployVerticle(
+        "io.vertx.starter.database.WikiDatabaseVerticle",
+        new DeploymentOptions().setConfig(config().copy().put(WikiDatabaseVerticle.CONFIG_WIKIDB_SHARD, shard)))
+        .toObservable())
+      .toList()
+      .toSingle();
 
-    dbVerticleDeployment.flatMap(id -> {
+    dbVerticleDeployment.flatMap(ids -> {
       Single<String> httpVerticleDeployment = vertx.rxDeployVerticle(
         "io.vertx.starter.http.HttpServerVerticle",
-        new DeploymentOptions().setInstances(2));
+        new DeploymentOptions().setInstances(2).setConfig(config()));
 
       return httpVerticleDeployment;
-    }).subscribe(id -> startFuture.complete(), startFuture::fail);
+    })
+      .flatMap(id -> warmUp())
+      .subscribe(report -> {
+        LocalMap<String, Object> health = vertx.sharedData().getLocalMap(HEALTH_MAP);
+        health.put(HEALTH_WARMUP, report);
+        health.put(HEALTH_READY, true);
+        startFuture.complete();
+      }, startFuture::fail);
+  }
+
+  /**
+   * Run the warm-up stage when enabled. A failing warm-up is reported but does not prevent the node from
+   * becoming ready.
+   *
+   * @return warm-up report
+   */
+  private Single<JsonObject> warmUp() {
+    if (!config().getBoolean(CONFIG_WARMUP_ENABLED, true)) {
+      return Single.just(new JsonObject().put("enabled", false));
+    }
+    WarmUp warmUp = new WarmUp(vertx,
+      config().getInteger(HttpServerVerticle.CONFIG_HTTP_SERVER_PORT, 8080),
+      config().getInteger(CONFIG_WARMUP_ROUNDS, 5),
+      config().getInteger(CONFIG_WARMUP_PAGES, 10),
+      config().getInteger(WikiDatabaseVerticle.CONFIG_WIKIDB_JDBC_MIN_POOL_SIZE, 3));
+    return warmUp.rxRun()
+      .map(report -> report.put("enabled", true))
+      .onErrorReturn(t -> {
+        LOGGER.warn("Warm-up failed", t);
+        return new JsonObject().put("enabled", true).put("error", String.valueOf(t.getMessage()));
+      });
   }
 }
@@ -0,0 +1,192 @@
+package io.vertx.starter;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sampled request tracing. The HTTP verticle starts a trace for a sample of the requests, and its id travels
+ * with the database calls in a {@link io.vertx.core.eventbus.DeliveryOptions} header. Each stage a request
+ * goes through records a span into the trace, and the most recent traces are kept in memory.
+ * <p>
+ * The database service methods find the trace of the call they serve with {@link #current()}, which is set
+ * by the service consumer while it dispatches the call. Code that is not sampled only pays for a null check.
+ * <p>
+ * The tracer is shared by all the verticles of a Vert.x instance. When Vert.x is clustered, the spans of the
+ * database stages are kept by the node that runs the database verticle.
+ */
+public class RequestTracer implements Shareable {
+
+  public static final String CONFIG_TRACING_SAMPLE_RATE = "tracing.sample_rate";
+  public static final String CONFIG_TRACING_BUFFER = "tracing.buffer";
+
+  /**
+   * Event bus header holding the trace id of a call
+   */
+  public static final String HEADER = "x-trace-id";
+
+  /**
+   * Event bus header holding the {@link System#nanoTime()} a call was sent at, only meaningful in the same JVM
+   */
+  public static final String SENT_HEADER = "x-trace-sent";
+
+  private static final String SHARED_MAP = "wiki.tracing";
+  private static final String SHARED_KEY = "tracer";
+  private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+  private final double sampleRate;
+  private final Map<String, Trace> traces;
+
+  private static class Trace {
+    final String id;
+    final long startedAt;
+    final long startNanos;
+    final List<JsonObject> spans = new ArrayList<>();
+
+    Trace(String id, long startNanos) {
+      this.id = id;
+      this.startedAt = System.currentTimeMillis();
+      this.startNanos = startNanos;
+    }
+  }
+
+  /**
+   * @param sampleRate share of the requests traced, tracing is off when not positive
+   * @param capacity   number of traces kept
+   */
+  RequestTracer(double sampleRate, int capacity) {
+    this.sampleRate = sampleRate;
+    int maxTraces = Math.max(1, capacity);
+    this.traces = new LinkedHashMap<String, Trace>(16, 0.75f, false) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Trace> eldest) {
+        return size() > maxTraces;
+      }
+    };
+  }
+
+  /**
+   * Get the tracer of a Vert.x instance, creating it on first use
+   *
+   * @param vertx
+   * @param config
+   * @return
+   */
+  public static RequestTracer shared(Vertx vertx, JsonObject config) {
+    LocalMap<String, RequestTracer> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+    RequestTracer created = new RequestTracer(config.getDouble(CONFIG_TRACING_SAMPLE_RATE, 0.0),
+      config.getInteger(CONFIG_TRACING_BUFFER, 256));
+    RequestTracer existing = map.putIfAbsent(SHARED_KEY, created);
+    return existing != null ? existing : created;
+  }
+
+  /**
+   * @return the trace of the database call being dispatched on this thread, or null
+   */
+  public static String current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Run some code as part of a trace, so that it can find the trace with {@link #current()}
+   *
+   * @param traceId may be null
+   * @param code
+   */
+  public static void within(String traceId, Runnable code) {
+    if (traceId == null) {
+      code.run();
+      return;
+    }
+    String previous = CURRENT.get();
+    CURRENT.set(traceId);
+    try {
+      code.run();
+    } finally {
+      CURRENT.set(previous);
+    }
+  }
+
+  /**
+   * Decide whether to trace a request
+   *
+   * @param startNanos when the request started
+   * @return the id of the new trace, or null when the request is not sampled
+   */
+  public String sample(long startNanos) {
+    if (sampleRate <= 0 || (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+      return null;
+    }
+    String id = Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+    synchronized (traces) {
+      traces.put(id, new Trace(id, startNanos));
+    }
+    return id;
+  }
+
+  /**
+   * Record a stage of a trace, ending now
+   *
+   * @param traceId    may be null, nothing is recorded then
+   * @param stage
+   * @param startNanos when the stage started
+   */
+  public void span(String traceId, String stage, long startNanos) {
+    if (traceId != null) {
+      span(traceId, stage, startNanos, System.nanoTime());
+    }
+  }
+
+  /**
+   * Record a stage of a trace
+   *
+   * @param traceId    may be null, nothing is recorded then
+   * @param stage
+   * @param startNanos
+   * @param endNanos
+   */
+  public void span(String traceId, String stage, long startNanos, long endNanos) {
+    if (traceId == null) {
+      return;
+    }
+    synchronized (traces) {
+      // Traces started by another node of the cluster are kept from their first span here
+      Trace trace = traces.computeIfAbsent(traceId, id -> new Trace(id, startNanos));
+      trace.spans.add(new JsonObject()
+        .put("stage", stage)
+        .put("start", TimeUnit.NANOSECONDS.toMicros(startNanos - trace.startNanos))
+        .put("duration", TimeUnit.NANOSECONDS.toMicros(endNanos - startNanos)));
+    }
+  }
+
+  /**
+   * @return the kept traces, most recent first, with their spans in start order and times in microseconds
+   */
+  public JsonObject traces() {
+    List<Object> result = new ArrayList<>();
+    synchronized (traces) {
+      for (Trace trace : traces.values()) {
+        List<Object> spans = new ArrayList<>(trace.spans);
+        spans.sort((a, b) -> Long.compare(((JsonObject) a).getLong("start"), ((JsonObject) b).getLong("start")));
+        result.add(new JsonObject()
+          .put("id", trace.id)
+          .put("startedAt", trace.startedAt)
+          .put("spans", new JsonArray(spans)));
+      }
+    }
+    Collections.reverse(result);
+    return new JsonObject()
+      .put("sampleRate", sampleRate)
+      .put("traces", new JsonArray(result));
+  }
+}
@@ -0,0 +1,160 @@
+package io.vertx.starter;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces concurrent identical calls: the first caller of a key runs the call, callers arriving while it is
+ * in flight wait for its result instead of running the call again. Results are not kept once the call
+ * completes, this is not a cache.
+ * <p>
+ * A write must {@link #forget(Object)} the keys it changes once it is done, so that callers arriving after
+ * the write start a new call instead of joining one that may have read the data before the write. Callers
+ * that joined before are concurrent with the write and may get either version.
+ * <p>
+ * Thread safe, each caller gets the result on its own context. Results are shared by all the callers of a
+ * call, they must not be modified.
+ *
+ * @param <K> key of the calls
+ * @param <V> result of the calls
+ */
+public class SingleFlight<K, V> implements Shareable {
+
+  private static final String SHARED_MAP = "wiki.singleflight";
+
+  /**
+   * A call in flight and the callers waiting for it
+   */
+  private static class Flight<V> {
+    private final List<Waiter<V>> waiters = new ArrayList<>();
+    private boolean done;
+
+    synchronized boolean join(Waiter<V> waiter) {
+      if (done) {
+        return false;
+      }
+      waiters.add(waiter);
+      return true;
+    }
+
+    synchronized List<Waiter<V>> complete() {
+      done = true;
+      return waiters;
+    }
+  }
+
+  private static class Waiter<V> {
+    final Context context;
+    final Handler<AsyncResult<V>> handler;
+
+    Waiter(Context context, Handler<AsyncResult<V>> handler) {
+      this.context = context;
+      this.handler = handler;
+    }
+  }
+
+  private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+  private final AtomicLong calls = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  private final AtomicLong forgotten = new AtomicLong();
+
+  /**
+   * Get a single flight group shared by the verticles of a Vert.x instance, creating it on first use
+   *
+   * @param vertx
+   * @param name
+   * @param <K>
+   * @param <V>
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  public static <K, V> SingleFlight<K, V> shared(Vertx vertx, String name) {
+    LocalMap<String, SingleFlight> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+    SingleFlight<K, V> created = new SingleFlight<>();
+    SingleFlight<K, V> existing = map.putIfAbsent(name, created);
+    return existing != null ? existing : created;
+  }
+
+  /**
+   * Run a call, or wait for the call of the same key in flight
+   *
+   * @param key
+   * @param call          the call, given the handler of its result
+   * @param resultHandler
+   */
+  public void execute(K key, Consumer<Handler<AsyncResult<V>>> call, Handler<AsyncResult<V>> resultHandler) {
+    Context context = Vertx.currentContext();
+    while (true) {
+      Flight<V> flight = new Flight<>();
+      Flight<V> current = flights.putIfAbsent(key, flight);
+      if (current == null) {
+        calls.incrementAndGet();
+        run(key, flight, call, resultHandler);
+        return;
+      }
+      if (current.join(new Waiter<>(context, resultHandler))) {
+        coalesced.incrementAndGet();
+        return;
+      }
+      // Completed meanwhile, it is about to leave the map
+      flights.remove(key, current);
+    }
+  }
+
+  private void run(K key, Flight<V> flight, Consumer<Handler<AsyncResult<V>>> call, Handler<AsyncResult<V>> resultHandler) {
+    Handler<AsyncResult<V>> done = ar -> {
+      flights.remove(key, flight);
+      resultHandler.handle(ar);
+      for (Waiter<V> waiter : flight.complete()) {
+        if (waiter.context == null || waiter.context == Vertx.currentContext()) {
+          waiter.handler.handle(ar);
+        } else {
+          waiter.context.runOnContext(v -> waiter.handler.handle(ar));
+        }
+      }
+    };
+    try {
+      call.accept(done);
+    } catch (RuntimeException e) {
+      done.handle(Future.failedFuture(e));
+    }
+  }
+
+  /**
+   * Let the callers of a key arriving from now on start a new call, after a write of the data of the key
+   *
+   * @param key
+   */
+  public void forget(K key) {
+    if (flights.remove(key) != null) {
+      forgotten.incrementAndGet();
+    }
+  }
+
+  /**
+   * @return number of calls run, of callers that waited for a call in flight instead, and of calls forgotten
+   * while in flight
+   */
+  public JsonObject stats() {
+    long run = calls.get();
+    long joined = coalesced.get();
+    return new JsonObject()
+      .put("inFlight", flights.size())
+      .put("calls", run)
+      .put("coalesced", joined)
+      .put("coalescedRatio", run + joined > 0 ? (double) joined / (run + joined) : 0.0)
+      .put("forgotten", forgotten.get());
+  }
+}
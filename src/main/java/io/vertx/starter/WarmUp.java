@@ -0,0 +1,106 @@
+package io.vertx.starter;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.core.buffer.Buffer;
+import io.vertx.rxjava.ext.web.client.HttpResponse;
+import io.vertx.rxjava.ext.web.client.WebClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
+import rx.Single;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a few rounds of requests through the local HTTP server so that the JIT, the JDBC pool and the
+ * rendering paths are hot before the node reports itself as ready.
+ */
+class WarmUp {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WarmUp.class);
+
+  private static final String SAMPLE_MARKDOWN = "# Warm-up\n\nSome *text* with a [link](/) and a list:\n\n- one\n- two\n";
+
+  private final WebClient client;
+  private final int port;
+  private final int rounds;
+  private final int pages;
+  private final int concurrency;
+  private int preloaded;
+
+  /**
+   * @param vertx
+   * @param port        port of the local HTTP server
+   * @param rounds      number of warm-up rounds
+   * @param pages       number of pages preloaded in each round
+   * @param concurrency number of pages fetched in parallel, should match the minimum JDBC pool size
+   */
+  WarmUp(Vertx vertx, int port, int rounds, int pages, int concurrency) {
+    this.client = WebClient.create(vertx);
+    this.port = port;
+    this.rounds = rounds;
+    this.pages = pages;
+    this.concurrency = Math.max(1, concurrency);
+  }
+
+  /**
+   * Run all warm-up rounds
+   *
+   * @return a report with the total duration and the first / last round latencies
+   */
+  Single<JsonObject> rxRun() {
+    long start = System.nanoTime();
+    return Observable.range(0, rounds)
+      .concatMap(i -> round().toObservable())
+      .toList()
+      .toSingle()
+      .map(roundTimes -> report(start, roundTimes))
+      .doAfterTerminate(client::close);
+  }
+
+  /**
+   * One round: the page list, the first pages of the list and a Markdown preview
+   *
+   * @return round duration in nanoseconds
+   */
+  private Single<Long> round() {
+    long start = System.nanoTime();
+    return client.get(port, "localhost", "/api/pages").rxSend()
+      .map(HttpResponse::bodyAsJsonObject)
+      .flatMapObservable(body -> {
+        JsonArray list = body.getJsonArray("pages", new JsonArray());
+        return Observable.range(0, Math.min(pages, list.size())).map(i -> list.getJsonObject(i).getInteger("id"));
+      })
+      .flatMap(id -> client.get(port, "localhost", "/api/pages/" + id).rxSend().toObservable(), concurrency)
+      .toList()
+      .toSingle()
+      .doOnSuccess(fetched -> preloaded = fetched.size())
+      .flatMap(fetched -> client.post(port, "localhost", "/app/markdown").rxSendBuffer(Buffer.buffer(SAMPLE_MARKDOWN)))
+      .map(rendered -> System.nanoTime() - start);
+  }
+
+  /**
+   * @param start
+   * @param roundTimes
+   * @return
+   */
+  private JsonObject report(long start, List<Long> roundTimes) {
+    JsonObject report = new JsonObject()
+      .put("durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+      .put("rounds", roundTimes.size())
+      .put("pages", preloaded);
+    if (!roundTimes.isEmpty()) {
+      double first = roundTimes.get(0) / 1_000_000.0;
+      double last = roundTimes.get(roundTimes.size() - 1) / 1_000_000.0;
+      report
+        .put("firstRoundMs", first)
+        .put("lastRoundMs", last)
+        .put("speedup", last > 0 ? first / last : 1.0);
+    }
+    LOGGER.info("Warm-up finished: " + report.encode());
+    return report;
+  }
+}
@@ -0,0 +1,179 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Attachment metadata of the {@link PageLogStore} backend, the attachment files themselves are kept by the
+ * HTTP verticles.
+ * <p>
+ * The metadata is held in memory and every change is appended to a log of JSON lines next to the page log
+ * segments: <code>{op: "put", pageId, attachment}</code>, <code>{op: "delete", pageId, name}</code> or
+ * <code>{op: "deletePage", pageId}</code>. The log is replayed and rewritten with the live entries only when
+ * it is opened, a torn last line is dropped.
+ * <p>
+ * Writes are serialized on the log monitor and do blocking I/O, reads are lock-free.
+ */
+class AttachmentLog {
+
+  private static final String PUT = "put";
+  private static final String DELETE = "delete";
+  private static final String DELETE_PAGE = "deletePage";
+
+  private final boolean sync;
+  private final Map<Integer, ConcurrentSkipListMap<String, JsonObject>> pages = new ConcurrentHashMap<>();
+  private FileChannel channel;
+
+  /**
+   * Open the log, replaying and compacting it
+   *
+   * @param path
+   * @param sync whether appends are forced to disk before they are acknowledged
+   * @throws IOException
+   */
+  AttachmentLog(Path path, boolean sync) throws IOException {
+    this.sync = sync;
+    if (Files.exists(path)) {
+      replay(Files.readAllLines(path, StandardCharsets.UTF_8));
+    }
+    Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+    try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+      StandardOpenOption.TRUNCATE_EXISTING)) {
+      for (Map.Entry<Integer, ConcurrentSkipListMap<String, JsonObject>> page : pages.entrySet()) {
+        for (JsonObject attachment : page.getValue().values()) {
+          write(out, new JsonObject().put("op", PUT).put("pageId", page.getKey()).put("attachment", attachment));
+        }
+      }
+      out.force(true);
+    }
+    Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+  }
+
+  private void replay(List<String> lines) {
+    for (String line : lines) {
+      JsonObject entry;
+      try {
+        entry = new JsonObject(line);
+      } catch (RuntimeException e) {
+        // Torn by a crash while it was appended, it was not acknowledged
+        break;
+      }
+      apply(entry);
+    }
+  }
+
+  private void apply(JsonObject entry) {
+    int pageId = entry.getInteger("pageId");
+    switch (entry.getString("op")) {
+      case PUT:
+        JsonObject attachment = entry.getJsonObject("attachment");
+        pages.computeIfAbsent(pageId, id -> new ConcurrentSkipListMap<>()).put(attachment.getString("name"), attachment);
+        break;
+      case DELETE:
+        Map<String, JsonObject> attachments = pages.get(pageId);
+        if (attachments != null) {
+          attachments.remove(entry.getString("name"));
+        }
+        break;
+      case DELETE_PAGE:
+        pages.remove(pageId);
+        break;
+      default:
+        throw new IllegalStateException("Unknown attachment log entry " + entry.getString("op"));
+    }
+  }
+
+  private static void write(FileChannel out, JsonObject entry) throws IOException {
+    ByteBuffer line = ByteBuffer.wrap((entry.encode() + "\n").getBytes(StandardCharsets.UTF_8));
+    while (line.hasRemaining()) {
+      out.write(line);
+    }
+  }
+
+  private void append(JsonObject entry) throws IOException {
+    write(channel, entry);
+    if (sync) {
+      channel.force(false);
+    }
+    apply(entry);
+  }
+
+  /**
+   * Record an attachment, replacing the one of the same name
+   *
+   * @param pageId
+   * @param attachment
+   * @throws IOException
+   */
+  synchronized void put(int pageId, JsonObject attachment) throws IOException {
+    append(new JsonObject().put("op", PUT).put("pageId", pageId).put("attachment", attachment.copy()));
+  }
+
+  /**
+   * @param pageId
+   * @param name
+   * @return whether there was such an attachment
+   * @throws IOException
+   */
+  synchronized boolean delete(int pageId, String name) throws IOException {
+    if (get(pageId, name) == null) {
+      return false;
+    }
+    append(new JsonObject().put("op", DELETE).put("pageId", pageId).put("name", name));
+    return true;
+  }
+
+  /**
+   * Drop the attachments of a deleted page
+   *
+   * @param pageId
+   * @throws IOException
+   */
+  synchronized void deletePage(int pageId) throws IOException {
+    if (pages.containsKey(pageId)) {
+      append(new JsonObject().put("op", DELETE_PAGE).put("pageId", pageId));
+    }
+  }
+
+  /**
+   * @param pageId
+   * @param name
+   * @return a copy of the attachment, or null
+   */
+  JsonObject get(int pageId, String name) {
+    Map<String, JsonObject> attachments = pages.get(pageId);
+    JsonObject attachment = attachments != null ? attachments.get(name) : null;
+    return attachment != null ? attachment.copy() : null;
+  }
+
+  /**
+   * @param pageId
+   * @return copies of the attachments of a page, in ascending name order
+   */
+  JsonArray list(int pageId) {
+    JsonArray result = new JsonArray();
+    Map<String, JsonObject> attachments = pages.get(pageId);
+    if (attachments != null) {
+      attachments.values().forEach(attachment -> result.add(attachment.copy()));
+    }
+    return result;
+  }
+
+  synchronized void close() throws IOException {
+    channel.close();
+  }
+}
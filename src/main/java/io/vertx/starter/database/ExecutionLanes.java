@@ -0,0 +1,213 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.RequestTracer;
+import rx.Single;
+import rx.functions.Func0;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Execution lanes of the database work. Each class of work gets its own lane with its own concurrency cap
+ * and FIFO queue, so that a burst of bulk work can only take a bounded share of the connections and worker
+ * threads, and interactive reads never queue behind it.
+ * <p>
+ * Not thread safe, work must be submitted from the database verticle context, which is also where the
+ * results are delivered. Queued work is started on a later turn of the context once a slot is free, so that
+ * work completing at once does not start the rest of the queue recursively.
+ * <p>
+ * Work runs within the trace of the call that submitted it. The time it waits for a slot and the time it runs
+ * are recorded as <code>db.queue.&lt;lane&gt;</code> and <code>db.&lt;lane&gt;</code> spans.
+ */
+class ExecutionLanes {
+
+  /**
+   * Classes of database work
+   */
+  enum Lane {
+    READ, WRITE, BULK
+  }
+
+  private final Map<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+  private final Context context;
+  private final RequestTracer tracer;
+
+  /**
+   * @param context  context of the database verticle
+   * @param readMax  maximum number of interactive reads running at once
+   * @param writeMax maximum number of interactive writes running at once
+   * @param bulkMax  maximum number of bulk or background jobs running at once
+   * @param tracer
+   */
+  ExecutionLanes(Context context, int readMax, int writeMax, int bulkMax, RequestTracer tracer) {
+    this.context = context;
+    this.tracer = tracer;
+    for (Lane lane : Lane.values()) {
+      lanes.put(lane, new LaneState(lane.name().toLowerCase(), lane == Lane.READ ? readMax
+        : lane == Lane.WRITE ? writeMax : bulkMax));
+    }
+  }
+
+  /**
+   * Run some work in a lane once it has a free slot
+   *
+   * @param lane
+   * @param work          work to run, given the handler to complete
+   * @param resultHandler
+   * @param <T>
+   */
+  <T> void run(Lane lane, Consumer<Handler<AsyncResult<T>>> work, Handler<AsyncResult<T>> resultHandler) {
+    lanes.get(lane).submit(work, resultHandler);
+  }
+
+  /**
+   * Run some work in a lane once it has a free slot, the work is subscribed to when it starts
+   *
+   * @param lane
+   * @param work
+   * @param <T>
+   * @return
+   */
+  <T> Single<T> single(Lane lane, Func0<Single<T>> work) {
+    return Single.create(subscriber -> this.<T>run(lane, done -> work.call().subscribe(
+      result -> done.handle(Future.succeededFuture(result)),
+      t -> done.handle(Future.failedFuture(t))), ar -> {
+      if (ar.succeeded()) {
+        subscriber.onSuccess(ar.result());
+      } else {
+        subscriber.onError(ar.cause());
+      }
+    }));
+  }
+
+  /**
+   * @return per lane caps, load, and queue and run time percentiles in microseconds
+   */
+  JsonObject stats() {
+    JsonObject stats = new JsonObject();
+    lanes.forEach((lane, state) -> stats.put(lane.name().toLowerCase(), state.stats()));
+    return stats;
+  }
+
+  private class LaneState {
+    private final String queueStage;
+    private final String runStage;
+    private final int maxConcurrent;
+    private final ArrayDeque<Runnable> pending = new ArrayDeque<>();
+    private final LatencyHistogram queueTime = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+    private int active;
+    private long completed;
+    private long failed;
+
+    LaneState(String name, int maxConcurrent) {
+      this.queueStage = "db.queue." + name;
+      this.runStage = "db." + name;
+      this.maxConcurrent = Math.max(1, maxConcurrent);
+    }
+
+    <T> void submit(Consumer<Handler<AsyncResult<T>>> work, Handler<AsyncResult<T>> resultHandler) {
+      long enqueued = System.nanoTime();
+      String trace = RequestTracer.current();
+      Runnable start = () -> {
+        long started = System.nanoTime();
+        queueTime.record(started - enqueued);
+        tracer.span(trace, queueStage, enqueued, started);
+        Handler<AsyncResult<T>> done = ar -> {
+          long ended = System.nanoTime();
+          runTime.record(ended - started);
+          tracer.span(trace, runStage, started, ended);
+          if (ar.succeeded()) {
+            completed++;
+          } else {
+            failed++;
+          }
+          release();
+          resultHandler.handle(ar);
+        };
+        RequestTracer.within(trace, () -> {
+          try {
+            work.accept(done);
+          } catch (Exception e) {
+            done.handle(Future.failedFuture(e));
+          }
+        });
+      };
+      if (active < maxConcurrent) {
+        active++;
+        start.run();
+      } else {
+        pending.addLast(start);
+      }
+    }
+
+    private void release() {
+      Runnable next = pending.pollFirst();
+      if (next != null) {
+        // The slot goes to the next work as is
+        context.runOnContext(v -> next.run());
+      } else {
+        active--;
+      }
+    }
+
+    JsonObject stats() {
+      return new JsonObject()
+        .put("max", maxConcurrent)
+        .put("active", active)
+        .put("queued", pending.size())
+        .put("completed", completed)
+        .put("failed", failed)
+        .put("queueTime", queueTime.stats())
+        .put("runTime", runTime.stats());
+    }
+  }
+
+  /**
+   * Latency histogram with power of two buckets, in microseconds
+   */
+  private static class LatencyHistogram {
+    private final long[] buckets = new long[40];
+    private long count;
+    private long max;
+
+    void record(long nanos) {
+      long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+      buckets[Math.min(buckets.length - 1, 64 - Long.numberOfLeadingZeros(micros))]++;
+      count++;
+      max = Math.max(max, micros);
+    }
+
+    /**
+     * @param quantile
+     * @return upper bound of the bucket holding the quantile
+     */
+    long percentile(double quantile) {
+      long rank = (long) Math.ceil(quantile * count);
+      long seen = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        seen += buckets[i];
+        if (seen >= rank && seen > 0) {
+          return Math.min(max, (1L << i) - 1);
+        }
+      }
+      return max;
+    }
+
+    JsonObject stats() {
+      return new JsonObject()
+        .put("count", count)
+        .put("p50", percentile(0.5))
+        .put("p99", percentile(0.99))
+        .put("max", max);
+    }
+  }
+}
@@ -0,0 +1,251 @@
+package io.vertx.starter.database;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory index of the links between pages, kept up to date by the database service on every write so that
+ * backlinks and orphan pages are looked up without reading any page body.
+ * <p>
+ * Links are the Markdown inline links and reference definitions pointing at <code>/wiki/&lt;name&gt;</code>,
+ * the URLs the server side rendered pages use. Links are kept by target name, so links to pages that do not
+ * exist yet start counting as soon as the page is created. A page is an orphan when no other page links to
+ * it, the set of orphans is maintained as links and pages change.
+ * <p>
+ * The index is rebuilt in batches at startup, from the link table of the database or from the page contents
+ * when there is none, and the database service is only ready once the rebuild is over. Pages written while a
+ * rebuild is running are indexed from the write and skipped by the rebuild, which may have read older links.
+ * <p>
+ * Not thread safe, must be used from the database verticle context.
+ */
+class LinkIndex {
+
+  private static final Pattern INLINE_LINK = Pattern.compile("\\]\\(\\s*<?/wiki/([^)\\s\"'>]+)");
+  private static final Pattern REFERENCE_LINK = Pattern.compile("(?m)^ {0,3}\\[[^\\]]+\\]:\\s*<?/wiki/([^\\s\"'>]+)");
+
+  private final PageNameIndex names;
+  private final Map<Integer, Set<String>> outgoing = new HashMap<>();
+  private final Map<String, Set<Integer>> incoming = new HashMap<>();
+  private final TreeSet<String> orphans = new TreeSet<>();
+  private Set<Integer> writtenDuringRebuild;
+
+  /**
+   * @param names index of the pages, must already hold a page when it is indexed
+   */
+  LinkIndex(PageNameIndex names) {
+    this.names = names;
+  }
+
+  /**
+   * @param markdown
+   * @return the names of the pages the content links to
+   */
+  static Set<String> extractLinks(String markdown) {
+    Set<String> targets = new LinkedHashSet<>();
+    if (markdown != null) {
+      collect(INLINE_LINK.matcher(markdown), targets);
+      collect(REFERENCE_LINK.matcher(markdown), targets);
+    }
+    return targets;
+  }
+
+  private static void collect(Matcher matcher, Set<String> targets) {
+    while (matcher.find()) {
+      String target = matcher.group(1);
+      int end = target.length();
+      for (char delimiter : new char[]{'#', '?'}) {
+        int index = target.indexOf(delimiter);
+        if (index >= 0) {
+          end = Math.min(end, index);
+        }
+      }
+      try {
+        // Spaces are encoded as %20 in the page URLs, a plus sign is part of the name
+        String name = URLDecoder.decode(target.substring(0, end).replace("+", "%2B"), "UTF-8");
+        if (!name.isEmpty()) {
+          targets.add(name);
+        }
+      } catch (IllegalArgumentException | UnsupportedEncodingException e) {
+        // Not a valid page URL, not a link
+      }
+    }
+  }
+
+  /**
+   * Start a rebuild, the index is cleared and pages written from now on are not re-indexed by the rebuild
+   */
+  void startRebuild() {
+    outgoing.clear();
+    incoming.clear();
+    orphans.clear();
+    names.summaries().forEach(page -> orphans.add(page.getName()));
+    writtenDuringRebuild = new HashSet<>();
+  }
+
+  /**
+   * Index a page read by the rebuild, unless it was written since the rebuild started
+   *
+   * @param id
+   * @param markdown
+   */
+  void rebuilt(int id, String markdown) {
+    rebuilt(id, extractLinks(markdown));
+  }
+
+  /**
+   * Index the links of a page read by the rebuild, unless it was written since the rebuild started
+   *
+   * @param id
+   * @param targets names of the pages the page links to
+   */
+  void rebuilt(int id, Set<String> targets) {
+    if (writtenDuringRebuild != null && !writtenDuringRebuild.contains(id) && names.name(id) != null) {
+      setLinks(id, targets);
+    }
+  }
+
+  void endRebuild() {
+    writtenDuringRebuild = null;
+  }
+
+  /**
+   * Index a page created or saved, must be called once the page is in the name index
+   *
+   * @param id
+   * @param markdown
+   */
+  void saved(int id, String markdown) {
+    if (writtenDuringRebuild != null) {
+      writtenDuringRebuild.add(id);
+    }
+    String name = names.name(id);
+    if (name != null) {
+      refreshOrphan(name);
+    }
+    setLinks(id, extractLinks(markdown));
+  }
+
+  /**
+   * Drop the links of a deleted page, must be called once the page is out of the name index
+   *
+   * @param id
+   * @param name name of the page
+   */
+  void deleted(int id, String name) {
+    if (writtenDuringRebuild != null) {
+      writtenDuringRebuild.add(id);
+    }
+    setLinks(id, Collections.emptySet());
+    if (name != null) {
+      orphans.remove(name);
+    }
+  }
+
+  /**
+   * @param id
+   * @return the pages linking to a page, in ascending name order, or null when there is no such page
+   */
+  List<PageSummary> backlinks(int id) {
+    String name = names.name(id);
+    return name != null ? backlinks(name) : null;
+  }
+
+  /**
+   * @param name
+   * @return the pages linking to a page name other than the page itself, in ascending name order, whether
+   * there is a page with that name or not
+   */
+  List<PageSummary> backlinks(String name) {
+    Integer id = names.id(name);
+    TreeSet<String> sources = new TreeSet<>();
+    for (Integer source : incoming.getOrDefault(name, Collections.emptySet())) {
+      String sourceName = names.name(source);
+      if (sourceName != null && !source.equals(id)) {
+        sources.add(sourceName);
+      }
+    }
+    return summaries(sources);
+  }
+
+  /**
+   * @param pageNames
+   * @return the names among some page names that a page other than the named page links to
+   */
+  List<String> linked(List<String> pageNames) {
+    List<String> result = new ArrayList<>();
+    for (String name : pageNames) {
+      Integer id = names.id(name);
+      Set<Integer> sources = incoming.get(name);
+      if (sources != null && (id == null || sources.size() > 1 || !sources.contains(id))) {
+        result.add(name);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the pages no other page links to, in ascending name order
+   */
+  List<PageSummary> orphans() {
+    return summaries(orphans);
+  }
+
+  private List<PageSummary> summaries(Set<String> pageNames) {
+    List<PageSummary> result = new ArrayList<>(pageNames.size());
+    for (String name : pageNames) {
+      Integer id = names.id(name);
+      if (id != null) {
+        result.add(new PageSummary(id, name));
+      }
+    }
+    return result;
+  }
+
+  private void setLinks(int id, Set<String> targets) {
+    Set<String> previous = targets.isEmpty() ? outgoing.remove(id) : outgoing.put(id, targets);
+    if (previous != null) {
+      for (String target : previous) {
+        if (!targets.contains(target)) {
+          Set<Integer> sources = incoming.get(target);
+          sources.remove(id);
+          if (sources.isEmpty()) {
+            incoming.remove(target);
+          }
+          refreshOrphan(target);
+        }
+      }
+    }
+    for (String target : targets) {
+      if (previous == null || !previous.contains(target)) {
+        incoming.computeIfAbsent(target, t -> new HashSet<>()).add(id);
+        refreshOrphan(target);
+      }
+    }
+  }
+
+  private void refreshOrphan(String name) {
+    Integer id = names.id(name);
+    if (id == null) {
+      orphans.remove(name);
+      return;
+    }
+    Set<Integer> sources = incoming.get(name);
+    boolean linked = sources != null && (sources.size() > 1 || !sources.contains(id));
+    if (linked) {
+      orphans.remove(name);
+    } else {
+      orphans.add(name);
+    }
+  }
+}
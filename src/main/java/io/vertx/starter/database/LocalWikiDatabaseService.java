@@ -0,0 +1,286 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.starter.RequestTracer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * {@link WikiDatabaseService} calling a service instance of the same Vert.x instance directly instead of
+ * going through the event bus, so that arguments and results are neither copied nor encoded.
+ * <p>
+ * Calls are run on the context of the database verticle, which owns the service, and results are handed
+ * back on the context of the caller, as with the event bus proxy. Results are created for each call and are
+ * never touched by the service once handed back, so they can be shared without copies.
+ * <p>
+ * A service looked up for a traced request runs its calls within the trace, and records the time they wait
+ * for the service context as a <code>db.context_queue</code> span.
+ * <p>
+ * Calls fail after the send timeout of the event bus proxy they replace, with the same {@link ReplyException},
+ * so that an overloaded database verticle is reported as quickly with local calls as with the event bus.
+ */
+class LocalWikiDatabaseService implements WikiDatabaseService {
+
+  private static final String SHARED_MAP = "wiki.database.local";
+
+  /**
+   * A service instance and the context it must be called on
+   */
+  private static class Registration implements Shareable {
+    final WikiDatabaseService service;
+    final Context context;
+    final RequestTracer tracer;
+
+    Registration(WikiDatabaseService service, Context context, RequestTracer tracer) {
+      this.service = service;
+      this.context = context;
+      this.tracer = tracer;
+    }
+  }
+
+  private final Vertx vertx;
+  private final WikiDatabaseService service;
+  private final Context serviceContext;
+  private final RequestTracer tracer;
+  private final String address;
+  private final String traceId;
+  private final long timeout;
+
+  private LocalWikiDatabaseService(Vertx vertx, Registration registration, String address, String traceId,
+                                   long timeout) {
+    this.vertx = vertx;
+    this.service = registration.service;
+    this.serviceContext = registration.context;
+    this.tracer = registration.tracer;
+    this.address = address;
+    this.traceId = traceId;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Make a service instance available to local callers, must be called from the context of the service
+   *
+   * @param vertx
+   * @param address address the service is registered at on the event bus
+   * @param service
+   * @param tracer
+   */
+  static void register(Vertx vertx, String address, WikiDatabaseService service, RequestTracer tracer) {
+    LocalMap<String, Registration> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+    map.put(address, new Registration(service, vertx.getOrCreateContext(), tracer));
+  }
+
+  /**
+   * @param vertx
+   * @param address
+   */
+  static void unregister(Vertx vertx, String address) {
+    vertx.sharedData().<String, Registration>getLocalMap(SHARED_MAP).remove(address);
+  }
+
+  /**
+   * @param vertx
+   * @param address
+   * @param traceId trace the calls are part of, may be null
+   * @param timeout time after which calls fail, in milliseconds, 0 or less for no timeout
+   * @return a service calling the instance registered at the address, or null when there is none
+   */
+  static WikiDatabaseService lookup(Vertx vertx, String address, String traceId, long timeout) {
+    Registration registration = vertx.sharedData().<String, Registration>getLocalMap(SHARED_MAP).get(address);
+    return registration != null ? new LocalWikiDatabaseService(vertx, registration, address, traceId, timeout) : null;
+  }
+
+  /**
+   * Run a call on the service context and hand its result back on the caller context, or fail it on the
+   * caller context once the timeout is over, whichever comes first
+   *
+   * @param invocation
+   * @param resultHandler
+   * @param <T>
+   */
+  private <T> void call(Consumer<Handler<AsyncResult<T>>> invocation, Handler<AsyncResult<T>> resultHandler) {
+    Context caller = vertx.getOrCreateContext();
+    AtomicBoolean done = new AtomicBoolean();
+    long timer = timeout > 0 ? vertx.setTimer(timeout, id -> {
+      if (done.compareAndSet(false, true)) {
+        resultHandler.handle(Future.failedFuture(new ReplyException(ReplyFailure.TIMEOUT,
+          "Timed out after waiting " + timeout + "(ms) for a reply. address: " + address)));
+      }
+    }) : -1;
+    Handler<AsyncResult<T>> callback = ar -> {
+      if (done.compareAndSet(false, true)) {
+        if (timer >= 0) {
+          vertx.cancelTimer(timer);
+        }
+        caller.runOnContext(v -> resultHandler.handle(ar));
+      }
+    };
+    long queued = System.nanoTime();
+    serviceContext.runOnContext(v -> {
+      tracer.span(traceId, "db.context_queue", queued);
+      RequestTracer.within(traceId, () -> {
+        try {
+          invocation.accept(callback);
+        } catch (Exception e) {
+          callback.handle(Future.failedFuture(e));
+        }
+      });
+    });
+  }
+
+  @Override
+  public WikiDatabaseService fetchAllPages(Handler<AsyncResult<JsonArray>> resultHandler) {
+    call(service::fetchAllPages, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchAllPageSummaries(Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    call(service::fetchAllPageSummaries, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService completePageName(String prefix, int limit, Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    call(handler -> service.completePageName(prefix, limit, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchPage(String name, Handler<AsyncResult<Page>> resultHandler) {
+    call(handler -> service.fetchPage(name, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchPageById(int id, Handler<AsyncResult<Page>> resultHandler) {
+    call(handler -> service.fetchPageById(id, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService pageExists(int id, Handler<AsyncResult<Boolean>> resultHandler) {
+    call(handler -> service.pageExists(id, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchPageContentChunk(int id, long position, int length, Handler<AsyncResult<JsonObject>> resultHandler) {
+    call(handler -> service.fetchPageContentChunk(id, position, length, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService createPage(String title, String markdown, Handler<AsyncResult<Void>> resultHandler) {
+    call(handler -> service.createPage(title, markdown, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService savePage(int id, String markdown, Handler<AsyncResult<Void>> resultHandler) {
+    call(handler -> service.savePage(id, markdown, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService patchPage(int id, String baseHash, JsonArray edits, Handler<AsyncResult<JsonObject>> resultHandler) {
+    call(handler -> service.patchPage(id, baseHash, edits, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService deletePage(int id, Handler<AsyncResult<Void>> resultHandler) {
+    call(handler -> service.deletePage(id, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchAllPagesData(Handler<AsyncResult<List<Page>>> resultHandler) {
+    call(service::fetchAllPagesData, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchPagesBatch(int afterId, int limit, Handler<AsyncResult<List<Page>>> resultHandler) {
+    call(handler -> service.fetchPagesBatch(afterId, limit, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchLastChangeSequence(Handler<AsyncResult<Long>> resultHandler) {
+    call(service::fetchLastChangeSequence, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchChangesSince(long since, Handler<AsyncResult<JsonObject>> resultHandler) {
+    call(handler -> service.fetchChangesSince(since, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchBacklinks(int id, Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    call(handler -> service.fetchBacklinks(id, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchBacklinksByName(String name, Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    call(handler -> service.fetchBacklinksByName(name, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchOrphanPages(Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    call(service::fetchOrphanPages, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchLinkedNames(List<String> names, Handler<AsyncResult<List<String>>> resultHandler) {
+    call(handler -> service.fetchLinkedNames(names, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService saveAttachment(int pageId, JsonObject attachment, Handler<AsyncResult<Boolean>> resultHandler) {
+    call(handler -> service.saveAttachment(pageId, attachment, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchAttachments(int pageId, Handler<AsyncResult<JsonArray>> resultHandler) {
+    call(handler -> service.fetchAttachments(pageId, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchAttachment(int pageId, String name, Handler<AsyncResult<JsonObject>> resultHandler) {
+    call(handler -> service.fetchAttachment(pageId, name, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService deleteAttachment(int pageId, String name, Handler<AsyncResult<Boolean>> resultHandler) {
+    call(handler -> service.deleteAttachment(pageId, name, handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchExecutionStats(Handler<AsyncResult<JsonObject>> resultHandler) {
+    call(service::fetchExecutionStats, resultHandler);
+    return this;
+  }
+}
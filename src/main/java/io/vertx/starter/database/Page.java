@@ -0,0 +1,75 @@
+package io.vertx.starter.database;
+
+import io.vertx.codegen.annotations.DataObject;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A wiki page as returned by {@link WikiDatabaseService}
+ */
+@DataObject(generateConverter = true)
+public class Page {
+
+  private int id;
+  private String name;
+  private String content;
+
+  public Page() {
+  }
+
+  public Page(Page other) {
+    this.id = other.id;
+    this.name = other.name;
+    this.content = other.content;
+  }
+
+  public Page(JsonObject json) {
+    PageConverter.fromJson(json, this);
+  }
+
+  /**
+   * Map a result row by column index
+   *
+   * @param row <code>Id, Name, Content</code>
+   * @return
+   */
+  static Page fromRow(JsonArray row) {
+    return new Page()
+      .setId(row.getInteger(0))
+      .setName(row.getString(1))
+      .setContent(row.getString(2));
+  }
+
+  public JsonObject toJson() {
+    JsonObject json = new JsonObject();
+    PageConverter.toJson(this, json);
+    return json;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public Page setId(int id) {
+    this.id = id;
+    return this;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Page setName(String name) {
+    this.name = name;
+    return this;
+  }
+
+  public String getContent() {
+    return content;
+  }
+
+  public Page setContent(String content) {
+    this.content = content;
+    return this;
+  }
+}
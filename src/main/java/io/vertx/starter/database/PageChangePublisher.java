@@ -0,0 +1,89 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Publishes page list changes on the event bus. Changes are collected during a short window and published as
+ * one batch, with successive changes of the same page coalesced into one (a page created then deleted within
+ * the window is not published at all).
+ * <p>
+ * Not thread safe, changes must be reported from the database verticle context.
+ */
+class PageChangePublisher {
+
+  static final String CREATED = "created";
+  static final String UPDATED = "updated";
+  static final String DELETED = "deleted";
+
+  private final Vertx vertx;
+  private final String address;
+  private final long windowMs;
+  private final Map<Integer, JsonObject> pending = new LinkedHashMap<>();
+  private boolean scheduled;
+
+  /**
+   * @param vertx
+   * @param address  event bus address the batches are published to
+   * @param windowMs batching window in milliseconds, changes are published right away when not positive
+   */
+  PageChangePublisher(Vertx vertx, String address, long windowMs) {
+    this.vertx = vertx;
+    this.address = address;
+    this.windowMs = windowMs;
+  }
+
+  void created(long sequence, int id, String name) {
+    record(new JsonObject().put("sequence", sequence).put("type", CREATED).put("id", id).put("name", name));
+  }
+
+  void updated(long sequence, int id) {
+    record(new JsonObject().put("sequence", sequence).put("type", UPDATED).put("id", id));
+  }
+
+  void deleted(long sequence, int id) {
+    record(new JsonObject().put("sequence", sequence).put("type", DELETED).put("id", id));
+  }
+
+  /**
+   * Merge a change with the pending change of the same page
+   *
+   * @param change
+   */
+  private void record(JsonObject change) {
+    int id = change.getInteger("id");
+    JsonObject previous = pending.get(id);
+    if (previous == null) {
+      pending.put(id, change);
+    } else if (CREATED.equals(previous.getString("type"))) {
+      if (DELETED.equals(change.getString("type"))) {
+        pending.remove(id);
+      } else {
+        previous.put("sequence", change.getLong("sequence"));
+      }
+    } else {
+      pending.put(id, change);
+    }
+    if (windowMs <= 0) {
+      flush();
+    } else if (!scheduled) {
+      scheduled = true;
+      vertx.setTimer(windowMs, tid -> flush());
+    }
+  }
+
+  private void flush() {
+    scheduled = false;
+    if (pending.isEmpty()) {
+      return;
+    }
+    JsonArray changes = new JsonArray();
+    pending.values().forEach(changes::add);
+    pending.clear();
+    vertx.eventBus().publish(address, new JsonObject().put("changes", changes));
+  }
+}
@@ -0,0 +1,100 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Text diffs of page saves, so that an edit sends the changed text instead of the whole page.
+ * <p>
+ * A diff is a list of edits <code>{offset, delete, insert}</code> of the version it was made against, the
+ * base: each one removes <code>delete</code> characters at <code>offset</code> and inserts the
+ * <code>insert</code> text there. Offsets and lengths count UTF-16 code units like JavaScript strings, and
+ * refer to the base, so the edits must be in ascending order and must not overlap. The base is identified by
+ * its {@link #hash(String)}.
+ */
+public final class PageDiff {
+
+  private PageDiff() {
+  }
+
+  /**
+   * @param content
+   * @return the version hash of a page content, the hex SHA-256 of its UTF-8 encoding
+   */
+  public static String hash(String content) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    byte[] bytes = digest.digest(content.getBytes(StandardCharsets.UTF_8));
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Check the form of a diff, whether it fits its base is only known when it is applied
+   *
+   * @param edits
+   * @return whether the edits are well formed, ordered and not overlapping
+   */
+  public static boolean isValid(JsonArray edits) {
+    if (edits == null) {
+      return false;
+    }
+    long end = 0;
+    for (Object item : edits) {
+      if (!(item instanceof JsonObject)) {
+        return false;
+      }
+      JsonObject edit = (JsonObject) item;
+      try {
+        Integer offset = edit.getInteger("offset");
+        int delete = edit.getInteger("delete", 0);
+        String insert = edit.getString("insert", "");
+        if (offset == null || offset < end || delete < 0 || insert == null) {
+          return false;
+        }
+        end = (long) offset + delete;
+      } catch (ClassCastException e) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Apply a diff to its base
+   *
+   * @param base
+   * @param edits well formed edits, see {@link #isValid(JsonArray)}
+   * @return the patched content, or null when the edits go past the end of the base
+   */
+  public static String apply(String base, JsonArray edits) {
+    int inserted = 0;
+    for (int i = 0; i < edits.size(); i++) {
+      inserted += edits.getJsonObject(i).getString("insert", "").length();
+    }
+    StringBuilder patched = new StringBuilder(base.length() + inserted);
+    int position = 0;
+    for (int i = 0; i < edits.size(); i++) {
+      JsonObject edit = edits.getJsonObject(i);
+      int offset = edit.getInteger("offset");
+      int end = offset + edit.getInteger("delete", 0);
+      if (end > base.length() || end < offset) {
+        return null;
+      }
+      patched.append(base, position, offset).append(edit.getString("insert", ""));
+      position = end;
+    }
+    return patched.append(base, position, base.length()).toString();
+  }
+}
@@ -0,0 +1,629 @@
+package io.vertx.starter.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, segment-based page store.
+ * <p>
+ * Every write appends a record to the active segment file. Once the active segment is larger than the segment
+ * size it is sealed and memory-mapped read-only, and a new active segment is started. An in-memory index maps
+ * page ids to the location of the latest record of each page, along with a {@link PageNameIndex}; it is
+ * rebuilt at startup by scanning the segments, and a torn or corrupted tail of a segment is truncated away.
+ * <p>
+ * Compaction rewrites the live records of all sealed segments into a single segment and drops the records that
+ * were overwritten or deleted. The compacted segment takes the number of the newest segment it replaces, so the
+ * segment with the highest number is always the active one. Deletions are kept in the compacted segment unless
+ * they come from the oldest segment, see {@link #compact()}. Every segment starts with a mark of the last
+ * sequence number and page id, so that they never go backwards when the records of deleted pages are dropped.
+ * <p>
+ * Record layout: <code>int size, int crc, byte type, long sequence, int id, int nameLength, name,
+ * int contentLength, content</code>, where size and crc cover everything after the crc.
+ * <p>
+ * Writes and compaction swaps are serialized on the store monitor, reads are lock-free. All the methods do
+ * blocking I/O.
+ */
+class PageLogStore {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PageLogStore.class);
+
+  private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+  private static final int HEADER_SIZE = 8;
+  private static final byte PUT = 1;
+  private static final byte DELETE = 2;
+  private static final byte MARK = 3;
+
+  /**
+   * A page record read from the store
+   */
+  static class Page {
+    final int id;
+    final String name;
+    final String content;
+
+    Page(int id, String name, String content) {
+      this.id = id;
+      this.name = name;
+      this.content = content;
+    }
+  }
+
+  /**
+   * A slice of the content of a page
+   */
+  static class ContentSlice {
+    final String chunk;
+    final int contentBytes;
+    final long sequence;
+    final long next;
+
+    /**
+     * @param chunk
+     * @param contentBytes size of the whole content
+     * @param sequence     sequence number of the record of the content, changed by every save
+     * @param next         offset of the next slice, -1 after the last one
+     */
+    ContentSlice(String chunk, int contentBytes, long sequence, long next) {
+      this.chunk = chunk;
+      this.contentBytes = contentBytes;
+      this.sequence = sequence;
+      this.next = next;
+    }
+  }
+
+  /**
+   * Location of the latest record of a page. It holds the segment itself rather than its number: a compacted
+   * segment reuses a number, and a reader holding a location from before the swap keeps reading the segment
+   * the location was made for.
+   */
+  private static class Location {
+    final Segment segment;
+    final long offset;
+    final int size;
+    final long sequence;
+    final String name;
+
+    Location(Segment segment, long offset, int size, long sequence, String name) {
+      this.segment = segment;
+      this.offset = offset;
+      this.size = size;
+      this.sequence = sequence;
+      this.name = name;
+    }
+  }
+
+  private static class Segment {
+    final int number;
+    final Path path;
+    volatile FileChannel channel;
+    volatile MappedByteBuffer mapped;
+
+    Segment(int number, Path path) {
+      this.number = number;
+      this.path = path;
+    }
+
+    ByteBuffer read(long offset, int size) throws IOException {
+      MappedByteBuffer map = mapped;
+      if (map != null) {
+        ByteBuffer slice = map.duplicate();
+        slice.position((int) offset).limit((int) offset + size);
+        return slice.slice();
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(size);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, offset + buffer.position()) < 0) {
+          throw new IOException("Unexpected end of segment " + path);
+        }
+      }
+      buffer.flip();
+      return buffer;
+    }
+
+    void seal() throws IOException {
+      channel.force(true);
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      channel.close();
+      channel = null;
+    }
+  }
+
+  private final Path directory;
+  private final long segmentSize;
+  private final boolean sync;
+  private final int idStride;
+  private final int idOffset;
+  private final ConcurrentHashMap<Integer, Segment> segments = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Integer, Location> ids = new ConcurrentHashMap<>();
+  private final PageNameIndex names = new PageNameIndex();
+  private Segment active;
+  private long activeSize;
+  private volatile long lastSequence;
+  private int nextId;
+  private int nextSegment;
+  private volatile boolean compacting;
+
+  /**
+   * Open a store, recovering its index from the segment files
+   *
+   * @param directory   directory of the segment files, created when missing
+   * @param segmentSize size after which the active segment is sealed
+   * @param sync        force every write to disk before returning
+   * @param idStride    number of shards, page ids are allocated modulo the number of shards
+   * @param idOffset    shard of the store, the remainder of the ids it allocates
+   * @throws IOException
+   */
+  PageLogStore(Path directory, long segmentSize, boolean sync, int idStride, int idOffset) throws IOException {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.sync = sync;
+    this.idStride = Math.max(1, idStride);
+    this.idOffset = idOffset;
+    Files.createDirectories(directory);
+    long start = System.nanoTime();
+    recover();
+    LOGGER.info("Page log store recovered " + ids.size() + " pages from " + segments.size() + " segments in "
+      + (System.nanoTime() - start) / 1_000_000 + " ms");
+  }
+
+  /**
+   * Scan all the segments, the record with the highest sequence number wins for each page
+   *
+   * @throws IOException
+   */
+  private void recover() throws IOException {
+    List<Integer> numbers = new ArrayList<>();
+    try (Stream<Path> files = Files.list(directory)) {
+      files.forEach(file -> {
+        Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+        if (matcher.matches()) {
+          numbers.add(Integer.parseInt(matcher.group(1)));
+        }
+      });
+    }
+    numbers.sort(Integer::compare);
+
+    Map<Integer, Long> tombstones = new HashMap<>();
+    for (int number : numbers) {
+      Segment segment = new Segment(number, segmentPath(number));
+      segment.channel = FileChannel.open(segment.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      long valid = scan(segment, tombstones);
+      if (valid < segment.channel.size()) {
+        LOGGER.warn("Truncating " + (segment.channel.size() - valid) + " bytes of torn records in " + segment.path);
+        segment.channel.truncate(valid);
+      }
+      segments.put(number, segment);
+      nextSegment = number + 1;
+      if (number == numbers.get(numbers.size() - 1)) {
+        active = segment;
+        activeSize = valid;
+      } else {
+        segment.seal();
+      }
+    }
+    if (active == null) {
+      startSegment();
+    }
+  }
+
+  /**
+   * @param segment
+   * @param tombstones sequence numbers of the deleted pages seen so far
+   * @return the size of the valid part of the segment
+   * @throws IOException
+   */
+  private long scan(Segment segment, Map<Integer, Long> tombstones) throws IOException {
+    long size = segment.channel.size();
+    MappedByteBuffer map = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    long offset = 0;
+    CRC32 crc = new CRC32();
+    while (offset + HEADER_SIZE <= size) {
+      int recordSize = map.getInt((int) offset);
+      int checksum = map.getInt((int) offset + 4);
+      if (recordSize <= 0 || offset + HEADER_SIZE + recordSize > size) {
+        break;
+      }
+      ByteBuffer body = map.duplicate();
+      body.position((int) offset + HEADER_SIZE).limit((int) offset + HEADER_SIZE + recordSize);
+      body = body.slice();
+      crc.reset();
+      crc.update(body.duplicate());
+      if ((int) crc.getValue() != checksum) {
+        break;
+      }
+      byte type = body.get();
+      long sequence = body.getLong();
+      int id = body.getInt();
+      String name = readString(body);
+      lastSequence = Math.max(lastSequence, sequence);
+      nextId = Math.max(nextId, id + 1);
+      Location current = ids.get(id);
+      Long deleted = tombstones.get(id);
+      if (type == MARK) {
+        // High-water marks only
+      } else if ((current == null || current.sequence < sequence) && (deleted == null || deleted < sequence)) {
+        if (type == PUT) {
+          ids.put(id, new Location(segment, offset, HEADER_SIZE + recordSize, sequence, name));
+          names.put(name, id);
+        } else {
+          if (current != null) {
+            ids.remove(id);
+            names.remove(id);
+          }
+          tombstones.put(id, sequence);
+        }
+      }
+      offset += HEADER_SIZE + recordSize;
+    }
+    return offset;
+  }
+
+  private Path segmentPath(int number) {
+    return directory.resolve(String.format("segment-%010d.log", number));
+  }
+
+  private void startSegment() throws IOException {
+    int number = nextSegment++;
+    Segment segment = new Segment(number, segmentPath(number));
+    segment.channel = FileChannel.open(segment.path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+      StandardOpenOption.WRITE);
+    segments.put(segment.number, segment);
+    active = segment;
+    activeSize = 0;
+    write(encode(MARK, lastSequence, nextId - 1, null, null));
+  }
+
+  private static ByteBuffer encode(byte type, long sequence, int id, String name, String content) {
+    byte[] nameBytes = name != null ? name.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    byte[] contentBytes = content != null ? content.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    int recordSize = 1 + 8 + 4 + 4 + nameBytes.length + 4 + contentBytes.length;
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + recordSize);
+    buffer.position(HEADER_SIZE);
+    buffer.put(type).putLong(sequence).putInt(id)
+      .putInt(nameBytes.length).put(nameBytes)
+      .putInt(contentBytes.length).put(contentBytes);
+    CRC32 crc = new CRC32();
+    crc.update(buffer.array(), HEADER_SIZE, recordSize);
+    buffer.putInt(0, recordSize).putInt(4, (int) crc.getValue());
+    buffer.flip();
+    return buffer;
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Append a record to the active segment, rolling to a new segment when full
+   *
+   * @return the offset of the record
+   */
+  private long append(ByteBuffer record) throws IOException {
+    if (activeSize > 0 && activeSize + record.remaining() > segmentSize) {
+      active.seal();
+      startSegment();
+    }
+    return write(record);
+  }
+
+  /**
+   * Write a record at the end of the active segment
+   *
+   * @return the offset of the record
+   */
+  private long write(ByteBuffer record) throws IOException {
+    long offset = activeSize;
+    int size = record.remaining();
+    while (record.hasRemaining()) {
+      active.channel.write(record, offset + record.position());
+    }
+    if (sync) {
+      active.channel.force(false);
+    }
+    activeSize += size;
+    return offset;
+  }
+
+  /**
+   * Create a page
+   *
+   * @param name
+   * @param content
+   * @return the sequence number of the change and the id of the page
+   * @throws IOException           on I/O errors
+   * @throws IllegalStateException when a page with the same name exists
+   */
+  synchronized long[] create(String name, String content) throws IOException {
+    if (names.contains(name)) {
+      throw new IllegalStateException("A page named " + name + " already exists");
+    }
+    int id = nextId + Math.floorMod(idOffset - nextId, idStride);
+    nextId = id + 1;
+    long sequence = lastSequence + 1;
+    ByteBuffer record = encode(PUT, sequence, id, name, content);
+    int size = record.remaining();
+    long offset = append(record);
+    lastSequence = sequence;
+    ids.put(id, new Location(active, offset, size, sequence, name));
+    names.put(name, id);
+    return new long[]{sequence, id};
+  }
+
+  /**
+   * Replace the content of a page
+   *
+   * @param id
+   * @param content
+   * @return the sequence number of the change, -1 when there is no such page
+   * @throws IOException
+   */
+  synchronized long save(int id, String content) throws IOException {
+    Location current = ids.get(id);
+    if (current == null) {
+      return -1;
+    }
+    long sequence = lastSequence + 1;
+    ByteBuffer record = encode(PUT, sequence, id, current.name, content);
+    int size = record.remaining();
+    long offset = append(record);
+    lastSequence = sequence;
+    ids.put(id, new Location(active, offset, size, sequence, current.name));
+    return sequence;
+  }
+
+  /**
+   * Delete a page
+   *
+   * @param id
+   * @return the sequence number of the change, -1 when there is no such page
+   * @throws IOException
+   */
+  synchronized long delete(int id) throws IOException {
+    Location current = ids.get(id);
+    if (current == null) {
+      return -1;
+    }
+    long sequence = lastSequence + 1;
+    append(encode(DELETE, sequence, id, null, null));
+    lastSequence = sequence;
+    ids.remove(id);
+    names.remove(id);
+    return sequence;
+  }
+
+  /**
+   * @param id
+   * @return the page, or null when there is no such page
+   * @throws IOException
+   */
+  Page get(int id) throws IOException {
+    Location location = ids.get(id);
+    if (location == null) {
+      return null;
+    }
+    ByteBuffer record = location.segment.read(location.offset, location.size);
+    record.position(HEADER_SIZE + 1 + 8 + 4);
+    String name = readString(record);
+    return new Page(id, name, readString(record));
+  }
+
+  /**
+   * Read a slice of the content of a page without reading the rest of the record. Slices end on a UTF-8
+   * character boundary.
+   *
+   * @param id
+   * @param offset   offset of the slice in the UTF-8 encoded content, a character boundary
+   * @param maxBytes maximum size of the slice, at least 4 bytes are read so that any character fits
+   * @return the slice, or null when there is no such page
+   * @throws IOException
+   */
+  ContentSlice readContent(int id, long offset, int maxBytes) throws IOException {
+    Location location = ids.get(id);
+    if (location == null) {
+      return null;
+    }
+    Segment segment = location.segment;
+    long nameAt = location.offset + HEADER_SIZE + 1 + 8 + 4;
+    long contentAt = nameAt + 4 + segment.read(nameAt, 4).getInt();
+    int contentBytes = segment.read(contentAt, 4).getInt();
+    int start = (int) Math.min(Math.max(offset, 0), contentBytes);
+    int available = contentBytes - start;
+    int size = Math.min(Math.max(maxBytes, 4), available);
+    // One more byte is read to tell whether the slice would end in the middle of a character
+    ByteBuffer bytes = segment.read(contentAt + 4 + start, Math.min(size + 1, available));
+    int end = size;
+    while (end < available && end > 0 && (bytes.get(end) & 0xC0) == 0x80) {
+      end--;
+    }
+    byte[] chunk = new byte[end];
+    bytes.get(chunk);
+    return new ContentSlice(new String(chunk, StandardCharsets.UTF_8), contentBytes, location.sequence,
+      start + end < contentBytes ? start + end : -1);
+  }
+
+  /**
+   * @param name
+   * @return the page, or null when there is no such page
+   * @throws IOException
+   */
+  Page get(String name) throws IOException {
+    Integer id = names.id(name);
+    return id != null ? get(id) : null;
+  }
+
+  /**
+   * @return the index of the page names
+   */
+  PageNameIndex names() {
+    return names;
+  }
+
+  /**
+   * @return all the pages in ascending id order
+   * @throws IOException
+   */
+  List<Page> all() throws IOException {
+    List<Page> pages = new ArrayList<>();
+    for (Integer id : new TreeSet<>(ids.keySet())) {
+      Page page = get(id);
+      if (page != null) {
+        pages.add(page);
+      }
+    }
+    return pages;
+  }
+
+  long lastSequence() {
+    return lastSequence;
+  }
+
+  /**
+   * Rewrite the live records of the sealed segments into one segment, numbered like the newest of them, and
+   * delete the others. Records appended meanwhile go to the active segment, which is left untouched.
+   * <p>
+   * The compacted segment replaces the newest one before the others are deleted, and a crash in between leaves
+   * some of them in place, with the records of pages deleted since. The deletions are therefore copied into the
+   * compacted segment, except those of the oldest segment: the records of a page older than a deletion there
+   * can only be in that same segment, which is either still in place with the deletion or gone. The deletions
+   * copied are dropped by the next compaction, where the compacted segment is the oldest. The mark at the start
+   * of the active segment keeps the sequence number and page id of the records dropped.
+   *
+   * @return the number of bytes reclaimed
+   * @throws IOException
+   */
+  long compact() throws IOException {
+    List<Segment> sealed = new ArrayList<>();
+    int number;
+    int oldest;
+    synchronized (this) {
+      if (compacting) {
+        return 0;
+      }
+      for (Segment segment : segments.values()) {
+        if (segment != active) {
+          sealed.add(segment);
+        }
+      }
+      if (sealed.size() < 2) {
+        return 0;
+      }
+      compacting = true;
+      number = sealed.stream().mapToInt(segment -> segment.number).max().getAsInt();
+      oldest = sealed.stream().mapToInt(segment -> segment.number).min().getAsInt();
+    }
+    try {
+      long before = 0;
+      for (Segment segment : sealed) {
+        before += segment.mapped.capacity();
+      }
+      Map<Integer, Location> moved = new HashMap<>();
+      Path path = segmentPath(number);
+      Segment compacted = new Segment(number, path);
+      Path temp = directory.resolve("compaction.tmp");
+      long size = 0;
+      try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+        for (Map.Entry<Integer, Location> entry : ids.entrySet()) {
+          Location location = entry.getValue();
+          if (!sealed.contains(location.segment)) {
+            continue;
+          }
+          ByteBuffer record = location.segment.read(location.offset, location.size);
+          moved.put(entry.getKey(), new Location(compacted, size, location.size, location.sequence, location.name));
+          while (record.hasRemaining()) {
+            size += out.write(record);
+          }
+        }
+        for (Segment segment : sealed) {
+          if (segment.number == oldest) {
+            continue;
+          }
+          for (ByteBuffer record : deletions(segment)) {
+            while (record.hasRemaining()) {
+              size += out.write(record);
+            }
+          }
+        }
+        out.force(true);
+      }
+      Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      compacted.channel = FileChannel.open(path, StandardOpenOption.READ);
+      compacted.mapped = compacted.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      compacted.channel.close();
+      compacted.channel = null;
+
+      synchronized (this) {
+        segments.put(number, compacted);
+        moved.forEach((id, location) -> ids.computeIfPresent(id,
+          (key, current) -> current.sequence == location.sequence ? location : current));
+        for (Segment segment : sealed) {
+          segments.remove(segment.number, segment);
+        }
+      }
+      for (Segment segment : sealed) {
+        if (segment.number != number) {
+          Files.deleteIfExists(segment.path);
+        }
+      }
+      LOGGER.info("Compacted " + sealed.size() + " segments, " + before + " bytes down to " + size);
+      return before - size;
+    } finally {
+      compacting = false;
+    }
+  }
+
+  /**
+   * @param segment a sealed segment
+   * @return the deletion records of the segment
+   */
+  private static List<ByteBuffer> deletions(Segment segment) {
+    List<ByteBuffer> records = new ArrayList<>();
+    ByteBuffer map = segment.mapped.duplicate();
+    int offset = 0;
+    while (offset + HEADER_SIZE <= map.capacity()) {
+      int recordSize = map.getInt(offset);
+      if (map.get(offset + HEADER_SIZE) == DELETE) {
+        ByteBuffer record = map.duplicate();
+        record.position(offset).limit(offset + HEADER_SIZE + recordSize);
+        records.add(record.slice());
+      }
+      offset += HEADER_SIZE + recordSize;
+    }
+    return records;
+  }
+
+  /**
+   * Flush and close the active segment
+   *
+   * @throws IOException
+   */
+  synchronized void close() throws IOException {
+    if (active != null && active.channel != null) {
+      active.channel.force(true);
+      active.channel.close();
+    }
+  }
+}
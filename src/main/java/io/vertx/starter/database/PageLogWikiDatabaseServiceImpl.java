@@ -0,0 +1,490 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.RequestTracer;
+import io.vertx.starter.SingleFlight;
+import io.vertx.starter.database.ExecutionLanes.Lane;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * {@link WikiDatabaseService} backed by a {@link PageLogStore} instead of JDBC.
+ * <p>
+ * Store operations run on worker threads, results and change notifications are handled back on the database
+ * verticle context. The change log used for delta synchronization is kept in memory, so clients that last
+ * synchronized before a restart are asked to resynchronize.
+ */
+public class PageLogWikiDatabaseServiceImpl implements WikiDatabaseService {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PageLogWikiDatabaseServiceImpl.class);
+
+  private final Vertx vertx;
+  private final PageLogStore store;
+  private final AttachmentLog attachments;
+  private final PageChangePublisher changePublisher;
+  private final int changeLogRetention;
+  private final ArrayDeque<JsonObject> changes = new ArrayDeque<>();
+  private final ExecutionLanes lanes;
+  private final LinkIndex linkIndex;
+  private final int linkRebuildBatch;
+  private final RequestTracer tracer;
+  private final SingleFlight<Integer, Page> readsById = new SingleFlight<>();
+  private final SingleFlight<String, Page> readsByName = new SingleFlight<>();
+  private long changesFloor;
+
+  /**
+   * Init class instance
+   *
+   * @param vertx
+   * @param store              recovered page store
+   * @param attachments        attachment metadata, kept next to the page store
+   * @param changePublisher
+   * @param changeLogRetention number of changes kept for delta synchronization
+   * @param compactionInterval delay between two compactions in milliseconds
+   * @param lanes              lanes the store calls run in
+   * @param linkRebuildBatch   number of pages read per batch when rebuilding the link index
+   * @param tracer
+   * @param readyHandler
+   */
+  PageLogWikiDatabaseServiceImpl(Vertx vertx, PageLogStore store, AttachmentLog attachments, PageChangePublisher changePublisher,
+                                 int changeLogRetention, long compactionInterval, ExecutionLanes lanes,
+                                 int linkRebuildBatch, RequestTracer tracer,
+                                 Handler<AsyncResult<WikiDatabaseService>> readyHandler) {
+    this.vertx = vertx;
+    this.store = store;
+    this.attachments = attachments;
+    this.changePublisher = changePublisher;
+    this.changeLogRetention = changeLogRetention;
+    this.changesFloor = store.lastSequence();
+
+    this.lanes = lanes;
+    this.linkIndex = new LinkIndex(store.names());
+    this.linkRebuildBatch = Math.max(1, linkRebuildBatch);
+    this.tracer = tracer;
+
+    vertx.setPeriodic(compactionInterval, id -> blocking(Lane.BULK, store::compact, ar -> {
+      if (ar.failed()) {
+        LOGGER.error("Page log compaction failed", ar.cause());
+      }
+    }));
+    // Backlinks and orphans are only right once the link index is complete, the service is not ready before
+    rebuildLinks(ar -> readyHandler.handle(ar.map(this)));
+  }
+
+  /**
+   * Rebuild the link index from the page contents, one batch of pages at a time in the bulk lane. The page log
+   * is the only record of the links, there is no link table.
+   *
+   * @param doneHandler
+   */
+  private void rebuildLinks(Handler<AsyncResult<Void>> doneHandler) {
+    linkIndex.startRebuild();
+    List<Integer> ids = store.names().summaries().stream()
+      .map(PageSummary::getId)
+      .sorted()
+      .collect(Collectors.toList());
+    rebuildLinks(ids, 0, doneHandler);
+  }
+
+  /**
+   * @param ids         ids of the pages to index
+   * @param from        index of the first page of the batch
+   * @param doneHandler
+   */
+  private void rebuildLinks(List<Integer> ids, int from, Handler<AsyncResult<Void>> doneHandler) {
+    if (from >= ids.size()) {
+      linkIndex.endRebuild();
+      LOGGER.info("Link index rebuilt from " + ids.size() + " pages");
+      doneHandler.handle(Future.succeededFuture());
+      return;
+    }
+    List<Integer> batch = ids.subList(from, Math.min(ids.size(), from + linkRebuildBatch));
+    this.<List<PageLogStore.Page>>blocking(Lane.BULK, () -> {
+      List<PageLogStore.Page> pages = new ArrayList<>(batch.size());
+      for (Integer id : batch) {
+        PageLogStore.Page page = store.get(id);
+        if (page != null) {
+          pages.add(page);
+        }
+      }
+      return pages;
+    }, ar -> {
+      if (ar.failed()) {
+        linkIndex.endRebuild();
+        LOGGER.error("Could not rebuild the link index", ar.cause());
+        doneHandler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      ar.result().forEach(page -> linkIndex.rebuilt(page.id, page.content));
+      rebuildLinks(ids, from + batch.size(), doneHandler);
+    });
+  }
+
+  @FunctionalInterface
+  private interface StoreCall<T> {
+    T call() throws Exception;
+  }
+
+  /**
+   * Run a blocking store call on a worker thread, in a lane. Writes are ordered so that their changes are
+   * recorded in sequence order, other calls are not so that they do not queue behind each other. Traced calls
+   * record the time they wait for a worker and the time the store takes.
+   *
+   * @param lane
+   * @param call
+   * @param resultHandler
+   * @param <T>
+   */
+  private <T> void blocking(Lane lane, StoreCall<T> call, Handler<AsyncResult<T>> resultHandler) {
+    lanes.run(lane, done -> {
+      String trace = RequestTracer.current();
+      long submitted = System.nanoTime();
+      vertx.executeBlocking(future -> {
+        long started = System.nanoTime();
+        tracer.span(trace, "db.worker_queue", submitted, started);
+        try {
+          future.complete(call.call());
+        } catch (Exception e) {
+          future.fail(e);
+        } finally {
+          tracer.span(trace, "db.store", started);
+        }
+      }, lane == Lane.WRITE, done);
+    }, resultHandler);
+  }
+
+  /**
+   * @return the sequence number of the last change recorded on this context
+   */
+  private long lastRecordedSequence() {
+    return changes.isEmpty() ? changesFloor : changes.peekLast().getLong("sequence");
+  }
+
+  /**
+   * @param page record read from the store, may be null
+   * @return
+   */
+  private static Page toPage(PageLogStore.Page page) {
+    return page != null ? new Page().setId(page.id).setName(page.name).setContent(page.content) : null;
+  }
+
+  /**
+   * Keep a change for delta synchronization and publish it
+   *
+   * @param change
+   */
+  private void recordChange(JsonObject change) {
+    changes.addLast(change);
+    while (changes.size() > changeLogRetention) {
+      changesFloor = changes.removeFirst().getLong("sequence");
+    }
+  }
+
+  @Override
+  public WikiDatabaseService fetchAllPages(Handler<AsyncResult<JsonArray>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(store.names().names()));
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchAllPageSummaries(Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(store.names().summaries()));
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService completePageName(String prefix, int limit, Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(store.names().complete(prefix, limit)));
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchPage(String name, Handler<AsyncResult<Page>> resultHandler) {
+    readsByName.execute(name, handler -> blocking(Lane.READ, () -> toPage(store.get(name)), handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchPageById(int id, Handler<AsyncResult<Page>> resultHandler) {
+    readsById.execute(id, handler -> blocking(Lane.READ, () -> toPage(store.get(id)), handler), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService pageExists(int id, Handler<AsyncResult<Boolean>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(store.names().name(id) != null));
+    return this;
+  }
+
+  /**
+   * Let the reads of a page arriving after a write read it again instead of joining a read in flight
+   *
+   * @param id
+   * @param name
+   */
+  private void forgetReads(int id, String name) {
+    readsById.forget(id);
+    if (name != null) {
+      readsByName.forget(name);
+    }
+  }
+
+  @Override
+  public WikiDatabaseService fetchPageContentChunk(int id, long position, int length, Handler<AsyncResult<JsonObject>> resultHandler) {
+    // Positions are offsets in the UTF-8 content, a chunk of at most length bytes has at most length characters
+    blocking(Lane.READ, () -> {
+      PageLogStore.ContentSlice slice = store.readContent(id, position, length);
+      if (slice == null) {
+        return new JsonObject().put("found", false);
+      }
+      return new JsonObject()
+        .put("found", true)
+        .put("bytes", slice.contentBytes)
+        .put("version", slice.sequence)
+        .put("chunk", slice.chunk)
+        .put("next", slice.next);
+    }, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService createPage(String title, String markdown, Handler<AsyncResult<Void>> resultHandler) {
+    this.<long[]>blocking(Lane.WRITE, () -> store.create(title, markdown), ar -> {
+      if (ar.succeeded()) {
+        long sequence = ar.result()[0];
+        int id = (int) ar.result()[1];
+        forgetReads(id, title);
+        linkIndex.saved(id, markdown);
+        recordChange(new JsonObject().put("sequence", sequence).put("type", PageChangePublisher.CREATED)
+          .put("id", id).put("name", title));
+        changePublisher.created(sequence, id, title);
+        resultHandler.handle(Future.succeededFuture());
+      } else {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService savePage(int id, String markdown, Handler<AsyncResult<Void>> resultHandler) {
+    this.<Long>blocking(Lane.WRITE, () -> store.save(id, markdown), ar -> {
+      if (ar.succeeded()) {
+        if (ar.result() >= 0) {
+          forgetReads(id, store.names().name(id));
+          linkIndex.saved(id, markdown);
+          recordChange(new JsonObject().put("sequence", ar.result()).put("type", PageChangePublisher.UPDATED)
+            .put("id", id).putNull("name"));
+          changePublisher.updated(ar.result(), id);
+        }
+        resultHandler.handle(Future.succeededFuture());
+      } else {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService patchPage(int id, String baseHash, JsonArray edits, Handler<AsyncResult<JsonObject>> resultHandler) {
+    String[] patched = {null};
+    this.<JsonObject>blocking(Lane.WRITE, () -> {
+      // Saves of the page are held back between the read of its content and the save of the patched one
+      synchronized (store) {
+        PageLogStore.Page page = store.get(id);
+        if (page == null) {
+          return new JsonObject().put("status", "missing");
+        }
+        String hash = PageDiff.hash(page.content);
+        if (!baseHash.equals(hash)) {
+          return new JsonObject().put("status", "conflict").put("hash", hash)
+            .put("bytes", page.content.getBytes(StandardCharsets.UTF_8).length);
+        }
+        patched[0] = PageDiff.apply(page.content, edits);
+        if (patched[0] == null) {
+          return new JsonObject().put("status", "invalid").put("hash", hash)
+            .put("bytes", page.content.getBytes(StandardCharsets.UTF_8).length);
+        }
+        return new JsonObject().put("status", "saved").put("hash", PageDiff.hash(patched[0]))
+          .put("bytes", patched[0].getBytes(StandardCharsets.UTF_8).length)
+          .put("sequence", store.save(id, patched[0]));
+      }
+    }, ar -> {
+      if (ar.succeeded()) {
+        Long sequence = (Long) ar.result().remove("sequence");
+        if (sequence != null && sequence >= 0) {
+          forgetReads(id, store.names().name(id));
+          linkIndex.saved(id, patched[0]);
+          recordChange(new JsonObject().put("sequence", sequence).put("type", PageChangePublisher.UPDATED)
+            .put("id", id).putNull("name"));
+          changePublisher.updated(sequence, id);
+        } else if (sequence != null) {
+          ar.result().clear().put("status", "missing");
+        }
+        resultHandler.handle(Future.succeededFuture(ar.result()));
+      } else {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService deletePage(int id, Handler<AsyncResult<Void>> resultHandler) {
+    String name = store.names().name(id);
+    this.<Long>blocking(Lane.WRITE, () -> {
+      long sequence = store.delete(id);
+      if (sequence >= 0) {
+        attachments.deletePage(id);
+      }
+      return sequence;
+    }, ar -> {
+      if (ar.succeeded()) {
+        if (ar.result() >= 0) {
+          forgetReads(id, name);
+          linkIndex.deleted(id, name);
+          recordChange(new JsonObject().put("sequence", ar.result()).put("type", PageChangePublisher.DELETED)
+            .put("id", id).putNull("name"));
+          changePublisher.deleted(ar.result(), id);
+        }
+        resultHandler.handle(Future.succeededFuture());
+      } else {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchAllPagesData(Handler<AsyncResult<List<Page>>> resultHandler) {
+    blocking(Lane.BULK, () -> store.all().stream()
+      .map(PageLogWikiDatabaseServiceImpl::toPage)
+      .collect(Collectors.toList()), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchPagesBatch(int afterId, int limit, Handler<AsyncResult<List<Page>>> resultHandler) {
+    List<Integer> ids = store.names().summaries().stream()
+      .map(PageSummary::getId)
+      .filter(id -> id > afterId)
+      .sorted()
+      .limit(limit)
+      .collect(Collectors.toList());
+    blocking(Lane.BULK, () -> {
+      List<Page> pages = new ArrayList<>(ids.size());
+      for (Integer id : ids) {
+        Page page = toPage(store.get(id));
+        if (page != null) {
+          pages.add(page);
+        }
+      }
+      return pages;
+    }, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchLastChangeSequence(Handler<AsyncResult<Long>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(lastRecordedSequence()));
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchChangesSince(long since, Handler<AsyncResult<JsonObject>> resultHandler) {
+    long last = lastRecordedSequence();
+    JsonObject delta = new JsonObject().put("sequence", last);
+    if (since < changesFloor || since > last) {
+      resultHandler.handle(Future.succeededFuture(delta
+        .put("resyncRequired", true)
+        .put("changes", new JsonArray())));
+      return this;
+    }
+    JsonArray result = new JsonArray();
+    for (JsonObject change : changes) {
+      if (change.getLong("sequence") > since) {
+        result.add(change.copy());
+      }
+    }
+    resultHandler.handle(Future.succeededFuture(delta
+      .put("resyncRequired", false)
+      .put("changes", result)));
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchBacklinks(int id, Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(linkIndex.backlinks(id)));
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchBacklinksByName(String name, Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(linkIndex.backlinks(name)));
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchOrphanPages(Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(linkIndex.orphans()));
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchLinkedNames(List<String> names, Handler<AsyncResult<List<String>>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(linkIndex.linked(names)));
+    return this;
+  }
+
+  /**
+   * The page is looked up in the write lane, which orders the call after the deletions of the page
+   */
+  @Override
+  public WikiDatabaseService saveAttachment(int pageId, JsonObject attachment, Handler<AsyncResult<Boolean>> resultHandler) {
+    blocking(Lane.WRITE, () -> {
+      if (store.names().name(pageId) == null) {
+        return false;
+      }
+      attachments.put(pageId, attachment);
+      return true;
+    }, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchAttachments(int pageId, Handler<AsyncResult<JsonArray>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(attachments.list(pageId)));
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchAttachment(int pageId, String name, Handler<AsyncResult<JsonObject>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(attachments.get(pageId, name)));
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService deleteAttachment(int pageId, String name, Handler<AsyncResult<Boolean>> resultHandler) {
+    blocking(Lane.WRITE, () -> attachments.delete(pageId, name), resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchExecutionStats(Handler<AsyncResult<JsonObject>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(lanes.stats().put("singleFlight", new JsonObject()
+      .put("byId", readsById.stats())
+      .put("byName", readsByName.stats()))));
+    return this;
+  }
+}
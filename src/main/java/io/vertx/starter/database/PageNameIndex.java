@@ -0,0 +1,95 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.json.JsonArray;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Sorted, concurrent index of the page names, kept up to date by the database service on every create and
+ * delete so that listings and prefix lookups never hit the store.
+ */
+class PageNameIndex {
+
+  private final ConcurrentSkipListMap<String, Integer> ids = new ConcurrentSkipListMap<>();
+  private final ConcurrentHashMap<Integer, String> names = new ConcurrentHashMap<>();
+
+  void put(String name, int id) {
+    String previous = names.put(id, name);
+    if (previous != null && !previous.equals(name)) {
+      ids.remove(previous, id);
+    }
+    ids.put(name, id);
+  }
+
+  void remove(int id) {
+    String name = names.remove(id);
+    if (name != null) {
+      ids.remove(name, id);
+    }
+  }
+
+  void clear() {
+    ids.clear();
+    names.clear();
+  }
+
+  /**
+   * @param name
+   * @return the id of the page, or null when there is no such page
+   */
+  Integer id(String name) {
+    return ids.get(name);
+  }
+
+  /**
+   * @param id
+   * @return the name of the page, or null when there is no such page
+   */
+  String name(int id) {
+    return names.get(id);
+  }
+
+  boolean contains(String name) {
+    return ids.containsKey(name);
+  }
+
+  int size() {
+    return names.size();
+  }
+
+  /**
+   * @return all the page names in ascending order
+   */
+  JsonArray names() {
+    return new JsonArray(new ArrayList<>(ids.keySet()));
+  }
+
+  /**
+   * @return all the pages in ascending name order
+   */
+  List<PageSummary> summaries() {
+    List<PageSummary> result = new ArrayList<>(ids.size());
+    ids.forEach((name, id) -> result.add(new PageSummary(id, name)));
+    return result;
+  }
+
+  /**
+   * @param prefix
+   * @param limit maximum number of results
+   * @return the pages whose name starts with the prefix, in ascending name order
+   */
+  List<PageSummary> complete(String prefix, int limit) {
+    List<PageSummary> result = new ArrayList<>();
+    for (Map.Entry<String, Integer> entry : ids.tailMap(prefix, true).entrySet()) {
+      if (result.size() >= limit || !entry.getKey().startsWith(prefix)) {
+        break;
+      }
+      result.add(new PageSummary(entry.getValue(), entry.getKey()));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,54 @@
+package io.vertx.starter.database;
+
+import io.vertx.codegen.annotations.DataObject;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Id and name of a wiki page, as listed by {@link WikiDatabaseService}
+ */
+@DataObject(generateConverter = true)
+public class PageSummary {
+
+  private int id;
+  private String name;
+
+  public PageSummary() {
+  }
+
+  public PageSummary(int id, String name) {
+    this.id = id;
+    this.name = name;
+  }
+
+  public PageSummary(PageSummary other) {
+    this(other.id, other.name);
+  }
+
+  public PageSummary(JsonObject json) {
+    PageSummaryConverter.fromJson(json, this);
+  }
+
+  public JsonObject toJson() {
+    JsonObject json = new JsonObject();
+    PageSummaryConverter.toJson(this, json);
+    return json;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public PageSummary setId(int id) {
+    this.id = id;
+    return this;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public PageSummary setName(String name) {
+    this.name = name;
+    return this;
+  }
+}
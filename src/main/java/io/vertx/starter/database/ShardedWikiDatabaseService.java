@@ -0,0 +1,432 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+/**
+ * {@link WikiDatabaseService} spreading the pages over several shards, each one a {@link WikiDatabaseVerticle}
+ * with its own event bus address and its own store.
+ * <p>
+ * Pages are routed by the hash of their namespace, the part of their name before the first colon as in
+ * <code>team:page</code>, or of their whole name when they have none, so that the pages of a namespace live in
+ * the same shard. Each shard allocates page ids in its own residue class modulo the number of shards, so ids
+ * are unique across shards and calls by id are routed without any lookup.
+ * <p>
+ * Listings are scattered to every shard and merged. Links may cross shards, so backlinks and orphans are
+ * gathered from every shard too. Each shard has its own change log: the position of a caller in the changes of
+ * the wiki is a cursor listing the sequence of every shard, as in <code>12.7.30</code>, and the changes since a
+ * cursor are the changes of every shard since its own sequence. The change sequence of the interface is the
+ * sum of the sequences of the shards, which grows with every change but cannot tell which changes a caller
+ * missed, so callers of {@link #fetchChangesSince(long, Handler)} that are not up to date resync.
+ * <p>
+ * The number of shards is fixed, pages are not moved when it changes.
+ */
+public class ShardedWikiDatabaseService implements WikiDatabaseService {
+
+  private static final Comparator<PageSummary> BY_NAME = Comparator.comparing(PageSummary::getName);
+  private static final Comparator<Page> BY_ID = Comparator.comparingInt(Page::getId);
+
+  private final List<WikiDatabaseService> shards;
+
+  /**
+   * @param shards services of the shards, in shard order
+   */
+  public ShardedWikiDatabaseService(List<WikiDatabaseService> shards) {
+    this.shards = new ArrayList<>(shards);
+  }
+
+  /**
+   * @param address address of the service
+   * @param shard
+   * @param shards  number of shards
+   * @return the address of a shard, the address of the service itself when it is not sharded
+   */
+  public static String address(String address, int shard, int shards) {
+    return shards > 1 ? address + "." + shard : address;
+  }
+
+  /**
+   * @param name
+   * @param shards number of shards
+   * @return the shard holding a page name
+   */
+  static int shardOf(String name, int shards) {
+    int colon = name.indexOf(':');
+    String namespace = colon > 0 ? name.substring(0, colon) : name;
+    return Math.floorMod(namespace.hashCode(), shards);
+  }
+
+  private WikiDatabaseService byName(String name) {
+    return shards.get(shardOf(name, shards.size()));
+  }
+
+  private WikiDatabaseService byId(int id) {
+    return shards.get(Math.floorMod(id, shards.size()));
+  }
+
+  /**
+   * Call every shard and collect their results, in shard order
+   *
+   * @param call
+   * @param resultHandler
+   * @param <T>
+   */
+  private <T> void gather(BiConsumer<WikiDatabaseService, Handler<AsyncResult<T>>> call,
+                          Handler<AsyncResult<List<T>>> resultHandler) {
+    List<Future> futures = new ArrayList<>(shards.size());
+    for (WikiDatabaseService shard : shards) {
+      Future<T> future = Future.future();
+      call.accept(shard, future.completer());
+      futures.add(future);
+    }
+    CompositeFuture.all(futures).setHandler(ar -> {
+      if (ar.failed()) {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      List<T> results = new ArrayList<>(futures.size());
+      for (int i = 0; i < futures.size(); i++) {
+        results.add(ar.result().resultAt(i));
+      }
+      resultHandler.handle(Future.succeededFuture(results));
+    });
+  }
+
+  /**
+   * Call every shard and merge their lists into one
+   *
+   * @param call
+   * @param order         order of the merged list
+   * @param limit         maximum size of the merged list
+   * @param resultHandler
+   * @param <T>
+   */
+  private <T> void merge(BiConsumer<WikiDatabaseService, Handler<AsyncResult<List<T>>>> call, Comparator<T> order,
+                         int limit, Handler<AsyncResult<List<T>>> resultHandler) {
+    gather(call, ar -> resultHandler.handle(ar.map(lists -> {
+      List<T> merged = new ArrayList<>();
+      lists.forEach(merged::addAll);
+      merged.sort(order);
+      return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    })));
+  }
+
+  @Override
+  public WikiDatabaseService fetchAllPages(Handler<AsyncResult<JsonArray>> resultHandler) {
+    gather(WikiDatabaseService::fetchAllPages, ar -> resultHandler.handle(ar.map(lists -> {
+      TreeSet<String> names = new TreeSet<>();
+      lists.forEach(list -> list.forEach(name -> names.add((String) name)));
+      return new JsonArray(new ArrayList<>(names));
+    })));
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchAllPageSummaries(Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    merge(WikiDatabaseService::fetchAllPageSummaries, BY_NAME, Integer.MAX_VALUE, resultHandler);
+    return this;
+  }
+
+  /**
+   * A prefix with a namespace only goes to the shard of the namespace, other prefixes go to every shard
+   */
+  @Override
+  public WikiDatabaseService completePageName(String prefix, int limit, Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    if (prefix.indexOf(':') > 0) {
+      byName(prefix).completePageName(prefix, limit, resultHandler);
+    } else {
+      merge((shard, handler) -> shard.completePageName(prefix, limit, handler), BY_NAME, limit, resultHandler);
+    }
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchPage(String name, Handler<AsyncResult<Page>> resultHandler) {
+    byName(name).fetchPage(name, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchPageById(int id, Handler<AsyncResult<Page>> resultHandler) {
+    byId(id).fetchPageById(id, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService pageExists(int id, Handler<AsyncResult<Boolean>> resultHandler) {
+    byId(id).pageExists(id, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchPageContentChunk(int id, long position, int length, Handler<AsyncResult<JsonObject>> resultHandler) {
+    byId(id).fetchPageContentChunk(id, position, length, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService createPage(String title, String markdown, Handler<AsyncResult<Void>> resultHandler) {
+    byName(title).createPage(title, markdown, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService savePage(int id, String markdown, Handler<AsyncResult<Void>> resultHandler) {
+    byId(id).savePage(id, markdown, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService patchPage(int id, String baseHash, JsonArray edits, Handler<AsyncResult<JsonObject>> resultHandler) {
+    byId(id).patchPage(id, baseHash, edits, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService deletePage(int id, Handler<AsyncResult<Void>> resultHandler) {
+    byId(id).deletePage(id, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchAllPagesData(Handler<AsyncResult<List<Page>>> resultHandler) {
+    merge(WikiDatabaseService::fetchAllPagesData, BY_ID, Integer.MAX_VALUE, resultHandler);
+    return this;
+  }
+
+  /**
+   * Ids are unique across shards, so the batch is the first pages of the batches of every shard
+   */
+  @Override
+  public WikiDatabaseService fetchPagesBatch(int afterId, int limit, Handler<AsyncResult<List<Page>>> resultHandler) {
+    merge((shard, handler) -> shard.fetchPagesBatch(afterId, limit, handler), BY_ID, limit, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchLastChangeSequence(Handler<AsyncResult<Long>> resultHandler) {
+    gather(WikiDatabaseService::fetchLastChangeSequence,
+      ar -> resultHandler.handle(ar.map(sequences -> sequences.stream().mapToLong(Long::longValue).sum())));
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchChangesSince(long since, Handler<AsyncResult<JsonObject>> resultHandler) {
+    fetchLastChangeSequence(ar -> resultHandler.handle(ar.map(sequence -> new JsonObject()
+      .put("sequence", sequence)
+      .put("resyncRequired", since != sequence)
+      .put("changes", new JsonArray()))));
+    return this;
+  }
+
+  /**
+   * @param sequences sequence of every shard, in shard order
+   * @return the change cursor of the sequences
+   */
+  static String cursor(List<Long> sequences) {
+    StringBuilder cursor = new StringBuilder(sequences.size() * 8);
+    for (Long sequence : sequences) {
+      if (cursor.length() > 0) {
+        cursor.append('.');
+      }
+      cursor.append(sequence);
+    }
+    return cursor.toString();
+  }
+
+  /**
+   * @param cursor
+   * @param shards number of shards
+   * @return the sequence of every shard in a change cursor, or null when it is not a cursor of this number of
+   * shards
+   */
+  static long[] sequences(String cursor, int shards) {
+    String[] parts = cursor.split("\\.", -1);
+    if (parts.length != shards) {
+      return null;
+    }
+    long[] sequences = new long[shards];
+    try {
+      for (int shard = 0; shard < shards; shard++) {
+        sequences[shard] = Long.parseLong(parts[shard]);
+        if (sequences[shard] < 0) {
+          return null;
+        }
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    return sequences;
+  }
+
+  /**
+   * @param cursor
+   * @return the change sequence of a change cursor, the sum of the sequences of the shards
+   */
+  public static long sequence(String cursor) {
+    long sequence = 0;
+    for (String part : cursor.split("\\.")) {
+      sequence += Long.parseLong(part);
+    }
+    return sequence;
+  }
+
+  /**
+   * Fetch the change cursor of the last recorded changes
+   *
+   * @param resultHandler called with the sequence of every shard, see {@link #fetchChangesSince(String, Handler)}
+   */
+  public void fetchChangeCursor(Handler<AsyncResult<String>> resultHandler) {
+    gather(WikiDatabaseService::fetchLastChangeSequence, ar -> resultHandler.handle(ar.map(ShardedWikiDatabaseService::cursor)));
+  }
+
+  /**
+   * Fetch the changes recorded after a change cursor: the changes of every shard after its sequence in the
+   * cursor, shard after shard, each change tagged with its <code>shard</code>. A resync is only required when
+   * a shard requires one, or when the cursor is not one of this number of shards.
+   *
+   * @param cursor        change cursor known by the caller, <code>0.0.0</code> for three shards when none
+   * @param resultHandler called with <code>{sequence, resyncRequired, changes}</code>, the sequence being the
+   *                      cursor of the last changes
+   */
+  public void fetchChangesSince(String cursor, Handler<AsyncResult<JsonObject>> resultHandler) {
+    long[] since = sequences(cursor, shards.size());
+    if (since == null) {
+      fetchChangeCursor(ar -> resultHandler.handle(ar.map(last -> new JsonObject()
+        .put("sequence", last)
+        .put("resyncRequired", true)
+        .put("changes", new JsonArray()))));
+      return;
+    }
+    List<Future> futures = new ArrayList<>(shards.size());
+    for (int shard = 0; shard < shards.size(); shard++) {
+      Future<JsonObject> future = Future.future();
+      shards.get(shard).fetchChangesSince(since[shard], future.completer());
+      futures.add(future);
+    }
+    CompositeFuture.all(futures).setHandler(ar -> {
+      if (ar.failed()) {
+        resultHandler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      List<Long> sequences = new ArrayList<>(futures.size());
+      boolean resyncRequired = false;
+      JsonArray changes = new JsonArray();
+      for (int shard = 0; shard < futures.size(); shard++) {
+        JsonObject delta = ar.result().resultAt(shard);
+        sequences.add(delta.getLong("sequence"));
+        resyncRequired |= delta.getBoolean("resyncRequired");
+        JsonArray shardChanges = delta.getJsonArray("changes");
+        for (int i = 0; i < shardChanges.size(); i++) {
+          changes.add(shardChanges.getJsonObject(i).put("shard", shard));
+        }
+      }
+      resultHandler.handle(Future.succeededFuture(new JsonObject()
+        .put("sequence", cursor(sequences))
+        .put("resyncRequired", resyncRequired)
+        .put("changes", resyncRequired ? new JsonArray() : changes)));
+    });
+  }
+
+  /**
+   * Reads the page from its shard for its name, then gathers the pages linking to the name from every shard
+   */
+  @Override
+  public WikiDatabaseService fetchBacklinks(int id, Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    byId(id).fetchPageById(id, ar -> {
+      if (ar.failed() || ar.result() == null) {
+        resultHandler.handle(ar.map((List<PageSummary>) null));
+        return;
+      }
+      fetchBacklinksByName(ar.result().getName(), resultHandler);
+    });
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchBacklinksByName(String name, Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    merge((shard, handler) -> shard.fetchBacklinksByName(name, handler), BY_NAME, Integer.MAX_VALUE, resultHandler);
+    return this;
+  }
+
+  /**
+   * The orphans of each shard are the pages no page of the shard links to, the ones pages of other shards
+   * link to are left out
+   */
+  @Override
+  public WikiDatabaseService fetchOrphanPages(Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    merge(WikiDatabaseService::fetchOrphanPages, BY_NAME, Integer.MAX_VALUE, ar -> {
+      if (ar.failed() || ar.result().isEmpty()) {
+        resultHandler.handle(ar);
+        return;
+      }
+      List<PageSummary> candidates = ar.result();
+      List<String> names = new ArrayList<>(candidates.size());
+      candidates.forEach(page -> names.add(page.getName()));
+      fetchLinkedNames(names, linked -> resultHandler.handle(linked.map(linkedNames -> {
+        Set<String> excluded = new HashSet<>(linkedNames);
+        List<PageSummary> orphans = new ArrayList<>(candidates.size());
+        candidates.forEach(page -> {
+          if (!excluded.contains(page.getName())) {
+            orphans.add(page);
+          }
+        });
+        return orphans;
+      })));
+    });
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchLinkedNames(List<String> names, Handler<AsyncResult<List<String>>> resultHandler) {
+    this.<List<String>>gather((shard, handler) -> shard.fetchLinkedNames(names, handler), ar -> resultHandler.handle(ar.map(lists -> {
+      TreeSet<String> linked = new TreeSet<>();
+      lists.forEach(linked::addAll);
+      return new ArrayList<>(linked);
+    })));
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService saveAttachment(int pageId, JsonObject attachment, Handler<AsyncResult<Boolean>> resultHandler) {
+    byId(pageId).saveAttachment(pageId, attachment, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchAttachments(int pageId, Handler<AsyncResult<JsonArray>> resultHandler) {
+    byId(pageId).fetchAttachments(pageId, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchAttachment(int pageId, String name, Handler<AsyncResult<JsonObject>> resultHandler) {
+    byId(pageId).fetchAttachment(pageId, name, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService deleteAttachment(int pageId, String name, Handler<AsyncResult<Boolean>> resultHandler) {
+    byId(pageId).deleteAttachment(pageId, name, resultHandler);
+    return this;
+  }
+
+  @Override
+  public WikiDatabaseService fetchExecutionStats(Handler<AsyncResult<JsonObject>> resultHandler) {
+    gather(WikiDatabaseService::fetchExecutionStats,
+      ar -> resultHandler.handle(ar.map(stats -> new JsonObject().put("shards", new JsonArray(stats)))));
+    return this;
+  }
+}
@@ -5,11 +5,40 @@ package io.vertx.starter.database;
  */
 enum SqlQuery {
   CREATE_PAGES_TABLE,
-  ALL_PAGES,
   GET_PAGE,
   CREATE_PAGE,
   SAVE_PAGE,
+  GET_PAGE_VERSION,
+  PATCH_PAGE,
   DELETE_PAGE,
   ALL_PAGES_DATA,
-  GET_PAGE_BY_ID
+  GET_PAGE_BY_ID,
+  CREATE_CHANGES_TABLE,
+  RECORD_CHANGE,
+  CHANGES_BOUNDS,
+  CHANGES_SINCE,
+  COMPACT_CHANGES,
+  ALL_PAGE_NAMES,
+  CONTENT_BYTES_COLUMN,
+  ADD_CONTENT_BYTES_COLUMN,
+  CONTENT_VERSION_COLUMN,
+  ADD_CONTENT_VERSION_COLUMN,
+  LINKS_INDEXED_COLUMN,
+  ADD_LINKS_INDEXED_COLUMN,
+  GET_PAGE_CONTENT_CHUNK,
+  CREATE_LINKS_TABLE,
+  DELETE_PAGE_LINKS,
+  INSERT_PAGE_LINK,
+  PAGE_LINKS_RANGE,
+  MARK_LINKS_INDEXED,
+  PAGES_LINKS_BATCH,
+  PAGES_BATCH,
+  PAGE_ID_INCREMENT,
+  SHARD_PAGE_IDS,
+  CREATE_ATTACHMENTS_TABLE,
+  INSERT_ATTACHMENT,
+  DELETE_ATTACHMENT,
+  DELETE_PAGE_ATTACHMENTS,
+  PAGE_ATTACHMENTS,
+  GET_ATTACHMENT
 }
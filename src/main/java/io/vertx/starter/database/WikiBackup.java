@@ -0,0 +1,591 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Online backups of the wiki, taken through the database service while it keeps serving requests, and the
+ * matching restore.
+ * <p>
+ * A backup is a gzip compressed file of JSON lines: a header, then one <code>put</code> record per page or
+ * one <code>delete</code> record per deleted page. A full backup holds every page, an incremental backup the
+ * pages changed since the previous backup, found from the change log. Pages are read in batches in the bulk
+ * lane and written on a worker thread, and the next batch is delayed as needed to keep the throughput under
+ * the configured rate.
+ * <p>
+ * Backups are fuzzy: a page changed while a backup runs may be saved before or after the change, so each
+ * backup covers the changes from the sequence number read when it started, and the next incremental backup
+ * picks up from there. Replaying a full backup then its incremental backups in order gives the state of the
+ * wiki at the end of the last one. The backups of a directory are listed in a manifest, which is replaced
+ * atomically once a backup file is complete. Incremental backups fall back to full backups when there is no
+ * previous backup or the change log no longer covers it.
+ * <p>
+ * Restoring replays the last full backup and the incremental backups chained to it into an empty wiki. Pages
+ * are restored by name, they may get other ids than when they were backed up, and the restored wiki has a
+ * change log of its own. A restore is recorded in the manifest, without a file, and the next backup is a full
+ * backup: an incremental backup would chain the new change sequence numbers onto the ones of the backups taken
+ * before the restore.
+ * <p>
+ * Not thread safe, must be used from the database verticle context.
+ */
+class WikiBackup {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WikiBackup.class);
+
+  static final String FULL = "full";
+  static final String INCREMENTAL = "incremental";
+  static final String RESTORE = "restore";
+
+  private static final String MANIFEST = "manifest.json";
+  private static final int VERSION = 1;
+
+  private final Vertx vertx;
+  private final WikiDatabaseService service;
+  private final Path directory;
+  private final long maxBytesPerSecond;
+  private final int batchSize;
+  private boolean running;
+
+  @FunctionalInterface
+  private interface FileCall<T> {
+    T call() throws IOException;
+  }
+
+  /**
+   * @param vertx
+   * @param service           service the pages are read from and restored to
+   * @param directory         directory of the backup files and of their manifest
+   * @param maxBytesPerSecond maximum throughput of a backup, in bytes of page content per second
+   * @param batchSize         number of pages read or restored per batch
+   */
+  WikiBackup(Vertx vertx, WikiDatabaseService service, Path directory, long maxBytesPerSecond, int batchSize) {
+    this.vertx = vertx;
+    this.service = service;
+    this.directory = directory;
+    this.maxBytesPerSecond = Math.max(1, maxBytesPerSecond);
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  /**
+   * Take a backup
+   *
+   * @param incremental   whether only the changes since the previous backup are wanted
+   * @param resultHandler called with the manifest entry of the backup
+   */
+  void backup(boolean incremental, Handler<AsyncResult<JsonObject>> resultHandler) {
+    if (running) {
+      resultHandler.handle(Future.failedFuture("A backup is already running"));
+      return;
+    }
+    running = true;
+    Handler<AsyncResult<JsonObject>> done = ar -> {
+      running = false;
+      if (ar.succeeded()) {
+        LOGGER.info("Backup " + ar.result().getString("file", "skipped") + " written, " + ar.result().getInteger("pages") + " pages");
+      } else {
+        LOGGER.error("Backup failed", ar.cause());
+      }
+      resultHandler.handle(ar);
+    };
+    this.<JsonObject>blocking(this::readManifest, manifest -> {
+      if (manifest.failed()) {
+        done.handle(Future.failedFuture(manifest.cause()));
+        return;
+      }
+      JsonArray backups = manifest.result().getJsonArray("backups");
+      JsonObject last = backups.isEmpty() ? null : backups.getJsonObject(backups.size() - 1);
+      if (!incremental || last == null || RESTORE.equals(last.getString("type"))) {
+        full(manifest.result(), done);
+        return;
+      }
+      service.fetchChangesSince(last.getLong("to"), delta -> {
+        if (delta.failed()) {
+          done.handle(Future.failedFuture(delta.cause()));
+        } else if (delta.result().getBoolean("resyncRequired")) {
+          LOGGER.info("The change log does not cover the previous backup anymore, taking a full backup");
+          full(manifest.result(), done);
+        } else {
+          incremental(manifest.result(), last.getLong("to"), delta.result(), done);
+        }
+      });
+    });
+  }
+
+  private void full(JsonObject manifest, Handler<AsyncResult<JsonObject>> done) {
+    service.fetchLastChangeSequence(sequence -> {
+      if (sequence.failed()) {
+        done.handle(Future.failedFuture(sequence.cause()));
+        return;
+      }
+      BackupWriter writer = new BackupWriter(entry(FULL, null, sequence.result()));
+      open(writer, done, () -> fullBatch(writer, -1, manifest, done));
+    });
+  }
+
+  private void fullBatch(BackupWriter writer, int afterId, JsonObject manifest, Handler<AsyncResult<JsonObject>> done) {
+    service.fetchPagesBatch(afterId, batchSize, batch -> {
+      if (batch.failed()) {
+        abort(writer, batch.cause(), done);
+        return;
+      }
+      List<Page> pages = batch.result();
+      if (pages.isEmpty()) {
+        finish(writer, manifest, done);
+        return;
+      }
+      List<JsonObject> records = new ArrayList<>(pages.size());
+      pages.forEach(page -> records.add(putRecord(page)));
+      write(writer, records, done, () -> fullBatch(writer, pages.get(pages.size() - 1).getId(), manifest, done));
+    });
+  }
+
+  private void incremental(JsonObject manifest, long from, JsonObject delta, Handler<AsyncResult<JsonObject>> done) {
+    // Only the last state of a page matters, its content is read when the batch is written
+    Map<Integer, String> changed = new LinkedHashMap<>();
+    JsonArray changes = delta.getJsonArray("changes");
+    for (int i = 0; i < changes.size(); i++) {
+      JsonObject change = changes.getJsonObject(i);
+      changed.remove(change.getInteger("id"));
+      changed.put(change.getInteger("id"), change.getString("type"));
+    }
+    if (changed.isEmpty()) {
+      // Nothing to save, the previous backup stays the last one of the chain
+      JsonObject skipped = entry(INCREMENTAL, from, from).put("pages", 0);
+      skipped.remove("file");
+      done.handle(Future.succeededFuture(skipped));
+      return;
+    }
+    BackupWriter writer = new BackupWriter(entry(INCREMENTAL, from, delta.getLong("sequence")));
+    open(writer, done, () -> incrementalBatch(writer, new ArrayList<>(changed.keySet()), 0, manifest, done));
+  }
+
+  private void incrementalBatch(BackupWriter writer, List<Integer> ids, int from, JsonObject manifest,
+                                Handler<AsyncResult<JsonObject>> done) {
+    if (from >= ids.size()) {
+      finish(writer, manifest, done);
+      return;
+    }
+    List<Integer> batch = ids.subList(from, Math.min(ids.size(), from + batchSize));
+    List<Future> reads = new ArrayList<>(batch.size());
+    for (Integer id : batch) {
+      Future<Page> read = Future.future();
+      service.fetchPageById(id, read.completer());
+      reads.add(read);
+    }
+    CompositeFuture.all(reads).setHandler(ar -> {
+      if (ar.failed()) {
+        abort(writer, ar.cause(), done);
+        return;
+      }
+      List<JsonObject> records = new ArrayList<>(batch.size());
+      for (int i = 0; i < batch.size(); i++) {
+        Page page = ar.result().resultAt(i);
+        records.add(page != null ? putRecord(page) : new JsonObject().put("op", "delete").put("id", batch.get(i)));
+      }
+      write(writer, records, done, () -> incrementalBatch(writer, ids, from + batch.size(), manifest, done));
+    });
+  }
+
+  private static JsonObject entry(String type, Long from, long to) {
+    Instant created = Instant.now();
+    return new JsonObject()
+      .put("file", "wiki-" + created.toEpochMilli() + "-" + type + ".jsonl.gz")
+      .put("type", type)
+      .put("from", from)
+      .put("to", to)
+      .put("created", created.toString());
+  }
+
+  private static JsonObject putRecord(Page page) {
+    return new JsonObject()
+      .put("op", "put")
+      .put("id", page.getId())
+      .put("name", page.getName())
+      .put("content", page.getContent());
+  }
+
+  private void open(BackupWriter writer, Handler<AsyncResult<JsonObject>> done, Runnable next) {
+    blocking(writer::open, ar -> {
+      if (ar.succeeded()) {
+        next.run();
+      } else {
+        done.handle(Future.failedFuture(ar.cause()));
+      }
+    });
+  }
+
+  /**
+   * Write records, then go on with the next batch once the throughput is back under the rate
+   */
+  private void write(BackupWriter writer, List<JsonObject> records, Handler<AsyncResult<JsonObject>> done,
+                     Runnable next) {
+    blocking(() -> writer.write(records), ar -> {
+      if (ar.failed()) {
+        abort(writer, ar.cause(), done);
+        return;
+      }
+      long delay = writer.bytes * 1000 / maxBytesPerSecond - (System.currentTimeMillis() - writer.started);
+      if (delay > 0) {
+        vertx.setTimer(delay, tid -> next.run());
+      } else {
+        next.run();
+      }
+    });
+  }
+
+  private void finish(BackupWriter writer, JsonObject manifest, Handler<AsyncResult<JsonObject>> done) {
+    this.<JsonObject>blocking(() -> {
+      JsonObject entry = writer.finish();
+      manifest.getJsonArray("backups").add(entry);
+      writeManifest(manifest);
+      return entry;
+    }, ar -> {
+      if (ar.failed()) {
+        abort(writer, ar.cause(), done);
+      } else {
+        done.handle(ar);
+      }
+    });
+  }
+
+  private void abort(BackupWriter writer, Throwable cause, Handler<AsyncResult<JsonObject>> done) {
+    blocking(writer::abort, ar -> done.handle(Future.failedFuture(cause)));
+  }
+
+  /**
+   * Restore the last full backup and the incremental backups chained to it, the wiki must be empty
+   *
+   * @param resultHandler called with the manifest entry of the restore, with the number of files and records
+   *                      replayed
+   */
+  void restore(Handler<AsyncResult<JsonObject>> resultHandler) {
+    if (running) {
+      resultHandler.handle(Future.failedFuture("A backup is running"));
+      return;
+    }
+    running = true;
+    Handler<AsyncResult<JsonObject>> done = ar -> {
+      running = false;
+      resultHandler.handle(ar);
+    };
+    service.fetchAllPageSummaries(pages -> {
+      if (pages.failed()) {
+        done.handle(Future.failedFuture(pages.cause()));
+        return;
+      }
+      if (!pages.result().isEmpty()) {
+        done.handle(Future.failedFuture("The wiki is not empty, refusing to restore a backup into it"));
+        return;
+      }
+      this.<JsonObject>blocking(this::readManifest, manifest -> {
+        if (manifest.failed()) {
+          done.handle(Future.failedFuture(manifest.cause()));
+          return;
+        }
+        List<JsonObject> chain = chain(manifest.result().getJsonArray("backups"));
+        if (chain.isEmpty()) {
+          done.handle(Future.failedFuture("There is no full backup in " + directory));
+          return;
+        }
+        JsonObject progress = new JsonObject().put("files", 0).put("records", 0L);
+        restoreFile(chain, 0, new HashMap<>(), progress, restore -> {
+          if (restore.failed()) {
+            done.handle(restore);
+            return;
+          }
+          recordRestore(manifest.result(), chain.get(chain.size() - 1), progress, done);
+        });
+      });
+    });
+  }
+
+  /**
+   * Add a restore to the manifest, with the sequence numbers of the backup it restored and of the restored wiki
+   *
+   * @param manifest
+   * @param restored   last backup replayed
+   * @param progress   number of files and records replayed
+   * @param done
+   */
+  private void recordRestore(JsonObject manifest, JsonObject restored, JsonObject progress,
+                             Handler<AsyncResult<JsonObject>> done) {
+    service.fetchLastChangeSequence(sequence -> {
+      if (sequence.failed()) {
+        done.handle(Future.failedFuture(sequence.cause()));
+        return;
+      }
+      JsonObject entry = new JsonObject()
+        .put("type", RESTORE)
+        .put("from", restored.getLong("to"))
+        .put("to", sequence.result())
+        .put("created", Instant.now().toString())
+        .mergeIn(progress);
+      this.<JsonObject>blocking(() -> {
+        manifest.getJsonArray("backups").add(entry);
+        writeManifest(manifest);
+        return entry;
+      }, done);
+    });
+  }
+
+  /**
+   * @param backups manifest entries, oldest first
+   * @return the last full backup followed by the incremental backups taken from it before any restore, oldest
+   * first
+   */
+  static List<JsonObject> chain(JsonArray backups) {
+    List<JsonObject> chain = new ArrayList<>();
+    boolean restored = false;
+    for (int i = 0; i < backups.size(); i++) {
+      JsonObject backup = backups.getJsonObject(i);
+      if (FULL.equals(backup.getString("type"))) {
+        chain.clear();
+        chain.add(backup);
+        restored = false;
+      } else if (RESTORE.equals(backup.getString("type"))) {
+        // The sequence numbers start over, only a full backup can follow
+        restored = true;
+      } else if (!restored && !chain.isEmpty()
+        && backup.getLong("from").equals(chain.get(chain.size() - 1).getLong("to"))) {
+        chain.add(backup);
+      }
+    }
+    return chain;
+  }
+
+  private void restoreFile(List<JsonObject> chain, int index, Map<Integer, String> names, JsonObject progress,
+                           Handler<AsyncResult<JsonObject>> resultHandler) {
+    if (index >= chain.size()) {
+      LOGGER.info("Restored " + progress.getInteger("files") + " backup files, " + progress.getLong("records") + " records");
+      resultHandler.handle(Future.succeededFuture(progress));
+      return;
+    }
+    Path file = directory.resolve(chain.get(index).getString("file"));
+    this.<BufferedReader>blocking(() -> {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8));
+      String header = reader.readLine();
+      if (header == null || new JsonObject(header).getInteger("version", 0) != VERSION) {
+        reader.close();
+        throw new IOException("Unsupported backup file " + file);
+      }
+      return reader;
+    }, opened -> {
+      if (opened.failed()) {
+        resultHandler.handle(Future.failedFuture(opened.cause()));
+        return;
+      }
+      restoreBatch(opened.result(), names, progress, ar -> {
+        if (ar.failed()) {
+          resultHandler.handle(Future.failedFuture(ar.cause()));
+        } else {
+          progress.put("files", progress.getInteger("files") + 1);
+          restoreFile(chain, index + 1, names, progress, resultHandler);
+        }
+      });
+    });
+  }
+
+  private void restoreBatch(BufferedReader reader, Map<Integer, String> names, JsonObject progress,
+                            Handler<AsyncResult<Void>> doneHandler) {
+    this.<List<JsonObject>>blocking(() -> {
+      List<JsonObject> records = new ArrayList<>(batchSize);
+      String line;
+      while (records.size() < batchSize && (line = reader.readLine()) != null) {
+        records.add(new JsonObject(line));
+      }
+      if (records.isEmpty()) {
+        reader.close();
+      }
+      return records;
+    }, read -> {
+      if (read.failed()) {
+        blocking(() -> {
+          reader.close();
+          return null;
+        }, ar -> doneHandler.handle(Future.failedFuture(read.cause())));
+        return;
+      }
+      if (read.result().isEmpty()) {
+        doneHandler.handle(Future.succeededFuture());
+        return;
+      }
+      applyRecords(read.result(), 0, names, ar -> {
+        if (ar.failed()) {
+          blocking(() -> {
+            reader.close();
+            return null;
+          }, closed -> doneHandler.handle(ar));
+        } else {
+          progress.put("records", progress.getLong("records") + read.result().size());
+          restoreBatch(reader, names, progress, doneHandler);
+        }
+      });
+    });
+  }
+
+  /**
+   * Apply records one at a time, in order
+   *
+   * @param records
+   * @param index
+   * @param names       names of the pages by backed up id, deletions only know the id
+   * @param doneHandler
+   */
+  private void applyRecords(List<JsonObject> records, int index, Map<Integer, String> names,
+                            Handler<AsyncResult<Void>> doneHandler) {
+    if (index >= records.size()) {
+      doneHandler.handle(Future.succeededFuture());
+      return;
+    }
+    JsonObject record = records.get(index);
+    Handler<AsyncResult<Void>> next = ar -> {
+      if (ar.failed()) {
+        doneHandler.handle(ar);
+      } else {
+        applyRecords(records, index + 1, names, doneHandler);
+      }
+    };
+    String name = "put".equals(record.getString("op"))
+      ? record.getString("name") : names.remove(record.getInteger("id"));
+    if (name == null) {
+      next.handle(Future.succeededFuture());
+      return;
+    }
+    if ("put".equals(record.getString("op"))) {
+      names.put(record.getInteger("id"), name);
+    }
+    service.fetchPage(name, existing -> {
+      if (existing.failed()) {
+        next.handle(Future.failedFuture(existing.cause()));
+      } else if ("put".equals(record.getString("op"))) {
+        if (existing.result() == null) {
+          service.createPage(name, record.getString("content"), next);
+        } else {
+          service.savePage(existing.result().getId(), record.getString("content"), next);
+        }
+      } else if (existing.result() != null) {
+        service.deletePage(existing.result().getId(), next);
+      } else {
+        next.handle(Future.succeededFuture());
+      }
+    });
+  }
+
+  private JsonObject readManifest() throws IOException {
+    Path manifest = directory.resolve(MANIFEST);
+    if (!Files.exists(manifest)) {
+      return new JsonObject().put("version", VERSION).put("backups", new JsonArray());
+    }
+    return new JsonObject(new String(Files.readAllBytes(manifest), StandardCharsets.UTF_8));
+  }
+
+  private void writeManifest(JsonObject manifest) throws IOException {
+    Path temporary = directory.resolve(MANIFEST + ".tmp");
+    Files.write(temporary, manifest.encodePrettily().getBytes(StandardCharsets.UTF_8));
+    Files.move(temporary, directory.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE,
+      StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Run a file system call on a worker thread, calls are ordered
+   */
+  private <T> void blocking(FileCall<T> call, Handler<AsyncResult<T>> resultHandler) {
+    vertx.executeBlocking(future -> {
+      try {
+        future.complete(call.call());
+      } catch (Exception e) {
+        future.fail(e);
+      }
+    }, true, resultHandler);
+  }
+
+  /**
+   * Backup file being written, under a temporary name until it is complete
+   */
+  private class BackupWriter {
+    private final JsonObject entry;
+    private final Path file;
+    private final Path temporary;
+    private Writer out;
+    private long bytes;
+    private int pages;
+    private long started;
+
+    BackupWriter(JsonObject entry) {
+      this.entry = entry;
+      this.file = directory.resolve(entry.getString("file"));
+      this.temporary = directory.resolve(entry.getString("file") + ".tmp");
+    }
+
+    Void open() throws IOException {
+      Files.createDirectories(directory);
+      out = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(temporary), 64 * 1024),
+        StandardCharsets.UTF_8));
+      out.write(new JsonObject().put("version", VERSION).mergeIn(entry).encode());
+      out.write('\n');
+      started = System.currentTimeMillis();
+      return null;
+    }
+
+    Void write(List<JsonObject> records) throws IOException {
+      for (JsonObject record : records) {
+        String line = record.encode();
+        out.write(line);
+        out.write('\n');
+        bytes += line.length() + 1;
+        if ("put".equals(record.getString("op"))) {
+          pages++;
+        }
+      }
+      return null;
+    }
+
+    JsonObject finish() throws IOException {
+      out.close();
+      Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+      return entry.copy()
+        .put("pages", pages)
+        .put("bytes", Files.size(file))
+        .put("contentBytes", bytes);
+    }
+
+    Void abort() {
+      try {
+        if (out != null) {
+          out.close();
+        }
+        Files.deleteIfExists(temporary);
+      } catch (IOException e) {
+        LOGGER.warn("Could not remove the incomplete backup " + temporary, e);
+      }
+      return null;
+    }
+  }
+}
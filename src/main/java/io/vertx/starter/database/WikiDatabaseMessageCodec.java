@@ -0,0 +1,338 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary event bus codec for the {@link WikiDatabaseService} requests and replies, used instead of
+ * the JSON text codecs when Vert.x is clustered.
+ * <p>
+ * Values are tagged with one byte, integers are zigzag varints, strings and binaries are prefixed with their
+ * varint length, and objects and arrays with their varint size. Integers and longs keep distinct tags so
+ * that decoded values have the types the proxies cast them to. The wire form is
+ * <code>int length, byte version, value</code>; a node receiving a version it does not know fails the
+ * message instead of misreading it.
+ * <p>
+ * Requests select the codec by name through the proxy {@link DeliveryOptions}, replies through
+ * {@link #binaryReplies(Message)} since the generated proxy handler replies without options.
+ */
+public class WikiDatabaseMessageCodec implements MessageCodec<Object, Object> {
+
+  public static final String NAME = "wikidb.binary";
+
+  static final byte VERSION = 1;
+
+  private static final byte NULL = 0;
+  private static final byte TRUE = 1;
+  private static final byte FALSE = 2;
+  private static final byte INT = 3;
+  private static final byte LONG = 4;
+  private static final byte DOUBLE = 5;
+  private static final byte STRING = 6;
+  private static final byte OBJECT = 7;
+  private static final byte ARRAY = 8;
+  private static final byte BINARY = 9;
+
+  /**
+   * Register the codec on the event bus of a Vert.x instance, once
+   *
+   * @param vertx
+   */
+  public static void register(Vertx vertx) {
+    try {
+      vertx.eventBus().registerCodec(new WikiDatabaseMessageCodec());
+    } catch (IllegalStateException ex) {
+      // Already registered by another verticle
+    }
+  }
+
+  /**
+   * @param message request received by the service
+   * @return the request, with its JSON replies sent with this codec
+   */
+  static Message<JsonObject> binaryReplies(Message<JsonObject> message) {
+    return new BinaryReplyMessage(message);
+  }
+
+  @Override
+  public void encodeToWire(Buffer buffer, Object value) {
+    int start = buffer.length();
+    buffer.appendInt(0);
+    buffer.appendByte(VERSION);
+    writeValue(buffer, value);
+    buffer.setInt(start, buffer.length() - start - 4);
+  }
+
+  @Override
+  public Object decodeFromWire(int pos, Buffer buffer) {
+    Reader reader = new Reader(buffer, pos + 4);
+    byte version = buffer.getByte(reader.position++);
+    if (version != VERSION) {
+      throw new IllegalStateException("Unsupported wiki database message version " + version);
+    }
+    return reader.readValue();
+  }
+
+  @Override
+  public Object transform(Object value) {
+    if (value instanceof JsonObject) {
+      return ((JsonObject) value).copy();
+    }
+    if (value instanceof JsonArray) {
+      return ((JsonArray) value).copy();
+    }
+    return value;
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public byte systemCodecID() {
+    return -1;
+  }
+
+  private static void writeValue(Buffer buffer, Object value) {
+    if (value == null) {
+      buffer.appendByte(NULL);
+    } else if (value instanceof Boolean) {
+      buffer.appendByte((Boolean) value ? TRUE : FALSE);
+    } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      buffer.appendByte(INT);
+      writeVarLong(buffer, zigzag(((Number) value).longValue()));
+    } else if (value instanceof Long) {
+      buffer.appendByte(LONG);
+      writeVarLong(buffer, zigzag((Long) value));
+    } else if (value instanceof Double || value instanceof Float) {
+      buffer.appendByte(DOUBLE);
+      buffer.appendDouble(((Number) value).doubleValue());
+    } else if (value instanceof CharSequence) {
+      buffer.appendByte(STRING);
+      writeString(buffer, value.toString());
+    } else if (value instanceof JsonObject) {
+      writeObject(buffer, ((JsonObject) value).getMap());
+    } else if (value instanceof Map) {
+      writeObject(buffer, (Map<?, ?>) value);
+    } else if (value instanceof JsonArray) {
+      writeArray(buffer, ((JsonArray) value).getList());
+    } else if (value instanceof List) {
+      writeArray(buffer, (List<?>) value);
+    } else if (value instanceof byte[]) {
+      buffer.appendByte(BINARY);
+      writeVarLong(buffer, ((byte[]) value).length);
+      buffer.appendBytes((byte[]) value);
+    } else if (value instanceof Instant) {
+      // Json objects hold instants as ISO strings once encoded
+      buffer.appendByte(STRING);
+      writeString(buffer, DateTimeFormatter.ISO_INSTANT.format((Instant) value));
+    } else {
+      throw new IllegalArgumentException("Cannot encode " + value.getClass().getName());
+    }
+  }
+
+  private static void writeObject(Buffer buffer, Map<?, ?> map) {
+    buffer.appendByte(OBJECT);
+    writeVarLong(buffer, map.size());
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      writeString(buffer, String.valueOf(entry.getKey()));
+      writeValue(buffer, entry.getValue());
+    }
+  }
+
+  private static void writeArray(Buffer buffer, List<?> list) {
+    buffer.appendByte(ARRAY);
+    writeVarLong(buffer, list.size());
+    for (Object item : list) {
+      writeValue(buffer, item);
+    }
+  }
+
+  private static void writeString(Buffer buffer, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarLong(buffer, bytes.length);
+    buffer.appendBytes(bytes);
+  }
+
+  private static void writeVarLong(Buffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.appendByte((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.appendByte((byte) value);
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  /**
+   * Reads values from a buffer, keeping track of the position
+   */
+  private static class Reader {
+    private final Buffer buffer;
+    private int position;
+
+    Reader(Buffer buffer, int position) {
+      this.buffer = buffer;
+      this.position = position;
+    }
+
+    Object readValue() {
+      byte tag = buffer.getByte(position++);
+      switch (tag) {
+        case NULL:
+          return null;
+        case TRUE:
+          return true;
+        case FALSE:
+          return false;
+        case INT:
+          return (int) unzigzag(readVarLong());
+        case LONG:
+          return unzigzag(readVarLong());
+        case DOUBLE:
+          double value = buffer.getDouble(position);
+          position += 8;
+          return value;
+        case STRING:
+          return readString();
+        case OBJECT:
+          int size = (int) readVarLong();
+          Map<String, Object> map = new LinkedHashMap<>(size * 4 / 3 + 1);
+          for (int i = 0; i < size; i++) {
+            String key = readString();
+            map.put(key, readValue());
+          }
+          return new JsonObject(map);
+        case ARRAY:
+          int length = (int) readVarLong();
+          List<Object> list = new ArrayList<>(length);
+          for (int i = 0; i < length; i++) {
+            list.add(readValue());
+          }
+          return new JsonArray(list);
+        case BINARY:
+          int bytes = (int) readVarLong();
+          position += bytes;
+          return buffer.getBytes(position - bytes, position);
+        default:
+          throw new IllegalStateException("Unknown value tag " + tag);
+      }
+    }
+
+    private String readString() {
+      int length = (int) readVarLong();
+      position += length;
+      return buffer.getString(position - length, position, "UTF-8");
+    }
+
+    private long readVarLong() {
+      long value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = buffer.getByte(position++);
+        value |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+
+    private static long unzigzag(long value) {
+      return (value >>> 1) ^ -(value & 1);
+    }
+  }
+
+  /**
+   * Request whose JSON replies are sent with this codec, other replies such as failures keep their own codec
+   */
+  private static class BinaryReplyMessage implements Message<JsonObject> {
+    private static final DeliveryOptions OPTIONS = new DeliveryOptions().setCodecName(NAME);
+
+    private final Message<JsonObject> delegate;
+
+    BinaryReplyMessage(Message<JsonObject> delegate) {
+      this.delegate = delegate;
+    }
+
+    private static boolean binary(Object reply) {
+      return reply instanceof JsonObject || reply instanceof JsonArray;
+    }
+
+    @Override
+    public String address() {
+      return delegate.address();
+    }
+
+    @Override
+    public MultiMap headers() {
+      return delegate.headers();
+    }
+
+    @Override
+    public JsonObject body() {
+      return delegate.body();
+    }
+
+    @Override
+    public String replyAddress() {
+      return delegate.replyAddress();
+    }
+
+    @Override
+    public boolean isSend() {
+      return delegate.isSend();
+    }
+
+    @Override
+    public void reply(Object message) {
+      if (binary(message)) {
+        delegate.reply(message, OPTIONS);
+      } else {
+        delegate.reply(message);
+      }
+    }
+
+    @Override
+    public <R> void reply(Object message, Handler<AsyncResult<Message<R>>> replyHandler) {
+      if (binary(message)) {
+        delegate.reply(message, OPTIONS, replyHandler);
+      } else {
+        delegate.reply(message, replyHandler);
+      }
+    }
+
+    @Override
+    public void reply(Object message, DeliveryOptions options) {
+      delegate.reply(message, options);
+    }
+
+    @Override
+    public <R> void reply(Object message, DeliveryOptions options, Handler<AsyncResult<Message<R>>> replyHandler) {
+      delegate.reply(message, options, replyHandler);
+    }
+
+    @Override
+    public void fail(int failureCode, String message) {
+      delegate.fail(failureCode, message);
+    }
+  }
+}
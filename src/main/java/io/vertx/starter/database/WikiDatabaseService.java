@@ -7,9 +7,11 @@ import io.vertx.codegen.annotations.VertxGen;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.starter.RequestTracer;
 
 import java.util.HashMap;
 import java.util.List;
@@ -23,8 +25,12 @@ import java.util.List;
 public interface WikiDatabaseService {
 
   @GenIgnore
-  static WikiDatabaseService create(JDBCClient dbClient, HashMap<SqlQuery, String> sqlQueries, Handler<AsyncResult<WikiDatabaseService>> readyHandler) {
-    return new WikiDatabaseServiceImpl(dbClient, sqlQueries, readyHandler);
+  static WikiDatabaseService create(JDBCClient dbClient, HashMap<SqlQuery, String> sqlQueries, PageChangePublisher changePublisher,
+                                    int changeLogRetention, ExecutionLanes lanes, int linkRebuildBatch,
+                                    RequestTracer tracer, int idStride, int idOffset,
+                                    Handler<AsyncResult<WikiDatabaseService>> readyHandler) {
+    return new WikiDatabaseServiceImpl(dbClient, sqlQueries, changePublisher, changeLogRetention, lanes,
+      linkRebuildBatch, tracer, idStride, idOffset, readyHandler);
   }
 
   @GenIgnore
@@ -32,14 +38,76 @@ public interface WikiDatabaseService {
     return new io.vertx.starter.database.rxjava.WikiDatabaseService(new WikiDatabaseServiceVertxEBProxy(vertx, address));
   }
 
+  @GenIgnore
+  static io.vertx.starter.database.rxjava.WikiDatabaseService createProxy(Vertx vertx, String address, DeliveryOptions options) {
+    return new io.vertx.starter.database.rxjava.WikiDatabaseService(new WikiDatabaseServiceVertxEBProxy(vertx, address, options));
+  }
+
+  /**
+   * Get the service registered at an address, calling it directly when it runs in this Vert.x instance and
+   * Vert.x is not clustered, through the event bus otherwise
+   *
+   * @param vertx
+   * @param address
+   * @param options delivery options of the event bus proxy, direct calls use the send timeout too
+   * @return
+   */
+  @GenIgnore
+  static io.vertx.starter.database.rxjava.WikiDatabaseService connect(Vertx vertx, String address, DeliveryOptions options) {
+    WikiDatabaseService local = vertx.isClustered() ? null : LocalWikiDatabaseService.lookup(vertx, address,
+      options.getHeaders() != null ? options.getHeaders().get(RequestTracer.HEADER) : null, options.getSendTimeout());
+    return local != null ? new io.vertx.starter.database.rxjava.WikiDatabaseService(local) : createProxy(vertx, address, options);
+  }
+
   @Fluent
   WikiDatabaseService fetchAllPages(Handler<AsyncResult<JsonArray>> resultHandler);
 
   @Fluent
-  WikiDatabaseService fetchPage(String name, Handler<AsyncResult<JsonObject>> resultHandler);
+  WikiDatabaseService fetchAllPageSummaries(Handler<AsyncResult<List<PageSummary>>> resultHandler);
+
+  @Fluent
+  WikiDatabaseService completePageName(String prefix, int limit, Handler<AsyncResult<List<PageSummary>>> resultHandler);
+
+  /**
+   * @param name
+   * @param resultHandler called with null when there is no such page
+   * @return
+   */
+  @Fluent
+  WikiDatabaseService fetchPage(String name, Handler<AsyncResult<Page>> resultHandler);
 
+  /**
+   * @param id
+   * @param resultHandler called with null when there is no such page
+   * @return
+   */
   @Fluent
-  WikiDatabaseService fetchPageById(int id, Handler<AsyncResult<JsonObject>> resultHandler);
+  WikiDatabaseService fetchPageById(int id, Handler<AsyncResult<Page>> resultHandler);
+
+  /**
+   * Tell whether a page exists from the name index, without reading the page
+   *
+   * @param id
+   * @param resultHandler
+   * @return
+   */
+  @Fluent
+  WikiDatabaseService pageExists(int id, Handler<AsyncResult<Boolean>> resultHandler);
+
+  /**
+   * Fetch a chunk of the content of a page, so that large pages can be streamed without holding the whole
+   * content in one message. The result holds <code>found</code>, the UTF-8 size of the content in
+   * <code>bytes</code> when known, the <code>version</code> of the content, changed by every save, the
+   * <code>chunk</code>, and the <code>next</code> position to fetch, -1 after the last chunk.
+   *
+   * @param id
+   * @param position      0 for the first chunk, the <code>next</code> position of the previous chunk otherwise
+   * @param length        maximum length of the chunk, in characters
+   * @param resultHandler
+   * @return
+   */
+  @Fluent
+  WikiDatabaseService fetchPageContentChunk(int id, long position, int length, Handler<AsyncResult<JsonObject>> resultHandler);
 
   @Fluent
   WikiDatabaseService createPage(String title, String markdown, Handler<AsyncResult<Void>> resultHandler);
@@ -47,9 +115,123 @@ public interface WikiDatabaseService {
   @Fluent
   WikiDatabaseService savePage(int id, String markdown, Handler<AsyncResult<Void>> resultHandler);
 
+  /**
+   * Save a page by applying a diff to its current content, when the current content is still the version the
+   * diff was made against. See {@link PageDiff}.
+   *
+   * @param id
+   * @param baseHash      {@link PageDiff#hash(String)} of the content the diff was made against
+   * @param edits         well formed edits
+   * @param resultHandler called with <code>{status, hash, bytes}</code>: the status is <code>saved</code>,
+   *                      <code>conflict</code> when the page changed since the base, <code>invalid</code> when
+   *                      the edits do not fit the base or <code>missing</code> when there is no such page; the
+   *                      hash and size in bytes are the ones of the content after the call
+   * @return
+   */
+  @Fluent
+  WikiDatabaseService patchPage(int id, String baseHash, JsonArray edits, Handler<AsyncResult<JsonObject>> resultHandler);
+
   @Fluent
   WikiDatabaseService deletePage(int id, Handler<AsyncResult<Void>> resultHandler);
 
   @Fluent
-  WikiDatabaseService fetchAllPagesData(Handler<AsyncResult<List<JsonObject>>> resultHandler);
+  WikiDatabaseService fetchAllPagesData(Handler<AsyncResult<List<Page>>> resultHandler);
+
+  /**
+   * Fetch the pages one batch at a time, for bulk jobs that must not hold every page at once
+   *
+   * @param afterId       last id of the previous batch, -1 for the first batch
+   * @param limit         maximum number of pages in the batch
+   * @param resultHandler called with the pages following <code>afterId</code> in ascending id order, empty
+   *                      after the last batch
+   * @return
+   */
+  @Fluent
+  WikiDatabaseService fetchPagesBatch(int afterId, int limit, Handler<AsyncResult<List<Page>>> resultHandler);
+
+  @Fluent
+  WikiDatabaseService fetchLastChangeSequence(Handler<AsyncResult<Long>> resultHandler);
+
+  @Fluent
+  WikiDatabaseService fetchChangesSince(long since, Handler<AsyncResult<JsonObject>> resultHandler);
+
+  /**
+   * @param id
+   * @param resultHandler called with the pages linking to the page, in ascending name order, or with null
+   *                      when there is no such page
+   * @return
+   */
+  @Fluent
+  WikiDatabaseService fetchBacklinks(int id, Handler<AsyncResult<List<PageSummary>>> resultHandler);
+
+  /**
+   * @param name
+   * @param resultHandler called with the pages linking to a page name, in ascending name order, whether there
+   *                      is a page with that name or not, used to gather the backlinks across shards
+   * @return
+   */
+  @Fluent
+  WikiDatabaseService fetchBacklinksByName(String name, Handler<AsyncResult<List<PageSummary>>> resultHandler);
+
+  /**
+   * @param resultHandler called with the pages no other page links to, in ascending name order
+   * @return
+   */
+  @Fluent
+  WikiDatabaseService fetchOrphanPages(Handler<AsyncResult<List<PageSummary>>> resultHandler);
+
+  /**
+   * @param names
+   * @param resultHandler called with the names among some page names that a page links to, links of a page to
+   *                      itself aside, used to find the orphan pages across shards
+   * @return
+   */
+  @Fluent
+  WikiDatabaseService fetchLinkedNames(List<String> names, Handler<AsyncResult<List<String>>> resultHandler);
+
+  /**
+   * Record an attachment of a page, replacing the attachment of the same name. The attachment files are kept
+   * by the HTTP verticles, only their metadata is in the database.
+   *
+   * @param pageId
+   * @param attachment    <code>{name, hash, size, contentType, created}</code>
+   * @param resultHandler called with false when there is no such page
+   * @return
+   */
+  @Fluent
+  WikiDatabaseService saveAttachment(int pageId, JsonObject attachment, Handler<AsyncResult<Boolean>> resultHandler);
+
+  /**
+   * @param pageId
+   * @param resultHandler called with the attachments of a page, in ascending name order
+   * @return
+   */
+  @Fluent
+  WikiDatabaseService fetchAttachments(int pageId, Handler<AsyncResult<JsonArray>> resultHandler);
+
+  /**
+   * @param pageId
+   * @param name
+   * @param resultHandler called with null when there is no such attachment
+   * @return
+   */
+  @Fluent
+  WikiDatabaseService fetchAttachment(int pageId, String name, Handler<AsyncResult<JsonObject>> resultHandler);
+
+  /**
+   * @param pageId
+   * @param name
+   * @param resultHandler called with whether there was such an attachment
+   * @return
+   */
+  @Fluent
+  WikiDatabaseService deleteAttachment(int pageId, String name, Handler<AsyncResult<Boolean>> resultHandler);
+
+  /**
+   * @param resultHandler called with the concurrency caps, load and queue and run time percentiles of the
+   *                      execution lanes, and the counts of the coalesced page reads
+   * @return
+   */
+  @Fluent
+  WikiDatabaseService fetchExecutionStats(Handler<AsyncResult<JsonObject>> resultHandler);
 }
@@ -1,20 +1,29 @@
 package io.vertx.starter.database;
 
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import io.vertx.ext.sql.ResultSet;
 import io.vertx.rx.java.RxHelper;
 import io.vertx.rxjava.ext.jdbc.JDBCClient;
 import io.vertx.rxjava.ext.sql.SQLConnection;
-import rx.Observable;
+import io.vertx.starter.RequestTracer;
+import io.vertx.starter.SingleFlight;
+import io.vertx.starter.database.ExecutionLanes.Lane;
 import rx.Single;
+import rx.functions.Func1;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Created by wujun on 2017/7/19.
@@ -25,55 +34,345 @@ public class WikiDatabaseServiceImpl implements WikiDatabaseService {
 
   private final HashMap<SqlQuery, String> sqlQueries;
   private final JDBCClient dbClient;
+  private final PageChangePublisher changePublisher;
+  private final int changeLogRetention;
+  private final int changeLogCompactionInterval;
+  private final PageNameIndex nameIndex = new PageNameIndex();
+  private final ExecutionLanes lanes;
+  private final LinkIndex linkIndex = new LinkIndex(nameIndex);
+  private final int linkRebuildBatch;
+  private final RequestTracer tracer;
+  private final SingleFlight<Integer, Page> readsById = new SingleFlight<>();
+  private final SingleFlight<String, Page> readsByName = new SingleFlight<>();
 
   /**
    * Init class instance
    *
    * @param dbClient
    * @param sqlQueries
+   * @param changePublisher
+   * @param changeLogRetention number of changes kept in the change log
+   * @param lanes              lanes the queries run in
+   * @param linkRebuildBatch   number of pages read per batch when rebuilding the link index
+   * @param tracer
+   * @param idStride           number of shards, page ids are allocated modulo the number of shards
+   * @param idOffset           shard of the service, the remainder of the ids it allocates
    * @param readyHandler
    */
   WikiDatabaseServiceImpl(io.vertx.ext.jdbc.JDBCClient dbClient, HashMap<SqlQuery, String> sqlQueries,
+                          PageChangePublisher changePublisher, int changeLogRetention, ExecutionLanes lanes,
+                          int linkRebuildBatch, RequestTracer tracer, int idStride, int idOffset,
                           Handler<AsyncResult<WikiDatabaseService>> readyHandler) {
     this.dbClient = new JDBCClient(dbClient);
     this.sqlQueries = sqlQueries;
+    this.changePublisher = changePublisher;
+    this.changeLogRetention = changeLogRetention;
+    this.lanes = lanes;
+    this.linkRebuildBatch = Math.max(1, linkRebuildBatch);
+    this.tracer = tracer;
+    this.changeLogCompactionInterval = Math.max(1, changeLogRetention / 10);
 
     getConnection()
-      .flatMap(conn -> conn.rxExecute(sqlQueries.get(SqlQuery.CREATE_PAGES_TABLE)))
-      .map(v -> this)
+      .flatMap(conn -> conn.rxExecute(sqlQueries.get(SqlQuery.CREATE_PAGES_TABLE))
+        .flatMap(v -> conn.rxQuery(sqlQueries.get(SqlQuery.CONTENT_BYTES_COLUMN)))
+        // Tables created before content sizes were recorded get the column, their sizes stay unknown until saved
+        .flatMap(column -> column.getResults().get(0).getLong(0) > 0 ? Single.just((Void) null)
+          : conn.rxExecute(sqlQueries.get(SqlQuery.ADD_CONTENT_BYTES_COLUMN)))
+        .flatMap(v -> conn.rxQuery(sqlQueries.get(SqlQuery.CONTENT_VERSION_COLUMN)))
+        .flatMap(column -> column.getResults().get(0).getLong(0) > 0 ? Single.just((Void) null)
+          : conn.rxExecute(sqlQueries.get(SqlQuery.ADD_CONTENT_VERSION_COLUMN)))
+        // Pages of tables created before the link table was kept up to date get their links parsed once
+        .flatMap(v -> conn.rxQuery(sqlQueries.get(SqlQuery.LINKS_INDEXED_COLUMN)))
+        .flatMap(column -> column.getResults().get(0).getLong(0) > 0 ? Single.just((Void) null)
+          : conn.rxExecute(sqlQueries.get(SqlQuery.ADD_LINKS_INDEXED_COLUMN)))
+        .flatMap(v -> conn.rxExecute(sqlQueries.get(SqlQuery.CREATE_CHANGES_TABLE)))
+        .flatMap(v -> conn.rxExecute(sqlQueries.get(SqlQuery.CREATE_LINKS_TABLE)))
+        .flatMap(v -> conn.rxExecute(sqlQueries.get(SqlQuery.CREATE_ATTACHMENTS_TABLE)))
+        .flatMap(v -> conn.rxQuery(sqlQueries.get(SqlQuery.ALL_PAGE_NAMES)))
+        .flatMap(pages -> shardPageIds(conn, pages.getResults(), idStride, idOffset).map(v -> pages)))
+      .map(pages -> {
+        pages.getResults().forEach(row -> nameIndex.put(row.getString(1), row.getInteger(0)));
+        return this;
+      })
+      // Backlinks and orphans are only right once the link index is complete, the service is not ready before
+      .flatMap(service -> rebuildLinks().map(v -> service))
       .subscribe(RxHelper.toSubscriber(readyHandler));
   }
 
   /**
-   * Get connection with db
+   * Make the page ids of a shard follow its residue class, once, when the table is not set up for the number
+   * of shards yet. Ids continue after the highest existing id.
+   *
+   * @param conn
+   * @param pages    id and name of the existing pages
+   * @param idStride
+   * @param idOffset
+   * @return
+   */
+  private Single<Void> shardPageIds(SQLConnection conn, List<JsonArray> pages, int idStride, int idOffset) {
+    if (idStride <= 1) {
+      return Single.just(null);
+    }
+    return conn.rxQuery(sqlQueries.get(SqlQuery.PAGE_ID_INCREMENT)).flatMap(increment -> {
+      if (Integer.parseInt(increment.getResults().get(0).getString(0)) == idStride) {
+        return Single.just(null);
+      }
+      int next = pages.stream().mapToInt(row -> row.getInteger(0)).max().orElse(-1) + 1;
+      next += Math.floorMod(idOffset - next, idStride);
+      return conn.rxExecute(String.format(sqlQueries.get(SqlQuery.SHARD_PAGE_IDS), next, idStride));
+    });
+  }
+
+  /**
+   * Rebuild the link index from the link table, one batch of pages at a time in the bulk lane. The links of
+   * the pages that are not in the link table yet are parsed from their contents and written to the table.
+   *
+   * @return
+   */
+  private Single<Void> rebuildLinks() {
+    linkIndex.startRebuild();
+    return rebuildLinks(-1, 0, 0).doOnError(t -> {
+      linkIndex.endRebuild();
+      LOGGER.error("Could not rebuild the link index", t);
+    });
+  }
+
+  /**
+   * @param afterId last page id of the previous batch
+   * @param indexed number of pages indexed so far
+   * @param parsed  number of pages whose links were parsed from their contents so far
+   * @return
+   */
+  private Single<Void> rebuildLinks(int afterId, int indexed, int parsed) {
+    return inTransaction(Lane.BULK, conn -> conn.rxQueryWithParams(sqlQueries.get(SqlQuery.PAGES_LINKS_BATCH),
+      new JsonArray().add(afterId).add(linkRebuildBatch))
+      .flatMap(result -> {
+        List<JsonArray> rows = result.getResults();
+        if (rows.isEmpty()) {
+          return Single.just(new LinkBatch(rows, Collections.emptyMap()));
+        }
+        JsonArray range = new JsonArray().add(afterId).add(rows.get(rows.size() - 1).getInteger(0));
+        return conn.rxQueryWithParams(sqlQueries.get(SqlQuery.PAGE_LINKS_RANGE), range).flatMap(links -> {
+          Map<Integer, Set<String>> targets = new HashMap<>();
+          links.getResults().forEach(link ->
+            targets.computeIfAbsent(link.getInteger(0), id -> new HashSet<>()).add(link.getString(1)));
+          List<JsonArray> unindexed = rows.stream().filter(row -> !row.getBoolean(1)).collect(Collectors.toList());
+          if (unindexed.isEmpty()) {
+            return Single.just(new LinkBatch(rows, targets));
+          }
+          List<JsonArray> ids = new ArrayList<>();
+          List<JsonArray> linkRows = new ArrayList<>();
+          unindexed.forEach(row -> {
+            ids.add(new JsonArray().add(row.getInteger(0)));
+            linkRows.addAll(linkRows(row.getInteger(0), row.getString(2)));
+            targets.put(row.getInteger(0), LinkIndex.extractLinks(row.getString(2)));
+          });
+          return conn.rxBatchWithParams(sqlQueries.get(SqlQuery.DELETE_PAGE_LINKS), ids)
+            .flatMap(res -> linkRows.isEmpty() ? Single.just(res)
+              : conn.rxBatchWithParams(sqlQueries.get(SqlQuery.INSERT_PAGE_LINK), linkRows))
+            .flatMap(res -> conn.rxBatchWithParams(sqlQueries.get(SqlQuery.MARK_LINKS_INDEXED), ids))
+            .map(res -> new LinkBatch(rows, targets, unindexed.size()));
+        });
+      }))
+      .flatMap(batch -> {
+        if (batch.rows.isEmpty()) {
+          linkIndex.endRebuild();
+          LOGGER.info("Link index rebuilt from " + indexed + " pages, " + parsed + " of them parsed from their content");
+          return Single.just((Void) null);
+        }
+        batch.rows.forEach(row -> linkIndex.rebuilt(row.getInteger(0),
+          batch.targets.getOrDefault(row.getInteger(0), Collections.emptySet())));
+        return rebuildLinks(batch.rows.get(batch.rows.size() - 1).getInteger(0), indexed + batch.rows.size(),
+          parsed + batch.parsed);
+      });
+  }
+
+  /**
+   * Pages of a link index rebuild batch and their links
+   */
+  private static class LinkBatch {
+    final List<JsonArray> rows;
+    final Map<Integer, Set<String>> targets;
+    final int parsed;
+
+    LinkBatch(List<JsonArray> rows, Map<Integer, Set<String>> targets) {
+      this(rows, targets, 0);
+    }
+
+    LinkBatch(List<JsonArray> rows, Map<Integer, Set<String>> targets, int parsed) {
+      this.rows = rows;
+      this.targets = targets;
+      this.parsed = parsed;
+    }
+  }
+
+  /**
+   * @param id
+   * @param markdown
+   * @return the link table rows of a page, links to names too long to be page names are left out
+   */
+  private static List<JsonArray> linkRows(int id, String markdown) {
+    List<JsonArray> rows = new ArrayList<>();
+    for (String target : LinkIndex.extractLinks(markdown)) {
+      if (target.length() <= 255) {
+        rows.add(new JsonArray().add(id).add(target));
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Replace the rows of a page in the link table
+   *
+   * @param conn
+   * @param id
+   * @param markdown
+   * @return
+   */
+  private Single<Void> writeLinks(SQLConnection conn, int id, String markdown) {
+    List<JsonArray> links = linkRows(id, markdown);
+    Single<Void> deleted = conn.rxUpdateWithParams(sqlQueries.get(SqlQuery.DELETE_PAGE_LINKS), new JsonArray().add(id))
+      .map(res -> (Void) null);
+    return links.isEmpty() ? deleted : deleted
+      .flatMap(v -> conn.rxBatchWithParams(sqlQueries.get(SqlQuery.INSERT_PAGE_LINK), links))
+      .map(res -> (Void) null);
+  }
+
+  /**
+   * Get connection with db, traced calls record the time they wait for the pool
    *
    * @return
    */
   private Single<SQLConnection> getConnection() {
+    String trace = RequestTracer.current();
+    long requested = System.nanoTime();
     return dbClient.rxGetConnection().flatMap(conn -> {
+      tracer.span(trace, "db.pool_acquire", requested);
       Single<SQLConnection> connectionSingle = Single.just(conn);
       return connectionSingle.doOnUnsubscribe(conn::close);
     });
   }
 
   /**
-   * Fetch all pages from db
+   * Run some work in a transaction in the write lane, committed when the work succeeds and rolled back otherwise
+   *
+   * @param work
+   * @param <T>
+   * @return
+   */
+  private <T> Single<T> inTransaction(Func1<SQLConnection, Single<T>> work) {
+    return inTransaction(Lane.WRITE, work);
+  }
+
+  /**
+   * Run some work in a transaction in a lane, committed when the work succeeds and rolled back otherwise. The
+   * connection goes back to the pool in auto-commit mode either way.
+   *
+   * @param lane
+   * @param work
+   * @param <T>
+   * @return
+   */
+  private <T> Single<T> inTransaction(Lane lane, Func1<SQLConnection, Single<T>> work) {
+    return lanes.single(lane, () -> getConnection().flatMap(conn -> conn.rxSetAutoCommit(false)
+      .flatMap(v -> work.call(conn))
+      .flatMap(result -> conn.rxCommit().map(v -> result))
+      .flatMap(result -> conn.rxSetAutoCommit(true).map(v -> result))
+      .onErrorResumeNext(t -> conn.rxRollback()
+        .onErrorReturn(rollbackFailure -> null)
+        .flatMap(v -> conn.rxSetAutoCommit(true))
+        .onErrorReturn(autoCommitFailure -> null)
+        .flatMap(v -> Single.<T>error(t)))));
+  }
+
+  /**
+   * Append a change to the change log, every few changes the log is compacted down to its retention
+   *
+   * @param conn
+   * @param type
+   * @param pageId
+   * @param name
+   * @return the sequence number of the change
+   */
+  private Single<Long> recordChange(SQLConnection conn, String type, int pageId, String name) {
+    JsonArray params = new JsonArray().add(pageId).add(type);
+    if (name != null) {
+      params.add(name);
+    } else {
+      params.addNull();
+    }
+    return conn.rxUpdateWithParams(sqlQueries.get(SqlQuery.RECORD_CHANGE), params)
+      .map(res -> res.getKeys().getLong(0))
+      .flatMap(sequence -> {
+        if (sequence % changeLogCompactionInterval != 0) {
+          return Single.just(sequence);
+        }
+        JsonArray compactParams = new JsonArray().add(sequence - changeLogRetention);
+        return conn.rxUpdateWithParams(sqlQueries.get(SqlQuery.COMPACT_CHANGES), compactParams)
+          .map(res -> sequence);
+      });
+  }
+
+  /**
+   * @param content
+   * @return the size of the content encoded in UTF-8, without encoding it
+   */
+  private static int utf8Length(String content) {
+    int length = 0;
+    for (int i = 0; i < content.length(); i++) {
+      char c = content.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < content.length() && Character.isLowSurrogate(content.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        // Unpaired surrogates are encoded as '?'
+        length++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Fetch all page names, sorted, from the name index
    *
    * @param resultHandler
    * @return
    */
   @Override
   public WikiDatabaseService fetchAllPages(Handler<AsyncResult<JsonArray>> resultHandler) {
-    getConnection()
-      .flatMap(conn -> conn.rxQuery(sqlQueries.get(SqlQuery.ALL_PAGES)))
-      .flatMapObservable(res -> {
-        List<JsonArray> results = res.getResults();
-        return Observable.from(results);
-      })
-      .map(json -> json.getString(0))
-      .sorted()
-      .collect(JsonArray::new, JsonArray::add)
-      .subscribe(RxHelper.toSubscriber(resultHandler));
+    resultHandler.handle(Future.succeededFuture(nameIndex.names()));
+    return this;
+  }
+
+  /**
+   * Fetch the id and name of all the pages, sorted by name, from the name index
+   *
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService fetchAllPageSummaries(Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(nameIndex.summaries()));
+    return this;
+  }
+
+  /**
+   * Complete a page name prefix from the name index
+   *
+   * @param prefix
+   * @param limit
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService completePageName(String prefix, int limit, Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(nameIndex.complete(prefix, limit)));
     return this;
   }
 
@@ -85,21 +384,11 @@ public class WikiDatabaseServiceImpl implements WikiDatabaseService {
    * @return
    */
   @Override
-  public WikiDatabaseService fetchPage(String name, Handler<AsyncResult<JsonObject>> resultHandler) {
-    getConnection()
+  public WikiDatabaseService fetchPage(String name, Handler<AsyncResult<Page>> resultHandler) {
+    readsByName.execute(name, handler -> lanes.single(Lane.READ, () -> getConnection()
       .flatMap(conn -> conn.rxQueryWithParams(sqlQueries.get(SqlQuery.GET_PAGE), new JsonArray().add(name)))
-      .map(result -> {
-        if (result.getNumRows() > 0) {
-          JsonArray row = result.getResults().get(0);
-          return new JsonObject()
-            .put("found", true)
-            .put("id", row.getInteger(0))
-            .put("rawContent", row.getString(1));
-        } else {
-          return new JsonObject().put("found", false);
-        }
-      })
-      .subscribe(RxHelper.toSubscriber(resultHandler));
+      .map(result -> result.getNumRows() > 0 ? Page.fromRow(result.getResults().get(0)) : null))
+      .subscribe(RxHelper.toSubscriber(handler)), resultHandler);
     return this;
   }
 
@@ -111,23 +400,74 @@ public class WikiDatabaseServiceImpl implements WikiDatabaseService {
    * @return
    */
   @Override
-  public WikiDatabaseService fetchPageById(int id, Handler<AsyncResult<JsonObject>> resultHandler) {
-    Single<SQLConnection> connection = getConnection();
-    Single<ResultSet> resultSet = connection
-      .flatMap(conn -> conn.rxQueryWithParams(sqlQueries.get(SqlQuery.GET_PAGE_BY_ID), new JsonArray().add(id)));
-    resultSet
+  public WikiDatabaseService fetchPageById(int id, Handler<AsyncResult<Page>> resultHandler) {
+    readsById.execute(id, handler -> lanes.single(Lane.READ, () -> getConnection()
+      .flatMap(conn -> conn.rxQueryWithParams(sqlQueries.get(SqlQuery.GET_PAGE_BY_ID), new JsonArray().add(id)))
+      .map(result -> result.getNumRows() > 0 ? Page.fromRow(result.getResults().get(0)) : null))
+      .subscribe(RxHelper.toSubscriber(handler)), resultHandler);
+    return this;
+  }
+
+  /**
+   * Tell whether a page exists from the name index
+   *
+   * @param id
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService pageExists(int id, Handler<AsyncResult<Boolean>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(nameIndex.name(id) != null));
+    return this;
+  }
+
+  /**
+   * Let the reads of a page arriving after a write read it again instead of joining a read in flight
+   *
+   * @param id
+   * @param name
+   */
+  private void forgetReads(int id, String name) {
+    readsById.forget(id);
+    if (name != null) {
+      readsByName.forget(name);
+    }
+  }
+
+  /**
+   * Fetch a chunk of the content of a page, positions are offsets in characters
+   *
+   * @param id
+   * @param position
+   * @param length
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService fetchPageContentChunk(int id, long position, int length, Handler<AsyncResult<JsonObject>> resultHandler) {
+    lanes.single(Lane.READ, () -> getConnection()
+      .flatMap(conn -> conn.rxQueryWithParams(sqlQueries.get(SqlQuery.GET_PAGE_CONTENT_CHUNK),
+        new JsonArray().add(position + 1).add(Math.max(length, 2)).add(id)))
       .map(result -> {
-        if (result.getNumRows() > 0) {
-          JsonObject row = result.getRows().get(0);
-          return new JsonObject()
-            .put("found", true)
-            .put("id", row.getInteger("ID"))
-            .put("name", row.getString("NAME"))
-            .put("content", row.getString("CONTENT"));
-        } else {
+        if (result.getNumRows() == 0) {
           return new JsonObject().put("found", false);
         }
-      })
+        JsonArray row = result.getResults().get(0);
+        long contentLength = row.getLong(0) != null ? row.getLong(0) : 0L;
+        String chunk = row.getString(2) != null ? row.getString(2) : "";
+        long next = position + chunk.length();
+        // Keep surrogate pairs in one chunk so that each chunk can be encoded on its own
+        if (next < contentLength && !chunk.isEmpty() && Character.isHighSurrogate(chunk.charAt(chunk.length() - 1))) {
+          chunk = chunk.substring(0, chunk.length() - 1);
+          next--;
+        }
+        return new JsonObject()
+          .put("found", true)
+          .put("bytes", row.getInteger(1))
+          .put("version", row.getLong(3))
+          .put("chunk", chunk)
+          .put("next", next < contentLength ? next : -1L);
+      }))
       .subscribe(RxHelper.toSubscriber(resultHandler));
     return this;
   }
@@ -142,9 +482,18 @@ public class WikiDatabaseServiceImpl implements WikiDatabaseService {
    */
   @Override
   public WikiDatabaseService createPage(String title, String markdown, Handler<AsyncResult<Void>> resultHandler) {
-    getConnection()
-      .flatMap(conn -> conn.rxUpdateWithParams(sqlQueries.get(SqlQuery.CREATE_PAGE), new JsonArray().add(title).add(markdown)))
-      .map(res -> (Void) null)
+    inTransaction(conn -> conn.rxUpdateWithParams(sqlQueries.get(SqlQuery.CREATE_PAGE), new JsonArray().add(title).add(markdown).add(utf8Length(markdown)))
+      .map(res -> res.getKeys().getInteger(0))
+      .flatMap(id -> writeLinks(conn, id, markdown)
+        .flatMap(v -> recordChange(conn, PageChangePublisher.CREATED, id, title))
+        .map(sequence -> new JsonObject().put("id", id).put("sequence", sequence))))
+      .map(change -> {
+        forgetReads(change.getInteger("id"), title);
+        nameIndex.put(title, change.getInteger("id"));
+        linkIndex.saved(change.getInteger("id"), markdown);
+        changePublisher.created(change.getLong("sequence"), change.getInteger("id"), title);
+        return (Void) null;
+      })
       .subscribe(RxHelper.toSubscriber(resultHandler));
     return this;
   }
@@ -159,9 +508,67 @@ public class WikiDatabaseServiceImpl implements WikiDatabaseService {
    */
   @Override
   public WikiDatabaseService savePage(int id, String markdown, Handler<AsyncResult<Void>> resultHandler) {
-    getConnection()
-      .flatMap(conn -> conn.rxUpdateWithParams(sqlQueries.get(SqlQuery.SAVE_PAGE), new JsonArray().add(markdown).add(id)))
-      .map(res -> (Void) null)
+    inTransaction(conn -> conn.rxUpdateWithParams(sqlQueries.get(SqlQuery.SAVE_PAGE), new JsonArray().add(markdown).add(utf8Length(markdown)).add(id))
+      .flatMap(res -> res.getUpdated() > 0 ? writeLinks(conn, id, markdown)
+        .flatMap(v -> recordChange(conn, PageChangePublisher.UPDATED, id, null)) : Single.just(-1L)))
+      .map(sequence -> {
+        if (sequence >= 0) {
+          forgetReads(id, nameIndex.name(id));
+          linkIndex.saved(id, markdown);
+          changePublisher.updated(sequence, id);
+        }
+        return (Void) null;
+      })
+      .subscribe(RxHelper.toSubscriber(resultHandler));
+    return this;
+  }
+
+  /**
+   * Save a page by applying a diff to its current content. The content version is compared again when it is
+   * updated, so that a save made meanwhile is reported as a conflict instead of being overwritten.
+   *
+   * @param id
+   * @param baseHash
+   * @param edits
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService patchPage(int id, String baseHash, JsonArray edits, Handler<AsyncResult<JsonObject>> resultHandler) {
+    String[] patched = {null};
+    inTransaction(conn -> conn.rxQueryWithParams(sqlQueries.get(SqlQuery.GET_PAGE_VERSION), new JsonArray().add(id))
+      .flatMap(result -> {
+        if (result.getNumRows() == 0) {
+          return Single.just(new JsonObject().put("status", "missing"));
+        }
+        String current = result.getResults().get(0).getString(0);
+        int version = result.getResults().get(0).getInteger(1);
+        JsonObject unchanged = new JsonObject().put("hash", PageDiff.hash(current)).put("bytes", utf8Length(current));
+        if (!baseHash.equals(unchanged.getString("hash"))) {
+          return Single.just(unchanged.put("status", "conflict"));
+        }
+        patched[0] = PageDiff.apply(current, edits);
+        if (patched[0] == null) {
+          return Single.just(unchanged.put("status", "invalid"));
+        }
+        int bytes = utf8Length(patched[0]);
+        return conn.rxUpdateWithParams(sqlQueries.get(SqlQuery.PATCH_PAGE),
+          new JsonArray().add(patched[0]).add(bytes).add(id).add(version))
+          .flatMap(res -> res.getUpdated() == 0 ? Single.just(unchanged.put("status", "conflict"))
+            : writeLinks(conn, id, patched[0])
+            .flatMap(v -> recordChange(conn, PageChangePublisher.UPDATED, id, null))
+            .map(sequence -> new JsonObject().put("status", "saved").put("hash", PageDiff.hash(patched[0]))
+              .put("bytes", bytes).put("sequence", sequence)));
+      }))
+      .map(outcome -> {
+        Long sequence = (Long) outcome.remove("sequence");
+        if (sequence != null) {
+          forgetReads(id, nameIndex.name(id));
+          linkIndex.saved(id, patched[0]);
+          changePublisher.updated(sequence, id);
+        }
+        return outcome;
+      })
       .subscribe(RxHelper.toSubscriber(resultHandler));
     return this;
   }
@@ -175,12 +582,23 @@ public class WikiDatabaseServiceImpl implements WikiDatabaseService {
    */
   @Override
   public WikiDatabaseService deletePage(int id, Handler<AsyncResult<Void>> resultHandler) {
-    getConnection()
-      .flatMap(connection -> {
-        JsonArray data = new JsonArray().add(id);
-        return connection.rxUpdateWithParams(sqlQueries.get(SqlQuery.DELETE_PAGE), data);
+    inTransaction(connection -> {
+      JsonArray data = new JsonArray().add(id);
+      return connection.rxUpdateWithParams(sqlQueries.get(SqlQuery.DELETE_PAGE), data)
+        .flatMap(res -> res.getUpdated() > 0 ? connection.rxUpdateWithParams(sqlQueries.get(SqlQuery.DELETE_PAGE_LINKS), data)
+          .flatMap(links -> connection.rxUpdateWithParams(sqlQueries.get(SqlQuery.DELETE_PAGE_ATTACHMENTS), data))
+          .flatMap(attachments -> recordChange(connection, PageChangePublisher.DELETED, id, null)) : Single.just(-1L));
+    })
+      .map(sequence -> {
+        if (sequence >= 0) {
+          String name = nameIndex.name(id);
+          forgetReads(id, name);
+          nameIndex.remove(id);
+          linkIndex.deleted(id, name);
+          changePublisher.deleted(sequence, id);
+        }
+        return (Void) null;
       })
-      .map(res -> (Void) null)
       .subscribe(RxHelper.toSubscriber(resultHandler));
     return this;
   }
@@ -192,13 +610,244 @@ public class WikiDatabaseServiceImpl implements WikiDatabaseService {
    * @return
    */
   @Override
-  public WikiDatabaseService fetchAllPagesData(Handler<AsyncResult<List<JsonObject>>> resultHandler) {
-    getConnection()
+  public WikiDatabaseService fetchAllPagesData(Handler<AsyncResult<List<Page>>> resultHandler) {
+    lanes.single(Lane.BULK, () -> getConnection()
       .flatMap(connection -> connection.rxQuery(sqlQueries.get(SqlQuery.ALL_PAGES_DATA)))
-      .map(ResultSet::getRows)
+      .map(result -> result.getResults().stream().map(Page::fromRow).collect(Collectors.toList())))
       .subscribe(RxHelper.toSubscriber(resultHandler));
     return this;
   }
-}
 
+  /**
+   * Fetch a batch of pages in id order
+   *
+   * @param afterId
+   * @param limit
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService fetchPagesBatch(int afterId, int limit, Handler<AsyncResult<List<Page>>> resultHandler) {
+    lanes.single(Lane.BULK, () -> getConnection()
+      .flatMap(connection -> connection.rxQueryWithParams(sqlQueries.get(SqlQuery.PAGES_BATCH),
+        new JsonArray().add(afterId).add(limit)))
+      .map(result -> result.getResults().stream().map(Page::fromRow).collect(Collectors.toList())))
+      .subscribe(RxHelper.toSubscriber(resultHandler));
+    return this;
+  }
+
+  /**
+   * Fetch the sequence number of the last recorded change, 0 when none
+   *
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService fetchLastChangeSequence(Handler<AsyncResult<Long>> resultHandler) {
+    lanes.single(Lane.READ, () -> getConnection()
+      .flatMap(conn -> conn.rxQuery(sqlQueries.get(SqlQuery.CHANGES_BOUNDS)))
+      .map(bounds -> {
+        Long last = bounds.getResults().get(0).getLong(0);
+        return last != null ? last : 0L;
+      }))
+      .subscribe(RxHelper.toSubscriber(resultHandler));
+    return this;
+  }
+
+  /**
+   * Fetch the changes recorded after a sequence number
+   *
+   * @param since         last sequence number known by the caller, 0 when none
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService fetchChangesSince(long since, Handler<AsyncResult<JsonObject>> resultHandler) {
+    lanes.single(Lane.READ, () -> getConnection()
+      .flatMap(conn -> conn.rxQuery(sqlQueries.get(SqlQuery.CHANGES_BOUNDS))
+        .flatMap(bounds -> {
+          JsonArray row = bounds.getResults().get(0);
+          long last = row.getLong(0) != null ? row.getLong(0) : 0L;
+          long first = row.getLong(1) != null ? row.getLong(1) : last + 1;
+          // Changes between since and first were compacted away, or the caller knows a different log
+          if (since < first - 1 || since > last) {
+            return Single.just(new JsonObject()
+              .put("sequence", last)
+              .put("resyncRequired", true)
+              .put("changes", new JsonArray()));
+          }
+          return conn.rxQueryWithParams(sqlQueries.get(SqlQuery.CHANGES_SINCE), new JsonArray().add(since))
+            .map(res -> {
+              JsonArray changes = new JsonArray();
+              for (JsonArray change : res.getResults()) {
+                changes.add(new JsonObject()
+                  .put("sequence", change.getLong(0))
+                  .put("type", change.getString(1))
+                  .put("id", change.getInteger(2))
+                  .put("name", change.getString(3)));
+              }
+              return new JsonObject()
+                .put("sequence", last)
+                .put("resyncRequired", false)
+                .put("changes", changes);
+            });
+        })))
+      .subscribe(RxHelper.toSubscriber(resultHandler));
+    return this;
+  }
+
+  /**
+   * Fetch the pages linking to a page from the link index
+   *
+   * @param id
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService fetchBacklinks(int id, Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(linkIndex.backlinks(id)));
+    return this;
+  }
+
+  /**
+   * Fetch the pages linking to a page name from the link index
+   *
+   * @param name
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService fetchBacklinksByName(String name, Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(linkIndex.backlinks(name)));
+    return this;
+  }
 
+  /**
+   * Fetch the pages no other page links to from the link index
+   *
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService fetchOrphanPages(Handler<AsyncResult<List<PageSummary>>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(linkIndex.orphans()));
+    return this;
+  }
+
+  /**
+   * Fetch the names some page links to from the link index
+   *
+   * @param names
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService fetchLinkedNames(List<String> names, Handler<AsyncResult<List<String>>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(linkIndex.linked(names)));
+    return this;
+  }
+
+  /**
+   * Record an attachment, the row is only inserted when the page exists
+   *
+   * @param pageId
+   * @param attachment
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService saveAttachment(int pageId, JsonObject attachment, Handler<AsyncResult<Boolean>> resultHandler) {
+    String name = attachment.getString("name");
+    inTransaction(conn -> conn.rxUpdateWithParams(sqlQueries.get(SqlQuery.DELETE_ATTACHMENT), new JsonArray().add(pageId).add(name))
+      .flatMap(deleted -> conn.rxUpdateWithParams(sqlQueries.get(SqlQuery.INSERT_ATTACHMENT), new JsonArray()
+        .add(name)
+        .add(attachment.getString("hash"))
+        .add(attachment.getLong("size"))
+        .add(attachment.getString("contentType"))
+        .add(attachment.getLong("created"))
+        .add(pageId)))
+      .map(inserted -> inserted.getUpdated() > 0))
+      .subscribe(RxHelper.toSubscriber(resultHandler));
+    return this;
+  }
+
+  /**
+   * Fetch the attachments of a page
+   *
+   * @param pageId
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService fetchAttachments(int pageId, Handler<AsyncResult<JsonArray>> resultHandler) {
+    lanes.single(Lane.READ, () -> getConnection()
+      .flatMap(conn -> conn.rxQueryWithParams(sqlQueries.get(SqlQuery.PAGE_ATTACHMENTS), new JsonArray().add(pageId)))
+      .map(result -> {
+        JsonArray attachments = new JsonArray();
+        result.getResults().forEach(row -> attachments.add(attachmentFromRow(row)));
+        return attachments;
+      }))
+      .subscribe(RxHelper.toSubscriber(resultHandler));
+    return this;
+  }
+
+  /**
+   * Fetch an attachment of a page by name
+   *
+   * @param pageId
+   * @param name
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService fetchAttachment(int pageId, String name, Handler<AsyncResult<JsonObject>> resultHandler) {
+    lanes.single(Lane.READ, () -> getConnection()
+      .flatMap(conn -> conn.rxQueryWithParams(sqlQueries.get(SqlQuery.GET_ATTACHMENT), new JsonArray().add(pageId).add(name)))
+      .map(result -> result.getNumRows() > 0 ? attachmentFromRow(result.getResults().get(0)) : null))
+      .subscribe(RxHelper.toSubscriber(resultHandler));
+    return this;
+  }
+
+  /**
+   * Delete an attachment of a page by name
+   *
+   * @param pageId
+   * @param name
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService deleteAttachment(int pageId, String name, Handler<AsyncResult<Boolean>> resultHandler) {
+    inTransaction(conn -> conn.rxUpdateWithParams(sqlQueries.get(SqlQuery.DELETE_ATTACHMENT), new JsonArray().add(pageId).add(name))
+      .map(deleted -> deleted.getUpdated() > 0))
+      .subscribe(RxHelper.toSubscriber(resultHandler));
+    return this;
+  }
+
+  /**
+   * @param row <code>Name, Hash, Size, ContentType, Created</code>
+   * @return
+   */
+  private static JsonObject attachmentFromRow(JsonArray row) {
+    return new JsonObject()
+      .put("name", row.getString(0))
+      .put("hash", row.getString(1))
+      .put("size", row.getLong(2))
+      .put("contentType", row.getString(3))
+      .put("created", row.getLong(4));
+  }
+
+  /**
+   * Fetch the load and latencies of the execution lanes, and how many page reads were coalesced
+   *
+   * @param resultHandler
+   * @return
+   */
+  @Override
+  public WikiDatabaseService fetchExecutionStats(Handler<AsyncResult<JsonObject>> resultHandler) {
+    resultHandler.handle(Future.succeededFuture(lanes.stats().put("singleFlight", new JsonObject()
+      .put("byId", readsById.stats())
+      .put("byName", readsByName.stats()))));
+    return this;
+  }
+}
@@ -1,14 +1,19 @@
 package io.vertx.starter.database;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.jdbc.JDBCClient;
 import io.vertx.serviceproxy.ProxyHelper;
+import io.vertx.starter.RequestTracer;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Properties;
 
@@ -20,8 +25,36 @@ public class WikiDatabaseVerticle extends AbstractVerticle {
   public static final String CONFIG_WIKIDB_JDBC_URL = "wikidb.jdbc.url";
   public static final String CONFIG_WIKIDB_JDBC_DRIVER_CLASS = "wikidb.jdbc.driver_class";
   public static final String CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE = "wikidb.jdbc.max_pool_size";
+  public static final String CONFIG_WIKIDB_JDBC_MIN_POOL_SIZE = "wikidb.jdbc.min_pool_size";
   public static final String CONFIG_WIKIDB_SQL_QUERIES_RESOURCE_FILE = "wikidb.sqlqueries.resource.file";
   public static final String CONFIG_WIKIDB_QUEUE = "wikidb.queue";
+  public static final String CONFIG_WIKIDB_BINARY_CODEC = "wikidb.binary_codec";
+  public static final String CONFIG_WIKIDB_EVENTS_ADDRESS = "wikidb.events.address";
+  public static final String CONFIG_WIKIDB_EVENTS_BATCH_WINDOW = "wikidb.events.batch_window";
+  public static final String CONFIG_WIKIDB_CHANGELOG_RETENTION = "wikidb.changelog.retention";
+  public static final String CONFIG_WIKIDB_BACKEND = "wikidb.backend";
+  public static final String CONFIG_WIKIDB_LOGSTORE_PATH = "wikidb.logstore.path";
+  public static final String CONFIG_WIKIDB_LOGSTORE_SEGMENT_SIZE = "wikidb.logstore.segment_size";
+  public static final String CONFIG_WIKIDB_LOGSTORE_SYNC = "wikidb.logstore.sync";
+  public static final String CONFIG_WIKIDB_LOGSTORE_COMPACTION_INTERVAL = "wikidb.logstore.compaction_interval";
+  public static final String CONFIG_WIKIDB_LANES_READ_MAX = "wikidb.lanes.read.max";
+  public static final String CONFIG_WIKIDB_LANES_WRITE_MAX = "wikidb.lanes.write.max";
+  public static final String CONFIG_WIKIDB_LANES_BULK_MAX = "wikidb.lanes.bulk.max";
+  public static final String CONFIG_WIKIDB_LINKS_REBUILD_BATCH = "wikidb.links.rebuild_batch";
+  public static final String CONFIG_WIKIDB_BACKUP_ADDRESS = "wikidb.backup.address";
+  public static final String CONFIG_WIKIDB_BACKUP_PATH = "wikidb.backup.path";
+  public static final String CONFIG_WIKIDB_BACKUP_MAX_RATE = "wikidb.backup.max_rate";
+  public static final String CONFIG_WIKIDB_BACKUP_BATCH = "wikidb.backup.batch";
+  public static final String CONFIG_WIKIDB_BACKUP_INTERVAL = "wikidb.backup.interval";
+  public static final String CONFIG_WIKIDB_BACKUP_RESTORE = "wikidb.backup.restore";
+  public static final String CONFIG_WIKIDB_SHARDS = "wikidb.shards";
+  public static final String CONFIG_WIKIDB_SHARD = "wikidb.shard";
+
+  private PageLogStore pageLogStore;
+  private AttachmentLog attachmentLog;
+  private int shards;
+  private int shard;
+  private String queue;
 
 
   /**
@@ -47,13 +80,42 @@ public class WikiDatabaseVerticle extends AbstractVerticle {
 
     HashMap<SqlQuery, String> sqlQueries = new HashMap<>();
     sqlQueries.put(SqlQuery.CREATE_PAGES_TABLE, queriesProps.getProperty("create-pages-table"));
-    sqlQueries.put(SqlQuery.ALL_PAGES, queriesProps.getProperty("all-pages"));
     sqlQueries.put(SqlQuery.GET_PAGE, queriesProps.getProperty("get-page"));
     sqlQueries.put(SqlQuery.CREATE_PAGE, queriesProps.getProperty("create-page"));
     sqlQueries.put(SqlQuery.SAVE_PAGE, queriesProps.getProperty("save-page"));
+    sqlQueries.put(SqlQuery.GET_PAGE_VERSION, queriesProps.getProperty("get-page-version"));
+    sqlQueries.put(SqlQuery.PATCH_PAGE, queriesProps.getProperty("patch-page"));
     sqlQueries.put(SqlQuery.DELETE_PAGE, queriesProps.getProperty("delete-page"));
     sqlQueries.put(SqlQuery.ALL_PAGES_DATA, queriesProps.getProperty("all-pages-data"));
     sqlQueries.put(SqlQuery.GET_PAGE_BY_ID, queriesProps.getProperty("get-page-by-id"));
+    sqlQueries.put(SqlQuery.CREATE_CHANGES_TABLE, queriesProps.getProperty("create-changes-table"));
+    sqlQueries.put(SqlQuery.RECORD_CHANGE, queriesProps.getProperty("record-change"));
+    sqlQueries.put(SqlQuery.CHANGES_BOUNDS, queriesProps.getProperty("changes-bounds"));
+    sqlQueries.put(SqlQuery.CHANGES_SINCE, queriesProps.getProperty("changes-since"));
+    sqlQueries.put(SqlQuery.COMPACT_CHANGES, queriesProps.getProperty("compact-changes"));
+    sqlQueries.put(SqlQuery.ALL_PAGE_NAMES, queriesProps.getProperty("all-page-names"));
+    sqlQueries.put(SqlQuery.CONTENT_BYTES_COLUMN, queriesProps.getProperty("content-bytes-column"));
+    sqlQueries.put(SqlQuery.ADD_CONTENT_BYTES_COLUMN, queriesProps.getProperty("add-content-bytes-column"));
+    sqlQueries.put(SqlQuery.CONTENT_VERSION_COLUMN, queriesProps.getProperty("content-version-column"));
+    sqlQueries.put(SqlQuery.ADD_CONTENT_VERSION_COLUMN, queriesProps.getProperty("add-content-version-column"));
+    sqlQueries.put(SqlQuery.LINKS_INDEXED_COLUMN, queriesProps.getProperty("links-indexed-column"));
+    sqlQueries.put(SqlQuery.ADD_LINKS_INDEXED_COLUMN, queriesProps.getProperty("add-links-indexed-column"));
+    sqlQueries.put(SqlQuery.GET_PAGE_CONTENT_CHUNK, queriesProps.getProperty("get-page-content-chunk"));
+    sqlQueries.put(SqlQuery.CREATE_LINKS_TABLE, queriesProps.getProperty("create-links-table"));
+    sqlQueries.put(SqlQuery.DELETE_PAGE_LINKS, queriesProps.getProperty("delete-page-links"));
+    sqlQueries.put(SqlQuery.CREATE_ATTACHMENTS_TABLE, queriesProps.getProperty("create-attachments-table"));
+    sqlQueries.put(SqlQuery.INSERT_ATTACHMENT, queriesProps.getProperty("insert-attachment"));
+    sqlQueries.put(SqlQuery.DELETE_ATTACHMENT, queriesProps.getProperty("delete-attachment"));
+    sqlQueries.put(SqlQuery.DELETE_PAGE_ATTACHMENTS, queriesProps.getProperty("delete-page-attachments"));
+    sqlQueries.put(SqlQuery.PAGE_ATTACHMENTS, queriesProps.getProperty("page-attachments"));
+    sqlQueries.put(SqlQuery.GET_ATTACHMENT, queriesProps.getProperty("get-attachment"));
+    sqlQueries.put(SqlQuery.INSERT_PAGE_LINK, queriesProps.getProperty("insert-page-link"));
+    sqlQueries.put(SqlQuery.PAGE_LINKS_RANGE, queriesProps.getProperty("page-links-range"));
+    sqlQueries.put(SqlQuery.MARK_LINKS_INDEXED, queriesProps.getProperty("mark-links-indexed"));
+    sqlQueries.put(SqlQuery.PAGES_LINKS_BATCH, queriesProps.getProperty("pages-links-batch"));
+    sqlQueries.put(SqlQuery.PAGES_BATCH, queriesProps.getProperty("pages-batch"));
+    sqlQueries.put(SqlQuery.PAGE_ID_INCREMENT, queriesProps.getProperty("page-id-increment"));
+    sqlQueries.put(SqlQuery.SHARD_PAGE_IDS, queriesProps.getProperty("shard-page-ids"));
 
     return sqlQueries;
   }
@@ -67,21 +129,175 @@ public class WikiDatabaseVerticle extends AbstractVerticle {
   @Override
   public void start(Future<Void> startFuture) throws Exception {
 
+    // Each shard has its own address and its own files, named after the shared ones
+    shards = Math.max(1, config().getInteger(CONFIG_WIKIDB_SHARDS, 1));
+    shard = config().getInteger(CONFIG_WIKIDB_SHARD, 0);
+    queue = ShardedWikiDatabaseService.address(config().getString(CONFIG_WIKIDB_QUEUE, "wikidb.queue"), shard, shards);
+
+    PageChangePublisher changePublisher = new PageChangePublisher(vertx,
+      config().getString(CONFIG_WIKIDB_EVENTS_ADDRESS, "wiki.pages.changes"),
+      config().getLong(CONFIG_WIKIDB_EVENTS_BATCH_WINDOW, 100L));
+
+    int changeLogRetention = config().getInteger(CONFIG_WIKIDB_CHANGELOG_RETENTION, 1000);
+
+    RequestTracer tracer = RequestTracer.shared(vertx, config());
+
+    // The caps add up to less than the connection pool so that bulk work never takes all the connections
+    ExecutionLanes lanes = new ExecutionLanes(context,
+      config().getInteger(CONFIG_WIKIDB_LANES_READ_MAX, 16),
+      config().getInteger(CONFIG_WIKIDB_LANES_WRITE_MAX, 8),
+      config().getInteger(CONFIG_WIKIDB_LANES_BULK_MAX, 2),
+      tracer);
+
+    Handler<AsyncResult<WikiDatabaseService>> readyHandler = ready -> {
+      if (ready.failed()) {
+        startFuture.fail(ready.cause());
+        return;
+      }
+      WikiBackup backup = new WikiBackup(vertx, ready.result(),
+        Paths.get(shardPath(config().getString(CONFIG_WIKIDB_BACKUP_PATH, "db/backups"))),
+        config().getLong(CONFIG_WIKIDB_BACKUP_MAX_RATE, 4L * 1024 * 1024),
+        config().getInteger(CONFIG_WIKIDB_BACKUP_BATCH, 100));
+      // A restore runs before the service is registered so that nothing else writes meanwhile
+      Future<JsonObject> restored = Future.future();
+      if (config().getBoolean(CONFIG_WIKIDB_BACKUP_RESTORE, false)) {
+        backup.restore(restored.completer());
+      } else {
+        restored.complete();
+      }
+      restored.setHandler(restore -> {
+        if (restore.failed()) {
+          startFuture.fail(restore.cause());
+          return;
+        }
+        boolean binaryCodec = vertx.isClustered() && config().getBoolean(CONFIG_WIKIDB_BINARY_CODEC, true);
+        if (binaryCodec) {
+          WikiDatabaseMessageCodec.register(vertx);
+        }
+        // Calls are dispatched within their trace, if any, so that the service can record its stages
+        WikiDatabaseServiceVertxProxyHandler proxyHandler = new WikiDatabaseServiceVertxProxyHandler(vertx,
+          ready.result(), true, ProxyHelper.DEFAULT_CONNECTION_TIMEOUT);
+        vertx.eventBus().<JsonObject>consumer(queue, message -> {
+          String trace = message.headers().get(RequestTracer.HEADER);
+          String sent = message.headers().get(RequestTracer.SENT_HEADER);
+          if (trace != null && sent != null && !vertx.isClustered()) {
+            tracer.span(trace, "db.eventbus", Long.parseLong(sent));
+          }
+          RequestTracer.within(trace, () ->
+            proxyHandler.handle(binaryCodec ? WikiDatabaseMessageCodec.binaryReplies(message) : message));
+        });
+        LocalWikiDatabaseService.register(vertx, queue, ready.result(), tracer);
+        registerBackup(backup);
+        startFuture.complete();
+      });
+    };
+
+    int linkRebuildBatch = config().getInteger(CONFIG_WIKIDB_LINKS_REBUILD_BATCH, 200);
+
+    if ("logstore".equals(config().getString(CONFIG_WIKIDB_BACKEND, "jdbc"))) {
+      startPageLogStore(changePublisher, changeLogRetention, lanes, linkRebuildBatch, tracer, readyHandler);
+      return;
+    }
+
     HashMap<SqlQuery, String> sqlQueries = loadSqlQueries();
 
+    // The minimum pool connections are opened eagerly when the pool is created by the table creation query
+    int minPoolSize = config().getInteger(CONFIG_WIKIDB_JDBC_MIN_POOL_SIZE, 3);
     JDBCClient dbClient = JDBCClient.createShared(vertx, new JsonObject()
-      .put("url", config().getString(CONFIG_WIKIDB_JDBC_URL, "jdbc:hsqldb:file:db/wiki"))
+      .put("url", shardPath(config().getString(CONFIG_WIKIDB_JDBC_URL, "jdbc:hsqldb:file:db/wiki")))
       .put("driver_class", config().getString(CONFIG_WIKIDB_JDBC_DRIVER_CLASS, "org.hsqldb.jdbcDriver"))
-      .put("max_pool_size", config().getInteger(CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, 30)));
+      .put("max_pool_size", config().getInteger(CONFIG_WIKIDB_JDBC_MAX_POOL_SIZE, 30))
+      .put("min_pool_size", minPoolSize)
+      .put("initial_pool_size", minPoolSize), shards > 1 ? "wikidb-shard-" + shard : JDBCClient.DEFAULT_DS_NAME);
 
-    WikiDatabaseService.create(dbClient, sqlQueries, ready -> {
-      if (ready.succeeded()) {
-        ProxyHelper.registerService(WikiDatabaseService.class, vertx, ready.result(), CONFIG_WIKIDB_QUEUE);
-        startFuture.complete();
+    WikiDatabaseService.create(dbClient, sqlQueries, changePublisher, changeLogRetention, lanes, linkRebuildBatch,
+      tracer, shards, shard, readyHandler);
+  }
+
+  /**
+   * @param path path or URL of a file of the database
+   * @return the path of the file of this shard, the shared one when the database is not sharded
+   */
+  private String shardPath(String path) {
+    return shards > 1 ? path + "-" + shard : path;
+  }
+
+  /**
+   * Take backups on request, with <code>{type: "full" | "incremental"}</code> messages, and periodically when
+   * an interval is configured
+   *
+   * @param backup
+   */
+  private void registerBackup(WikiBackup backup) {
+    String address = ShardedWikiDatabaseService.address(config().getString(CONFIG_WIKIDB_BACKUP_ADDRESS, "wikidb.backup"),
+      shard, shards);
+    vertx.eventBus().<JsonObject>consumer(address, message -> {
+      boolean incremental = !WikiBackup.FULL.equals(message.body().getString("type", WikiBackup.INCREMENTAL));
+      backup.backup(incremental, ar -> {
+        if (ar.succeeded()) {
+          message.reply(ar.result());
+        } else {
+          message.fail(ErrorCodes.DB_ERROR.ordinal(), ar.cause().getMessage());
+        }
+      });
+    });
+    long interval = config().getLong(CONFIG_WIKIDB_BACKUP_INTERVAL, 0L);
+    if (interval > 0) {
+      vertx.setPeriodic(interval, id -> backup.backup(true, ar -> {
+      }));
+    }
+  }
+
+  /**
+   * Open and recover the page log store on a worker thread, then create the service on top of it
+   *
+   * @param changePublisher
+   * @param changeLogRetention
+   * @param lanes
+   * @param linkRebuildBatch
+   * @param tracer
+   * @param readyHandler
+   */
+  private void startPageLogStore(PageChangePublisher changePublisher, int changeLogRetention, ExecutionLanes lanes,
+                                 int linkRebuildBatch, RequestTracer tracer,
+                                 Handler<AsyncResult<WikiDatabaseService>> readyHandler) {
+    Path directory = Paths.get(shardPath(config().getString(CONFIG_WIKIDB_LOGSTORE_PATH, "db/wiki-log")));
+    boolean sync = config().getBoolean(CONFIG_WIKIDB_LOGSTORE_SYNC, true);
+    vertx.<PageLogStore>executeBlocking(future -> {
+      try {
+        PageLogStore store = new PageLogStore(directory,
+          config().getLong(CONFIG_WIKIDB_LOGSTORE_SEGMENT_SIZE, 16L * 1024 * 1024),
+          sync, shards, shard);
+        attachmentLog = new AttachmentLog(directory.resolve("attachments.log"), sync);
+        future.complete(store);
+      } catch (IOException e) {
+        future.fail(e);
       }
-      else {
-        startFuture.fail(ready.cause());
+    }, ar -> {
+      if (ar.succeeded()) {
+        pageLogStore = ar.result();
+        new PageLogWikiDatabaseServiceImpl(vertx, pageLogStore, attachmentLog, changePublisher, changeLogRetention,
+          config().getLong(CONFIG_WIKIDB_LOGSTORE_COMPACTION_INTERVAL, 60_000L), lanes, linkRebuildBatch,
+          tracer, readyHandler);
+      } else {
+        readyHandler.handle(Future.failedFuture(ar.cause()));
       }
     });
   }
+
+  /**
+   * Stop verticle
+   *
+   * @throws Exception
+   */
+  @Override
+  public void stop() throws Exception {
+    LocalWikiDatabaseService.unregister(vertx, queue);
+    if (pageLogStore != null) {
+      pageLogStore.close();
+    }
+    if (attachmentLog != null) {
+      attachmentLog.close();
+    }
+  }
 }
@@ -0,0 +1,343 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.auth.User;
+import io.vertx.rxjava.ext.web.Route;
+import io.vertx.rxjava.ext.web.RoutingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Access and audit log written off the event loop. Each request records its method, route, status, latency,
+ * user and page id into a bounded lock-free ring buffer, and a background thread drains the buffer in
+ * batches and appends them to the log file with one write per batch.
+ * <p>
+ * The ring buffer is an array of preallocated slots with a sequence number each: producers claim a slot with
+ * a CAS on the tail and publish it by setting its sequence, the single writer frees it by setting the
+ * sequence of the next lap. When the buffer is full, records are either dropped and counted, or the event
+ * loop waits for the writer to free a slot, depending on the policy.
+ * <p>
+ * Records are written as tab separated text lines, or in a compact binary form of
+ * {@link DataOutputStream} fields after a <code>WAL1</code> file header.
+ * <p>
+ * The log is shared by all the {@link HttpServerVerticle} instances of a Vert.x instance, the writer stops
+ * once the last of them releases it.
+ */
+public class AccessLog implements Shareable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AccessLog.class);
+
+  public static final String CONFIG_HTTP_ACCESSLOG_ENABLED = "http.accesslog.enabled";
+  public static final String CONFIG_HTTP_ACCESSLOG_PATH = "http.accesslog.path";
+  public static final String CONFIG_HTTP_ACCESSLOG_FORMAT = "http.accesslog.format";
+  public static final String CONFIG_HTTP_ACCESSLOG_POLICY = "http.accesslog.policy";
+  public static final String CONFIG_HTTP_ACCESSLOG_CAPACITY = "http.accesslog.capacity";
+  public static final String CONFIG_HTTP_ACCESSLOG_BATCH = "http.accesslog.batch";
+  public static final String CONFIG_HTTP_ACCESSLOG_FLUSH_INTERVAL = "http.accesslog.flush_interval";
+
+  private static final String SHARED_MAP = "wiki.accesslog";
+  private static final String SHARED_KEY = "log";
+  private static final byte[] BINARY_HEADER = "WAL1".getBytes(StandardCharsets.US_ASCII);
+
+  /**
+   * What to do with a record when the buffer is full
+   */
+  enum Policy {
+    DROP, BLOCK
+  }
+
+  /**
+   * One record, slots are reused from lap to lap
+   */
+  private static class Slot {
+    long timestamp;
+    String method;
+    String route;
+    int status;
+    long latencyMicros;
+    String user;
+    int pageId;
+    long bytes;
+  }
+
+  private final String path;
+  private final boolean binary;
+  private final Policy policy;
+  private final int batchSize;
+  private final long flushIntervalNanos;
+  private final int mask;
+  private final Slot[] slots;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong blocked = new AtomicLong();
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private long head;
+  private int references;
+  private volatile boolean running = true;
+  private Thread writer;
+
+  /**
+   * @param path               log file, appended to
+   * @param binary             whether records are written in binary form instead of text lines
+   * @param policy             what to do when the buffer is full
+   * @param capacity           number of records the buffer holds, rounded up to a power of two
+   * @param batchSize          maximum number of records written at once
+   * @param flushIntervalNanos time the writer waits for new records when the buffer is empty
+   */
+  AccessLog(String path, boolean binary, Policy policy, int capacity, int batchSize, long flushIntervalNanos) {
+    this.path = path;
+    this.binary = binary;
+    this.policy = policy;
+    this.batchSize = Math.max(1, batchSize);
+    this.flushIntervalNanos = flushIntervalNanos;
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    this.mask = size - 1;
+    this.slots = new Slot[size];
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      slots[i] = new Slot();
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Get the log of a Vert.x instance, creating it and starting its writer on first use. Every call must be
+   * matched by a {@link #release(Vertx)}.
+   *
+   * @param vertx
+   * @param config
+   * @return the log, or null when access logging is disabled
+   */
+  static AccessLog shared(Vertx vertx, JsonObject config) {
+    if (!config.getBoolean(CONFIG_HTTP_ACCESSLOG_ENABLED, true)) {
+      return null;
+    }
+    LocalMap<String, AccessLog> map = vertx.getDelegate().sharedData().getLocalMap(SHARED_MAP);
+    synchronized (AccessLog.class) {
+      AccessLog log = map.get(SHARED_KEY);
+      if (log == null) {
+        log = new AccessLog(
+          config.getString(CONFIG_HTTP_ACCESSLOG_PATH, "logs/access.log"),
+          "binary".equals(config.getString(CONFIG_HTTP_ACCESSLOG_FORMAT, "text")),
+          Policy.valueOf(config.getString(CONFIG_HTTP_ACCESSLOG_POLICY, "drop").toUpperCase()),
+          config.getInteger(CONFIG_HTTP_ACCESSLOG_CAPACITY, 8192),
+          config.getInteger(CONFIG_HTTP_ACCESSLOG_BATCH, 512),
+          TimeUnit.MILLISECONDS.toNanos(config.getLong(CONFIG_HTTP_ACCESSLOG_FLUSH_INTERVAL, 200L)));
+        log.start();
+        map.put(SHARED_KEY, log);
+      }
+      log.references++;
+      return log;
+    }
+  }
+
+  /**
+   * Release the log, the last release stops the writer once it has written the remaining records. The writer
+   * is waited for on a worker thread, never on the event loop.
+   *
+   * @param vertx
+   * @param doneHandler called once the writer stopped, or gave up after 5 seconds
+   */
+  void release(Vertx vertx, Handler<AsyncResult<Void>> doneHandler) {
+    synchronized (AccessLog.class) {
+      if (--references > 0) {
+        doneHandler.handle(Future.succeededFuture());
+        return;
+      }
+      vertx.getDelegate().sharedData().<String, AccessLog>getLocalMap(SHARED_MAP).remove(SHARED_KEY);
+    }
+    running = false;
+    LockSupport.unpark(writer);
+    vertx.getDelegate().<Void>executeBlocking(future -> {
+      try {
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      future.complete();
+    }, false, doneHandler);
+  }
+
+  /**
+   * @return a handler recording each request once its response is sent
+   */
+  Handler<RoutingContext> handler() {
+    return context -> {
+      long started = System.nanoTime();
+      context.addBodyEndHandler(v -> {
+        Route route = context.currentRoute();
+        String id = context.request().getParam("id");
+        int pageId = -1;
+        if (id != null) {
+          try {
+            pageId = Integer.parseInt(id);
+          } catch (NumberFormatException e) {
+            // Not a page id
+          }
+        }
+        User user = context.user();
+        record(context.request().rawMethod(),
+          route != null && route.getPath() != null ? route.getPath() : context.request().path(),
+          context.response().getStatusCode(),
+          TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started),
+          user != null ? user.principal().getString("username") : null,
+          pageId,
+          context.response().bytesWritten());
+      });
+      context.next();
+    };
+  }
+
+  /**
+   * Add a record to the buffer, never allocates
+   *
+   * @return whether the record was kept
+   */
+  boolean record(String method, String route, int status, long latencyMicros, String user, int pageId, long bytes) {
+    long position;
+    while (true) {
+      position = tail.get();
+      int index = (int) position & mask;
+      long available = sequences.get(index) - position;
+      if (available == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          break;
+        }
+      } else if (available < 0) {
+        // The writer has not freed the slot of the previous lap yet
+        if (policy == Policy.DROP || !running) {
+          dropped.incrementAndGet();
+          return false;
+        }
+        blocked.incrementAndGet();
+        LockSupport.unpark(writer);
+        LockSupport.parkNanos(10_000);
+      }
+    }
+    int index = (int) position & mask;
+    Slot slot = slots[index];
+    slot.timestamp = System.currentTimeMillis();
+    slot.method = method;
+    slot.route = route;
+    slot.status = status;
+    slot.latencyMicros = latencyMicros;
+    slot.user = user;
+    slot.pageId = pageId;
+    slot.bytes = bytes;
+    sequences.lazySet(index, position + 1);
+    return true;
+  }
+
+  private void start() {
+    writer = new Thread(this::writeLoop, "wiki-access-log-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  private void writeLoop() {
+    File file = new File(path);
+    if (file.getParentFile() != null) {
+      file.getParentFile().mkdirs();
+    }
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 64 * 1024))) {
+      if (binary && file.length() == 0) {
+        out.write(BINARY_HEADER);
+      }
+      StringBuilder line = new StringBuilder(128);
+      while (running || sequences.get((int) head & mask) == head + 1) {
+        int count = drain(out, line);
+        if (count > 0) {
+          out.flush();
+          written.addAndGet(count);
+        }
+        if (count < batchSize && running) {
+          LockSupport.parkNanos(flushIntervalNanos);
+        }
+      }
+    } catch (IOException e) {
+      failed.incrementAndGet();
+      LOGGER.error("Could not write the access log " + path + ", access logging stops", e);
+      running = false;
+    }
+  }
+
+  /**
+   * Write up to a batch of published records and free their slots
+   *
+   * @return the number of records written
+   */
+  private int drain(DataOutputStream out, StringBuilder line) throws IOException {
+    int count = 0;
+    while (count < batchSize) {
+      int index = (int) head & mask;
+      if (sequences.get(index) != head + 1) {
+        break;
+      }
+      Slot slot = slots[index];
+      if (binary) {
+        out.writeLong(slot.timestamp);
+        out.writeShort(slot.status);
+        out.writeLong(slot.latencyMicros);
+        out.writeInt(slot.pageId);
+        out.writeLong(slot.bytes);
+        out.writeUTF(slot.method);
+        out.writeUTF(slot.route);
+        out.writeUTF(slot.user != null ? slot.user : "");
+      } else {
+        line.setLength(0);
+        line.append(Instant.ofEpochMilli(slot.timestamp)).append('\t')
+          .append(slot.method).append('\t')
+          .append(slot.route).append('\t')
+          .append(slot.status).append('\t')
+          .append(slot.latencyMicros).append("us\t")
+          .append(slot.user != null ? slot.user : "-").append('\t')
+          .append(slot.pageId >= 0 ? String.valueOf(slot.pageId) : "-").append('\t')
+          .append(slot.bytes).append('\n');
+        out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+      }
+      slot.method = null;
+      slot.route = null;
+      slot.user = null;
+      sequences.lazySet(index, head + mask + 1);
+      head++;
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * @return settings and counters
+   */
+  JsonObject stats() {
+    return new JsonObject()
+      .put("path", path)
+      .put("format", binary ? "binary" : "text")
+      .put("policy", policy.name().toLowerCase())
+      .put("capacity", slots.length)
+      .put("pending", tail.get() - written.get())
+      .put("written", written.get())
+      .put("dropped", dropped.get())
+      .put("blocked", blocked.get())
+      .put("writerFailed", failed.get() > 0);
+  }
+}
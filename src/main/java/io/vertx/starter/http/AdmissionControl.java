@@ -0,0 +1,147 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.web.RoutingContext;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the number of in-flight requests per route class. Requests over the limit are rejected right away
+ * with a 503 and a Retry-After header instead of queuing on the event bus and the JDBC pool. A request is
+ * admitted by the first route class it matches, so that uploads, which hold their slot for as long as their
+ * body is sent, have a class of their own instead of taking the slots of the writes.
+ * <p>
+ * A single instance is shared by all the {@link HttpServerVerticle} instances of a Vert.x instance.
+ */
+public class AdmissionControl implements Shareable {
+
+  public static final String CONFIG_HTTP_ADMISSION_READ = "http.admission.read";
+  public static final String CONFIG_HTTP_ADMISSION_WRITE = "http.admission.write";
+  public static final String CONFIG_HTTP_ADMISSION_RENDER = "http.admission.render";
+  public static final String CONFIG_HTTP_ADMISSION_UPLOAD = "http.admission.upload";
+  public static final String CONFIG_HTTP_ADMISSION_RETRY_AFTER = "http.admission.retry_after";
+
+  private static final String SHARED_MAP = "wiki.admission";
+  private static final String ADMITTED = "admission.class";
+
+  public enum RouteClass {
+    READ,
+    WRITE,
+    RENDER,
+    UPLOAD
+  }
+
+  private final Map<RouteClass, Lane> lanes = new EnumMap<>(RouteClass.class);
+  private final int retryAfter;
+
+  private AdmissionControl(JsonObject config) {
+    lanes.put(RouteClass.READ, new Lane(config.getInteger(CONFIG_HTTP_ADMISSION_READ, 256)));
+    lanes.put(RouteClass.WRITE, new Lane(config.getInteger(CONFIG_HTTP_ADMISSION_WRITE, 32)));
+    lanes.put(RouteClass.RENDER, new Lane(config.getInteger(CONFIG_HTTP_ADMISSION_RENDER, 64)));
+    lanes.put(RouteClass.UPLOAD, new Lane(config.getInteger(CONFIG_HTTP_ADMISSION_UPLOAD, 8)));
+    retryAfter = config.getInteger(CONFIG_HTTP_ADMISSION_RETRY_AFTER, 1);
+  }
+
+  /**
+   * Get the admission control shared by the verticles of a Vert.x instance, the first caller's
+   * configuration wins
+   *
+   * @param vertx
+   * @param config
+   * @return
+   */
+  static AdmissionControl shared(Vertx vertx, JsonObject config) {
+    LocalMap<String, AdmissionControl> map = vertx.getDelegate().sharedData().getLocalMap(SHARED_MAP);
+    AdmissionControl created = new AdmissionControl(config);
+    AdmissionControl existing = map.putIfAbsent(SHARED_MAP, created);
+    return existing != null ? existing : created;
+  }
+
+  /**
+   * Create a handler admitting requests of a route class, unless another route class admitted them already
+   *
+   * @param routeClass
+   * @return
+   */
+  Handler<RoutingContext> handler(RouteClass routeClass) {
+    Lane lane = lanes.get(routeClass);
+    return context -> {
+      if (context.get(ADMITTED) != null) {
+        context.next();
+        return;
+      }
+      if (!lane.tryAcquire()) {
+        context.response().setStatusCode(503);
+        context.response().putHeader("Retry-After", String.valueOf(retryAfter));
+        context.response().putHeader("Content-Type", "application/json");
+        context.response().end(new JsonObject()
+          .put("success", false)
+          .put("error", "Server overloaded, retry later").encode());
+        return;
+      }
+      AtomicBoolean released = new AtomicBoolean();
+      Handler<Void> release = v -> {
+        if (released.compareAndSet(false, true)) {
+          lane.release();
+        }
+      };
+      context.put(ADMITTED, routeClass);
+      context.addBodyEndHandler(release);
+      context.response().closeHandler(release);
+      context.next();
+    };
+  }
+
+  /**
+   * @return current limits, in-flight requests and rejection counts per route class
+   */
+  JsonObject stats() {
+    JsonObject stats = new JsonObject().put("retryAfter", retryAfter);
+    lanes.forEach((routeClass, lane) -> stats.put(routeClass.name().toLowerCase(), lane.stats()));
+    return stats;
+  }
+
+  private static class Lane {
+    private final int limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    Lane(int limit) {
+      this.limit = limit;
+    }
+
+    boolean tryAcquire() {
+      int current;
+      do {
+        current = inFlight.get();
+        if (current >= limit) {
+          rejected.incrementAndGet();
+          return false;
+        }
+      } while (!inFlight.compareAndSet(current, current + 1));
+      admitted.incrementAndGet();
+      return true;
+    }
+
+    void release() {
+      inFlight.decrementAndGet();
+    }
+
+    JsonObject stats() {
+      return new JsonObject()
+        .put("limit", limit)
+        .put("inFlight", inFlight.get())
+        .put("admitted", admitted.get())
+        .put("rejected", rejected.get());
+    }
+  }
+}
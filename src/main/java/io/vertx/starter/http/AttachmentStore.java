@@ -0,0 +1,201 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.FileSystem;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.core.http.HttpServerRequest;
+
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+
+/**
+ * Content addressed store of the page attachment files. Each file is named after the SHA-256 hash of its
+ * content, so a file attached several times, to one page or to several, is stored once, and a stored file is
+ * never modified, so that downloads can be sent straight from the file with a strong entity tag.
+ * <p>
+ * Uploads are streamed to a temporary file and hashed as they arrive, the request is paused while the file
+ * catches up, then the file is moved in place under its hash. The size is counted as the body arrives, so
+ * that uploads over the limit are cut short without ever being held in memory.
+ * <p>
+ * Files are laid out as <code>root/ab/abcdef...</code> after the first two digits of their hash. Files that
+ * no attachment refers to anymore are kept.
+ */
+class AttachmentStore {
+
+  /**
+   * Failure of an upload larger than the limit
+   */
+  static class TooLargeException extends RuntimeException {
+    TooLargeException(long limit) {
+      super("Attachments are limited to " + limit + " bytes");
+    }
+  }
+
+  private final io.vertx.core.Vertx vertx;
+  private final String root;
+  private final long maxSize;
+
+  /**
+   * @param vertx
+   * @param root    directory of the files
+   * @param maxSize maximum size of a file in bytes
+   */
+  AttachmentStore(Vertx vertx, String root, long maxSize) {
+    this.vertx = vertx.getDelegate();
+    this.root = root;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @return maximum size of a file in bytes
+   */
+  long maxSize() {
+    return maxSize;
+  }
+
+  /**
+   * @param hash
+   * @return path of the file of a content
+   */
+  String path(String hash) {
+    return Paths.get(root, hash.substring(0, 2), hash).toString();
+  }
+
+  /**
+   * Store the body of a request
+   *
+   * @param request       paused, it is resumed once the temporary file is open
+   * @param resultHandler called with <code>{hash, size, deduplicated}</code>, or failed with a
+   *                      {@link TooLargeException}
+   */
+  void store(HttpServerRequest request, Handler<AsyncResult<JsonObject>> resultHandler) {
+    FileSystem fileSystem = vertx.fileSystem();
+    String directory = Paths.get(root, "tmp").toString();
+    String temporary = Paths.get(directory, UUID.randomUUID().toString()).toString();
+    fileSystem.mkdirs(directory, created -> {
+      if (created.failed()) {
+        resultHandler.handle(Future.failedFuture(created.cause()));
+        return;
+      }
+      fileSystem.open(temporary, new OpenOptions().setCreateNew(true).setWrite(true), opened -> {
+        if (opened.failed()) {
+          resultHandler.handle(Future.failedFuture(opened.cause()));
+          return;
+        }
+        new Upload(request.getDelegate(), opened.result(), temporary, resultHandler).start();
+      });
+    });
+  }
+
+  /**
+   * An upload being streamed to its temporary file
+   */
+  private class Upload {
+    final io.vertx.core.http.HttpServerRequest request;
+    final AsyncFile file;
+    final String temporary;
+    final Handler<AsyncResult<JsonObject>> resultHandler;
+    final MessageDigest digest;
+    long size;
+    boolean done;
+
+    Upload(io.vertx.core.http.HttpServerRequest request, AsyncFile file, String temporary,
+           Handler<AsyncResult<JsonObject>> resultHandler) {
+      this.request = request;
+      this.file = file;
+      this.temporary = temporary;
+      this.resultHandler = resultHandler;
+      try {
+        this.digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    void start() {
+      file.exceptionHandler(this::fail);
+      request.exceptionHandler(this::fail);
+      request.handler(buffer -> {
+        if (done) {
+          return;
+        }
+        size += buffer.length();
+        if (size > maxSize) {
+          fail(new TooLargeException(maxSize));
+          return;
+        }
+        digest.update(buffer.getByteBuf().nioBuffer());
+        file.write(buffer);
+        if (file.writeQueueFull()) {
+          request.pause();
+          file.drainHandler(v -> request.resume());
+        }
+      });
+      request.endHandler(v -> {
+        if (!done) {
+          done = true;
+          file.close(closed -> {
+            if (closed.failed()) {
+              discard(closed.cause());
+            } else {
+              moveInPlace();
+            }
+          });
+        }
+      });
+      request.resume();
+    }
+
+    void fail(Throwable t) {
+      if (done) {
+        return;
+      }
+      done = true;
+      request.resume();
+      file.close(closed -> discard(t));
+    }
+
+    void discard(Throwable t) {
+      vertx.fileSystem().delete(temporary, deleted -> resultHandler.handle(Future.failedFuture(t)));
+    }
+
+    /**
+     * Move the temporary file under its hash, unless the content is stored already
+     */
+    void moveInPlace() {
+      String hash = hex(digest.digest());
+      String target = path(hash);
+      FileSystem fileSystem = vertx.fileSystem();
+      JsonObject stored = new JsonObject().put("hash", hash).put("size", size);
+      fileSystem.mkdirs(Paths.get(target).getParent().toString(), created -> fileSystem.move(temporary, target, moved -> {
+        if (moved.succeeded()) {
+          resultHandler.handle(Future.succeededFuture(stored.put("deduplicated", false)));
+          return;
+        }
+        // The content is there already, uploaded before or meanwhile
+        fileSystem.exists(target, exists -> {
+          if (exists.succeeded() && exists.result()) {
+            fileSystem.delete(temporary, deleted -> resultHandler.handle(Future.succeededFuture(stored.put("deduplicated", true))));
+          } else {
+            discard(moved.cause());
+          }
+        });
+      }));
+    }
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+}
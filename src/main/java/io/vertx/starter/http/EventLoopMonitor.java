@@ -0,0 +1,472 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.Context;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.core.http.HttpServerRequest;
+import io.vertx.rxjava.ext.web.RoutingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Continuous measure of the lag of the event loops running the HTTP verticles, and sampling of what blocks
+ * them.
+ * <p>
+ * A monitor thread posts a probe task to each event loop at a fixed interval and records how long it waited
+ * to run into a histogram of the loop. While a probe waits longer than the stall threshold, the loop is busy
+ * with something else: the monitor samples the stack of the loop thread at the sample interval, and counts
+ * the sample against what was running: the route of the request being dispatched by the router, or
+ * <code>-</code> for the callbacks running after the dispatch, the entry, outermost method of the wiki on the
+ * stack, which tells the callbacks apart, and the handler, innermost method of the wiki on the stack. The
+ * stack of the latest sample is kept with the counters.
+ * <p>
+ * The cost outside of stalls is a wake-up of the monitor thread per sample interval and a task per loop per
+ * probe interval, stacks are only taken while a loop is stalled.
+ * <p>
+ * The monitor is shared by all the {@link HttpServerVerticle} instances of a Vert.x instance, each one
+ * registers its event loop when it starts and releases the monitor when it stops, the monitor thread stops
+ * with the last release.
+ */
+public class EventLoopMonitor implements Shareable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EventLoopMonitor.class);
+
+  public static final String CONFIG_MONITOR_EVENTLOOP_ENABLED = "monitor.eventloop.enabled";
+  public static final String CONFIG_MONITOR_EVENTLOOP_PROBE_INTERVAL = "monitor.eventloop.probe_interval";
+  public static final String CONFIG_MONITOR_EVENTLOOP_SAMPLE_INTERVAL = "monitor.eventloop.sample_interval";
+  public static final String CONFIG_MONITOR_EVENTLOOP_STALL_THRESHOLD = "monitor.eventloop.stall_threshold";
+
+  private static final String SHARED_MAP = "wiki.eventloops";
+  private static final String SHARED_KEY = "monitor";
+  private static final long[] BUCKETS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+  private static final int MAX_OFFENDERS = 256;
+  private static final int STACK_DEPTH = 16;
+  private static final String APPLICATION_PACKAGE = "io.vertx.starter.";
+  private static final String HTTP_PACKAGE = EventLoopMonitor.class.getPackage().getName() + ".";
+  private static final String MONITOR_CLASS = EventLoopMonitor.class.getName();
+  private static final ThreadLocal<Loop> CURRENT = new ThreadLocal<>();
+
+  /**
+   * An event loop, its lag histogram and the route it is dispatching
+   */
+  private static class Loop {
+    final Thread thread;
+    final Context context;
+    final AtomicLongArray histogram = new AtomicLongArray(BUCKETS_MS.length + 1);
+    final AtomicLong probes = new AtomicLong();
+    final AtomicLong totalLagNanos = new AtomicLong();
+    final AtomicLong maxLagNanos = new AtomicLong();
+    final AtomicLong stalls = new AtomicLong();
+    volatile long probeSent;
+    volatile boolean probing;
+    volatile String route;
+    long lastProbe;
+    long stalledProbe = -1;
+
+    Loop(Thread thread, Context context) {
+      this.thread = thread;
+      this.context = context;
+    }
+  }
+
+  /**
+   * Samples counted against a route and a handler
+   */
+  private static class Offender {
+    final String route;
+    final String entry;
+    final String handler;
+    final AtomicLong samples = new AtomicLong();
+    final AtomicLong stalls = new AtomicLong();
+    final AtomicLong maxStallNanos = new AtomicLong();
+    volatile StackTraceElement[] stack;
+
+    Offender(String route, String entry, String handler) {
+      this.route = route;
+      this.entry = entry;
+      this.handler = handler;
+    }
+  }
+
+  private final long probeIntervalNanos;
+  private final long sampleIntervalNanos;
+  private final long stallThresholdNanos;
+  private final List<Loop> loops = new CopyOnWriteArrayList<>();
+  private final Map<String, Offender> offenders = new ConcurrentHashMap<>();
+  private final AtomicLong samples = new AtomicLong();
+  private final AtomicLong droppedSamples = new AtomicLong();
+  private final Thread sampler;
+  private volatile boolean running = true;
+  private int references;
+
+  /**
+   * @param probeIntervalMs    interval between two probes of a loop
+   * @param sampleIntervalMs   interval between two checks of the loops, and two samples of a stalled loop
+   * @param stallThresholdMs   lag from which a loop is stalled and sampled
+   */
+  EventLoopMonitor(long probeIntervalMs, long sampleIntervalMs, long stallThresholdMs) {
+    this.probeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, probeIntervalMs));
+    this.sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, sampleIntervalMs));
+    this.stallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, stallThresholdMs));
+    sampler = new Thread(this::run, "wiki-eventloop-monitor");
+    sampler.setDaemon(true);
+    sampler.start();
+  }
+
+  /**
+   * Get the monitor of a Vert.x instance, creating it on first use. Each call must be matched by a
+   * {@link #release(Vertx)}.
+   *
+   * @param vertx
+   * @param config
+   * @return the monitor, or null when it is disabled
+   */
+  static EventLoopMonitor shared(Vertx vertx, JsonObject config) {
+    if (!config.getBoolean(CONFIG_MONITOR_EVENTLOOP_ENABLED, true)) {
+      return null;
+    }
+    LocalMap<String, EventLoopMonitor> map = vertx.getDelegate().sharedData().getLocalMap(SHARED_MAP);
+    synchronized (EventLoopMonitor.class) {
+      EventLoopMonitor monitor = map.get(SHARED_KEY);
+      if (monitor == null) {
+        monitor = new EventLoopMonitor(
+          config.getLong(CONFIG_MONITOR_EVENTLOOP_PROBE_INTERVAL, 100L),
+          config.getLong(CONFIG_MONITOR_EVENTLOOP_SAMPLE_INTERVAL, 10L),
+          config.getLong(CONFIG_MONITOR_EVENTLOOP_STALL_THRESHOLD, 50L));
+        map.put(SHARED_KEY, monitor);
+      }
+      monitor.references++;
+      return monitor;
+    }
+  }
+
+  /**
+   * Release the monitor, the last release stops the monitor thread
+   *
+   * @param vertx
+   */
+  void release(Vertx vertx) {
+    synchronized (EventLoopMonitor.class) {
+      if (--references > 0) {
+        return;
+      }
+      vertx.getDelegate().sharedData().<String, EventLoopMonitor>getLocalMap(SHARED_MAP).remove(SHARED_KEY);
+    }
+    running = false;
+    LockSupport.unpark(sampler);
+  }
+
+  /**
+   * Monitor the event loop of the calling verticle, several verticles may share a loop
+   */
+  void register() {
+    Thread thread = Thread.currentThread();
+    Context context = io.vertx.core.Vertx.currentContext();
+    if (context == null || !context.isEventLoopContext()) {
+      throw new IllegalStateException("Event loop monitoring must be registered from an event loop");
+    }
+    synchronized (loops) {
+      for (Loop loop : loops) {
+        if (loop.thread == thread) {
+          CURRENT.set(loop);
+          return;
+        }
+      }
+      Loop loop = new Loop(thread, context);
+      loops.add(loop);
+      CURRENT.set(loop);
+    }
+  }
+
+  /**
+   * Router handler marking the route being dispatched while the next handlers run synchronously. It is
+   * routed first, and again after the handlers that call the next ones from a callback such as the body
+   * handler.
+   *
+   * @param context
+   */
+  void dispatch(RoutingContext context) {
+    Loop loop = CURRENT.get();
+    if (loop == null) {
+      context.next();
+      return;
+    }
+    String previous = loop.route;
+    loop.route = route(context.request());
+    try {
+      context.next();
+    } finally {
+      loop.route = previous;
+    }
+  }
+
+  /**
+   * @param request
+   * @return the method and path of a request, with the page ids, page names and attachment names replaced
+   * by placeholders so that requests of different pages count as one route
+   */
+  static String route(HttpServerRequest request) {
+    String path = request.path();
+    StringBuilder route = new StringBuilder(request.rawMethod()).append(' ');
+    if (path == null || path.isEmpty()) {
+      return route.append('/').toString();
+    }
+    String[] segments = path.split("/");
+    if (segments.length < 2) {
+      return route.append('/').toString();
+    }
+    for (int i = 1; i < segments.length; i++) {
+      String segment = segments[i];
+      String previous = segments[i - 1];
+      route.append('/');
+      if ("app".equals(segments[1]) && segment.indexOf('.') >= 0) {
+        route.append('*');
+        break;
+      } else if ("wiki".equals(previous) || "attachments".equals(previous)) {
+        route.append(":name");
+      } else if (!segment.isEmpty() && segment.chars().allMatch(Character::isDigit)) {
+        route.append(":id");
+      } else {
+        route.append(segment);
+      }
+    }
+    return route.toString();
+  }
+
+  private void run() {
+    while (running) {
+      LockSupport.parkNanos(sampleIntervalNanos);
+      long now = System.nanoTime();
+      for (Loop loop : loops) {
+        try {
+          check(loop, now);
+        } catch (RuntimeException e) {
+          LOGGER.error("Could not check event loop " + loop.thread.getName(), e);
+        }
+      }
+    }
+  }
+
+  private void check(Loop loop, long now) {
+    if (!loop.probing) {
+      if (now - loop.lastProbe >= probeIntervalNanos) {
+        loop.lastProbe = now;
+        loop.probeSent = now;
+        loop.probing = true;
+        loop.context.runOnContext(v -> probed(loop, loop.probeSent));
+      }
+      return;
+    }
+    long lag = now - loop.probeSent;
+    if (lag >= stallThresholdNanos) {
+      sample(loop, lag);
+    }
+  }
+
+  private void probed(Loop loop, long sent) {
+    long lag = System.nanoTime() - sent;
+    loop.probing = false;
+    loop.probes.incrementAndGet();
+    loop.totalLagNanos.addAndGet(lag);
+    loop.maxLagNanos.accumulateAndGet(lag, Math::max);
+    long lagMs = TimeUnit.NANOSECONDS.toMillis(lag);
+    int bucket = 0;
+    while (bucket < BUCKETS_MS.length && lagMs >= BUCKETS_MS[bucket]) {
+      bucket++;
+    }
+    loop.histogram.incrementAndGet(bucket);
+  }
+
+  /**
+   * Sample the stack of a stalled loop
+   *
+   * @param loop
+   * @param lag  how long the probe waited so far
+   */
+  private void sample(Loop loop, long lag) {
+    String route = loop.route;
+    StackTraceElement[] stack = loop.thread.getStackTrace();
+    // The loop may have caught up while the stack was taken, the sample would show whatever runs next
+    if (!loop.probing || System.nanoTime() - loop.probeSent < stallThresholdNanos) {
+      return;
+    }
+    boolean newStall = loop.stalledProbe != loop.probeSent;
+    if (newStall) {
+      loop.stalledProbe = loop.probeSent;
+      loop.stalls.incrementAndGet();
+    }
+    String handler = handler(stack);
+    String entry = entry(stack);
+    String key = (route != null ? route : "-") + " " + entry + " " + handler;
+    Offender offender = offenders.get(key);
+    if (offender == null) {
+      if (offenders.size() >= MAX_OFFENDERS) {
+        droppedSamples.incrementAndGet();
+        return;
+      }
+      offender = offenders.computeIfAbsent(key, k -> new Offender(route != null ? route : "-", entry, handler));
+    }
+    samples.incrementAndGet();
+    offender.samples.incrementAndGet();
+    if (newStall) {
+      offender.stalls.incrementAndGet();
+    }
+    offender.maxStallNanos.accumulateAndGet(lag, Math::max);
+    offender.stack = stack.length > STACK_DEPTH ? Arrays.copyOf(stack, STACK_DEPTH) : stack;
+  }
+
+  /**
+   * @param stack
+   * @return the innermost named method of the wiki on a stack, or the top of the stack when the wiki is not on it
+   */
+  static String handler(StackTraceElement[] stack) {
+    for (StackTraceElement frame : stack) {
+      String name = isApplication(frame) ? methodName(frame) : null;
+      if (name != null) {
+        return name;
+      }
+    }
+    return stack.length > 0 ? stack[0].getClassName() + "." + stack[0].getMethodName() : "idle";
+  }
+
+  /**
+   * @param stack
+   * @return the outermost named method of the HTTP verticles on a stack, the handler or callback the loop
+   * called, or else the outermost named method of the wiki, or null
+   */
+  static String entry(StackTraceElement[] stack) {
+    String outermost = null;
+    for (int i = stack.length - 1; i >= 0; i--) {
+      String name = isApplication(stack[i]) ? methodName(stack[i]) : null;
+      if (name != null) {
+        if (stack[i].getClassName().startsWith(HTTP_PACKAGE)) {
+          return name;
+        }
+        if (outermost == null) {
+          outermost = name;
+        }
+      }
+    }
+    return outermost;
+  }
+
+  private static boolean isApplication(StackTraceElement frame) {
+    String className = frame.getClassName();
+    // Lambda classes only forward to the method the lambda is declared in, which is next on the stack
+    return className.startsWith(APPLICATION_PACKAGE) && !className.contains("$$Lambda")
+      && !className.equals(MONITOR_CLASS) && !className.startsWith(MONITOR_CLASS + "$");
+  }
+
+  /**
+   * @param frame
+   * @return the simple class name and the method name of a frame, lambdas named after the method they are
+   * declared in, or null for a lambda nested in another lambda, which javac 8 names {@code lambda$null$N}
+   * whatever method it is declared in
+   */
+  private static String methodName(StackTraceElement frame) {
+    String className = frame.getClassName();
+    int nested = className.indexOf('$');
+    String simpleName = className.substring(className.lastIndexOf('.') + 1, nested > 0 ? nested : className.length());
+    String method = frame.getMethodName();
+    if (method.startsWith("lambda$")) {
+      int end = method.indexOf('$', "lambda$".length());
+      method = method.substring("lambda$".length(), end > 0 ? end : method.length());
+      if (method.equals("null")) {
+        return null;
+      }
+    }
+    return simpleName + "." + method;
+  }
+
+  /**
+   * @param top number of offenders listed
+   * @return the settings, the lag histogram of each loop, and the offenders with the most samples, with
+   * times in milliseconds
+   */
+  JsonObject stats(int top) {
+    JsonArray loopStats = new JsonArray();
+    for (Loop loop : loops) {
+      JsonArray histogram = new JsonArray();
+      long[] counts = new long[BUCKETS_MS.length + 1];
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = loop.histogram.get(i);
+        histogram.add(new JsonObject()
+          .put("le", i < BUCKETS_MS.length ? (Object) BUCKETS_MS[i] : "+Inf")
+          .put("count", counts[i]));
+      }
+      long probes = loop.probes.get();
+      loopStats.add(new JsonObject()
+        .put("thread", loop.thread.getName())
+        .put("probes", probes)
+        .put("meanLag", probes > 0 ? loop.totalLagNanos.get() / (double) probes / 1_000_000 : 0.0)
+        .put("maxLag", loop.maxLagNanos.get() / 1_000_000.0)
+        .put("p50", percentile(counts, probes, 0.50))
+        .put("p99", percentile(counts, probes, 0.99))
+        .put("stalls", loop.stalls.get())
+        .put("histogram", histogram));
+    }
+    List<Offender> ranked = new ArrayList<>(offenders.values());
+    ranked.sort(Comparator.comparingLong((Offender offender) -> offender.samples.get()).reversed());
+    JsonArray topOffenders = new JsonArray();
+    for (Offender offender : ranked.subList(0, Math.min(Math.max(0, top), ranked.size()))) {
+      JsonArray stack = new JsonArray();
+      StackTraceElement[] frames = offender.stack;
+      if (frames != null) {
+        for (StackTraceElement frame : frames) {
+          stack.add(frame.toString());
+        }
+      }
+      long count = offender.samples.get();
+      topOffenders.add(new JsonObject()
+        .put("route", offender.route)
+        .put("entry", offender.entry)
+        .put("handler", offender.handler)
+        .put("samples", count)
+        .put("stalls", offender.stalls.get())
+        .put("blocked", count * sampleIntervalNanos / 1_000_000.0)
+        .put("maxStall", offender.maxStallNanos.get() / 1_000_000.0)
+        .put("stack", stack));
+    }
+    return new JsonObject()
+      .put("probeInterval", TimeUnit.NANOSECONDS.toMillis(probeIntervalNanos))
+      .put("sampleInterval", TimeUnit.NANOSECONDS.toMillis(sampleIntervalNanos))
+      .put("stallThreshold", TimeUnit.NANOSECONDS.toMillis(stallThresholdNanos))
+      .put("samples", samples.get())
+      .put("droppedSamples", droppedSamples.get())
+      .put("loops", loopStats)
+      .put("offenders", topOffenders);
+  }
+
+  /**
+   * @return the upper bound of the bucket holding a percentile, null above the last bucket or without probes
+   */
+  private static Long percentile(long[] counts, long total, double percentile) {
+    if (total == 0) {
+      return null;
+    }
+    long rank = (long) Math.ceil(total * percentile);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS_MS.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return BUCKETS_MS[i];
+      }
+    }
+    return null;
+  }
+}
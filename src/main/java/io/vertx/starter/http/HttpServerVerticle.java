@@ -1,21 +1,49 @@
 package io.vertx.starter.http;
 
-import com.github.rjeschke.txtmark.Processor;
 import io.vertx.core.Future;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.shareddata.LocalMap;
+import io.vertx.ext.web.handler.sockjs.BridgeOptions;
+import io.vertx.ext.web.handler.sockjs.PermittedOptions;
 import io.vertx.rxjava.ext.web.handler.*;
+import io.vertx.rxjava.ext.web.handler.sockjs.SockJSHandler;
+import io.vertx.starter.MainVerticle;
+import io.vertx.starter.RequestTracer;
+import io.vertx.starter.SingleFlight;
+import io.vertx.rx.java.RxHelper;
+import io.vertx.rx.java.SingleOnSubscribeAdapter;
+import io.vertx.starter.database.PageDiff;
+import io.vertx.starter.database.PageSummary;
+import io.vertx.starter.database.ShardedWikiDatabaseService;
+import io.vertx.starter.database.WikiDatabaseMessageCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import io.vertx.starter.database.rxjava.WikiDatabaseService;
 import io.vertx.rxjava.core.AbstractVerticle;
+import io.vertx.rxjava.core.buffer.Buffer;
 import io.vertx.rxjava.core.http.HttpServer;
+import io.vertx.rxjava.core.http.HttpServerRequest;
+import io.vertx.rxjava.core.http.HttpServerResponse;
 import io.vertx.rxjava.ext.web.Router;
 import io.vertx.rxjava.ext.web.RoutingContext;
 import io.vertx.rxjava.ext.web.sstore.LocalSessionStore;
-import rx.Observable;
+import io.vertx.rxjava.ext.web.templ.FreeMarkerTemplateEngine;
+import freemarker.template.utility.StringUtil;
+import rx.Single;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * Created by wujun on 2017/7/16.
@@ -25,8 +53,42 @@ public class HttpServerVerticle extends AbstractVerticle {
 
   public static final String CONFIG_HTTP_SERVER_PORT = "http.server.port";
   public static final String CONFIG_WIKIDB_QUEUE = "wikidb.queue";
+  public static final String CONFIG_WIKIDB_QUEUE_TIMEOUT = "wikidb.queue.timeout";
+  public static final String CONFIG_WIKIDB_LOCAL_DELIVERY = "wikidb.local_delivery";
+  public static final String CONFIG_WIKIDB_SHARDS = "wikidb.shards";
+  public static final String CONFIG_WIKIDB_BINARY_CODEC = "wikidb.binary_codec";
+  public static final String CONFIG_WIKIDB_EVENTS_ADDRESS = "wikidb.events.address";
+  public static final String CONFIG_HTTP_SERVER_BODY_LIMIT = "http.server.body_limit";
+  public static final String CONFIG_HTTP_SERVER_STREAM_CHUNK_SIZE = "http.server.stream_chunk_size";
+  public static final String CONFIG_HTTP_MARKDOWN_CHUNK_SIZE = "http.markdown.chunk_size";
+  public static final String CONFIG_WIKIDB_BACKUP_ADDRESS = "wikidb.backup.address";
+  public static final String CONFIG_WIKIDB_BACKUP_TIMEOUT = "wikidb.backup.timeout";
+  public static final String CONFIG_HTTP_SSR_TEMPLATE_CACHE_SIZE = "http.ssr.template_cache_size";
+  public static final String CONFIG_HTTP_ATTACHMENTS_PATH = "http.attachments.path";
+  public static final String CONFIG_HTTP_ATTACHMENTS_MAX_SIZE = "http.attachments.max_size";
 
+  private static final String TRACE_ID = "traceId";
+  private static final String TRACE_ROUTING_START = "traceRoutingStart";
+
+  private String wikiDbQueue;
+  private DeliveryOptions deliveryOptions;
+  private boolean localDelivery;
+  private int shards;
   private WikiDatabaseService dbService;
+  private AdmissionControl admissionControl;
+  private Map<String, RateLimiter> rateLimiters;
+  private int streamChunkSize;
+  private int markdownChunkSize;
+  private FreeMarkerTemplateEngine templateEngine;
+  private PageFragmentCache fragments;
+  private AccessLog accessLog;
+  private RequestTracer tracer;
+  private SingleFlight<Integer, io.vertx.core.buffer.Buffer> pageReads;
+  private PageListSnapshot pageList;
+  private SingleFlight<Long, PageListSnapshot.Snapshot> pageListBuilds;
+  private AttachmentStore attachments;
+  private PatchStats patches;
+  private EventLoopMonitor eventLoops;
 
   /**
    * start
@@ -37,36 +99,141 @@ public class HttpServerVerticle extends AbstractVerticle {
   @Override
   public void start(Future<Void> startFuture) throws Exception {
 
-    String wikiDbQueue = config().getString(CONFIG_WIKIDB_QUEUE, "wikidb.queue");
-    dbService = io.vertx.starter.database.WikiDatabaseService.createProxy(vertx.getDelegate(), wikiDbQueue);
+    wikiDbQueue = config().getString(CONFIG_WIKIDB_QUEUE, "wikidb.queue");
+    // Fail fast instead of waiting for the default 30 seconds when the database verticle is overloaded
+    deliveryOptions = new DeliveryOptions()
+      .setSendTimeout(config().getLong(CONFIG_WIKIDB_QUEUE_TIMEOUT, 5000L));
+    // Requests crossing the cluster use the compact binary codec, the database verticle replies with it too
+    if (vertx.isClustered() && config().getBoolean(CONFIG_WIKIDB_BINARY_CODEC, true)) {
+      WikiDatabaseMessageCodec.register(vertx.getDelegate());
+      deliveryOptions.setCodecName(WikiDatabaseMessageCodec.NAME);
+    }
+    localDelivery = config().getBoolean(CONFIG_WIKIDB_LOCAL_DELIVERY, true);
+    shards = Math.max(1, config().getInteger(CONFIG_WIKIDB_SHARDS, 1));
+    dbService = connectDatabase(deliveryOptions);
+    tracer = RequestTracer.shared(vertx.getDelegate(), config());
+    pageReads = SingleFlight.shared(vertx.getDelegate(), "http.pages");
+    admissionControl = AdmissionControl.shared(vertx, config());
+    accessLog = AccessLog.shared(vertx, config());
+    streamChunkSize = config().getInteger(CONFIG_HTTP_SERVER_STREAM_CHUNK_SIZE, 64 * 1024);
+    markdownChunkSize = config().getInteger(CONFIG_HTTP_MARKDOWN_CHUNK_SIZE, 16 * 1024);
+    // Templates are compiled once and kept, only the data changes between two renderings
+    templateEngine = FreeMarkerTemplateEngine.create()
+      .setMaxCacheSize(config().getInteger(CONFIG_HTTP_SSR_TEMPLATE_CACHE_SIZE, 100));
+    fragments = PageFragmentCache.shared(vertx, config());
+    pageList = PageListSnapshot.shared(vertx, config());
+    pageListBuilds = SingleFlight.shared(vertx.getDelegate(), "http.pagelist");
+    patches = PatchStats.shared(vertx);
+    eventLoops = EventLoopMonitor.shared(vertx, config());
+    if (eventLoops != null) {
+      eventLoops.register();
+    }
+    attachments = new AttachmentStore(vertx, config().getString(CONFIG_HTTP_ATTACHMENTS_PATH, "attachments"),
+      config().getLong(CONFIG_HTTP_ATTACHMENTS_MAX_SIZE, 10L * 1024 * 1024));
+    // Writes made through other instances only reach this one as page change events
+    String eventsAddress = config().getString(CONFIG_WIKIDB_EVENTS_ADDRESS, "wiki.pages.changes");
+    vertx.eventBus().<JsonObject>consumer(eventsAddress, message -> {
+      fragments.invalidate(message.body());
+      if (shards > 1) {
+        pageList.invalidate(message.body());
+      } else {
+        vertx.executeBlocking(future -> {
+          pageList.patch(message.body());
+          future.complete();
+        }, true, ar -> {
+          if (ar.failed()) {
+            LOGGER.error("Could not patch the page list, dropping it", ar.cause());
+            pageList.invalidate();
+          }
+        });
+      }
+      JsonArray changes = message.body().getJsonArray("changes", new JsonArray());
+      for (int i = 0; i < changes.size(); i++) {
+        pageReads.forget(changes.getJsonObject(i).getInteger("id"));
+      }
+    });
 
     HttpServer server = vertx.createHttpServer();
 
     // Endpoint handler
     Router router = Router.router(vertx);
 
+    // Stalls sampled while the router dispatches a request are counted against its route
+    if (eventLoops != null) {
+      router.route().handler(eventLoops::dispatch);
+    }
+
+    // The access log comes first so that requests rejected by the other handlers are logged too
+    if (accessLog != null) {
+      router.route().handler(accessLog.handler());
+    }
+
+    // Health checks are routed before the session handlers so that probes do not create sessions
+    router.get("/health/ready").handler(this::healthReady);
+    router.get("/metrics/admission").handler(this::metricsAdmission);
+    router.get("/metrics/ratelimit").handler(this::metricsRateLimit);
+    router.get("/metrics/database").handler(this::metricsDatabase);
+    router.get("/metrics/render").handler(this::metricsRender);
+    router.get("/metrics/accesslog").handler(this::metricsAccessLog);
+    router.get("/metrics/coalescing").handler(this::metricsCoalescing);
+    router.get("/metrics/pagelist").handler(this::metricsPageList);
+    router.get("/metrics/patches").handler(this::metricsPatches);
+    router.get("/debug/traces").handler(this::debugTraces);
+    router.get("/debug/eventloops").handler(this::debugEventLoops);
+
+    // Probes and metrics are not traced, they end before reaching the tracing handler
+    router.route().handler(this::traceRequest);
+
+    // Admission control runs before the body is read so that rejected requests cost as little as possible
+    router.get("/api/pages*").handler(admissionControl.handler(AdmissionControl.RouteClass.READ));
+    router.get("/wiki/*").handler(admissionControl.handler(AdmissionControl.RouteClass.READ));
+    router.post("/api/pages/:id/attachments").handler(admissionControl.handler(AdmissionControl.RouteClass.UPLOAD));
+    router.post("/api/pages*").handler(admissionControl.handler(AdmissionControl.RouteClass.WRITE));
+    router.put("/api/pages*").handler(admissionControl.handler(AdmissionControl.RouteClass.WRITE));
+    router.patch("/api/pages*").handler(admissionControl.handler(AdmissionControl.RouteClass.WRITE));
+    router.delete("/api/pages*").handler(admissionControl.handler(AdmissionControl.RouteClass.WRITE));
+    rateLimiters = RateLimiter.route(vertx, router, config());
+    router.post("/app/markdown").handler(admissionControl.handler(AdmissionControl.RouteClass.RENDER));
+
+    // Page list changes are pushed to the browsers, the bridge must come before the body handler
+    SockJSHandler sockJSHandler = SockJSHandler.create(vertx);
+    sockJSHandler.bridge(new BridgeOptions()
+      .addOutboundPermitted(new PermittedOptions()
+        .setAddress(eventsAddress)));
+    router.route("/eventbus/*").handler(sockJSHandler);
+
+    // Uploads are streamed to the attachment store, ahead of the body handler which would buffer them
+    router.post("/api/pages/:id/attachments").handler(this::apiUploadAttachment);
+
     router.route().handler(CookieHandler.create());
-    router.route().handler(BodyHandler.create());
+    router.route().handler(BodyHandler.create()
+      .setBodyLimit(config().getLong(CONFIG_HTTP_SERVER_BODY_LIMIT, 2L * 1024 * 1024)));
     router.route().handler(SessionHandler.create(LocalSessionStore.create(vertx)));
+    // The body handler calls the next handlers once the body is read, after the first dispatch returned
+    if (eventLoops != null) {
+      router.route().handler(eventLoops::dispatch);
+    }
 
     router.get("/app/*").handler(StaticHandler.create().setCachingEnabled(false));
-    router.get("/").handler(context -> context.reroute("/app/index.html"));
-
-    router.post("/app/markdown").handler(context -> {
-      String html = Processor.process(context.getBodyAsString());
-      context.response()
-        .putHeader("Content-Type", "text/html")
-        .setStatusCode(200)
-        .end(html);
-    });
+    router.get("/").handler(this::indexHandler);
+    router.get("/wiki/:name").handler(this::pageRenderingHandler);
+
+    router.post("/app/markdown").handler(this::markdownHandler);
 
     router.get("/api/pages").handler(this::apiRoot);
+    router.get("/api/pages/complete").handler(this::apiCompletePageName);
+    router.get("/api/pages/orphans").handler(this::apiOrphanPages);
     router.get("/api/pages/:id").handler(this::apiGetPage);
-    router.post().handler(BodyHandler.create());
+    router.get("/api/pages/:id/raw").handler(this::apiGetPageRaw);
+    router.get("/api/pages/:id/backlinks").handler(this::apiGetBacklinks);
+    router.get("/api/pages/:id/attachments").handler(this::apiGetAttachments);
+    router.get("/api/pages/:id/attachments/:name").handler(this::apiGetAttachment);
+    router.delete("/api/pages/:id/attachments/:name").handler(this::apiDeleteAttachment);
     router.post("/api/pages").handler(this::apiCreatePage);
-    router.put().handler(BodyHandler.create());
     router.put("/api/pages/:id").handler(this::apiUpdatePage);
+    router.patch("/api/pages/:id").handler(this::apiPatchPage);
     router.delete("/api" + "/pages/:id").handler(this::apiDeletePage);
+    router.post("/api/backups").handler(this::apiBackup);
 
     int portNumber = config().getInteger(CONFIG_HTTP_SERVER_PORT, 8080);
     server
@@ -81,6 +248,355 @@ public class HttpServerVerticle extends AbstractVerticle {
       });
   }
 
+  @Override
+  public void stop(Future<Void> stopFuture) throws Exception {
+    if (eventLoops != null) {
+      eventLoops.release(vertx);
+    }
+    if (accessLog != null) {
+      accessLog.release(vertx, stopFuture.completer());
+    } else {
+      stopFuture.complete();
+    }
+  }
+
+  /**
+   * @param options
+   * @return a database service sending its calls with some delivery options, routing them to the shards when
+   * the database is sharded
+   */
+  private WikiDatabaseService connectDatabase(DeliveryOptions options) {
+    List<io.vertx.starter.database.WikiDatabaseService> services = new ArrayList<>(shards);
+    for (int shard = 0; shard < shards; shard++) {
+      String address = ShardedWikiDatabaseService.address(wikiDbQueue, shard, shards);
+      services.add((localDelivery
+        ? io.vertx.starter.database.WikiDatabaseService.connect(vertx.getDelegate(), address, options)
+        : io.vertx.starter.database.WikiDatabaseService.createProxy(vertx.getDelegate(), address, options)).getDelegate());
+    }
+    return new WikiDatabaseService(shards > 1 ? new ShardedWikiDatabaseService(services) : services.get(0));
+  }
+
+  /**
+   * Start a trace for a sample of the requests, the trace id is sent back in the <code>X-Trace-Id</code> header
+   *
+   * @param context
+   */
+  private void traceRequest(RoutingContext context) {
+    long started = System.nanoTime();
+    String traceId = tracer.sample(started);
+    if (traceId != null) {
+      context.put(TRACE_ID, traceId);
+      context.put(TRACE_ROUTING_START, started);
+      context.response().putHeader("X-Trace-Id", traceId);
+      context.addBodyEndHandler(v -> tracer.span(traceId, "http.total", started));
+    }
+    context.next();
+  }
+
+  /**
+   * Get the database service for a request, traced requests get one that carries the trace to the database.
+   * The first call records the time the request spent in the router before reaching the database.
+   *
+   * @param context
+   * @return
+   */
+  private WikiDatabaseService db(RoutingContext context) {
+    String traceId = context.get(TRACE_ID);
+    if (traceId == null) {
+      return dbService;
+    }
+    Long routingStart = context.remove(TRACE_ROUTING_START);
+    if (routingStart != null) {
+      tracer.span(traceId, "http.routing", routingStart);
+    }
+    return connectDatabase(new DeliveryOptions(deliveryOptions)
+      .addHeader(RequestTracer.HEADER, traceId)
+      .addHeader(RequestTracer.SENT_HEADER, String.valueOf(System.nanoTime())));
+  }
+
+  /**
+   * Recent traces of the sampled requests
+   *
+   * @param context
+   */
+  private void debugTraces(RoutingContext context) {
+    context.response().putHeader("Content-Type", "application/json");
+    context.response().end(tracer.traces().encode());
+  }
+
+  /**
+   * Lag histograms of the event loops and the routes and handlers stalling them the most, the number of
+   * them listed is given by <code>top</code>, 20 by default
+   *
+   * @param context
+   */
+  private void debugEventLoops(RoutingContext context) {
+    if (eventLoops == null) {
+      apiFailure(context, 404, "Event loop monitoring is disabled");
+      return;
+    }
+    int top;
+    try {
+      String topParam = context.request().getParam("top");
+      top = topParam != null ? Math.min(Math.max(Integer.parseInt(topParam), 0), 256) : 20;
+    } catch (NumberFormatException e) {
+      apiFailure(context, 400, "Bad top parameter");
+      return;
+    }
+    context.response().putHeader("Content-Type", "application/json");
+    context.response().end(eventLoops.stats(top).encode());
+  }
+
+  /**
+   * Readiness probe, only succeeds once the warm-up stage of {@link MainVerticle} is over
+   *
+   * @param context
+   */
+  private void healthReady(RoutingContext context) {
+    LocalMap<String, Object> health = vertx.sharedData().getLocalMap(MainVerticle.HEALTH_MAP);
+    boolean ready = Boolean.TRUE.equals(health.get(MainVerticle.HEALTH_READY));
+    JsonObject payload = new JsonObject().put("ready", ready);
+    Object warmup = health.get(MainVerticle.HEALTH_WARMUP);
+    if (warmup != null) {
+      payload.put("warmup", warmup);
+    }
+    context.response().setStatusCode(ready ? 200 : 503);
+    context.response().putHeader("Content-Type", "application/json");
+    context.response().end(payload.encode());
+  }
+
+  /**
+   * Current admission limits, in-flight requests and rejection counts
+   *
+   * @param context
+   */
+  private void metricsAdmission(RoutingContext context) {
+    context.response().putHeader("Content-Type", "application/json");
+    context.response().end(admissionControl.stats().encode());
+  }
+
+  /**
+   * Rate limiter settings and counters
+   *
+   * @param context
+   */
+  private void metricsRateLimit(RoutingContext context) {
+    context.response().putHeader("Content-Type", "application/json");
+    JsonObject stats = new JsonObject();
+    rateLimiters.forEach((name, limiter) -> stats.put(name, limiter.stats()));
+    context.response().end(stats.encode());
+  }
+
+  /**
+   * Load and latencies of the database execution lanes
+   *
+   * @param context
+   */
+  private void metricsDatabase(RoutingContext context) {
+    dbService.rxFetchExecutionStats().subscribe(stats -> {
+      context.response().putHeader("Content-Type", "application/json");
+      context.response().end(stats.encode());
+    }, t -> apiFailure(context, t));
+  }
+
+  /**
+   * Page list snapshot size and counters
+   *
+   * @param context
+   */
+  private void metricsPageList(RoutingContext context) {
+    context.response().putHeader("Content-Type", "application/json");
+    context.response().end(pageList.stats().encode());
+  }
+
+  /**
+   * Counters of the page saves made with diffs
+   *
+   * @param context
+   */
+  private void metricsPatches(RoutingContext context) {
+    context.response().putHeader("Content-Type", "application/json");
+    context.response().end(patches.stats().encode());
+  }
+
+  /**
+   * Counters of the page reads coalesced by the API, the ones of the database are in its execution stats
+   *
+   * @param context
+   */
+  private void metricsCoalescing(RoutingContext context) {
+    context.response().putHeader("Content-Type", "application/json");
+    context.response().end(new JsonObject().put("http", pageReads.stats()).encode());
+  }
+
+  /**
+   * Access log settings and counters
+   *
+   * @param context
+   */
+  private void metricsAccessLog(RoutingContext context) {
+    context.response().putHeader("Content-Type", "application/json");
+    context.response().end((accessLog != null ? accessLog.stats() : new JsonObject().put("enabled", false)).encode());
+  }
+
+  /**
+   * Fragment cache size and hit counters
+   *
+   * @param context
+   */
+  private void metricsRender(RoutingContext context) {
+    context.response().putHeader("Content-Type", "application/json");
+    context.response().end(fragments.stats().encode());
+  }
+
+  /**
+   * Markdown preview of the editor, the HTML is sent in chunks as it is rendered
+   *
+   * @param context
+   */
+  private void markdownHandler(RoutingContext context) {
+    HttpServerResponse response = context.response()
+      .putHeader("Content-Type", "text/html")
+      .setStatusCode(200);
+    io.vertx.core.buffer.Buffer[] pending = {null};
+    MarkdownRenderer.render(context.getBodyAsString(), markdownChunkSize, chunk -> {
+      if (pending[0] != null) {
+        response.setChunked(true);
+        response.write(Buffer.newInstance(pending[0]));
+      }
+      pending[0] = chunk;
+    });
+    response.end(Buffer.newInstance(pending[0]));
+  }
+
+  /**
+   * Server side rendered index, the page list fragment is rendered once per change of the list
+   *
+   * @param context
+   */
+  private void indexHandler(RoutingContext context) {
+    long generation = fragments.generation();
+    String cached = fragments.pageList();
+    Single<String> pageList = cached != null ? Single.just(cached) : db(context).rxFetchAllPageSummaries()
+      .map(pages -> {
+        String html = renderPageList(pages);
+        fragments.putPageList(html, generation);
+        return html;
+      });
+    pageList.subscribe(html -> {
+      context.put("title", "Wiki home");
+      context.put("pageList", html);
+      render(context, 200, "templates/index.ftl");
+    }, context::fail);
+  }
+
+  /**
+   * Server side rendered page, the page body fragment is rendered once per change of the page
+   *
+   * @param context
+   */
+  private void pageRenderingHandler(RoutingContext context) {
+    String name = context.request().getParam("name");
+    long generation = fragments.generation();
+    PageFragmentCache.PageFragment cached = fragments.page(name);
+    Single<PageFragmentCache.PageFragment> fragment = cached != null ? Single.just(cached) : db(context)
+      .rxFetchPage(name)
+      .map(page -> {
+        if (page == null) {
+          return null;
+        }
+        PageFragmentCache.PageFragment rendered = new PageFragmentCache.PageFragment(
+          page.getId(), MarkdownRenderer.render(page.getContent()), System.currentTimeMillis());
+        fragments.putPage(name, rendered, generation);
+        return rendered;
+      });
+    fragment.subscribe(page -> {
+      context.put("title", name);
+      if (page != null) {
+        context.put("content", page.html);
+        context.put("timestamp", Instant.ofEpochMilli(page.rendered).toString());
+        render(context, 200, "templates/page.ftl");
+      } else {
+        context.put("content", "<p>This page does not exist yet, it can be created from the editor.</p>");
+        context.put("timestamp", Instant.now().toString());
+        render(context, 404, "templates/page.ftl");
+      }
+    }, context::fail);
+  }
+
+  /**
+   * @param pages
+   * @return the page list as HTML, with the names escaped
+   */
+  private static String renderPageList(List<PageSummary> pages) {
+    if (pages.isEmpty()) {
+      return "<p>The wiki is currently empty!</p>";
+    }
+    StringBuilder html = new StringBuilder(32 + pages.size() * 64).append("<h2>Pages:</h2>\n<ul>\n");
+    for (PageSummary page : pages) {
+      String escaped = StringUtil.XHTMLEnc(page.getName());
+      html.append("  <li><a href=\"/wiki/")
+        .append(encodePathSegment(page.getName()))
+        .append("\">").append(escaped).append("</a></li>\n");
+    }
+    return html.append("</ul>").toString();
+  }
+
+  /**
+   * @param segment
+   * @return the segment encoded for use in a URL path
+   */
+  private static String encodePathSegment(String segment) {
+    try {
+      return URLEncoder.encode(segment, "UTF-8").replace("+", "%20");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Render a template with the data of the routing context
+   *
+   * @param context
+   * @param statusCode
+   * @param template
+   */
+  private void render(RoutingContext context, int statusCode, String template) {
+    templateEngine.render(context, template, ar -> {
+      if (ar.succeeded()) {
+        context.response().setStatusCode(statusCode);
+        context.response().putHeader("Content-Type", "text/html; charset=utf-8");
+        context.response().end(ar.result());
+      } else {
+        context.fail(ar.cause());
+      }
+    });
+  }
+
+  /**
+   * API of taking a backup, incremental unless <code>type=full</code> is given. The response is sent once
+   * the backup is written. Each shard backs its pages up on its own, the backups of all the shards are listed
+   * when the database is sharded.
+   *
+   * @param context
+   */
+  private void apiBackup(RoutingContext context) {
+    JsonObject request = new JsonObject().put("type", context.request().getParam("type"));
+    DeliveryOptions options = new DeliveryOptions()
+      .setSendTimeout(config().getLong(CONFIG_WIKIDB_BACKUP_TIMEOUT, 10 * 60 * 1000L));
+    String backupAddress = config().getString(CONFIG_WIKIDB_BACKUP_ADDRESS, "wikidb.backup");
+    List<Single<JsonObject>> backups = new ArrayList<>(shards);
+    for (int shard = 0; shard < shards; shard++) {
+      backups.add(vertx.eventBus().<JsonObject>rxSend(ShardedWikiDatabaseService.address(backupAddress, shard, shards),
+        request, options).map(reply -> reply.body()));
+    }
+    Single.zip(backups, results -> shards > 1
+      ? new JsonObject().put("shards", new JsonArray(Arrays.asList(results))) : (JsonObject) results[0])
+      .subscribe(
+        backup -> apiResponse(context, 201, "backup", backup),
+        t -> apiFailure(context, t));
+  }
+
   /**
    * API of deleting page
    *
@@ -88,8 +604,13 @@ public class HttpServerVerticle extends AbstractVerticle {
    */
   private void apiDeletePage(RoutingContext context) {
     int id = Integer.valueOf(context.request().getParam("id"));
-    dbService.rxDeletePage(id).subscribe(
-      v -> apiResponse(context, 200, null, null),
+    db(context).rxDeletePage(id).subscribe(
+      v -> {
+        pageReads.forget(id);
+        pageList.invalidate();
+        fragments.invalidate(id, true);
+        apiResponse(context, 200, null, null);
+      },
       t -> apiFailure(context, t));
   }
 
@@ -104,11 +625,61 @@ public class HttpServerVerticle extends AbstractVerticle {
     if (!validateJsonPageDocument(context, page, "markdown")) {
       return;
     }
-    dbService.rxSavePage(id, page.getString("markdown")).subscribe(
-      v -> apiResponse(context, 200, null, null),
+    db(context).rxSavePage(id, page.getString("markdown")).subscribe(
+      v -> {
+        pageReads.forget(id);
+        fragments.invalidate(id, false);
+        apiResponse(context, 200, "hash", PageDiff.hash(page.getString("markdown")));
+      },
       t -> apiFailure(context, t));
   }
 
+  /**
+   * API of saving a page with a diff, <code>{base, edits}</code> where the base is the hash of the version
+   * the edits were made against, see {@link PageDiff}. A page changed since its base is not saved, the
+   * response is a conflict with the current hash, and the client must fetch the page again.
+   *
+   * @param context
+   */
+  private void apiPatchPage(RoutingContext context) {
+    int id = Integer.valueOf(context.request().getParam("id"));
+    JsonObject patch;
+    try {
+      patch = context.getBodyAsJson();
+    } catch (RuntimeException e) {
+      patch = null;
+    }
+    if (patch == null || !(patch.getValue("base") instanceof String) || !(patch.getValue("edits") instanceof JsonArray)
+      || !PageDiff.isValid(patch.getJsonArray("edits"))) {
+      patches.rejected();
+      apiFailure(context, 400, "Bad patch payload");
+      return;
+    }
+    long requestBytes = context.getBody().length();
+    db(context).rxPatchPage(id, patch.getString("base"), patch.getJsonArray("edits")).subscribe(outcome -> {
+      switch (outcome.getString("status")) {
+        case "saved":
+          pageReads.forget(id);
+          fragments.invalidate(id, false);
+          patches.saved(requestBytes, outcome.getLong("bytes"));
+          apiResponse(context, 200, "hash", outcome.getString("hash"));
+          break;
+        case "conflict":
+          patches.conflict();
+          JsonResponseWriter.failure("The page was changed since its base version", 96)
+            .field("hash", outcome.getString("hash"))
+            .end(context.response(), 409);
+          break;
+        case "invalid":
+          patches.rejected();
+          apiFailure(context, 400, "The edits do not fit the base version");
+          break;
+        default:
+          apiFailure(context, 404, "There is no page with ID " + id);
+      }
+    }, t -> apiFailure(context, t));
+  }
+
   /**
    * @param context
    * @param page
@@ -138,31 +709,422 @@ public class HttpServerVerticle extends AbstractVerticle {
     if (!validateJsonPageDocument(context, page, "name", "markdown")) {
       return;
     }
-    dbService.rxCreatePage(page.getString("name"), page.getString("markdown")).subscribe(
-      v -> apiResponse(context, 201, null, null),
+    db(context).rxCreatePage(page.getString("name"), page.getString("markdown")).subscribe(
+      v -> {
+        pageList.invalidate();
+        fragments.invalidatePageList();
+        apiResponse(context, 201, null, null);
+      },
+      t -> apiFailure(context, t));
+  }
+
+  /**
+   * API of page name completion, <code>limit</code> defaults to 10 and is capped to 100
+   *
+   * @param context
+   */
+  private void apiCompletePageName(RoutingContext context) {
+    String prefix = context.request().getParam("prefix");
+    if (prefix == null) {
+      apiFailure(context, 400, "Missing prefix parameter");
+      return;
+    }
+    int limit;
+    try {
+      String limitParam = context.request().getParam("limit");
+      limit = limitParam != null ? Math.min(Math.max(Integer.parseInt(limitParam), 1), 100) : 10;
+    } catch (NumberFormatException e) {
+      apiFailure(context, 400, "Bad limit parameter");
+      return;
+    }
+    db(context).rxCompletePageName(prefix, limit).subscribe(
+      pages -> JsonResponseWriter.success(64 + pages.size() * 48)
+        .field("pages", pageSummaries(pages))
+        .end(context.response(), 200),
       t -> apiFailure(context, t));
   }
 
   /**
-   * API of getting page
+   * API of the pages linking to a page
+   *
+   * @param context
+   */
+  private void apiGetBacklinks(RoutingContext context) {
+    int id = Integer.valueOf(context.request().getParam("id"));
+    db(context).rxFetchBacklinks(id).subscribe(pages -> {
+      if (pages != null) {
+        JsonResponseWriter.success(64 + pages.size() * 48)
+          .field("pages", pageSummaries(pages))
+          .end(context.response(), 200);
+      } else {
+        apiFailure(context, 404, "There is no page with ID " + id);
+      }
+    }, t -> apiFailure(context, t));
+  }
+
+  /**
+   * API of the pages no other page links to
+   *
+   * @param context
+   */
+  private void apiOrphanPages(RoutingContext context) {
+    db(context).rxFetchOrphanPages().subscribe(
+      pages -> JsonResponseWriter.success(64 + pages.size() * 48)
+        .field("pages", pageSummaries(pages))
+        .end(context.response(), 200),
+      t -> apiFailure(context, t));
+  }
+
+  /**
+   * API of getting page. Concurrent requests of the same page share one database read, one rendering and
+   * one encoded response.
    *
    * @param context
    */
   private void apiGetPage(RoutingContext context) {
     int id = Integer.valueOf(context.request().getParam("id"));
-    dbService.rxFetchPageById(id)
-      .subscribe(dbObject -> {
-        if (dbObject.getBoolean("found")) {
-          JsonObject payload = new JsonObject()
-            .put("name", dbObject.getString("name"))
-            .put("id", dbObject.getInteger("id"))
-            .put("markdown", dbObject.getString("content"))
-            .put("html", Processor.process(dbObject.getString("content")));
-          apiResponse(context, 200, "page", payload);
-        } else {
-          apiFailure(context, 404, "There is no page with ID " + id);
+    String traceId = context.get(TRACE_ID);
+    WikiDatabaseService db = db(context);
+    long requested = System.nanoTime();
+    pageReads.execute(id, handler -> db.rxFetchPageById(id)
+      .map(page -> {
+        long rendering = System.nanoTime();
+        tracer.span(traceId, "http.db", requested, rendering);
+        if (page == null) {
+          return null;
+        }
+        io.vertx.core.buffer.Buffer body = JsonResponseWriter.success(128 + page.getContent().length() * 5 / 2)
+          .field("page", generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("name", page.getName());
+            generator.writeNumberField("id", page.getId());
+            generator.writeStringField("hash", PageDiff.hash(page.getContent()));
+            generator.writeStringField("markdown", page.getContent());
+            generator.writeFieldName("html");
+            MarkdownRenderer.jsonString(page.getContent()).write(generator);
+            generator.writeEndObject();
+          })
+          .encode();
+        tracer.span(traceId, "http.render", rendering);
+        return body;
+      })
+      .subscribe(RxHelper.toSubscriber(handler)), ar -> {
+      if (ar.failed()) {
+        apiFailure(context, ar.cause());
+      } else if (ar.result() == null) {
+        apiFailure(context, 404, "There is no page with ID " + id);
+      } else {
+        JsonResponseWriter.end(context.response(), 200, ar.result());
+      }
+    });
+  }
+
+  /**
+   * API of the raw markdown of a page, streamed in chunks from the database with backpressure and without
+   * a JSON envelope. Single byte ranges are supported, and the content length is sent, when the database
+   * knows the size of the content.
+   *
+   * @param context
+   */
+  private void apiGetPageRaw(RoutingContext context) {
+    int id = Integer.valueOf(context.request().getParam("id"));
+    db(context).rxFetchPageContentChunk(id, 0, streamChunkSize).subscribe(first -> {
+      if (!first.getBoolean("found")) {
+        apiFailure(context, 404, "There is no page with ID " + id);
+        return;
+      }
+      HttpServerResponse response = context.response();
+      response.putHeader("Content-Type", "text/markdown; charset=utf-8");
+      Long size = first.getLong("bytes");
+      if (size == null) {
+        response.setChunked(true);
+        streamPageContent(response, id, first, first.getLong("version"), 0, 0, Long.MAX_VALUE);
+        return;
+      }
+      response.putHeader("Accept-Ranges", "bytes");
+      long[] range = parseRange(context.request().getHeader("Range"), size);
+      if (range != null && range.length == 0) {
+        response.setStatusCode(416);
+        response.putHeader("Content-Range", "bytes */" + size);
+        response.end();
+        return;
+      }
+      if (range != null) {
+        response.setStatusCode(206);
+        response.putHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + size);
+      } else {
+        range = new long[]{0, size - 1};
+      }
+      response.putHeader("Content-Length", String.valueOf(range[1] - range[0] + 1));
+      streamPageContent(response, id, first, first.getLong("version"), 0, range[0], range[1]);
+    }, t -> apiFailure(context, t));
+  }
+
+  /**
+   * Write the part of a chunk that falls in a byte range, then fetch the next chunk once the response can
+   * take more data. The connection is closed when the page changes or disappears during the transfer.
+   *
+   * @param response
+   * @param id
+   * @param chunk    chunk fetched from the database
+   * @param version  version of the content of the first chunk
+   * @param offset   offset of the chunk in the content, in bytes
+   * @param from     first byte to send
+   * @param to       last byte to send
+   */
+  private void streamPageContent(HttpServerResponse response, int id, JsonObject chunk, Long version,
+                                 long offset, long from, long to) {
+    if (response.closed()) {
+      return;
+    }
+    if (!chunk.getBoolean("found") || !Objects.equals(version, chunk.getLong("version"))) {
+      response.close();
+      return;
+    }
+    byte[] bytes = chunk.getString("chunk").getBytes(StandardCharsets.UTF_8);
+    int start = (int) Math.max(0, Math.min(from - offset, bytes.length));
+    int end = (int) Math.max(start, Math.min(to - offset + 1, bytes.length));
+    if (end > start) {
+      response.write(Buffer.newInstance(io.vertx.core.buffer.Buffer.buffer(
+        start == 0 && end == bytes.length ? bytes : Arrays.copyOfRange(bytes, start, end))));
+    }
+    long next = chunk.getLong("next");
+    long nextOffset = offset + bytes.length;
+    if (next < 0 || nextOffset > to) {
+      response.end();
+      return;
+    }
+    Runnable fetchNext = () -> dbService.rxFetchPageContentChunk(id, next, streamChunkSize).subscribe(
+      nextChunk -> streamPageContent(response, id, nextChunk, version, nextOffset, from, to),
+      t -> {
+        LOGGER.error("Could not stream page " + id, t);
+        response.close();
+      });
+    if (response.writeQueueFull()) {
+      response.drainHandler(v -> fetchNext.run());
+    } else {
+      fetchNext.run();
+    }
+  }
+
+  /**
+   * Parse a single byte range, multiple ranges are not supported and the whole content is sent instead
+   *
+   * @param header value of the Range header, may be null
+   * @param size   size of the content in bytes
+   * @return the first and last bytes of the range, an empty array when the range cannot be satisfied, or
+   * null when the whole content must be sent
+   */
+  static long[] parseRange(String header, long size) {
+    if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+      return null;
+    }
+    String spec = header.substring("bytes=".length()).trim();
+    int dash = spec.indexOf('-');
+    if (dash < 0) {
+      return null;
+    }
+    try {
+      long first;
+      long last;
+      if (dash == 0) {
+        long suffix = Long.parseLong(spec.substring(1));
+        if (suffix <= 0) {
+          return new long[0];
+        }
+        first = Math.max(0, size - suffix);
+        last = size - 1;
+      } else {
+        first = Long.parseLong(spec.substring(0, dash));
+        last = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+        if (last < first) {
+          return null;
         }
-      }, t -> apiFailure(context, t));
+        last = Math.min(last, size - 1);
+      }
+      return first < size ? new long[]{first, last} : new long[0];
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * API of attaching a file to a page, <code>POST /api/pages/:id/attachments?name=</code> with the file as
+   * the body and its type as the content type. The body is streamed to the attachment store, a file with
+   * the same name replaces the previous one.
+   *
+   * @param context
+   */
+  private void apiUploadAttachment(RoutingContext context) {
+    HttpServerRequest request = context.request();
+    // Held back until the page is known to exist
+    request.pause();
+    int id = Integer.valueOf(request.getParam("id"));
+    String name = request.getParam("name");
+    if (!validAttachmentName(name)) {
+      rejectUpload(context, 400, "Bad attachment name");
+      return;
+    }
+    String length = request.getHeader("Content-Length");
+    try {
+      if (length != null && Long.parseLong(length) > attachments.maxSize()) {
+        rejectUpload(context, 413, new AttachmentStore.TooLargeException(attachments.maxSize()).getMessage());
+        return;
+      }
+    } catch (NumberFormatException e) {
+      rejectUpload(context, 400, "Bad content length");
+      return;
+    }
+    WikiDatabaseService db = db(context);
+    db.rxPageExists(id).subscribe(exists -> {
+      if (!exists) {
+        rejectUpload(context, 404, "There is no page with ID " + id);
+        return;
+      }
+      if ("100-continue".equalsIgnoreCase(request.getHeader("Expect"))) {
+        context.response().writeContinue();
+      }
+      attachments.store(request, stored -> {
+        if (stored.failed()) {
+          if (stored.cause() instanceof AttachmentStore.TooLargeException) {
+            rejectUpload(context, 413, stored.cause().getMessage());
+          } else {
+            LOGGER.error("Could not store attachment " + name + " of page " + id, stored.cause());
+            rejectUpload(context, 500, stored.cause().getMessage());
+          }
+          return;
+        }
+        String contentType = request.getHeader("Content-Type");
+        JsonObject attachment = new JsonObject()
+          .put("name", name)
+          .put("hash", stored.result().getString("hash"))
+          .put("size", stored.result().getLong("size"))
+          .put("contentType", contentType != null ? contentType : "application/octet-stream")
+          .put("created", Instant.now().toEpochMilli());
+        db.rxSaveAttachment(id, attachment).subscribe(saved -> {
+          if (saved) {
+            apiResponse(context, 201, "attachment", attachment);
+          } else {
+            apiFailure(context, 404, "There is no page with ID " + id);
+          }
+        }, t -> apiFailure(context, t));
+      });
+    }, t -> rejectUpload(context, 500, t.getMessage()));
+  }
+
+  /**
+   * Answer an upload with an error, closing the connection unless the whole body was read so that the
+   * client stops sending it
+   *
+   * @param context
+   * @param statusCode
+   * @param error
+   */
+  private void rejectUpload(RoutingContext context, int statusCode, String error) {
+    HttpServerRequest request = context.request();
+    if (!request.isEnded()) {
+      context.response().putHeader("Connection", "close");
+      context.addBodyEndHandler(v -> request.connection().close());
+    }
+    apiFailure(context, statusCode, error);
+  }
+
+  /**
+   * @param name
+   * @return whether an attachment name can be used, as the last segment of its URL
+   */
+  private static boolean validAttachmentName(String name) {
+    if (name == null || name.isEmpty() || name.length() > 255 || name.equals(".") || name.equals("..")) {
+      return false;
+    }
+    return name.chars().noneMatch(c -> c == '/' || c == '\\' || Character.isISOControl(c));
+  }
+
+  /**
+   * API of the attachments of a page, ordered by name
+   *
+   * @param context
+   */
+  private void apiGetAttachments(RoutingContext context) {
+    int id = Integer.valueOf(context.request().getParam("id"));
+    db(context).rxFetchAttachments(id).subscribe(
+      list -> JsonResponseWriter.success(64 + list.size() * 160)
+        .field("attachments", list)
+        .end(context.response(), 200),
+      t -> apiFailure(context, t));
+  }
+
+  /**
+   * API of downloading an attachment, sent from its file without copying. The content of a hash never
+   * changes: the hash is a strong entity tag, and single byte ranges are supported.
+   *
+   * @param context
+   */
+  private void apiGetAttachment(RoutingContext context) {
+    int id = Integer.valueOf(context.request().getParam("id"));
+    String name = context.request().getParam("name");
+    db(context).rxFetchAttachment(id, name).subscribe(attachment -> {
+      if (attachment == null) {
+        apiFailure(context, 404, "There is no attachment " + name + " on page " + id);
+        return;
+      }
+      HttpServerRequest request = context.request();
+      HttpServerResponse response = context.response();
+      String etag = "\"" + attachment.getString("hash") + "\"";
+      long size = attachment.getLong("size");
+      response.putHeader("ETag", etag)
+        .putHeader("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME
+          .format(Instant.ofEpochMilli(attachment.getLong("created")).atZone(ZoneOffset.UTC)))
+        // A name may be given a new file, so caches revalidate, which the entity tag makes cheap
+        .putHeader("Cache-Control", "no-cache")
+        .putHeader("Accept-Ranges", "bytes");
+      if (etag.equals(request.getHeader("If-None-Match"))) {
+        response.setStatusCode(304).end();
+        return;
+      }
+      // Uploaded files are served as they were declared, never as active content of the wiki
+      response.putHeader("Content-Type", attachment.getString("contentType"))
+        .putHeader("X-Content-Type-Options", "nosniff")
+        .putHeader("Content-Security-Policy", "sandbox");
+      String ifRange = request.getHeader("If-Range");
+      long[] range = ifRange == null || ifRange.equals(etag) ? parseRange(request.getHeader("Range"), size) : null;
+      if (range != null && range.length == 0) {
+        response.setStatusCode(416);
+        response.putHeader("Content-Range", "bytes */" + size);
+        response.end();
+        return;
+      }
+      if (range != null) {
+        response.setStatusCode(206);
+        response.putHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + size);
+      } else {
+        range = new long[]{0, size - 1};
+      }
+      String path = attachments.path(attachment.getString("hash"));
+      response.sendFile(path, range[0], range[1] - range[0] + 1, sent -> {
+        if (sent.failed() && !response.ended()) {
+          LOGGER.error("Could not send attachment " + name + " of page " + id + " from " + path, sent.cause());
+          apiFailure(context, 500, "Could not send attachment " + name);
+        }
+      });
+    }, t -> apiFailure(context, t));
+  }
+
+  /**
+   * API of deleting an attachment, its file is kept in the store
+   *
+   * @param context
+   */
+  private void apiDeleteAttachment(RoutingContext context) {
+    int id = Integer.valueOf(context.request().getParam("id"));
+    String name = context.request().getParam("name");
+    db(context).rxDeleteAttachment(id, name).subscribe(deleted -> {
+      if (deleted) {
+        apiResponse(context, 200, null, null);
+      } else {
+        apiFailure(context, 404, "There is no attachment " + name + " on page " + id);
+      }
+    }, t -> apiFailure(context, t));
   }
 
   /**
@@ -171,13 +1133,114 @@ public class HttpServerVerticle extends AbstractVerticle {
    * @param context
    */
   private void apiRoot(RoutingContext context) {
-    dbService.rxFetchAllPagesData()
-      .flatMapObservable(Observable::from)
-      .map(obj -> new JsonObject()
-        .put("id", obj.getInteger("ID"))
-        .put("name", obj.getString("NAME")))
-      .collect(JsonArray::new, JsonArray::add)
-      .subscribe(pages -> apiResponse(context, 200, "pages", pages), t -> apiFailure(context, t));
+    String since = context.request().getParam("since");
+    if (since != null) {
+      apiChangesSince(context, since);
+      return;
+    }
+    PageListSnapshot.Snapshot snapshot = pageList.get();
+    if (snapshot != null) {
+      endPageList(context, snapshot);
+      return;
+    }
+    // The sequence is read first, replaying changes a client already sees in the list is harmless
+    long generation = pageList.generation();
+    WikiDatabaseService db = db(context);
+    pageListBuilds.execute(generation, handler -> changeCursor(db)
+      .flatMap(cursor -> db.rxFetchAllPageSummaries()
+        .flatMap(pages -> vertx.<PageListSnapshot.Snapshot>rxExecuteBlocking(future -> {
+          PageListSnapshot.Snapshot built = shards > 1
+            ? pageList.build(ShardedWikiDatabaseService.sequence(cursor), cursor, pages)
+            : pageList.build(Long.parseLong(cursor), pages);
+          pageList.put(built, generation);
+          future.complete(built);
+        }, false)))
+      .subscribe(RxHelper.toSubscriber(handler)), ar -> {
+      if (ar.succeeded()) {
+        endPageList(context, ar.result());
+      } else {
+        apiFailure(context, ar.cause());
+      }
+    });
+  }
+
+  /**
+   * End a response with the encoded page list, compressed when the client accepts it
+   *
+   * @param context
+   * @param snapshot
+   */
+  private void endPageList(RoutingContext context, PageListSnapshot.Snapshot snapshot) {
+    HttpServerResponse response = context.response();
+    response.putHeader("Vary", "Accept-Encoding");
+    String accepted = context.request().getHeader("Accept-Encoding");
+    if (snapshot.gzipped != null && accepted != null && accepted.contains("gzip")) {
+      response.putHeader("Content-Encoding", "gzip");
+      JsonResponseWriter.end(response, 200, snapshot.gzipped);
+    } else {
+      JsonResponseWriter.end(response, 200, snapshot.body);
+    }
+  }
+
+  /**
+   * @param pages
+   * @return a writer of the pages as an array of <code>{id, name}</code>
+   */
+  static JsonResponseWriter.ValueWriter pageSummaries(List<PageSummary> pages) {
+    return generator -> {
+      generator.writeStartArray();
+      for (PageSummary page : pages) {
+        generator.writeStartObject();
+        generator.writeNumberField("id", page.getId());
+        generator.writeStringField("name", page.getName());
+        generator.writeEndObject();
+      }
+      generator.writeEndArray();
+    };
+  }
+
+  /**
+   * @param db
+   * @return the change sequence of the database, or its change cursor when it is sharded
+   */
+  private Single<String> changeCursor(WikiDatabaseService db) {
+    if (shards == 1) {
+      return db.rxFetchLastChangeSequence().map(String::valueOf);
+    }
+    return Single.create(new SingleOnSubscribeAdapter<>(future ->
+      ((ShardedWikiDatabaseService) db.getDelegate()).fetchChangeCursor(future)));
+  }
+
+  /**
+   * API of the page changes after a sequence number, or after a change cursor when the database is sharded,
+   * clients too far behind are asked to fetch the whole list again
+   *
+   * @param context
+   * @param since
+   */
+  private void apiChangesSince(RoutingContext context, String since) {
+    Single<JsonObject> fetched;
+    if (shards > 1) {
+      ShardedWikiDatabaseService db = (ShardedWikiDatabaseService) db(context).getDelegate();
+      fetched = Single.create(new SingleOnSubscribeAdapter<>(future -> db.fetchChangesSince(since, future)));
+    } else {
+      long sequence;
+      try {
+        sequence = Long.parseLong(since);
+      } catch (NumberFormatException e) {
+        apiFailure(context, 400, "Bad since parameter: " + since);
+        return;
+      }
+      fetched = db(context).rxFetchChangesSince(sequence);
+    }
+    fetched.subscribe(delta -> {
+      JsonArray changes = delta.getJsonArray("changes");
+      JsonResponseWriter.success(128 + changes.size() * 64)
+        .field("sequence", delta.getValue("sequence"))
+        .field("resyncRequired", delta.getBoolean("resyncRequired"))
+        .field("changes", changes)
+        .end(context.response(), 200);
+    }, t -> apiFailure(context, t));
   }
 
   /**
@@ -187,11 +1250,9 @@ public class HttpServerVerticle extends AbstractVerticle {
    * @param jsonData
    */
   private void apiResponse(RoutingContext context, int statusCode, String jsonField, Object jsonData) {
-    context.response().setStatusCode(statusCode);
-    context.response().putHeader("Content-Type", "application/json");
-    JsonObject wrapped = new JsonObject().put("success", true);
-    if (jsonField != null && jsonData != null) wrapped.put(jsonField, jsonData);
-    context.response().end(wrapped.encode());
+    JsonResponseWriter writer = JsonResponseWriter.success(256);
+    if (jsonField != null && jsonData != null) writer.field(jsonField, jsonData);
+    writer.end(context.response(), statusCode);
   }
 
   /**
@@ -208,11 +1269,7 @@ public class HttpServerVerticle extends AbstractVerticle {
    * @param error
    */
   private void apiFailure(RoutingContext context, int statusCode, String error) {
-    context.response().setStatusCode(statusCode);
-    context.response().putHeader("Content-Type", "application/json");
-    context.response().end(new JsonObject()
-      .put("success", false)
-      .put("error", error).encode());
+    JsonResponseWriter.failure(context.response(), statusCode, error);
   }
 
 }
@@ -0,0 +1,155 @@
+package io.vertx.starter.http;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.json.EncodeException;
+import io.vertx.core.json.Json;
+import io.vertx.rxjava.core.buffer.Buffer;
+import io.vertx.rxjava.core.http.HttpServerResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes the JSON envelope of API responses straight into the response buffer with a streaming generator,
+ * without building a {@link io.vertx.core.json.JsonObject} tree or an intermediate string.
+ * <p>
+ * The constant parts of the envelope and the field names are encoded once and copied as raw bytes, only the
+ * values go through the generator. The buffer is handed to the response as is: Vert.x wraps it so that it
+ * cannot be released, which rules out pooled buffers, so callers give a size hint instead to avoid growing
+ * it.
+ */
+class JsonResponseWriter {
+
+  private static final SerializedString SUCCESS = new SerializedString("{\"success\":true");
+  private static final SerializedString FAILURE = new SerializedString("{\"success\":false,\"error\":");
+  private static final SerializedString END = new SerializedString("}");
+  private static final ConcurrentHashMap<String, SerializedString> FIELDS = new ConcurrentHashMap<>();
+
+  /**
+   * Writes one value with the generator
+   */
+  @FunctionalInterface
+  interface ValueWriter {
+    void write(JsonGenerator generator) throws IOException;
+  }
+
+  private final ByteBuf buffer;
+  private final JsonGenerator generator;
+
+  private JsonResponseWriter(SerializedString start, int sizeHint) {
+    buffer = Unpooled.buffer(Math.max(64, sizeHint));
+    try {
+      generator = Json.mapper.getFactory().createGenerator((OutputStream) new ByteBufOutputStream(buffer));
+      // Values are written at the root level between raw envelope parts, they must not be separated
+      generator.setRootValueSeparator(null);
+      generator.writeRaw(start);
+    } catch (IOException e) {
+      throw new EncodeException("Failed to start JSON response: " + e.getMessage());
+    }
+  }
+
+  /**
+   * @param sizeHint expected size of the response in bytes
+   * @return a writer for a successful response
+   */
+  static JsonResponseWriter success(int sizeHint) {
+    return new JsonResponseWriter(SUCCESS, sizeHint);
+  }
+
+  /**
+   * Add a field to the envelope
+   *
+   * @param name
+   * @param value JSON object or array, string, number, boolean or null
+   * @return
+   */
+  JsonResponseWriter field(String name, Object value) {
+    return field(name, generator -> generator.writeObject(value));
+  }
+
+  /**
+   * Add a field to the envelope, its value is streamed by the value writer
+   *
+   * @param name
+   * @param value
+   * @return
+   */
+  JsonResponseWriter field(String name, ValueWriter value) {
+    try {
+      generator.writeRaw(FIELDS.computeIfAbsent(name, n -> new SerializedString(",\"" + n + "\":")));
+      value.write(generator);
+    } catch (IOException e) {
+      throw new EncodeException("Failed to encode field " + name + ": " + e.getMessage());
+    }
+    return this;
+  }
+
+  /**
+   * Close the envelope and end the response
+   *
+   * @param response
+   * @param statusCode
+   */
+  void end(HttpServerResponse response, int statusCode) {
+    end(response, statusCode, encode());
+  }
+
+  /**
+   * Close the envelope
+   *
+   * @return the encoded response, it cannot be released so it can be sent any number of times
+   */
+  io.vertx.core.buffer.Buffer encode() {
+    try {
+      generator.writeRaw(END);
+      generator.close();
+    } catch (IOException e) {
+      throw new EncodeException("Failed to end JSON response: " + e.getMessage());
+    }
+    return io.vertx.core.buffer.Buffer.buffer(buffer);
+  }
+
+  /**
+   * End a response with an encoded envelope
+   *
+   * @param response
+   * @param statusCode
+   * @param body
+   */
+  static void end(HttpServerResponse response, int statusCode, io.vertx.core.buffer.Buffer body) {
+    response.setStatusCode(statusCode);
+    response.putHeader("Content-Type", "application/json");
+    response.end(Buffer.newInstance(body));
+  }
+
+  /**
+   * End a response with a failure envelope
+   *
+   * @param response
+   * @param statusCode
+   * @param error
+   */
+  static void failure(HttpServerResponse response, int statusCode, String error) {
+    failure(error, 64).end(response, statusCode);
+  }
+
+  /**
+   * @param error
+   * @param sizeHint expected size of the other fields in bytes
+   * @return a writer for a failure response with more fields than the error
+   */
+  static JsonResponseWriter failure(String error, int sizeHint) {
+    JsonResponseWriter writer = new JsonResponseWriter(FAILURE, sizeHint + (error != null ? error.length() : 0));
+    try {
+      writer.generator.writeString(error);
+    } catch (IOException e) {
+      throw new EncodeException("Failed to encode error: " + e.getMessage());
+    }
+    return writer;
+  }
+}
@@ -0,0 +1,188 @@
+package io.vertx.starter.http;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.github.rjeschke.txtmark.Processor;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Renders Markdown with txtmark a segment at a time, so that the HTML of a large page is produced and sent in
+ * pieces instead of as one string the size of the page, copied again into each response.
+ * <p>
+ * Segments are runs of top level blocks of a few kilobytes, txtmark has a fixed cost per call. The input is
+ * cut at the blank lines between top level blocks, except before an indented line, a list item or a quote,
+ * which may continue the previous block, and inside fenced code or an HTML block. Link reference definitions
+ * apply to the whole page, so they are collected first and given to every segment with links.
+ */
+final class MarkdownRenderer {
+
+  private static final Pattern LINK_DEFINITION = Pattern.compile("^ {0,3}\\[[^\\]]+\\]:[ \\t]*\\S.*$", Pattern.MULTILINE);
+  private static final int SEGMENT_SIZE = 8 * 1024;
+  private static final Pattern LIST_ITEM = Pattern.compile("^([*+-]|\\d+\\.)[ \\t].*", Pattern.DOTALL);
+
+  private MarkdownRenderer() {
+  }
+
+  /**
+   * Render a page as a string, segment by segment like the streamed renderings so that they all agree
+   *
+   * @param markdown
+   * @return
+   */
+  static String render(String markdown) {
+    StringBuilder html = new StringBuilder(markdown.length() + markdown.length() / 4);
+    render(markdown, html::append);
+    return html.toString();
+  }
+
+  /**
+   * Render a page into buffers of about a chunk size each. The segments are encoded into one buffer reused
+   * for the whole page, each chunk is copied out of it at its exact size, so that no chunk is allocated at the
+   * chunk size and grown when a segment overflows it.
+   *
+   * @param markdown
+   * @param chunkSize size at which a buffer is handed over, the last one may be smaller or empty
+   * @param chunks    called with each buffer, which cannot be released so it can be sent as is
+   */
+  static void render(String markdown, int chunkSize, Handler<Buffer> chunks) {
+    int size = Math.max(256, chunkSize);
+    ByteBuf encoded = Unpooled.buffer(Math.min(size, markdown.length() + markdown.length() / 4 + 64));
+    render(markdown, html -> {
+      ByteBufUtil.writeUtf8(encoded, html);
+      if (encoded.readableBytes() >= size) {
+        chunks.handle(Buffer.buffer(Unpooled.copiedBuffer(encoded)));
+        encoded.clear();
+      }
+    });
+    chunks.handle(Buffer.buffer(Unpooled.copiedBuffer(encoded)));
+  }
+
+  /**
+   * @param markdown
+   * @return a writer of the rendering of a page as a JSON string, escaped segment by segment
+   */
+  static JsonResponseWriter.ValueWriter jsonString(String markdown) {
+    return generator -> {
+      // Written as a raw value so that the generator places it like any other value
+      generator.writeRawValue("\"");
+      render(markdown, html -> {
+        char[] escaped = JsonStringEncoder.getInstance().quoteAsString(html);
+        try {
+          generator.writeRaw(escaped, 0, escaped.length);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+      generator.writeRaw('"');
+    };
+  }
+
+  /**
+   * Render a page segment by segment
+   *
+   * @param markdown
+   * @param html     called with the HTML of each segment, in order
+   */
+  static void render(String markdown, Consumer<String> html) {
+    String definitions = linkDefinitions(markdown);
+    int length = markdown.length();
+    int blockStart = 0;
+    int position = 0;
+    boolean previousBlank = false;
+    boolean fenced = false;
+    String htmlTag = null;
+    while (position < length) {
+      int end = markdown.indexOf('\n', position);
+      if (end < 0) {
+        end = length;
+      }
+      boolean blank = isBlank(markdown, position, end);
+      if (previousBlank && !blank && !fenced && htmlTag == null && position - blockStart >= SEGMENT_SIZE
+        && startsBlock(markdown, position, end)) {
+        html.accept(renderSegment(markdown.substring(blockStart, position), definitions));
+        blockStart = position;
+      }
+      if (markdown.startsWith("```", position) || markdown.startsWith("~~~", position)) {
+        fenced = !fenced;
+      } else if (!fenced) {
+        htmlTag = htmlTag(markdown, position, end, htmlTag);
+      }
+      previousBlank = blank;
+      position = end + 1;
+    }
+    if (blockStart < length || length == 0) {
+      html.accept(renderSegment(markdown.substring(blockStart), definitions));
+    }
+  }
+
+  private static String renderSegment(String segment, String definitions) {
+    if (definitions.isEmpty() || segment.indexOf('[') < 0) {
+      return Processor.process(segment);
+    }
+    return Processor.process(segment + "\n\n" + definitions);
+  }
+
+  private static String linkDefinitions(String markdown) {
+    if (markdown.indexOf("]:") < 0) {
+      return "";
+    }
+    StringBuilder definitions = new StringBuilder();
+    Matcher matcher = LINK_DEFINITION.matcher(markdown);
+    while (matcher.find()) {
+      definitions.append(matcher.group()).append('\n');
+    }
+    return definitions.toString();
+  }
+
+  private static boolean isBlank(String markdown, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (!Character.isWhitespace(markdown.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return whether a line after a blank line starts a new top level block, rather than continuing the
+   * previous one
+   */
+  private static boolean startsBlock(String markdown, int start, int end) {
+    char first = markdown.charAt(start);
+    if (first == ' ' || first == '\t' || first == '>') {
+      return false;
+    }
+    return !LIST_ITEM.matcher(markdown.subSequence(start, end)).matches();
+  }
+
+  /**
+   * Follow HTML blocks, which may contain blank lines
+   *
+   * @param open tag of the HTML block the line is in, or null
+   * @return tag of the HTML block open after the line, or null
+   */
+  private static String htmlTag(String markdown, int start, int end, String open) {
+    if (open == null) {
+      if (end - start < 2 || markdown.charAt(start) != '<' || !Character.isLetter(markdown.charAt(start + 1))) {
+        return null;
+      }
+      int nameEnd = start + 1;
+      while (nameEnd < end && Character.isLetterOrDigit(markdown.charAt(nameEnd))) {
+        nameEnd++;
+      }
+      open = markdown.substring(start + 1, nameEnd);
+      start = nameEnd;
+    }
+    int close = markdown.indexOf("</" + open, start);
+    return close >= 0 && close < end ? null : open;
+  }
+}
@@ -0,0 +1,198 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cache of the rendered HTML fragments of the server side rendered pages: the body of each page, by page
+ * name, and the page list of the index.
+ * <p>
+ * Fragments are invalidated on writes, either right away by the API handlers of this instance or when the
+ * page change events of the database arrive. A fragment rendered from data read before an invalidation is
+ * not cached, the generation it was read at is checked when it is put. The number of cached page bodies is
+ * bounded, the least recently used page is evicted when the cache is full.
+ * <p>
+ * The cache is shared by all the {@link HttpServerVerticle} instances of a Vert.x instance.
+ */
+public class PageFragmentCache implements Shareable {
+
+  public static final String CONFIG_HTTP_SSR_CACHE_MAX_PAGES = "http.ssr.cache.max_pages";
+
+  private static final String SHARED_MAP = "wiki.fragments";
+  private static final String SHARED_KEY = "cache";
+
+  /**
+   * Rendered body of a page
+   */
+  static class PageFragment {
+    final int id;
+    final String html;
+    final long rendered;
+
+    PageFragment(int id, String html, long rendered) {
+      this.id = id;
+      this.html = html;
+      this.rendered = rendered;
+    }
+  }
+
+  private final int maxPages;
+  private final LinkedHashMap<String, PageFragment> pages;
+  private final AtomicReference<String> pageList = new AtomicReference<>();
+  private final AtomicLong generation = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  /**
+   * @param maxPages maximum number of cached page bodies
+   */
+  PageFragmentCache(int maxPages) {
+    this.maxPages = Math.max(1, maxPages);
+    this.pages = new LinkedHashMap<String, PageFragment>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, PageFragment> eldest) {
+        return size() > PageFragmentCache.this.maxPages;
+      }
+    };
+  }
+
+  /**
+   * Get the cache of a Vert.x instance, creating it on first use
+   *
+   * @param vertx
+   * @param config
+   * @return
+   */
+  static PageFragmentCache shared(Vertx vertx, JsonObject config) {
+    LocalMap<String, PageFragmentCache> map = vertx.getDelegate().sharedData().getLocalMap(SHARED_MAP);
+    PageFragmentCache created = new PageFragmentCache(config.getInteger(CONFIG_HTTP_SSR_CACHE_MAX_PAGES, 1000));
+    PageFragmentCache existing = map.putIfAbsent(SHARED_KEY, created);
+    return existing != null ? existing : created;
+  }
+
+  /**
+   * @return the current generation, to be read before reading the data a fragment is rendered from
+   */
+  long generation() {
+    return generation.get();
+  }
+
+  /**
+   * @param name
+   * @return the cached body of a page, or null
+   */
+  PageFragment page(String name) {
+    synchronized (pages) {
+      return count(pages.get(name));
+    }
+  }
+
+  /**
+   * @return the cached page list, or null
+   */
+  String pageList() {
+    return count(pageList.get());
+  }
+
+  /**
+   * Cache the body of a page, unless the pages changed since the data it was rendered from was read
+   *
+   * @param name
+   * @param fragment
+   * @param generation generation read before reading the page
+   */
+  void putPage(String name, PageFragment fragment, long generation) {
+    synchronized (pages) {
+      // Invalidations bump the generation before taking the lock, so a stale fragment is either seen here or
+      // removed by the invalidation
+      if (this.generation.get() == generation) {
+        pages.put(name, fragment);
+      }
+    }
+  }
+
+  /**
+   * Cache the page list, unless the pages changed since the list it was rendered from was read
+   *
+   * @param html
+   * @param generation generation read before reading the list
+   */
+  void putPageList(String html, long generation) {
+    pageList.set(html);
+    if (this.generation.get() != generation) {
+      pageList.compareAndSet(html, null);
+    }
+  }
+
+  /**
+   * Invalidate the fragments of a page
+   *
+   * @param id
+   * @param listChanged whether the page list changed too, ie the page was created or deleted
+   */
+  void invalidate(int id, boolean listChanged) {
+    generation.incrementAndGet();
+    invalidations.incrementAndGet();
+    synchronized (pages) {
+      pages.values().removeIf(fragment -> fragment.id == id);
+    }
+    if (listChanged) {
+      pageList.set(null);
+    }
+  }
+
+  /**
+   * Invalidate the page list, for a page created under a name that is not cached yet
+   */
+  void invalidatePageList() {
+    generation.incrementAndGet();
+    invalidations.incrementAndGet();
+    pageList.set(null);
+  }
+
+  /**
+   * Invalidate the fragments of a batch of page change events
+   *
+   * @param batch <code>{changes: [{id, type}]}</code>
+   */
+  void invalidate(JsonObject batch) {
+    JsonArray changes = batch.getJsonArray("changes", new JsonArray());
+    for (int i = 0; i < changes.size(); i++) {
+      JsonObject change = changes.getJsonObject(i);
+      invalidate(change.getInteger("id"), !"updated".equals(change.getString("type")));
+    }
+  }
+
+  private <T> T count(T fragment) {
+    (fragment != null ? hits : misses).incrementAndGet();
+    return fragment;
+  }
+
+  private int pageCount() {
+    synchronized (pages) {
+      return pages.size();
+    }
+  }
+
+  /**
+   * @return
+   */
+  JsonObject stats() {
+    return new JsonObject()
+      .put("maxPages", maxPages)
+      .put("pages", pageCount())
+      .put("pageList", pageList.get() != null)
+      .put("hits", hits.get())
+      .put("misses", misses.get())
+      .put("invalidations", invalidations.get());
+  }
+}
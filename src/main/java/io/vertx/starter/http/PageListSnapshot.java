@@ -0,0 +1,276 @@
+package io.vertx.starter.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.starter.database.PageSummary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Pre-encoded response of the page list API, so that listing the pages is a single buffer write.
+ * <p>
+ * The snapshot is immutable and swapped atomically. It is built from the database on the first read after an
+ * invalidation, and patched with the page change events of the database otherwise; both encode the list off
+ * the event loop. Writes made through this instance invalidate it right away, so that their author sees them
+ * in the next listing, while the events of writes made elsewhere patch it once they arrive. Either way the
+ * list matches the sequence it is sent with, and clients catch up from that sequence. A sharded database sends
+ * its change cursor instead, see {@link io.vertx.starter.database.ShardedWikiDatabaseService}.
+ * <p>
+ * When enabled, a gzip encoding of the response is kept too for the clients accepting it.
+ * <p>
+ * The snapshot is shared by all the {@link HttpServerVerticle} instances of a Vert.x instance.
+ */
+public class PageListSnapshot implements Shareable {
+
+  public static final String CONFIG_HTTP_PAGELIST_GZIP = "http.pagelist.gzip";
+
+  private static final String SHARED_MAP = "wiki.pagelist";
+  private static final String SHARED_KEY = "snapshot";
+  private static final Comparator<PageSummary> BY_NAME = Comparator.comparing(PageSummary::getName);
+
+  /**
+   * The page list at a change sequence, and its encoded response
+   */
+  static class Snapshot {
+    final long sequence;
+    final String cursor;
+    final List<PageSummary> pages;
+    final Buffer body;
+    final Buffer gzipped;
+
+    Snapshot(long sequence, String cursor, List<PageSummary> pages, Buffer body, Buffer gzipped) {
+      this.sequence = sequence;
+      this.cursor = cursor;
+      this.pages = pages;
+      this.body = body;
+      this.gzipped = gzipped;
+    }
+  }
+
+  private final boolean gzip;
+  private final AtomicReference<Snapshot> current = new AtomicReference<>();
+  private final AtomicLong generation = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong builds = new AtomicLong();
+  private final AtomicLong patches = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  /**
+   * @param gzip whether a gzip encoding of the response is kept too
+   */
+  PageListSnapshot(boolean gzip) {
+    this.gzip = gzip;
+  }
+
+  /**
+   * Get the snapshot of a Vert.x instance, creating it on first use
+   *
+   * @param vertx
+   * @param config
+   * @return
+   */
+  static PageListSnapshot shared(Vertx vertx, JsonObject config) {
+    LocalMap<String, PageListSnapshot> map = vertx.getDelegate().sharedData().getLocalMap(SHARED_MAP);
+    PageListSnapshot created = new PageListSnapshot(config.getBoolean(CONFIG_HTTP_PAGELIST_GZIP, true));
+    PageListSnapshot existing = map.putIfAbsent(SHARED_KEY, created);
+    return existing != null ? existing : created;
+  }
+
+  /**
+   * @return the current generation, to be read before reading the list a snapshot is built from
+   */
+  long generation() {
+    return generation.get();
+  }
+
+  /**
+   * @return the current snapshot, or null
+   */
+  Snapshot get() {
+    Snapshot snapshot = current.get();
+    (snapshot != null ? hits : misses).incrementAndGet();
+    return snapshot;
+  }
+
+  /**
+   * Encode a snapshot, blocking
+   *
+   * @param sequence
+   * @param pages    ordered by name
+   * @return
+   */
+  Snapshot build(long sequence, List<PageSummary> pages) {
+    return build(sequence, null, pages);
+  }
+
+  /**
+   * Encode a snapshot of a sharded database, blocking
+   *
+   * @param sequence sum of the sequences of the shards
+   * @param cursor   change cursor sent instead of the sequence, or null
+   * @param pages    ordered by name
+   * @return
+   */
+  Snapshot build(long sequence, String cursor, List<PageSummary> pages) {
+    builds.incrementAndGet();
+    return encode(sequence, cursor, Collections.unmodifiableList(new ArrayList<>(pages)));
+  }
+
+  /**
+   * Make a snapshot current, unless the pages changed since the list it was built from was read or a newer
+   * snapshot is current
+   *
+   * @param snapshot
+   * @param generation generation read before reading the list
+   */
+  void put(Snapshot snapshot, long generation) {
+    while (true) {
+      Snapshot previous = current.get();
+      if (previous != null && previous.sequence >= snapshot.sequence) {
+        return;
+      }
+      if (current.compareAndSet(previous, snapshot)) {
+        break;
+      }
+    }
+    if (this.generation.get() != generation) {
+      current.compareAndSet(snapshot, null);
+    }
+  }
+
+  /**
+   * Drop the snapshot, the next read builds a new one
+   */
+  void invalidate() {
+    generation.incrementAndGet();
+    invalidations.incrementAndGet();
+    current.set(null);
+  }
+
+  /**
+   * Apply a batch of page change events to the snapshot, blocking. Each verticle receives the batches, they
+   * must be applied in order for each of them: batches already applied by another one are skipped. A batch
+   * that cannot be applied, because there is no snapshot or the snapshot was built while it was collected,
+   * drops the snapshot and discards the builds in flight when it may change the list, as they may have read
+   * the list before its changes.
+   *
+   * @param batch <code>{changes: [{sequence, id, type, name}]}</code>
+   */
+  synchronized void patch(JsonObject batch) {
+    Snapshot snapshot = current.get();
+    JsonArray changes = batch.getJsonArray("changes", new JsonArray());
+    if (changes.isEmpty()) {
+      return;
+    }
+    if (snapshot == null) {
+      invalidate(batch);
+      return;
+    }
+    long first = Long.MAX_VALUE;
+    long last = Long.MIN_VALUE;
+    for (int i = 0; i < changes.size(); i++) {
+      long sequence = changes.getJsonObject(i).getLong("sequence");
+      first = Math.min(first, sequence);
+      last = Math.max(last, sequence);
+    }
+    if (last <= snapshot.sequence) {
+      return;
+    }
+    if (first <= snapshot.sequence) {
+      // Built while the batch was collected, there is no telling which of its changes the list has
+      generation.incrementAndGet();
+      invalidations.incrementAndGet();
+      current.compareAndSet(snapshot, null);
+      return;
+    }
+    List<PageSummary> pages = new ArrayList<>(snapshot.pages);
+    for (int i = 0; i < changes.size(); i++) {
+      JsonObject change = changes.getJsonObject(i);
+      int id = change.getInteger("id");
+      String type = change.getString("type");
+      if ("updated".equals(type)) {
+        continue;
+      }
+      pages.removeIf(page -> page.getId() == id);
+      if ("created".equals(type)) {
+        PageSummary page = new PageSummary(id, change.getString("name"));
+        int index = Collections.binarySearch(pages, page, BY_NAME);
+        pages.add(index >= 0 ? index : -index - 1, page);
+      }
+    }
+    patches.incrementAndGet();
+    current.compareAndSet(snapshot, encode(last, null, Collections.unmodifiableList(pages)));
+  }
+
+  private Snapshot encode(long sequence, String cursor, List<PageSummary> pages) {
+    Buffer body = JsonResponseWriter.success(64 + pages.size() * 48)
+      .field("sequence", cursor != null ? cursor : sequence)
+      .field("pages", HttpServerVerticle.pageSummaries(pages))
+      .encode();
+    return new Snapshot(sequence, cursor, pages, body, gzip ? gzip(body) : null);
+  }
+
+  private static Buffer gzip(Buffer body) {
+    ByteBuf compressed = Unpooled.buffer(Math.max(64, body.length() / 4));
+    try (GZIPOutputStream out = new GZIPOutputStream(new ByteBufOutputStream(compressed))) {
+      out.write(body.getBytes());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return Buffer.buffer(compressed);
+  }
+
+  /**
+   * Drop the snapshot if a batch of page change events changes the page list, when the batches cannot be
+   * applied because their sequences are not the ones of the list
+   *
+   * @param batch <code>{changes: [{sequence, id, type, name}]}</code>
+   */
+  void invalidate(JsonObject batch) {
+    JsonArray changes = batch.getJsonArray("changes", new JsonArray());
+    for (int i = 0; i < changes.size(); i++) {
+      if (!"updated".equals(changes.getJsonObject(i).getString("type"))) {
+        invalidate();
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return
+   */
+  JsonObject stats() {
+    Snapshot snapshot = current.get();
+    JsonObject stats = new JsonObject()
+      .put("gzip", gzip)
+      .put("current", snapshot != null)
+      .put("hits", hits.get())
+      .put("misses", misses.get())
+      .put("builds", builds.get())
+      .put("patches", patches.get())
+      .put("invalidations", invalidations.get());
+    if (snapshot != null) {
+      stats.put("sequence", snapshot.cursor != null ? snapshot.cursor : snapshot.sequence)
+        .put("pages", snapshot.pages.size())
+        .put("bytes", snapshot.body.length())
+        .put("gzippedBytes", snapshot.gzipped != null ? snapshot.gzipped.length() : null);
+    }
+    return stats;
+  }
+}
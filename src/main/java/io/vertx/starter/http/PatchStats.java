@@ -0,0 +1,73 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the page saves made with diffs, and of the bytes they saved: the request of a diff save is
+ * compared with the content it produced, which is what a full save would have sent.
+ * <p>
+ * Shared by all the {@link HttpServerVerticle} instances of a Vert.x instance.
+ */
+class PatchStats implements Shareable {
+
+  private static final String SHARED_MAP = "wiki.patches";
+  private static final String SHARED_KEY = "stats";
+
+  private final AtomicLong saved = new AtomicLong();
+  private final AtomicLong conflicts = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong requestBytes = new AtomicLong();
+  private final AtomicLong contentBytes = new AtomicLong();
+
+  /**
+   * Get the counters of a Vert.x instance, creating them on first use
+   *
+   * @param vertx
+   * @return
+   */
+  static PatchStats shared(Vertx vertx) {
+    LocalMap<String, PatchStats> map = vertx.getDelegate().sharedData().getLocalMap(SHARED_MAP);
+    PatchStats created = new PatchStats();
+    PatchStats existing = map.putIfAbsent(SHARED_KEY, created);
+    return existing != null ? existing : created;
+  }
+
+  /**
+   * @param requestBytes size of the request body
+   * @param contentBytes size of the saved content
+   */
+  void saved(long requestBytes, long contentBytes) {
+    saved.incrementAndGet();
+    this.requestBytes.addAndGet(requestBytes);
+    this.contentBytes.addAndGet(contentBytes);
+  }
+
+  void conflict() {
+    conflicts.incrementAndGet();
+  }
+
+  void rejected() {
+    rejected.incrementAndGet();
+  }
+
+  /**
+   * @return
+   */
+  JsonObject stats() {
+    long sent = requestBytes.get();
+    long content = contentBytes.get();
+    return new JsonObject()
+      .put("saved", saved.get())
+      .put("conflicts", conflicts.get())
+      .put("rejected", rejected.get())
+      .put("requestBytes", sent)
+      .put("contentBytes", content)
+      .put("bytesSaved", content - sent)
+      .put("savedRatio", content > 0 ? (double) (content - sent) / content : 0.0);
+  }
+}
@@ -0,0 +1,183 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.web.Router;
+import io.vertx.rxjava.ext.web.RoutingContext;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-client token bucket rate limiting. Clients are identified by their remote address, the wiki has no
+ * authentication.
+ * <p>
+ * Each bucket is a single {@link AtomicLong} holding the theoretical arrival time of the next request
+ * (GCRA), so checking a request is one CAS loop. The number of buckets is bounded: full buckets idle for
+ * longer than the idle timeout are evicted periodically, and clients that cannot get a bucket of their own
+ * share an overflow bucket.
+ * <p>
+ * Limiters are named after the route they protect and configured per route with
+ * <code>http.ratelimit.routes</code>, <code>{name: {method, path, rate, burst}}</code>, the Markdown preview
+ * by default. A limiter is shared by all the {@link HttpServerVerticle} instances of a Vert.x instance.
+ */
+public class RateLimiter implements Shareable {
+
+  public static final String CONFIG_HTTP_RATELIMIT_PREFIX = "http.ratelimit.";
+  public static final String CONFIG_HTTP_RATELIMIT_MAX_CLIENTS = "http.ratelimit.max_clients";
+  public static final String CONFIG_HTTP_RATELIMIT_IDLE_TIMEOUT = "http.ratelimit.idle_timeout";
+  public static final String CONFIG_HTTP_RATELIMIT_ROUTES = "http.ratelimit.routes";
+
+  private static final JsonObject DEFAULT_ROUTES = new JsonObject()
+    .put("markdown", new JsonObject().put("method", "POST").put("path", "/app/markdown").put("rate", 5.0).put("burst", 10));
+
+  private static final String SHARED_MAP = "wiki.ratelimit";
+
+  private final String name;
+  private final long intervalNanos;
+  private final long burstNanos;
+  private final int maxClients;
+  private final long idleTimeoutNanos;
+  private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+  private final AtomicLong overflow = new AtomicLong();
+  private final AtomicLong allowed = new AtomicLong();
+  private final AtomicLong limited = new AtomicLong();
+
+  /**
+   * @param name            limiter name, used as configuration key
+   * @param rate            refill rate, in requests per second
+   * @param burst           bucket capacity
+   * @param maxClients      maximum number of buckets
+   * @param idleTimeoutNanos idle time after which a full bucket can be evicted
+   */
+  RateLimiter(String name, double rate, int burst, int maxClients, long idleTimeoutNanos) {
+    this.name = name;
+    this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+    this.burstNanos = intervalNanos * Math.max(1, burst);
+    this.maxClients = maxClients;
+    this.idleTimeoutNanos = idleTimeoutNanos;
+  }
+
+  /**
+   * Get the limiter of a route, creating it from <code>http.ratelimit.&lt;name&gt;.rate</code> and
+   * <code>http.ratelimit.&lt;name&gt;.burst</code> on first use
+   *
+   * @param vertx
+   * @param name         limiter name
+   * @param config
+   * @param defaultRate  default requests per second
+   * @param defaultBurst default bucket capacity
+   * @return
+   */
+  static RateLimiter shared(Vertx vertx, String name, JsonObject config, double defaultRate, int defaultBurst) {
+    LocalMap<String, RateLimiter> map = vertx.getDelegate().sharedData().getLocalMap(SHARED_MAP);
+    RateLimiter created = new RateLimiter(name,
+      config.getDouble(CONFIG_HTTP_RATELIMIT_PREFIX + name + ".rate", defaultRate),
+      config.getInteger(CONFIG_HTTP_RATELIMIT_PREFIX + name + ".burst", defaultBurst),
+      config.getInteger(CONFIG_HTTP_RATELIMIT_MAX_CLIENTS, 10_000),
+      TimeUnit.SECONDS.toNanos(config.getLong(CONFIG_HTTP_RATELIMIT_IDLE_TIMEOUT, 60L)));
+    RateLimiter existing = map.putIfAbsent(name, created);
+    if (existing != null) {
+      return existing;
+    }
+    vertx.setPeriodic(TimeUnit.NANOSECONDS.toMillis(created.idleTimeoutNanos) / 2 + 1, id -> created.evictIdle());
+    return created;
+  }
+
+  /**
+   * Route the limiters of <code>http.ratelimit.routes</code>, ahead of the routes they protect
+   *
+   * @param vertx
+   * @param router
+   * @param config
+   * @return the limiters by name
+   */
+  static Map<String, RateLimiter> route(Vertx vertx, Router router, JsonObject config) {
+    JsonObject routes = config.getJsonObject(CONFIG_HTTP_RATELIMIT_ROUTES, DEFAULT_ROUTES);
+    Map<String, RateLimiter> limiters = new LinkedHashMap<>();
+    for (String name : routes.fieldNames()) {
+      JsonObject route = routes.getJsonObject(name);
+      RateLimiter limiter = shared(vertx, name, config, route.getDouble("rate", 5.0), route.getInteger("burst", 10));
+      router.route(HttpMethod.valueOf(route.getString("method", "POST").toUpperCase()), route.getString("path"))
+        .handler(limiter.handler());
+      limiters.put(name, limiter);
+    }
+    return limiters;
+  }
+
+  /**
+   * @return a handler rejecting requests over the limit with a 429 status code
+   */
+  Handler<RoutingContext> handler() {
+    return context -> {
+      long waitNanos = tryAcquire("ip:" + context.request().remoteAddress().host(), System.nanoTime());
+      if (waitNanos > 0) {
+        context.response().setStatusCode(429);
+        context.response().putHeader("Retry-After", String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos))));
+        context.response().putHeader("Content-Type", "application/json");
+        context.response().end(new JsonObject()
+          .put("success", false)
+          .put("error", "Too many requests").encode());
+        return;
+      }
+      context.next();
+    };
+  }
+
+  /**
+   * Take a token from the bucket of a client
+   *
+   * @param key client key
+   * @param now current time in nanoseconds
+   * @return 0 when the request is allowed, otherwise the time to wait for the next token in nanoseconds
+   */
+  long tryAcquire(String key, long now) {
+    AtomicLong bucket = buckets.get(key);
+    if (bucket == null) {
+      bucket = buckets.size() < maxClients ? buckets.computeIfAbsent(key, k -> new AtomicLong(now)) : overflow;
+    }
+    while (true) {
+      long tat = bucket.get();
+      long next = Math.max(tat, now) + intervalNanos;
+      long wait = next - now - burstNanos;
+      if (wait > 0) {
+        limited.incrementAndGet();
+        return wait;
+      }
+      if (bucket.compareAndSet(tat, next)) {
+        allowed.incrementAndGet();
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * Remove the buckets that are full and idle, a new bucket for the same client starts full so eviction
+   * does not change the outcome of later requests
+   */
+  void evictIdle() {
+    long threshold = System.nanoTime() - idleTimeoutNanos;
+    buckets.entrySet().removeIf(entry -> entry.getValue().get() < threshold);
+  }
+
+  /**
+   * @return limiter settings and counters
+   */
+  JsonObject stats() {
+    return new JsonObject()
+      .put("name", name)
+      .put("rate", (double) TimeUnit.SECONDS.toNanos(1) / intervalNanos)
+      .put("burst", burstNanos / intervalNanos)
+      .put("clients", buckets.size())
+      .put("maxClients", maxClients)
+      .put("allowed", allowed.get())
+      .put("limited", limited.get());
+  }
+}
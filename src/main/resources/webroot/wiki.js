@@ -8,6 +8,7 @@ angular.module("wikiApp", [])
 
     $scope.newPage = function() {
       $scope.pageId = undefined;
+      $scope.pageHash = undefined;
       $scope.pageName = DEFAULT_PAGENAME;
       $scope.pageMarkdown = DEFAULT_MARKDOWN;
     };
@@ -18,6 +19,36 @@ angular.module("wikiApp", [])
       });
     };
 
+    $scope.applyChanges = function (changes) {
+      changes.forEach(function (change) {
+        if (change.type === "created") {
+          if (!_.some($scope.pages, {id: change.id})) {
+            $scope.pages.push({id: change.id, name: change.name});
+          }
+        } else if (change.type === "deleted") {
+          _.remove($scope.pages, {id: change.id});
+        }
+      });
+    };
+
+    var eventBusOpen = false;
+    var eventBus = new EventBus("/eventbus");
+    eventBus.onopen = function () {
+      eventBusOpen = true;
+      eventBus.registerHandler("wiki.pages.changes", function (error, message) {
+        if (error === null) {
+          $scope.$apply(function () {
+            $scope.applyChanges(message.body.changes);
+          });
+        }
+      });
+      // Changes may have been missed while disconnected
+      $scope.reload();
+    };
+    eventBus.onclose = function () {
+      eventBusOpen = false;
+    };
+
     $scope.pageExists = function() {
       return $scope.pageId !== undefined;
     };
@@ -28,6 +59,8 @@ angular.module("wikiApp", [])
         $scope.pageId = page.id;
         $scope.pageName = page.name;
         $scope.pageMarkdown = page.markdown;
+        $scope.pageHash = page.hash;
+        $scope.savedMarkdown = page.markdown;
         $scope.updateRendering(page.html);
       });
     };
@@ -44,7 +77,9 @@ angular.module("wikiApp", [])
           "markdown": $scope.pageMarkdown
         };
         $http.post("/api/pages", payload).then(function(ok) {
-          $scope.reload();
+          if (!eventBusOpen) {
+            $scope.reload();
+          }
           $scope.success("Page created");
           var guessMaxId = _.maxBy($scope.pages, function(page) { return page.id; });
           $scope.load(guessMaxId.id || 0);
@@ -52,20 +87,56 @@ angular.module("wikiApp", [])
           $scope.error(err.data.error);
         });
       } else {
-        var payload = {
-          "markdown": $scope.pageMarkdown
-        };
-        $http.put("/api/pages/" + $scope.pageId, payload).then(function(ok) {
+        var markdown = $scope.pageMarkdown;
+        var saved = function(ok) {
+          $scope.pageHash = ok.data.hash;
+          $scope.savedMarkdown = markdown;
           $scope.success("Page saved");
-        }, function(err) {
-          $scope.error(err.data.error);
+        };
+        var request;
+        if ($scope.pageHash !== undefined) {
+          // Only the changed text is sent, against the version last loaded or saved
+          request = $http({
+            method: "PATCH",
+            url: "/api/pages/" + $scope.pageId,
+            data: {"base": $scope.pageHash, "edits": [$scope.diff($scope.savedMarkdown, markdown)]}
+          });
+        } else {
+          request = $http.put("/api/pages/" + $scope.pageId, {"markdown": markdown});
+        }
+        request.then(saved, function(err) {
+          if (err.status === 409) {
+            $scope.error("The page was changed meanwhile, reload it before saving");
+          } else {
+            $scope.error(err.data.error);
+          }
         });
       }
     };
 
+    $scope.diff = function(base, text) {
+      var prefix = 0;
+      var max = Math.min(base.length, text.length);
+      while (prefix < max && base.charCodeAt(prefix) === text.charCodeAt(prefix)) {
+        prefix++;
+      }
+      var suffix = 0;
+      while (suffix < max - prefix
+        && base.charCodeAt(base.length - 1 - suffix) === text.charCodeAt(text.length - 1 - suffix)) {
+        suffix++;
+      }
+      return {
+        "offset": prefix,
+        "delete": base.length - prefix - suffix,
+        "insert": text.substring(prefix, text.length - suffix)
+      };
+    };
+
     $scope.delete = function() {
       $http.delete("/api/pages/" + $scope.pageId).then(function(ok) {
-        $scope.reload();
+        if (!eventBusOpen) {
+          $scope.reload();
+        }
         $scope.newPage();
         $scope.success("Page deleted");
       }, function(err) {
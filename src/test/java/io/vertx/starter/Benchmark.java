@@ -0,0 +1,146 @@
+package io.vertx.starter;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.database.WikiDatabaseVerticle;
+import io.vertx.starter.http.AccessLog;
+import io.vertx.starter.http.HttpServerVerticle;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Helpers of the benchmarks, plain <code>main</code> classes of the test sources that print their results.
+ * <p>
+ * Run them after <code>mvn test-compile</code> with the test classpath, for instance
+ * <code>mvn -q dependency:build-classpath -Dmdep.outputFile=cp.txt</code> then
+ * <code>java -cp target/classes:target/test-classes:$(cat cp.txt) &lt;benchmark class&gt; [arguments]</code>.
+ */
+public final class Benchmark {
+
+  private Benchmark() {
+  }
+
+  /**
+   * Latency samples of an operation
+   */
+  public static class Latencies {
+    private long[] samples = new long[1024];
+    private int count;
+
+    /**
+     * @param start {@link System#nanoTime()} at the start of the operation
+     */
+    public void record(long start) {
+      add(System.nanoTime() - start);
+    }
+
+    /**
+     * @param nanos duration of the operation
+     */
+    public synchronized void add(long nanos) {
+      if (count == samples.length) {
+        samples = Arrays.copyOf(samples, count * 2);
+      }
+      samples[count++] = nanos;
+    }
+
+    public synchronized int count() {
+      return count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the latency at a percentile, in microseconds
+     */
+    public synchronized double percentile(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      long[] sorted = Arrays.copyOf(samples, count);
+      Arrays.sort(sorted);
+      int index = (int) Math.min(count - 1, Math.ceil(percentile / 100 * count) - 1);
+      return sorted[Math.max(0, index)] / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+      return format("n=%d p50=%.1fus p99=%.1fus p999=%.1fus", count(), percentile(50), percentile(99),
+        percentile(99.9));
+    }
+  }
+
+  /**
+   * Deploy the whole wiki in a Vert.x instance, with its files in a directory and without warm-up
+   *
+   * @param vertx
+   * @param directory directory of the database, attachments, backups and access log
+   * @param port      HTTP port
+   * @param config    configuration added to the defaults of the benchmarks
+   * @throws Exception when the wiki does not start
+   */
+  public static void deployWiki(Vertx vertx, Path directory, int port, JsonObject config) throws Exception {
+    JsonObject defaults = new JsonObject()
+      .put(MainVerticle.CONFIG_WARMUP_ENABLED, false)
+      .put(HttpServerVerticle.CONFIG_HTTP_SERVER_PORT, port)
+      .put(WikiDatabaseVerticle.CONFIG_WIKIDB_JDBC_URL, "jdbc:hsqldb:file:" + directory.resolve("db/wiki"))
+      .put(WikiDatabaseVerticle.CONFIG_WIKIDB_LOGSTORE_PATH, directory.resolve("db/wiki-log").toString())
+      .put(WikiDatabaseVerticle.CONFIG_WIKIDB_BACKUP_PATH, directory.resolve("db/backups").toString())
+      .put(HttpServerVerticle.CONFIG_HTTP_ATTACHMENTS_PATH, directory.resolve("attachments").toString())
+      .put(AccessLog.CONFIG_HTTP_ACCESSLOG_PATH, directory.resolve("access.log").toString());
+    CompletableFuture<String> deployed = new CompletableFuture<>();
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(defaults.mergeIn(config)),
+      ar -> {
+        if (ar.succeeded()) {
+          deployed.complete(ar.result());
+        } else {
+          deployed.completeExceptionally(ar.cause());
+        }
+      });
+    deployed.get(60, TimeUnit.SECONDS);
+  }
+
+  /**
+   * @param directory
+   * @throws IOException
+   */
+  public static void delete(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  /**
+   * @return the bytes allocated by the current thread so far, -1 when the JVM does not tell
+   */
+  public static long allocatedBytes() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  /**
+   * @param args
+   * @param index
+   * @param defaultValue
+   * @return an integer argument of a benchmark, or its default value
+   */
+  public static int intArg(String[] args, int index, int defaultValue) {
+    return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+  }
+
+  public static String format(String format, Object... args) {
+    return String.format(Locale.ROOT, format, args);
+  }
+}
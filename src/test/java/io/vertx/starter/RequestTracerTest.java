@@ -0,0 +1,124 @@
+package io.vertx.starter;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Sampling, spans and the bounded buffer of the request tracer
+ */
+public class RequestTracerTest {
+
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private static List<String> ids(JsonObject traces) {
+    List<String> ids = new ArrayList<>();
+    traces.getJsonArray("traces").forEach(trace -> ids.add(((JsonObject) trace).getString("id")));
+    return ids;
+  }
+
+  @Test
+  public void sampleRateDecidesWhatIsTraced() {
+    assertNull(new RequestTracer(0, 10).sample(0));
+    RequestTracer always = new RequestTracer(1, 10);
+    for (int i = 0; i < 5; i++) {
+      assertNotNull(always.sample(0));
+    }
+    RequestTracer half = new RequestTracer(0.5, 100000);
+    int sampled = 0;
+    for (int i = 0; i < 10000; i++) {
+      if (half.sample(0) != null) {
+        sampled++;
+      }
+    }
+    assertEquals(5000, sampled, 500);
+  }
+
+  @Test
+  public void mostRecentTracesAreKeptNewestFirst() {
+    RequestTracer tracer = new RequestTracer(1, 3);
+    List<String> started = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      started.add(tracer.sample(i));
+    }
+    // Spans on an evicted trace start it over
+    tracer.span(started.get(0), "late", 10, 20);
+    List<String> kept = ids(tracer.traces());
+    assertEquals(3, kept.size());
+    assertEquals(started.get(0), kept.get(0));
+    assertEquals(started.get(4), kept.get(1));
+    assertEquals(started.get(3), kept.get(2));
+  }
+
+  @Test
+  public void spansAreSortedByStartRelativeToTheTrace() {
+    RequestTracer tracer = new RequestTracer(1, 10);
+    String id = tracer.sample(100 * MS);
+    tracer.span(id, "http.render", 105 * MS, 107 * MS);
+    tracer.span(id, "http.db", 101 * MS, 104 * MS);
+    tracer.span(null, "ignored", 0, 1);
+
+    JsonArray spans = tracer.traces().getJsonArray("traces").getJsonObject(0).getJsonArray("spans");
+    assertEquals(2, spans.size());
+    assertEquals(new JsonObject().put("stage", "http.db").put("start", 1000L).put("duration", 3000L),
+      spans.getJsonObject(0));
+    assertEquals(new JsonObject().put("stage", "http.render").put("start", 5000L).put("duration", 2000L),
+      spans.getJsonObject(1));
+  }
+
+  @Test
+  public void spansOfATraceStartedElsewhereAreKept() {
+    RequestTracer tracer = new RequestTracer(0, 10);
+    tracer.span("remote", "db.query", 50 * MS, 52 * MS);
+    JsonObject trace = tracer.traces().getJsonArray("traces").getJsonObject(0);
+    assertEquals("remote", trace.getString("id"));
+    assertEquals(0L, (long) trace.getJsonArray("spans").getJsonObject(0).getLong("start"));
+  }
+
+  @Test
+  public void currentTraceIsScopedToWithin() {
+    assertNull(RequestTracer.current());
+    RequestTracer.within("outer", () -> {
+      assertEquals("outer", RequestTracer.current());
+      RequestTracer.within("inner", () -> assertEquals("inner", RequestTracer.current()));
+      RequestTracer.within(null, () -> assertEquals("outer", RequestTracer.current()));
+      assertEquals("outer", RequestTracer.current());
+    });
+    try {
+      RequestTracer.within("failing", () -> {
+        throw new IllegalStateException();
+      });
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+    assertNull(RequestTracer.current());
+  }
+
+  @Test
+  public void concurrentSpansAreAllRecorded() throws Exception {
+    RequestTracer tracer = new RequestTracer(1, 10);
+    String id = tracer.sample(0);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < 1000; i++) {
+          tracer.span(id, "stage", i, i + 1);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(8000, tracer.traces().getJsonArray("traces").getJsonObject(0).getJsonArray("spans").size());
+  }
+}
@@ -0,0 +1,162 @@
+package io.vertx.starter;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Coalescing of the calls of a single flight group, and the contexts their results are delivered on
+ */
+public class SingleFlightTest {
+
+  private Vertx vertx;
+  private SingleFlight<String, String> flights;
+  private List<Handler<AsyncResult<String>>> pending;
+  private AtomicInteger calls;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    flights = new SingleFlight<>();
+    pending = new CopyOnWriteArrayList<>();
+    calls = new AtomicInteger();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    vertx.close(ar -> closed.complete(null));
+    closed.get(30, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Execute a call that completes when the test completes its handler
+   *
+   * @param key
+   * @param results
+   */
+  private void execute(String key, List<AsyncResult<String>> results) {
+    flights.execute(key, handler -> {
+      calls.incrementAndGet();
+      pending.add(handler);
+    }, results::add);
+  }
+
+  @Test
+  public void concurrentCallersOfAKeyShareOneCall() {
+    List<AsyncResult<String>> results = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      execute("page", results);
+    }
+    execute("other", results);
+    assertEquals(2, calls.get());
+    assertEquals(0, results.size());
+
+    pending.get(0).handle(Future.succeededFuture("content"));
+    assertEquals(5, results.size());
+    for (AsyncResult<String> result : results) {
+      assertSame("content", result.result());
+    }
+    assertEquals(4L, (long) flights.stats().getLong("coalesced"));
+    assertEquals(1, (int) flights.stats().getInteger("inFlight"));
+  }
+
+  @Test
+  public void completedCallsAreNotKept() {
+    List<AsyncResult<String>> results = new ArrayList<>();
+    execute("page", results);
+    pending.get(0).handle(Future.succeededFuture("first"));
+    execute("page", results);
+    assertEquals(2, calls.get());
+    pending.get(1).handle(Future.succeededFuture("second"));
+    assertEquals("second", results.get(1).result());
+    assertEquals(0, (int) flights.stats().getInteger("inFlight"));
+  }
+
+  @Test
+  public void callersAfterAForgetStartANewCall() {
+    List<AsyncResult<String>> before = new ArrayList<>();
+    List<AsyncResult<String>> after = new ArrayList<>();
+    execute("page", before);
+    execute("page", before);
+    flights.forget("page");
+    execute("page", after);
+    execute("page", after);
+    assertEquals(2, calls.get());
+
+    // The first call completing does not end the call started after the write
+    pending.get(0).handle(Future.succeededFuture("stale"));
+    pending.get(1).handle(Future.succeededFuture("fresh"));
+    assertEquals(2, before.size());
+    assertEquals("stale", before.get(1).result());
+    assertEquals(2, after.size());
+    assertEquals("fresh", after.get(1).result());
+    assertEquals(1L, (long) flights.stats().getLong("forgotten"));
+  }
+
+  @Test
+  public void failuresAreSharedToo() {
+    List<AsyncResult<String>> results = new ArrayList<>();
+    flights.execute("page", handler -> {
+      throw new IllegalStateException("broken");
+    }, results::add);
+    assertTrue(results.get(0).failed());
+    assertEquals("broken", results.get(0).cause().getMessage());
+
+    execute("page", results);
+    execute("page", results);
+    pending.get(0).handle(Future.failedFuture("timeout"));
+    assertTrue(results.get(1).failed());
+    assertTrue(results.get(2).failed());
+  }
+
+  @Test
+  public void eachCallerGetsTheResultOnItsOwnContext() throws Exception {
+    int callers = 4;
+    List<Context> contexts = new ArrayList<>();
+    for (int i = 0; i < callers; i++) {
+      contexts.add(vertx.getOrCreateContext());
+    }
+    List<Boolean> onCaller = new CopyOnWriteArrayList<>();
+    CountDownLatch joined = new CountDownLatch(callers);
+    CountDownLatch done = new CountDownLatch(callers);
+    for (Context context : contexts) {
+      context.runOnContext(v -> {
+        flights.execute("page", handler -> {
+          // Completes on the context of the call, as a reply of the event bus does
+          Context call = Vertx.currentContext();
+          calls.incrementAndGet();
+          pending.add(ar -> call.runOnContext(w -> handler.handle(ar)));
+        }, ar -> {
+          onCaller.add(Vertx.currentContext() == context);
+          done.countDown();
+        });
+        joined.countDown();
+      });
+    }
+    assertTrue(joined.await(10, TimeUnit.SECONDS));
+    assertEquals(1, calls.get());
+    new Thread(() -> pending.get(0).handle(Future.succeededFuture("content"))).start();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(callers, onCaller.size());
+    assertFalse(onCaller.contains(false));
+  }
+}
@@ -0,0 +1,160 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.RequestTracer;
+import io.vertx.starter.database.ExecutionLanes.Lane;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Single;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutionLanesTest {
+
+  private Vertx vertx;
+  private Context context;
+  private ExecutionLanes lanes;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    context = vertx.getOrCreateContext();
+    lanes = new ExecutionLanes(context, 4, 2, 1, RequestTracer.shared(vertx, new JsonObject()));
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  /**
+   * Run a test body on the context of the lanes and wait for it to complete its future
+   */
+  private <T> T onContext(Consumer<CompletableFuture<T>> body) throws Exception {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    context.runOnContext(v -> {
+      try {
+        body.accept(future);
+      } catch (Throwable t) {
+        future.completeExceptionally(t);
+      }
+    });
+    return future.get(30, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void longQueuesOfWorkCompletingAtOnceDoNotRecurse() throws Exception {
+    int count = 200_000;
+    List<Integer> order = onContext(done -> {
+      List<Integer> completed = new ArrayList<>();
+      // The first work holds the only slot until the whole queue is in
+      lanes.<Integer>run(Lane.BULK, handler -> context.runOnContext(v -> handler.handle(Future.succeededFuture(-1))),
+        ar -> {
+        });
+      for (int i = 0; i < count; i++) {
+        int index = i;
+        lanes.<Integer>run(Lane.BULK, handler -> handler.handle(Future.succeededFuture(index)), ar -> {
+          completed.add(ar.result());
+          if (completed.size() == count) {
+            done.complete(completed);
+          }
+        });
+      }
+    });
+    for (int i = 0; i < count; i++) {
+      assertEquals(i, (int) order.get(i));
+    }
+    JsonObject stats = onContext(done -> done.complete(lanes.stats().getJsonObject("bulk")));
+    assertEquals(count + 1, (long) stats.getLong("completed"));
+    assertEquals(0, (int) stats.getInteger("active"));
+    assertEquals(0, (int) stats.getInteger("queued"));
+  }
+
+  @Test
+  public void concurrencyStaysUnderTheCapUnderLoad() throws Exception {
+    int count = 20_000;
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    onContext(done -> {
+      AtomicInteger completed = new AtomicInteger();
+      for (int i = 0; i < count; i++) {
+        boolean async = i % 3 == 0;
+        lanes.<Void>run(Lane.READ, handler -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          Runnable finish = () -> {
+            running.decrementAndGet();
+            int finished = completed.incrementAndGet();
+            handler.handle(finished % 7 == 0 ? Future.failedFuture("failed") : Future.succeededFuture());
+          };
+          if (async) {
+            context.runOnContext(v -> finish.run());
+          } else {
+            finish.run();
+          }
+        }, ar -> {
+          if (completed.get() == count) {
+            done.complete(null);
+          }
+        });
+      }
+    });
+    assertTrue("max " + maxRunning.get(), maxRunning.get() <= 4);
+    JsonObject stats = onContext(done -> done.complete(lanes.stats().getJsonObject("read")));
+    assertEquals(count, stats.getLong("completed") + stats.getLong("failed"));
+    assertEquals(0, (int) stats.getInteger("active"));
+  }
+
+  @Test
+  public void busyLanesDoNotHoldBackOtherLanes() throws Exception {
+    String result = onContext(done -> {
+      // The bulk lane is taken by work that never completes
+      lanes.<Void>run(Lane.BULK, handler -> {
+      }, ar -> {
+      });
+      lanes.<Void>run(Lane.BULK, handler -> done.complete("queued bulk work ran"), ar -> {
+      });
+      lanes.<String>run(Lane.READ, handler -> handler.handle(Future.succeededFuture("read")),
+        ar -> done.complete(ar.result()));
+    });
+    assertEquals("read", result);
+  }
+
+  @Test
+  public void failuresAndExceptionsFreeTheSlot() throws Exception {
+    List<String> outcomes = onContext(done -> {
+      List<String> results = new ArrayList<>();
+      lanes.<String>run(Lane.BULK, handler -> {
+        throw new IllegalStateException("thrown");
+      }, ar -> results.add(ar.cause().getMessage()));
+      lanes.<String>run(Lane.BULK, handler -> handler.handle(Future.failedFuture("failed")),
+        ar -> results.add(ar.cause().getMessage()));
+      lanes.<String>run(Lane.BULK, handler -> handler.handle(Future.succeededFuture("ok")), ar -> {
+        results.add(ar.result());
+        done.complete(results);
+      });
+    });
+    assertEquals(3, outcomes.size());
+    assertEquals("thrown", outcomes.get(0));
+    assertEquals("failed", outcomes.get(1));
+    assertEquals("ok", outcomes.get(2));
+  }
+
+  @Test
+  public void singlesRunInTheirLane() throws Exception {
+    Integer result = onContext(done -> lanes.single(Lane.WRITE, () -> Single.just(21).map(value -> value * 2))
+      .subscribe(done::complete, done::completeExceptionally));
+    assertEquals(Integer.valueOf(42), result);
+  }
+}
@@ -0,0 +1,183 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.Benchmark;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Links of the link index, and its rebuild from the link table of the JDBC database service
+ */
+public class LinkIndexTest {
+
+  private PageNameIndex names;
+  private LinkIndex index;
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    names = new PageNameIndex();
+    index = new LinkIndex(names);
+    directory = Files.createTempDirectory("link-index");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Benchmark.delete(directory);
+  }
+
+  private static List<String> names(List<PageSummary> pages) {
+    return pages.stream().map(PageSummary::getName).collect(Collectors.toList());
+  }
+
+  private void save(int id, String name, String markdown) {
+    names.put(name, id);
+    index.saved(id, markdown);
+  }
+
+  @Test
+  public void linksAreExtractedFromInlineAndReferenceLinks() {
+    assertEquals(Arrays.asList("Home", "Other Page", "C++"), Arrays.asList(LinkIndex.extractLinks(
+      "See [home](/wiki/Home#top), [other](</wiki/Other%20Page>) and [[ref]].\n\n[ref]: /wiki/C++\n").toArray()));
+    assertTrue(LinkIndex.extractLinks("[external](http://example.com/wiki/Home)").isEmpty());
+  }
+
+  @Test
+  public void backlinksAndOrphansFollowTheWrites() {
+    save(1, "A", "[b](/wiki/B)");
+    save(2, "B", "[self](/wiki/B)");
+    assertEquals(Collections.singletonList("A"), names(index.backlinks(2)));
+    assertEquals(Collections.singletonList("A"), names(index.orphans()));
+
+    save(1, "A", "no links");
+    assertEquals(Collections.emptyList(), names(index.backlinks(2)));
+    assertEquals(Arrays.asList("A", "B"), names(index.orphans()));
+
+    // Links to a page count as soon as it is created
+    save(2, "B", "[c](/wiki/C)");
+    assertEquals(Collections.singletonList("B"), names(index.backlinks("C")));
+    save(3, "C", "");
+    assertEquals(Arrays.asList("A", "B"), names(index.orphans()));
+
+    names.remove(2);
+    index.deleted(2, "B");
+    assertEquals(Arrays.asList("A", "C"), names(index.orphans()));
+  }
+
+  @Test
+  public void rebuildSkipsThePagesWrittenMeanwhile() {
+    names.put("A", 1);
+    names.put("B", 2);
+    index.startRebuild();
+    index.saved(1, "[b](/wiki/B)");
+    index.rebuilt(1, Collections.emptySet());
+    index.endRebuild();
+    assertEquals(Collections.singletonList("A"), names(index.backlinks(2)));
+  }
+
+  @Test
+  public void serviceRebuildsTheIndexFromTheLinkTable() throws Exception {
+    withService(service -> {
+      service.rxCreatePage("A", "[b](/wiki/B)").toBlocking().value();
+      service.rxCreatePage("B", "[c](/wiki/C)").toBlocking().value();
+      service.rxCreatePage("C", "").toBlocking().value();
+    });
+    // Contents without links, the links must come from the table
+    sql("update Pages set Content = 'no links'");
+
+    withService(service -> {
+      int b = service.rxFetchPage("B").toBlocking().value().getId();
+      assertEquals(Collections.singletonList("A"), names(service.rxFetchBacklinks(b).toBlocking().value()));
+      assertEquals(Collections.singletonList("A"), names(service.rxFetchOrphanPages().toBlocking().value()));
+    });
+  }
+
+  @Test
+  public void pagesMissingFromTheLinkTableAreParsedOnce() throws Exception {
+    withService(service -> {
+      service.rxCreatePage("A", "[b](/wiki/B)").toBlocking().value();
+      service.rxCreatePage("B", "").toBlocking().value();
+    });
+    // As left by a version that did not keep the link table
+    sql("delete from PageLinks");
+    sql("update Pages set LinksIndexed = false");
+
+    withService(service -> {
+      int b = service.rxFetchPage("B").toBlocking().value().getId();
+      assertEquals(Collections.singletonList("A"), names(service.rxFetchBacklinks(b).toBlocking().value()));
+    });
+    assertEquals(1, count("select count(*) from PageLinks where Target = 'B'"));
+    assertEquals(0, count("select count(*) from Pages where not LinksIndexed"));
+  }
+
+  @FunctionalInterface
+  private interface ServiceTask {
+    void run(io.vertx.starter.database.rxjava.WikiDatabaseService service) throws Exception;
+  }
+
+  /**
+   * Deploy a JDBC database service on the test database, with one page per rebuild batch, and run a task once
+   * it is deployed
+   *
+   * @param task
+   */
+  private void withService(ServiceTask task) throws Exception {
+    Vertx vertx = Vertx.vertx();
+    try {
+      CompletableFuture<String> deployed = new CompletableFuture<>();
+      vertx.deployVerticle(WikiDatabaseVerticle.class.getName(), new DeploymentOptions().setConfig(new JsonObject()
+        .put(WikiDatabaseVerticle.CONFIG_WIKIDB_JDBC_URL, url())
+        .put(WikiDatabaseVerticle.CONFIG_WIKIDB_BACKUP_PATH, directory.resolve("backups").toString())
+        .put(WikiDatabaseVerticle.CONFIG_WIKIDB_LINKS_REBUILD_BATCH, 1)), ar -> {
+        if (ar.succeeded()) {
+          deployed.complete(ar.result());
+        } else {
+          deployed.completeExceptionally(ar.cause());
+        }
+      });
+      deployed.get(30, TimeUnit.SECONDS);
+      task.run(WikiDatabaseService.createProxy(vertx, "wikidb.queue"));
+    } finally {
+      CompletableFuture<Void> closed = new CompletableFuture<>();
+      vertx.close(ar -> closed.complete(null));
+      closed.get(30, TimeUnit.SECONDS);
+    }
+  }
+
+  private String url() {
+    return "jdbc:hsqldb:file:" + directory.resolve("db");
+  }
+
+  private void sql(String statement) throws Exception {
+    try (Connection connection = DriverManager.getConnection(url(), "SA", ""); Statement sql = connection.createStatement()) {
+      sql.execute(statement);
+    }
+  }
+
+  private long count(String query) throws Exception {
+    try (Connection connection = DriverManager.getConnection(url(), "SA", ""); Statement sql = connection.createStatement();
+         ResultSet result = sql.executeQuery(query)) {
+      result.next();
+      return result.getLong(1);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.serviceproxy.ProxyHelper;
+import io.vertx.starter.Benchmark;
+import io.vertx.starter.Benchmark.Latencies;
+import io.vertx.starter.RequestTracer;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Overhead of a database service call through the event bus proxy, and through direct local calls without
+ * and with the send timeout, on a service that answers at once.
+ * <p>
+ * Arguments: number of calls per case (default 200000), calls in flight (64).
+ */
+public class LocalWikiDatabaseServiceBenchmark {
+
+  private static final String ADDRESS = "benchmark.wikidb";
+
+  @SuppressWarnings("unchecked")
+  public static void main(String[] args) throws Exception {
+    int calls = Benchmark.intArg(args, 0, 200000);
+    int inFlight = Benchmark.intArg(args, 1, 64);
+    Vertx vertx = Vertx.vertx();
+    WikiDatabaseService service = (WikiDatabaseService) Proxy.newProxyInstance(
+      WikiDatabaseService.class.getClassLoader(), new Class<?>[]{WikiDatabaseService.class}, (proxy, method, arguments) -> {
+        ((Handler<AsyncResult<Long>>) arguments[arguments.length - 1]).handle(Future.succeededFuture(42L));
+        return proxy;
+      });
+    Context serviceContext = vertx.getOrCreateContext();
+    CompletableFuture<Void> registered = new CompletableFuture<>();
+    serviceContext.runOnContext(v -> {
+      ProxyHelper.registerService(WikiDatabaseService.class, vertx, service, ADDRESS);
+      LocalWikiDatabaseService.register(vertx, ADDRESS, service, RequestTracer.shared(vertx, new JsonObject()));
+      registered.complete(null);
+    });
+    registered.get();
+
+    for (int round = 0; round < 2; round++) {
+      // The first round warms up
+      boolean print = round == 1;
+      run(vertx, "event bus", new WikiDatabaseServiceVertxEBProxy(vertx, ADDRESS, new DeliveryOptions().setSendTimeout(5000)),
+        calls, inFlight, print);
+      run(vertx, "local, no timeout", LocalWikiDatabaseService.lookup(vertx, ADDRESS, null, 0), calls, inFlight, print);
+      run(vertx, "local, timeout", LocalWikiDatabaseService.lookup(vertx, ADDRESS, null, 5000), calls, inFlight, print);
+    }
+    vertx.close();
+  }
+
+  private static void run(Vertx vertx, String name, WikiDatabaseService service, int calls, int inFlight, boolean print)
+    throws Exception {
+    Latencies latencies = new Latencies();
+    AtomicInteger started = new AtomicInteger();
+    AtomicInteger finished = new AtomicInteger();
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    Context caller = vertx.getOrCreateContext();
+    long start = System.nanoTime();
+    caller.runOnContext(v -> {
+      for (int i = 0; i < inFlight; i++) {
+        next(service, calls, latencies, started, finished, done);
+      }
+    });
+    done.get();
+    long elapsed = System.nanoTime() - start;
+    if (print) {
+      System.out.println(Benchmark.format("%-18s %9.0f calls/s  %s", name, calls * 1e9 / elapsed, latencies));
+    }
+  }
+
+  private static void next(WikiDatabaseService service, int calls, Latencies latencies, AtomicInteger started,
+                           AtomicInteger finished, CompletableFuture<Void> done) {
+    if (started.incrementAndGet() > calls) {
+      return;
+    }
+    long start = System.nanoTime();
+    service.fetchLastChangeSequence(ar -> {
+      latencies.record(start);
+      if (finished.incrementAndGet() == calls) {
+        done.complete(null);
+      } else {
+        next(service, calls, latencies, started, finished, done);
+      }
+    });
+  }
+}
@@ -0,0 +1,121 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.RequestTracer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocalWikiDatabaseServiceTest {
+
+  private static final String ADDRESS = "test.wikidb";
+
+  private Vertx vertx;
+  private Context serviceContext;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    serviceContext = vertx.getOrCreateContext();
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  /**
+   * Register a service whose every call answers with a sequence number after a delay
+   *
+   * @param delay in milliseconds, negative to never answer
+   */
+  @SuppressWarnings("unchecked")
+  private void register(long delay) throws Exception {
+    WikiDatabaseService service = (WikiDatabaseService) Proxy.newProxyInstance(
+      WikiDatabaseService.class.getClassLoader(), new Class<?>[]{WikiDatabaseService.class}, (proxy, method, arguments) -> {
+        Handler<AsyncResult<Long>> handler = (Handler<AsyncResult<Long>>) arguments[arguments.length - 1];
+        if (delay == 0) {
+          handler.handle(Future.succeededFuture(42L));
+        } else if (delay > 0) {
+          vertx.setTimer(delay, id -> handler.handle(Future.succeededFuture(42L)));
+        }
+        return proxy;
+      });
+    CompletableFuture<Void> registered = new CompletableFuture<>();
+    serviceContext.runOnContext(v -> {
+      LocalWikiDatabaseService.register(vertx, ADDRESS, service, RequestTracer.shared(vertx, new JsonObject()));
+      registered.complete(null);
+    });
+    registered.get(5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Call the service from a context of its own and collect every result it hands back
+   */
+  private List<AsyncResult<Long>> call(long timeout, long wait) throws Exception {
+    List<AsyncResult<Long>> results = new CopyOnWriteArrayList<>();
+    Context caller = vertx.getOrCreateContext();
+    CompletableFuture<Void> first = new CompletableFuture<>();
+    caller.runOnContext(v -> LocalWikiDatabaseService.lookup(vertx, ADDRESS, null, timeout).fetchLastChangeSequence(ar -> {
+      results.add(Vertx.currentContext() == caller ? ar : Future.failedFuture("Not on the caller context"));
+      first.complete(null);
+    }));
+    first.get(5, TimeUnit.SECONDS);
+    Thread.sleep(wait);
+    return results;
+  }
+
+  @Test
+  public void lookupOfAMissingService() {
+    assertEquals(null, LocalWikiDatabaseService.lookup(vertx, "nowhere", null, 1000));
+  }
+
+  @Test
+  public void resultsAreHandedBackOnTheCallerContext() throws Exception {
+    register(0);
+    List<AsyncResult<Long>> results = call(1000, 0);
+    assertEquals(1, results.size());
+    assertEquals(Long.valueOf(42), results.get(0).result());
+  }
+
+  @Test
+  public void callsFailAfterTheTimeout() throws Exception {
+    register(-1);
+    long start = System.nanoTime();
+    List<AsyncResult<Long>> results = call(100, 0);
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    assertEquals(ReplyFailure.TIMEOUT, ((ReplyException) results.get(0).cause()).failureType());
+  }
+
+  @Test
+  public void lateResultsAreDropped() throws Exception {
+    register(300);
+    List<AsyncResult<Long>> results = call(50, 500);
+    assertEquals(1, results.size());
+    assertTrue(results.get(0).failed());
+  }
+
+  @Test
+  public void resultsBeforeTheTimeoutCancelIt() throws Exception {
+    register(50);
+    List<AsyncResult<Long>> results = call(300, 500);
+    assertEquals(1, results.size());
+    assertTrue(results.get(0).succeeded());
+  }
+}
@@ -0,0 +1,136 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.Benchmark;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Version hashes, the checks and application of the diffs of page saves, and the saves of the JDBC database
+ * service
+ */
+public class PageDiffTest {
+
+  private static JsonObject edit(Object offset, Object delete, Object insert) {
+    return new JsonObject().put("offset", offset).put("delete", delete).put("insert", insert);
+  }
+
+  private static JsonArray edits(JsonObject... edits) {
+    JsonArray array = new JsonArray();
+    for (JsonObject edit : edits) {
+      array.add(edit);
+    }
+    return array;
+  }
+
+  @Test
+  public void hashIsTheHexSha256OfTheUtf8Content() {
+    assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", PageDiff.hash(""));
+    assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", PageDiff.hash("abc"));
+    assertEquals("b6f737808912766258ebee9db7f560a07aee90dae75779f3009d35bb1873b4f9", PageDiff.hash("\u00e9t\u00e9 \ud83d\ude00"));
+    // Composed and decomposed forms are different contents
+    assertNotEquals(PageDiff.hash("\u00e9"), PageDiff.hash("e\u0301"));
+  }
+
+  @Test
+  public void editsMustBeOrderedAndNotOverlap() {
+    assertTrue(PageDiff.isValid(new JsonArray()));
+    assertTrue(PageDiff.isValid(edits(edit(0, 2, "x"), edit(2, 0, "y"), edit(5, 1, ""))));
+    // Defaults of delete and insert
+    assertTrue(PageDiff.isValid(edits(new JsonObject().put("offset", 3))));
+
+    assertFalse(PageDiff.isValid(null));
+    assertFalse(PageDiff.isValid(edits(edit(0, 3, "x"), edit(2, 0, "y"))));
+    assertFalse(PageDiff.isValid(edits(edit(5, 0, "x"), edit(4, 0, "y"))));
+    assertFalse(PageDiff.isValid(edits(edit(-1, 0, "x"))));
+    assertFalse(PageDiff.isValid(edits(edit(0, -1, "x"))));
+    assertFalse(PageDiff.isValid(edits(new JsonObject().put("delete", 1))));
+    assertFalse(PageDiff.isValid(edits(edit("0", 1, "x"))));
+    assertFalse(PageDiff.isValid(edits(edit(0, 1, 42))));
+    assertFalse(PageDiff.isValid(new JsonArray().add("not an edit")));
+  }
+
+  @Test
+  public void editsApplyToTheOffsetsOfTheBase() {
+    String base = "Hello wiki world";
+    assertEquals(base, PageDiff.apply(base, new JsonArray()));
+    assertEquals("Hi, wiki planet!", PageDiff.apply(base,
+      edits(edit(0, 5, "Hi,"), edit(11, 5, "planet"), edit(16, 0, "!"))));
+    // Adjacent edits
+    assertEquals("abXYef", PageDiff.apply("abcdef", edits(edit(2, 1, "X"), edit(3, 1, "Y"))));
+    assertEquals("", PageDiff.apply("abc", edits(edit(0, 3, ""))));
+    assertEquals("new", PageDiff.apply("", edits(new JsonObject().put("offset", 0).put("insert", "new"))));
+  }
+
+  @Test
+  public void offsetsCountUtf16CodeUnits() {
+    // The emoji takes two code units, as in JavaScript
+    String base = "a\ud83d\ude00b";
+    assertEquals("a\ud83d\ude00-b", PageDiff.apply(base, edits(edit(3, 0, "-"))));
+    assertEquals("ab", PageDiff.apply(base, edits(edit(1, 2, ""))));
+  }
+
+  @Test
+  public void editsPastTheEndOfTheBaseDoNotApply() {
+    assertNull(PageDiff.apply("abc", edits(edit(2, 2, ""))));
+    assertNull(PageDiff.apply("abc", edits(edit(4, 0, "x"))));
+    assertEquals("abcx", PageDiff.apply("abc", edits(edit(3, 0, "x"))));
+  }
+
+  @Test
+  public void serviceSavesDiffsAgainstTheCurrentVersionOnly() throws Exception {
+    Path directory = Files.createTempDirectory("page-diff");
+    Vertx vertx = Vertx.vertx();
+    try {
+      CompletableFuture<String> deployed = new CompletableFuture<>();
+      vertx.deployVerticle(WikiDatabaseVerticle.class.getName(), new DeploymentOptions().setConfig(new JsonObject()
+        .put(WikiDatabaseVerticle.CONFIG_WIKIDB_JDBC_URL, "jdbc:hsqldb:file:" + directory.resolve("db"))
+        .put(WikiDatabaseVerticle.CONFIG_WIKIDB_BACKUP_PATH, directory.resolve("backups").toString())), ar -> {
+        if (ar.succeeded()) {
+          deployed.complete(ar.result());
+        } else {
+          deployed.completeExceptionally(ar.cause());
+        }
+      });
+      deployed.get(30, TimeUnit.SECONDS);
+      io.vertx.starter.database.rxjava.WikiDatabaseService service = WikiDatabaseService.createProxy(vertx, "wikidb.queue");
+      service.rxCreatePage("Page", "Hello wiki").toBlocking().value();
+      int id = service.rxFetchPage("Page").toBlocking().value().getId();
+      String base = PageDiff.hash("Hello wiki");
+
+      JsonObject saved = service.rxPatchPage(id, base, edits(edit(6, 4, "world"))).toBlocking().value();
+      assertEquals("saved", saved.getString("status"));
+      assertEquals(PageDiff.hash("Hello world"), saved.getString("hash"));
+      assertEquals(11L, (long) saved.getLong("bytes"));
+      assertEquals("Hello world", service.rxFetchPageById(id).toBlocking().value().getContent());
+
+      // Made against the version before the save
+      JsonObject conflict = service.rxPatchPage(id, base, edits(edit(0, 5, "Bye"))).toBlocking().value();
+      assertEquals("conflict", conflict.getString("status"));
+      assertEquals(PageDiff.hash("Hello world"), conflict.getString("hash"));
+      assertEquals("invalid", service.rxPatchPage(id, saved.getString("hash"), edits(edit(20, 0, "!")))
+        .toBlocking().value().getString("status"));
+      assertEquals("missing", service.rxPatchPage(id + 1000, base, new JsonArray())
+        .toBlocking().value().getString("status"));
+      assertEquals("Hello world", service.rxFetchPageById(id).toBlocking().value().getContent());
+    } finally {
+      CompletableFuture<Void> closed = new CompletableFuture<>();
+      vertx.close(ar -> closed.complete(null));
+      closed.get(30, TimeUnit.SECONDS);
+      Benchmark.delete(directory);
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package io.vertx.starter.database;
+
+import io.vertx.starter.Benchmark;
+import io.vertx.starter.Benchmark.Latencies;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Latency of page creations, reads and saves, and startup time, of the page log store against the HSQLDB
+ * database of the JDBC backend, both called directly so that only the storage is measured.
+ * <p>
+ * Arguments: number of pages (default 5000), size of a page in bytes (2048), number of reads and saves
+ * (20000), and whether writes are forced to disk (true, the default of both backends).
+ */
+public class PageLogStoreBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int pages = Benchmark.intArg(args, 0, 5000);
+    int size = Benchmark.intArg(args, 1, 2048);
+    int operations = Benchmark.intArg(args, 2, 20000);
+    boolean sync = args.length <= 3 || Boolean.parseBoolean(args[3]);
+    System.out.println(Benchmark.format("%d pages of %d bytes, %d operations, sync %s", pages, size, operations,
+      sync));
+    Path directory = Files.createTempDirectory("page-store-benchmark");
+    try {
+      logStore(directory.resolve("log"), pages, size, operations, sync);
+      jdbc(directory.resolve("jdbc"), pages, size, operations, sync);
+    } finally {
+      try (Stream<Path> files = Files.walk(directory)) {
+        files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      }
+    }
+  }
+
+  private static String content(Random random, int size) {
+    StringBuilder content = new StringBuilder(size);
+    while (content.length() < size) {
+      content.append("word").append(random.nextInt(1000)).append(' ');
+    }
+    return content.substring(0, size);
+  }
+
+  private static void logStore(Path directory, int pages, int size, int operations, boolean sync) throws IOException {
+    Random random = new Random(42);
+    Latencies creates = new Latencies();
+    Latencies reads = new Latencies();
+    Latencies saves = new Latencies();
+    PageLogStore store = new PageLogStore(directory, 16L * 1024 * 1024, sync, 1, 0);
+    int[] ids = new int[pages];
+    for (int i = 0; i < pages; i++) {
+      String content = content(random, size);
+      long start = System.nanoTime();
+      ids[i] = (int) store.create("Page " + i, content)[1];
+      creates.record(start);
+    }
+    for (int i = 0; i < operations; i++) {
+      int id = ids[random.nextInt(pages)];
+      long start = System.nanoTime();
+      store.get(id);
+      reads.record(start);
+      String content = content(random, size);
+      start = System.nanoTime();
+      store.save(id, content);
+      saves.record(start);
+    }
+    store.close();
+    long start = System.nanoTime();
+    store = new PageLogStore(directory, 16L * 1024 * 1024, sync, 1, 0);
+    long startup = System.nanoTime() - start;
+    store.close();
+    print("logstore", creates, reads, saves, startup);
+  }
+
+  private static void jdbc(Path directory, int pages, int size, int operations, boolean sync) throws SQLException {
+    Random random = new Random(42);
+    Latencies creates = new Latencies();
+    Latencies reads = new Latencies();
+    Latencies saves = new Latencies();
+    String url = "jdbc:hsqldb:file:" + directory.resolve("wiki");
+    try (Connection connection = DriverManager.getConnection(url)) {
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("create table if not exists Pages (Id integer identity primary key, Name varchar(255) unique, "
+          + "Content clob, ContentBytes integer)");
+        statement.execute("set files write delay " + (sync ? "0" : "true"));
+      }
+      int[] ids = new int[pages];
+      try (PreparedStatement create = connection.prepareStatement(
+        "insert into Pages (Id, Name, Content, ContentBytes) values (NULL, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+        for (int i = 0; i < pages; i++) {
+          String content = content(random, size);
+          long start = System.nanoTime();
+          create.setString(1, "Page " + i);
+          create.setString(2, content);
+          create.setInt(3, content.length());
+          create.executeUpdate();
+          try (ResultSet keys = create.getGeneratedKeys()) {
+            keys.next();
+            ids[i] = keys.getInt(1);
+          }
+          creates.record(start);
+        }
+      }
+      try (PreparedStatement read = connection.prepareStatement("select Id, Name, Content from Pages where Id = ?");
+           PreparedStatement save = connection.prepareStatement("update Pages set Content = ?, ContentBytes = ? where Id = ?")) {
+        for (int i = 0; i < operations; i++) {
+          int id = ids[random.nextInt(pages)];
+          long start = System.nanoTime();
+          read.setInt(1, id);
+          try (ResultSet result = read.executeQuery()) {
+            result.next();
+            result.getString(3);
+          }
+          reads.record(start);
+          String content = content(random, size);
+          start = System.nanoTime();
+          save.setString(1, content);
+          save.setInt(2, content.length());
+          save.setInt(3, id);
+          save.executeUpdate();
+          saves.record(start);
+        }
+      }
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("shutdown");
+      }
+    }
+    long start = System.nanoTime();
+    long startup;
+    try (Connection connection = DriverManager.getConnection(url);
+         Statement statement = connection.createStatement()) {
+      try (ResultSet result = statement.executeQuery("select count(*) from Pages")) {
+        result.next();
+      }
+      startup = System.nanoTime() - start;
+      statement.execute("shutdown");
+    }
+    print("jdbc", creates, reads, saves, startup);
+  }
+
+  private static void print(String backend, Latencies creates, Latencies reads, Latencies saves, long startup) {
+    System.out.println(backend + " create " + creates);
+    System.out.println(backend + " read   " + reads);
+    System.out.println(backend + " save   " + saves);
+    System.out.println(Benchmark.format("%s startup %.1f ms", backend, startup / 1_000_000.0));
+  }
+}
@@ -0,0 +1,211 @@
+package io.vertx.starter.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Recovery and compaction of the page log store, with segments small enough that a few pages fill them
+ */
+public class PageLogStoreTest {
+
+  private static final long SEGMENT_SIZE = 256;
+
+  private Path directory;
+  private PageLogStore store;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("page-log-store");
+    store = open();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  private PageLogStore open() throws IOException {
+    return new PageLogStore(directory, SEGMENT_SIZE, false, 1, 0);
+  }
+
+  private PageLogStore reopen() throws IOException {
+    store.close();
+    store = open();
+    return store;
+  }
+
+  private static String content(int size) {
+    StringBuilder content = new StringBuilder();
+    while (content.length() < size) {
+      content.append("Lorem ipsum ");
+    }
+    return content.substring(0, size);
+  }
+
+  @Test
+  public void pagesAreRecoveredOnReopen() throws IOException {
+    int first = (int) store.create("First", content(100))[1];
+    int second = (int) store.create("Second", content(100))[1];
+    store.save(first, "Saved \u00e9");
+    store.delete(second);
+    long sequence = store.lastSequence();
+
+    reopen();
+    assertEquals("Saved \u00e9", store.get(first).content);
+    assertEquals("First", store.get("First").name);
+    assertNull(store.get(second));
+    assertNull(store.get("Second"));
+    assertEquals(sequence, store.lastSequence());
+  }
+
+  @Test
+  public void compactedPagesAreReadable() throws IOException {
+    int[] ids = new int[10];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = (int) store.create("Page" + i, content(100) + i)[1];
+    }
+    for (int i = 0; i < ids.length; i += 2) {
+      store.save(ids[i], "Saved" + i);
+    }
+    assertTrue(store.compact() > 0);
+    for (int i = 0; i < ids.length; i++) {
+      assertEquals(i % 2 == 0 ? "Saved" + i : content(100) + i, store.get(ids[i]).content);
+    }
+    reopen();
+    for (int i = 0; i < ids.length; i++) {
+      assertEquals(i % 2 == 0 ? "Saved" + i : content(100) + i, store.get(ids[i]).content);
+    }
+  }
+
+  @Test
+  public void deletedPagesStayDeletedAcrossCompactionsAndRestarts() throws IOException {
+    int[] ids = new int[8];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = (int) store.create("Page" + i, content(100))[1];
+    }
+    store.compact();
+    // The deletion lands in the active segment, above the compacted one
+    store.delete(ids[0]);
+
+    reopen();
+    assertNull(store.get(ids[0]));
+    for (int i = 0; i < 8; i++) {
+      store.save(ids[1], content(100) + i);
+    }
+    store.compact();
+
+    reopen();
+    assertNull(store.get(ids[0]));
+    assertNull(store.get("Page0"));
+    assertNotNull(store.get(ids[1]));
+  }
+
+  private List<Path> segmentFiles() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(path -> path.getFileName().toString().startsWith("segment-"))
+        .sorted().collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void deletedPagesStayDeletedWhenACompactionCrashesBeforeDeletingTheOldSegments() throws IOException {
+    int deleted = (int) store.create("Deleted", content(100))[1];
+    int kept = (int) store.create("Kept", content(100))[1];
+    for (int i = 0; i < 4; i++) {
+      store.save(kept, content(200) + i);
+    }
+    // The deletion lands in a sealed segment other than the oldest one, which holds the page
+    store.delete(deleted);
+    for (int i = 0; i < 4; i++) {
+      store.save(kept, content(200) + i);
+    }
+    List<Path> before = segmentFiles();
+    assertTrue(before.size() > 3);
+    Path oldest = before.get(0);
+    byte[] oldestBytes = Files.readAllBytes(oldest);
+
+    store.compact();
+    store.close();
+    // The crash left the oldest segment in place
+    assertTrue(Files.notExists(oldest));
+    Files.write(oldest, oldestBytes);
+
+    store = open();
+    assertNull(store.get(deleted));
+    assertNull(store.get("Deleted"));
+    assertEquals(content(200) + 3, store.get(kept).content);
+
+    // The next compaction takes the old segment in, and the deletion still holds after it
+    for (int i = 0; i < 4; i++) {
+      store.save(kept, content(200) + i);
+    }
+    store.compact();
+    reopen();
+    assertNull(store.get(deleted));
+    assertEquals(content(200) + 3, store.get(kept).content);
+  }
+
+  @Test
+  public void sequenceAndIdsDoNotGoBackwardsWhenDeletionsAreCompacted() throws IOException {
+    int kept = (int) store.create("Kept", content(100))[1];
+    int deleted = (int) store.create("Deleted", content(100))[1];
+    store.delete(deleted);
+    // Roll the deletion into a sealed segment, then compact it away
+    for (int i = 0; i < 6; i++) {
+      store.save(kept, content(200) + i);
+    }
+    long sequence = store.lastSequence();
+    store.compact();
+
+    reopen();
+    assertEquals(sequence, store.lastSequence());
+    long[] created = store.create("Created", "");
+    assertEquals(sequence + 1, created[0]);
+    assertTrue(created[1] > deleted);
+  }
+
+  @Test
+  public void idsFollowTheShard() throws IOException {
+    store.close();
+    store = new PageLogStore(directory, SEGMENT_SIZE, false, 3, 2);
+    assertEquals(2, store.create("A", "")[1]);
+    assertEquals(5, store.create("B", "")[1]);
+    reopen();
+    store.close();
+    store = new PageLogStore(directory, SEGMENT_SIZE, false, 3, 2);
+    assertEquals(8, store.create("C", "")[1]);
+  }
+
+  @Test
+  public void tornTailIsTruncated() throws IOException {
+    int id = (int) store.create("Page", "content")[1];
+    store.close();
+    Path last;
+    try (Stream<Path> files = Files.list(directory)) {
+      last = files.filter(path -> path.getFileName().toString().startsWith("segment-"))
+        .max(Comparator.naturalOrder()).get();
+    }
+    Files.write(last, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+    store = open();
+    assertEquals("content", store.get(id).content);
+    assertEquals(2, store.create("Other", "")[0]);
+  }
+}
@@ -0,0 +1,88 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.json.JsonArray;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PageNameIndexTest {
+
+  private PageNameIndex index;
+
+  @Before
+  public void setUp() {
+    index = new PageNameIndex();
+    index.put("Banana", 2);
+    index.put("Apple", 1);
+    index.put("Apricot", 3);
+    index.put("Cherry", 4);
+  }
+
+  private static List<String> names(List<PageSummary> pages) {
+    return pages.stream().map(PageSummary::getName).collect(Collectors.toList());
+  }
+
+  @Test
+  public void namesAreSorted() {
+    assertEquals(new JsonArray().add("Apple").add("Apricot").add("Banana").add("Cherry"), index.names());
+    assertEquals(index.names().getList(), names(index.summaries()));
+    assertEquals(4, index.size());
+  }
+
+  @Test
+  public void lookups() {
+    assertEquals(Integer.valueOf(3), index.id("Apricot"));
+    assertEquals("Banana", index.name(2));
+    assertTrue(index.contains("Cherry"));
+    assertFalse(index.contains("cherry"));
+    assertNull(index.id("Durian"));
+    assertNull(index.name(5));
+  }
+
+  @Test
+  public void completeStopsAtThePrefixAndTheLimit() {
+    assertEquals(Arrays.asList("Apple", "Apricot"), names(index.complete("Ap", 10)));
+    assertEquals(Collections.singletonList("Apple"), names(index.complete("Ap", 1)));
+    assertEquals(Arrays.asList("Apple", "Apricot", "Banana"), names(index.complete("", 3)));
+    assertTrue(index.complete("Z", 10).isEmpty());
+    assertEquals(3, index.complete("Apricot", 10).get(0).getId());
+  }
+
+  @Test
+  public void removeAndRename() {
+    index.remove(2);
+    assertNull(index.id("Banana"));
+    assertNull(index.name(2));
+    index.remove(2);
+    assertEquals(3, index.size());
+
+    index.put("Avocado", 1);
+    assertNull(index.id("Apple"));
+    assertEquals(Integer.valueOf(1), index.id("Avocado"));
+    assertEquals(3, index.names().size());
+  }
+
+  @Test
+  public void removeKeepsANameTakenByAnotherPage() {
+    // A page deleted and recreated under the same name before the deletion reaches the index
+    index.put("Banana", 5);
+    index.remove(2);
+    assertEquals(Integer.valueOf(5), index.id("Banana"));
+  }
+
+  @Test
+  public void clear() {
+    index.clear();
+    assertEquals(0, index.size());
+    assertTrue(index.names().isEmpty());
+  }
+}
@@ -0,0 +1,121 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.Benchmark;
+import io.vertx.starter.Benchmark.Latencies;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Cost of catching up with the page changes as the number of shards grows: a client a few writes behind
+ * fetches the changes since its change cursor, against the resync that was the only way to catch up on a
+ * sharded database before, reading the change cursor and every page summary. Each shard is a JDBC database
+ * service of its own. Reports the latencies of both, and the changes a client missed that the delta returned.
+ * <p>
+ * Arguments: number of pages (default 1000), catch-ups per case (200), writes between catch-ups (5).
+ */
+public class ShardedChangesBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int pages = Benchmark.intArg(args, 0, 1000);
+    int rounds = Benchmark.intArg(args, 1, 200);
+    int writes = Benchmark.intArg(args, 2, 5);
+    for (int shards : new int[]{1, 2, 4, 8}) {
+      run(shards, pages, rounds, writes);
+    }
+  }
+
+  private static void run(int shards, int pages, int rounds, int writes) throws Exception {
+    Path directory = Files.createTempDirectory("sharded-changes-benchmark");
+    Vertx vertx = Vertx.vertx();
+    try {
+      List<WikiDatabaseService> services = new ArrayList<>(shards);
+      for (int shard = 0; shard < shards; shard++) {
+        CompletableFuture<String> deployed = new CompletableFuture<>();
+        vertx.deployVerticle(WikiDatabaseVerticle.class.getName(), new DeploymentOptions().setConfig(new JsonObject()
+          .put(WikiDatabaseVerticle.CONFIG_WIKIDB_JDBC_URL, "jdbc:hsqldb:file:" + directory.resolve("db"))
+          .put(WikiDatabaseVerticle.CONFIG_WIKIDB_BACKUP_PATH, directory.resolve("backups").toString())
+          .put(WikiDatabaseVerticle.CONFIG_WIKIDB_SHARDS, shards)
+          .put(WikiDatabaseVerticle.CONFIG_WIKIDB_SHARD, shard)), ar -> {
+          if (ar.succeeded()) {
+            deployed.complete(ar.result());
+          } else {
+            deployed.completeExceptionally(ar.cause());
+          }
+        });
+        deployed.get(60, TimeUnit.SECONDS);
+        services.add(WikiDatabaseService.createProxy(vertx, ShardedWikiDatabaseService.address("wikidb.queue", shard, shards))
+          .getDelegate());
+      }
+      ShardedWikiDatabaseService sharded = new ShardedWikiDatabaseService(services);
+      io.vertx.starter.database.rxjava.WikiDatabaseService service = new io.vertx.starter.database.rxjava.WikiDatabaseService(sharded);
+      for (int i = 0; i < pages; i++) {
+        service.rxCreatePage("Page " + i, "Content of page " + i).toBlocking().value();
+      }
+      List<PageSummary> summaries = service.rxFetchAllPageSummaries().toBlocking().value();
+
+      Random random = new Random(42);
+      for (int round = 0; round < 2; round++) {
+        // The first round warms up
+        boolean print = round == 1;
+        Latencies delta = new Latencies();
+        Latencies resync = new Latencies();
+        long changes = 0;
+        String cursor = await(sharded::fetchChangeCursor);
+        for (int i = 0; i < rounds; i++) {
+          for (int w = 0; w < writes; w++) {
+            int id = summaries.get(random.nextInt(summaries.size())).getId();
+            service.rxSavePage(id, "Content " + i + "." + w).toBlocking().value();
+          }
+          String since = cursor;
+          long start = System.nanoTime();
+          JsonObject changed = await(handler -> sharded.fetchChangesSince(since, handler));
+          delta.record(start);
+          if (changed.getBoolean("resyncRequired")) {
+            throw new IllegalStateException("Unexpected resync from " + since);
+          }
+          changes += changed.getJsonArray("changes").size();
+          cursor = changed.getString("sequence");
+
+          start = System.nanoTime();
+          await(sharded::fetchChangeCursor);
+          service.rxFetchAllPageSummaries().toBlocking().value();
+          resync.record(start);
+        }
+        if (print) {
+          System.out.println(Benchmark.format("%d shards  delta %s  %.1f changes/catch-up", shards, delta,
+            (double) changes / rounds));
+          System.out.println(Benchmark.format("%d shards  resync %s", shards, resync));
+        }
+      }
+    } finally {
+      CompletableFuture<Void> closed = new CompletableFuture<>();
+      vertx.close(ar -> closed.complete(null));
+      closed.get(30, TimeUnit.SECONDS);
+      Benchmark.delete(directory);
+    }
+  }
+
+  private static <T> T await(Consumer<Handler<AsyncResult<T>>> call) throws Exception {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    call.accept(ar -> {
+      if (ar.succeeded()) {
+        result.complete(ar.result());
+      } else {
+        result.completeExceptionally(ar.cause());
+      }
+    });
+    return result.get(30, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,159 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.Benchmark;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Change cursors of the sharded database service, with a JDBC database service deployed for each shard
+ */
+public class ShardedWikiDatabaseServiceTest {
+
+  private static final int SHARDS = 3;
+
+  private Path directory;
+  private Vertx vertx;
+  private ShardedWikiDatabaseService sharded;
+  private io.vertx.starter.database.rxjava.WikiDatabaseService service;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("sharded-wiki");
+    vertx = Vertx.vertx();
+    List<WikiDatabaseService> shards = new ArrayList<>();
+    for (int shard = 0; shard < SHARDS; shard++) {
+      CompletableFuture<String> deployed = new CompletableFuture<>();
+      vertx.deployVerticle(WikiDatabaseVerticle.class.getName(), new DeploymentOptions().setConfig(new JsonObject()
+        .put(WikiDatabaseVerticle.CONFIG_WIKIDB_JDBC_URL, "jdbc:hsqldb:file:" + directory.resolve("db"))
+        .put(WikiDatabaseVerticle.CONFIG_WIKIDB_BACKUP_PATH, directory.resolve("backups").toString())
+        .put(WikiDatabaseVerticle.CONFIG_WIKIDB_SHARDS, SHARDS)
+        .put(WikiDatabaseVerticle.CONFIG_WIKIDB_SHARD, shard)), ar -> {
+        if (ar.succeeded()) {
+          deployed.complete(ar.result());
+        } else {
+          deployed.completeExceptionally(ar.cause());
+        }
+      });
+      deployed.get(30, TimeUnit.SECONDS);
+      shards.add(WikiDatabaseService.createProxy(vertx, ShardedWikiDatabaseService.address("wikidb.queue", shard, SHARDS))
+        .getDelegate());
+    }
+    sharded = new ShardedWikiDatabaseService(shards);
+    service = new io.vertx.starter.database.rxjava.WikiDatabaseService(sharded);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    vertx.close(ar -> closed.complete(null));
+    closed.get(30, TimeUnit.SECONDS);
+    Benchmark.delete(directory);
+  }
+
+  private static <T> T await(Consumer<Handler<AsyncResult<T>>> call) throws Exception {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    call.accept(ar -> {
+      if (ar.succeeded()) {
+        result.complete(ar.result());
+      } else {
+        result.completeExceptionally(ar.cause());
+      }
+    });
+    return result.get(30, TimeUnit.SECONDS);
+  }
+
+  /**
+   * @param prefix
+   * @param shard
+   * @return a page name starting with a prefix held by a shard
+   */
+  private static String nameIn(String prefix, int shard) {
+    for (int i = 0; ; i++) {
+      if (ShardedWikiDatabaseService.shardOf(prefix + i, SHARDS) == shard) {
+        return prefix + i;
+      }
+    }
+  }
+
+  @Test
+  public void cursorsListTheSequenceOfEveryShard() {
+    assertEquals("12.0.7", ShardedWikiDatabaseService.cursor(Arrays.asList(12L, 0L, 7L)));
+    assertArrayEquals(new long[]{12, 0, 7}, ShardedWikiDatabaseService.sequences("12.0.7", 3));
+    assertEquals(19L, ShardedWikiDatabaseService.sequence("12.0.7"));
+    assertNull(ShardedWikiDatabaseService.sequences("12.0", 3));
+    assertNull(ShardedWikiDatabaseService.sequences("12.0.7.1", 3));
+    assertNull(ShardedWikiDatabaseService.sequences("12..7", 3));
+    assertNull(ShardedWikiDatabaseService.sequences("12.-1.7", 3));
+    assertNull(ShardedWikiDatabaseService.sequences("19", 3));
+  }
+
+  @Test
+  public void changesSinceACursorAreTheChangesOfEveryShardSinceItsSequence() throws Exception {
+    for (int shard = 0; shard < SHARDS; shard++) {
+      service.rxCreatePage(nameIn("Old", shard), "old").toBlocking().value();
+    }
+    String cursor = await(sharded::fetchChangeCursor);
+    assertEquals(SHARDS, ShardedWikiDatabaseService.sequences(cursor, SHARDS).length);
+
+    String created = nameIn("New", 0);
+    service.rxCreatePage(created, "new").toBlocking().value();
+    int updated = service.rxFetchPage(nameIn("Old", 2)).toBlocking().value().getId();
+    service.rxSavePage(updated, "changed").toBlocking().value();
+
+    JsonObject delta = await(handler -> sharded.fetchChangesSince(cursor, handler));
+    assertFalse(delta.getBoolean("resyncRequired"));
+    assertEquals(await(sharded::fetchChangeCursor), delta.getString("sequence"));
+    JsonArray changes = delta.getJsonArray("changes");
+    assertEquals(2, changes.size());
+    assertEquals("created", changes.getJsonObject(0).getString("type"));
+    assertEquals(created, changes.getJsonObject(0).getString("name"));
+    assertEquals(0, (int) changes.getJsonObject(0).getInteger("shard"));
+    assertEquals("updated", changes.getJsonObject(1).getString("type"));
+    assertEquals(updated, (int) changes.getJsonObject(1).getInteger("id"));
+    assertEquals(2, (int) changes.getJsonObject(1).getInteger("shard"));
+
+    // Up to date
+    JsonObject none = await(handler -> sharded.fetchChangesSince(delta.getString("sequence"), handler));
+    assertFalse(none.getBoolean("resyncRequired"));
+    assertTrue(none.getJsonArray("changes").isEmpty());
+  }
+
+  @Test
+  public void cursorsOfAnotherLogRequireAResync() throws Exception {
+    for (int shard = 0; shard < SHARDS; shard++) {
+      service.rxCreatePage(nameIn("Page", shard), "").toBlocking().value();
+    }
+    String cursor = await(sharded::fetchChangeCursor);
+    Set<String> stale = new HashSet<>(Arrays.asList("1", "0.0", "0.0.0.0", "a.b.c", "1000.0.0"));
+    for (String since : stale) {
+      JsonObject delta = await(handler -> sharded.fetchChangesSince(since, handler));
+      assertTrue(since, delta.getBoolean("resyncRequired"));
+      assertTrue(since, delta.getJsonArray("changes").isEmpty());
+      assertEquals(cursor, delta.getString("sequence"));
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.Benchmark;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Backup chains across restores, with JDBC database services deployed on databases of their own and sharing
+ * the backup directory
+ */
+public class WikiBackupTest {
+
+  private Path directory;
+  private io.vertx.rxjava.core.Vertx vertx;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("wiki-backup");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Benchmark.delete(directory);
+  }
+
+  private static JsonObject entry(String type, Long from, long to) {
+    return new JsonObject().put("type", type).put("from", from).put("to", to);
+  }
+
+  @Test
+  public void chainStopsAtARestore() {
+    JsonObject full = entry(WikiBackup.FULL, null, 2);
+    JsonObject incremental = entry(WikiBackup.INCREMENTAL, 2L, 5);
+    JsonArray backups = new JsonArray()
+      .add(entry(WikiBackup.FULL, null, 1))
+      .add(full)
+      .add(incremental)
+      .add(entry(WikiBackup.RESTORE, 5L, 4))
+      // Taken from the sequence numbers of the restored wiki, which happen to match
+      .add(entry(WikiBackup.INCREMENTAL, 5L, 7));
+    assertEquals(Arrays.asList(full, incremental), WikiBackup.chain(backups));
+
+    JsonObject next = entry(WikiBackup.FULL, null, 4);
+    backups.add(next);
+    assertEquals(Collections.singletonList(next), WikiBackup.chain(backups));
+  }
+
+  @Test
+  public void backupAfterARestoreIsFull() throws Exception {
+    withService("first", false, service -> {
+      service.rxCreatePage("A", "a1").toBlocking().value();
+      service.rxCreatePage("B", "b1").toBlocking().value();
+      assertEquals(WikiBackup.FULL, backup(WikiBackup.FULL).getString("type"));
+      int a = service.rxFetchPage("A").toBlocking().value().getId();
+      int b = service.rxFetchPage("B").toBlocking().value().getId();
+      service.rxSavePage(a, "a2").toBlocking().value();
+      service.rxSavePage(b, "b2").toBlocking().value();
+      service.rxSavePage(a, "a3").toBlocking().value();
+      assertEquals(WikiBackup.INCREMENTAL, backup(WikiBackup.INCREMENTAL).getString("type"));
+    });
+
+    withService("second", true, service -> {
+      assertEquals("a3", service.rxFetchPage("A").toBlocking().value().getContent());
+      // Brings the change log of the restored wiki to the sequence number of the last backup
+      service.rxDeletePage(service.rxFetchPage("B").toBlocking().value().getId()).toBlocking().value();
+      assertEquals(WikiBackup.FULL, backup(WikiBackup.INCREMENTAL).getString("type"));
+    });
+
+    withService("third", true, service -> {
+      assertEquals(Collections.singletonList("A"), service.rxFetchAllPageSummaries().toBlocking().value().stream()
+        .map(PageSummary::getName).collect(Collectors.toList()));
+      assertEquals("a3", service.rxFetchPage("A").toBlocking().value().getContent());
+      assertNull(service.rxFetchPage("B").toBlocking().value());
+    });
+
+    List<String> types = new JsonObject(new String(Files.readAllBytes(directory.resolve("backups/manifest.json")), "UTF-8"))
+      .getJsonArray("backups").stream().map(backup -> ((JsonObject) backup).getString("type")).collect(Collectors.toList());
+    assertEquals(Arrays.asList(WikiBackup.FULL, WikiBackup.INCREMENTAL, WikiBackup.RESTORE, WikiBackup.FULL,
+      WikiBackup.RESTORE), types);
+  }
+
+  /**
+   * @param type
+   * @return the manifest entry of a backup taken by the deployed service
+   */
+  private JsonObject backup(String type) {
+    return vertx.eventBus().<JsonObject>rxSend("wikidb.backup", new JsonObject().put("type", type))
+      .toBlocking().value().body();
+  }
+
+  @FunctionalInterface
+  private interface ServiceTask {
+    void run(io.vertx.starter.database.rxjava.WikiDatabaseService service) throws Exception;
+  }
+
+  /**
+   * Deploy a JDBC database service on a database of its own and run a task once it is deployed
+   *
+   * @param database name of the database
+   * @param restore  whether the service restores the backups when it starts
+   * @param task
+   */
+  private void withService(String database, boolean restore, ServiceTask task) throws Exception {
+    Vertx vertx = Vertx.vertx();
+    this.vertx = new io.vertx.rxjava.core.Vertx(vertx);
+    try {
+      CompletableFuture<String> deployed = new CompletableFuture<>();
+      vertx.deployVerticle(WikiDatabaseVerticle.class.getName(), new DeploymentOptions().setConfig(new JsonObject()
+        .put(WikiDatabaseVerticle.CONFIG_WIKIDB_JDBC_URL, "jdbc:hsqldb:file:" + directory.resolve(database))
+        .put(WikiDatabaseVerticle.CONFIG_WIKIDB_BACKUP_PATH, directory.resolve("backups").toString())
+        .put(WikiDatabaseVerticle.CONFIG_WIKIDB_BACKUP_RESTORE, restore)), ar -> {
+        if (ar.succeeded()) {
+          deployed.complete(ar.result());
+        } else {
+          deployed.completeExceptionally(ar.cause());
+        }
+      });
+      deployed.get(30, TimeUnit.SECONDS);
+      task.run(WikiDatabaseService.createProxy(vertx, "wikidb.queue"));
+    } finally {
+      CompletableFuture<Void> closed = new CompletableFuture<>();
+      vertx.close(ar -> closed.complete(null));
+      closed.get(30, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.eventbus.impl.codecs.JsonArrayMessageCodec;
+import io.vertx.core.eventbus.impl.codecs.JsonObjectMessageCodec;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.Benchmark;
+
+/**
+ * Encode and decode throughput and size on the wire of the binary codec against the JSON text codecs of the
+ * event bus, on typical database service messages.
+ * <p>
+ * Arguments: iterations per case (default 20000).
+ */
+public class WikiDatabaseMessageCodecBenchmark {
+
+  public static void main(String[] args) {
+    int iterations = Benchmark.intArg(args, 0, 20000);
+    WikiDatabaseMessageCodec binary = new WikiDatabaseMessageCodec();
+
+    JsonObject request = new JsonObject().put("id", 1234).put("position", 65536L).put("length", 16384);
+    StringBuilder markdown = new StringBuilder();
+    while (markdown.length() < 4096) {
+      markdown.append("Some *markdown* with a [[Link]].\n");
+    }
+    JsonObject page = new JsonObject().put("id", 1234).put("name", "A page").put("content", markdown.toString());
+    JsonArray summaries = new JsonArray();
+    for (int i = 0; i < 500; i++) {
+      summaries.add(new JsonObject().put("id", i * 3 + 1).put("name", "Page number " + i));
+    }
+    JsonArray changes = new JsonArray();
+    for (int i = 0; i < 200; i++) {
+      changes.add(new JsonObject().put("sequence", 1_000_000L + i).put("type", "updated").put("id", i));
+    }
+    JsonObject delta = new JsonObject().put("sequence", 1_000_200L).put("changes", changes);
+
+    for (int round = 0; round < 2; round++) {
+      boolean print = round == 1;
+      run("request", request, new JsonObjectMessageCodec(), binary, iterations, print);
+      run("page", page, new JsonObjectMessageCodec(), binary, iterations, print);
+      run("page list", summaries, new JsonArrayMessageCodec(), binary, iterations, print);
+      run("changes", delta, new JsonObjectMessageCodec(), binary, iterations, print);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void run(String name, Object message, MessageCodec<?, ?> json, MessageCodec<Object, Object> binary,
+                          int iterations, boolean print) {
+    String jsonResult = measure((MessageCodec<Object, Object>) json, message, iterations);
+    String binaryResult = measure(binary, message, iterations);
+    if (print) {
+      System.out.println(Benchmark.format("%-10s json   %s", name, jsonResult));
+      System.out.println(Benchmark.format("%-10s binary %s", name, binaryResult));
+    }
+  }
+
+  private static String measure(MessageCodec<Object, Object> codec, Object message, int iterations) {
+    Buffer encoded = null;
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      encoded = Buffer.buffer();
+      codec.encodeToWire(encoded, message);
+    }
+    long encoding = System.nanoTime() - start;
+    Object decoded = null;
+    start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      decoded = codec.decodeFromWire(0, encoded);
+    }
+    long decoding = System.nanoTime() - start;
+    if (!message.equals(decoded)) {
+      throw new IllegalStateException(codec.name() + " did not decode the message it encoded");
+    }
+    return Benchmark.format("%6d bytes  encode %9.0f/s  decode %9.0f/s", encoded.length(),
+      iterations * 1e9 / encoding, iterations * 1e9 / decoding);
+  }
+}
@@ -0,0 +1,129 @@
+package io.vertx.starter.database;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WikiDatabaseMessageCodecTest {
+
+  private final WikiDatabaseMessageCodec codec = new WikiDatabaseMessageCodec();
+
+  /**
+   * Encode a value after some unrelated bytes, as the event bus does with its own headers, and decode it
+   */
+  private Object roundTrip(Object value) {
+    Buffer buffer = Buffer.buffer().appendString("header");
+    codec.encodeToWire(buffer, value);
+    assertEquals(buffer.length() - 6 - 4, buffer.getInt(6));
+    return codec.decodeFromWire(6, buffer);
+  }
+
+  @Test
+  public void scalars() {
+    assertNull(roundTrip(null));
+    assertEquals(true, roundTrip(true));
+    assertEquals(false, roundTrip(false));
+    assertEquals(2.5, roundTrip(2.5));
+    assertEquals(-0.125, roundTrip(-0.125f));
+    assertEquals("", roundTrip(""));
+    assertEquals("Caf\u00e9 \ud83d\ude00", roundTrip("Caf\u00e9 \ud83d\ude00"));
+    assertEquals("builder", roundTrip(new StringBuilder("builder")));
+  }
+
+  @Test
+  public void integersKeepTheirType() {
+    for (int value : new int[]{0, 1, -1, 63, -64, 64, 127, 128, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+      assertEquals(value, roundTrip(value));
+    }
+    assertEquals(7, roundTrip((short) 7));
+    assertEquals(-7, roundTrip((byte) -7));
+    for (long value : new long[]{0L, -1L, 1L << 40, -(1L << 40), Long.MAX_VALUE, Long.MIN_VALUE}) {
+      assertEquals(value, roundTrip(value));
+    }
+  }
+
+  @Test
+  public void binary() {
+    byte[] bytes = {0, 1, -1, 127, -128};
+    assertArrayEquals(bytes, (byte[]) roundTrip(bytes));
+    assertArrayEquals(new byte[0], (byte[]) roundTrip(new byte[0]));
+  }
+
+  @Test
+  public void objectsAndArrays() {
+    JsonObject page = new JsonObject()
+      .put("id", 3)
+      .put("sequence", 12L)
+      .put("name", "Page")
+      .putNull("missing")
+      .put("links", new JsonArray().add("A").add(1).add(2L).add(true).addNull()
+        .add(new JsonObject().put("nested", new JsonArray())))
+      .put("empty", new JsonObject());
+    Object decoded = roundTrip(page);
+    assertEquals(page, decoded);
+    assertEquals(Integer.class, ((JsonObject) decoded).getValue("id").getClass());
+    assertEquals(Long.class, ((JsonObject) decoded).getValue("sequence").getClass());
+    assertEquals(new JsonArray().add(1).add("x"), roundTrip(new JsonArray().add(1).add("x")));
+  }
+
+  @Test
+  public void mapsListsAndInstants() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("list", Arrays.asList(1, "two"));
+    map.put("at", Instant.ofEpochSecond(1500000000L));
+    JsonObject decoded = (JsonObject) roundTrip(map);
+    assertEquals(new JsonArray().add(1).add("two"), decoded.getJsonArray("list"));
+    assertEquals("2017-07-14T02:40:00Z", decoded.getString("at"));
+    assertEquals(new JsonArray(), roundTrip(Collections.emptyList()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unsupportedValues() {
+    roundTrip(new Object());
+  }
+
+  @Test
+  public void unknownVersionsAreRejected() {
+    Buffer buffer = Buffer.buffer();
+    codec.encodeToWire(buffer, new JsonObject().put("id", 1));
+    buffer.setByte(4, (byte) (WikiDatabaseMessageCodec.VERSION + 1));
+    try {
+      codec.decodeFromWire(0, buffer);
+      fail("A message of another version was decoded");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("version"));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void unknownTagsAreRejected() {
+    Buffer buffer = Buffer.buffer();
+    codec.encodeToWire(buffer, null);
+    buffer.setByte(5, (byte) 42);
+    codec.decodeFromWire(0, buffer);
+  }
+
+  @Test
+  public void transformCopiesJson() {
+    JsonObject object = new JsonObject().put("a", 1);
+    assertEquals(object, codec.transform(object));
+    assertNotSame(object, codec.transform(object));
+    JsonArray array = new JsonArray().add(1);
+    assertNotSame(array, codec.transform(array));
+    assertEquals("same", codec.transform("same"));
+  }
+}
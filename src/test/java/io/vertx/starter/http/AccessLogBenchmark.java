@@ -0,0 +1,121 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.starter.Benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of access logging for the threads serving the requests, at a high rate: producer threads record as
+ * fast as they can into the ring buffer, in each format and policy, against formatting and writing each line
+ * under a lock on the calling thread. Reports the records per second, the time and the bytes allocated per
+ * record on the producer threads, the dropped records, and how long the release keeps its caller.
+ * <p>
+ * Arguments: number of producer threads (default 4), records per thread (1000000).
+ */
+public class AccessLogBenchmark {
+
+  @FunctionalInterface
+  private interface Recorder {
+    void record(int i) throws IOException;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int threads = Benchmark.intArg(args, 0, 4);
+    int records = Benchmark.intArg(args, 1, 1000000);
+    Path directory = Files.createTempDirectory("access-log-benchmark");
+    Vertx vertx = Vertx.vertx();
+    try {
+      for (int round = 0; round < 2; round++) {
+        // The first round warms up
+        boolean print = round == 1;
+        Path file = directory.resolve("direct-" + round + ".log");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file.toFile()), 64 * 1024)) {
+          run("locked write", threads, records, i -> {
+            String line = Instant.ofEpochMilli(System.currentTimeMillis()) + "\tGET\t/wiki/:name\t200\t" + i
+              + "us\t-\t" + i + "\t1024\n";
+            synchronized (out) {
+              out.write(line.getBytes(StandardCharsets.UTF_8));
+            }
+          }, null, print);
+        }
+        for (String format : new String[]{"text", "binary"}) {
+          for (String policy : new String[]{"drop", "block"}) {
+            AccessLog log = AccessLog.shared(vertx, new JsonObject()
+              .put(AccessLog.CONFIG_HTTP_ACCESSLOG_PATH, directory.resolve(format + "-" + policy + "-" + round + ".log").toString())
+              .put(AccessLog.CONFIG_HTTP_ACCESSLOG_FORMAT, format)
+              .put(AccessLog.CONFIG_HTTP_ACCESSLOG_POLICY, policy));
+            run("ring " + format + " " + policy, threads, records,
+              i -> log.record("GET", "/wiki/:name", 200, i, null, i, 1024), log, print);
+            release(vertx, log, print);
+          }
+        }
+      }
+    } finally {
+      CompletableFuture<Void> closed = new CompletableFuture<>();
+      vertx.close(ar -> closed.complete(null));
+      closed.get(30, TimeUnit.SECONDS);
+      Benchmark.delete(directory);
+    }
+  }
+
+  private static void run(String name, int threads, int records, Recorder recorder, AccessLog log, boolean print)
+    throws Exception {
+    AtomicLong allocated = new AtomicLong();
+    List<Thread> producers = new ArrayList<>();
+    long start = System.nanoTime();
+    for (int t = 0; t < threads; t++) {
+      Thread producer = new Thread(() -> {
+        long before = Benchmark.allocatedBytes();
+        try {
+          for (int i = 0; i < records; i++) {
+            recorder.record(i);
+          }
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+        allocated.addAndGet(Benchmark.allocatedBytes() - before);
+      });
+      producer.start();
+      producers.add(producer);
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    long elapsed = System.nanoTime() - start;
+    long total = (long) threads * records;
+    if (print) {
+      System.out.println(Benchmark.format("%-18s %10.0f records/s  %6.1f ns/record/thread  %6.1f B/record  dropped %d",
+        name, total * 1e9 / elapsed, (double) elapsed * threads / total, (double) allocated.get() / total,
+        log != null ? log.stats().getLong("dropped") : 0L));
+    }
+  }
+
+  private static void release(Vertx vertx, AccessLog log, boolean print) throws Exception {
+    CompletableFuture<Long> released = new CompletableFuture<>();
+    long[] returned = new long[1];
+    long start = System.nanoTime();
+    vertx.runOnContext(v -> {
+      log.release(vertx, ar -> released.complete(System.nanoTime()));
+      returned[0] = System.nanoTime();
+    });
+    long stopped = released.get(30, TimeUnit.SECONDS);
+    if (print) {
+      System.out.println(Benchmark.format("%-18s release returned after %.1f us, writer stopped after %.1f ms", "",
+        (returned[0] - start) / 1e3, (stopped - start) / 1e6));
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.starter.Benchmark;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Ring buffer of the access log, and the records its writer appends to the file
+ */
+public class AccessLogTest {
+
+  private Path directory;
+  private Vertx vertx;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("access-log");
+    vertx = Vertx.vertx();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    vertx.close(ar -> closed.complete(null));
+    closed.get(30, TimeUnit.SECONDS);
+    Benchmark.delete(directory);
+  }
+
+  private AccessLog shared(String format, String policy, int capacity) {
+    return AccessLog.shared(vertx, new JsonObject()
+      .put(AccessLog.CONFIG_HTTP_ACCESSLOG_PATH, directory.resolve("access.log").toString())
+      .put(AccessLog.CONFIG_HTTP_ACCESSLOG_FORMAT, format)
+      .put(AccessLog.CONFIG_HTTP_ACCESSLOG_POLICY, policy)
+      .put(AccessLog.CONFIG_HTTP_ACCESSLOG_CAPACITY, capacity)
+      .put(AccessLog.CONFIG_HTTP_ACCESSLOG_BATCH, 7)
+      .put(AccessLog.CONFIG_HTTP_ACCESSLOG_FLUSH_INTERVAL, 1L));
+  }
+
+  private void release(AccessLog log) throws Exception {
+    CompletableFuture<Void> released = new CompletableFuture<>();
+    vertx.runOnContext(v -> log.release(vertx, ar -> released.complete(null)));
+    released.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void fullBufferDropsRecordsUnderTheDropPolicy() {
+    // Without a writer nothing frees the slots
+    AccessLog log = new AccessLog(directory.resolve("access.log").toString(), false, AccessLog.Policy.DROP, 5, 16,
+      TimeUnit.MILLISECONDS.toNanos(1));
+    for (int i = 0; i < 8; i++) {
+      assertTrue(log.record("GET", "/wiki/:name", 200, 10, null, -1, 100));
+    }
+    assertFalse(log.record("GET", "/wiki/:name", 200, 10, null, -1, 100));
+    assertEquals(8, (int) log.stats().getInteger("capacity"));
+    assertEquals(1L, (long) log.stats().getLong("dropped"));
+    assertEquals(8L, (long) log.stats().getLong("pending"));
+  }
+
+  @Test
+  public void recordsOfConcurrentProducersAreAllWrittenInTheirOrder() throws Exception {
+    AccessLog log = shared("text", "block", 16);
+    int threads = 4;
+    int records = 5000;
+    List<Thread> producers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      String route = "/producer/" + t;
+      Thread producer = new Thread(() -> {
+        for (int i = 0; i < records; i++) {
+          log.record("GET", route, 200, i, "user", i, 0);
+        }
+      });
+      producer.start();
+      producers.add(producer);
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    release(log);
+
+    List<String> lines = Files.readAllLines(directory.resolve("access.log"), StandardCharsets.UTF_8);
+    assertEquals(threads * records, lines.size());
+    int[] next = new int[threads];
+    for (String line : lines) {
+      String[] fields = line.split("\t");
+      int producer = Integer.parseInt(fields[2].substring("/producer/".length()));
+      assertEquals(next[producer] + "us", fields[4]);
+      assertEquals(String.valueOf(next[producer]), fields[6]);
+      next[producer]++;
+    }
+    assertEquals((long) threads * records, (long) log.stats().getLong("written"));
+    assertEquals(0L, (long) log.stats().getLong("dropped"));
+  }
+
+  @Test
+  public void binaryRecordsFollowTheHeader() throws Exception {
+    AccessLog log = shared("binary", "block", 4);
+    for (int i = 0; i < 10; i++) {
+      log.record("PUT", "/api/pages/:id", 200 + i, 1000 + i, i % 2 == 0 ? "alice" : null, i, 10 * i);
+    }
+    release(log);
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+      new FileInputStream(directory.resolve("access.log").toFile())))) {
+      byte[] header = new byte[4];
+      in.readFully(header);
+      assertArrayEquals("WAL1".getBytes(StandardCharsets.US_ASCII), header);
+      for (int i = 0; i < 10; i++) {
+        in.readLong();
+        assertEquals(200 + i, in.readShort());
+        assertEquals(1000 + i, in.readLong());
+        assertEquals(i, in.readInt());
+        assertEquals(10 * i, in.readLong());
+        assertEquals("PUT", in.readUTF());
+        assertEquals("/api/pages/:id", in.readUTF());
+        assertEquals(i % 2 == 0 ? "alice" : "", in.readUTF());
+      }
+      try {
+        in.readByte();
+        throw new AssertionError("Unexpected data after the records");
+      } catch (EOFException e) {
+        // The end of the log
+      }
+    }
+  }
+
+  @Test
+  public void onlyTheLastReleaseStopsTheWriter() throws Exception {
+    AccessLog log = shared("text", "drop", 16);
+    assertEquals(log, shared("text", "drop", 16));
+    release(log);
+    log.record("GET", "/", 200, 1, null, -1, 0);
+    release(log);
+    assertEquals(1, Files.readAllLines(directory.resolve("access.log"), StandardCharsets.UTF_8).size());
+    // A new log is created once the last one is released
+    AccessLog next = shared("text", "drop", 16);
+    assertFalse(next == log);
+    release(next);
+  }
+}
@@ -0,0 +1,120 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.Benchmark;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Admission of the uploads, which hold their slot while their body is sent, in a class of their own
+ */
+public class AdmissionControlTest {
+
+  private static final int PORT = 18081;
+
+  private Path directory;
+  private Vertx vertx;
+  private HttpClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("admission-control");
+    vertx = Vertx.vertx();
+    Benchmark.deployWiki(vertx, directory, PORT, new JsonObject()
+      .put(AdmissionControl.CONFIG_HTTP_ADMISSION_WRITE, 1)
+      .put(AdmissionControl.CONFIG_HTTP_ADMISSION_UPLOAD, 1));
+    client = vertx.createHttpClient(new HttpClientOptions().setDefaultPort(PORT).setMaxPoolSize(4));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    vertx.close(ar -> closed.complete(null));
+    closed.get(30, TimeUnit.SECONDS);
+    Benchmark.delete(directory);
+  }
+
+  private static class Response {
+    final int statusCode;
+    final Buffer body;
+
+    Response(int statusCode, Buffer body) {
+      this.statusCode = statusCode;
+      this.body = body;
+    }
+  }
+
+  /**
+   * Start a request, the caller ends it
+   *
+   * @param method
+   * @param uri
+   * @param response completed with the response
+   * @return
+   */
+  private HttpClientRequest start(HttpMethod method, String uri, CompletableFuture<Response> response) {
+    return client.request(method, uri, res -> res.bodyHandler(body -> response.complete(new Response(res.statusCode(), body))))
+      .exceptionHandler(response::completeExceptionally);
+  }
+
+  private Response request(HttpMethod method, String uri, Buffer body) throws Exception {
+    CompletableFuture<Response> response = new CompletableFuture<>();
+    start(method, uri, response).end(body);
+    return response.get(30, TimeUnit.SECONDS);
+  }
+
+  private long uploadsInFlight() throws Exception {
+    JsonObject stats = new JsonObject(request(HttpMethod.GET, "/metrics/admission", Buffer.buffer()).body.toString());
+    return stats.getJsonObject("upload").getLong("inFlight");
+  }
+
+  @Test
+  public void uploadsDoNotTakeTheSlotsOfTheWrites() throws Exception {
+    assertEquals(201, request(HttpMethod.POST, "/api/pages",
+      new JsonObject().put("name", "Home").put("markdown", "# Home").toBuffer()).statusCode);
+    int id = new JsonObject(request(HttpMethod.GET, "/api/pages", Buffer.buffer()).body.toString())
+      .getJsonArray("pages").getJsonObject(0).getInteger("id");
+
+    // An upload still sending its body
+    CompletableFuture<Response> uploaded = new CompletableFuture<>();
+    HttpClientRequest upload = start(HttpMethod.POST, "/api/pages/" + id + "/attachments?name=data.bin", uploaded)
+      .setChunked(true)
+      .putHeader("Content-Type", "application/octet-stream");
+    upload.write(Buffer.buffer(new byte[4096]));
+    long deadline = System.currentTimeMillis() + 10000;
+    while (uploadsInFlight() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, uploadsInFlight());
+
+    assertEquals(201, request(HttpMethod.POST, "/api/pages",
+      new JsonObject().put("name", "Other").put("markdown", "").toBuffer()).statusCode);
+    assertEquals(503, request(HttpMethod.POST, "/api/pages/" + id + "/attachments?name=other.bin",
+      Buffer.buffer("other")).statusCode);
+
+    upload.end(Buffer.buffer(new byte[4096]));
+    Response response = uploaded.get(30, TimeUnit.SECONDS);
+    assertEquals(201, response.statusCode);
+    assertEquals(8192L, (long) new JsonObject(response.body.toString()).getJsonObject("attachment").getLong("size"));
+  }
+
+  @Test
+  public void uploadsToAMissingPageAreRejected() throws Exception {
+    assertEquals(404, request(HttpMethod.POST, "/api/pages/12345/attachments?name=data.bin",
+      Buffer.buffer("data")).statusCode);
+  }
+}
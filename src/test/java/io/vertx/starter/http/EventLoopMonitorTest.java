@@ -0,0 +1,156 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.core.http.HttpServerRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Route names of the event loop monitor, and the lag and stalls it measures on a blocked loop
+ */
+public class EventLoopMonitorTest {
+
+  private Vertx vertx;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    vertx.close(ar -> closed.complete(null));
+    closed.get(30, TimeUnit.SECONDS);
+  }
+
+  private static HttpServerRequest request(HttpMethod method, String path) {
+    return new HttpServerRequest((io.vertx.core.http.HttpServerRequest) Proxy.newProxyInstance(
+      EventLoopMonitorTest.class.getClassLoader(), new Class<?>[]{io.vertx.core.http.HttpServerRequest.class},
+      (proxy, invoked, arguments) -> {
+        switch (invoked.getName()) {
+          case "path":
+            return path;
+          case "rawMethod":
+            return method.name();
+          default:
+            throw new UnsupportedOperationException(invoked.getName());
+        }
+      }));
+  }
+
+  @Test
+  public void routesReplaceIdsAndNames() {
+    assertEquals("GET /", EventLoopMonitor.route(request(HttpMethod.GET, "/")));
+    assertEquals("GET /api/pages/:id", EventLoopMonitor.route(request(HttpMethod.GET, "/api/pages/42")));
+    assertEquals("PATCH /api/pages/:id", EventLoopMonitor.route(request(HttpMethod.PATCH, "/api/pages/42")));
+    assertEquals("GET /api/pages/complete", EventLoopMonitor.route(request(HttpMethod.GET, "/api/pages/complete")));
+    assertEquals("GET /wiki/:name", EventLoopMonitor.route(request(HttpMethod.GET, "/wiki/Home%20Page")));
+    assertEquals("GET /api/pages/:id/attachments/:name",
+      EventLoopMonitor.route(request(HttpMethod.GET, "/api/pages/7/attachments/photo.png")));
+    assertEquals("GET /app/*", EventLoopMonitor.route(request(HttpMethod.GET, "/app/wiki.js")));
+    // Directories of the static files are kept
+    assertEquals("GET /app/lib/*", EventLoopMonitor.route(request(HttpMethod.GET, "/app/lib/editor.css")));
+  }
+
+  private static StackTraceElement frame(String className, String method) {
+    return new StackTraceElement(className, method, null, -1);
+  }
+
+  @Test
+  public void nestedLambdasOfJavac8AreNamedAfterTheNextNamedMethod() {
+    String verticle = HttpServerVerticle.class.getName();
+    String service = "io.vertx.starter.database.WikiDatabaseServiceImpl";
+    // javac 8 names a lambda nested in another lambda lambda$null$N, later versions after the enclosing method
+    StackTraceElement[] javac8 = {
+      frame(service, "lambda$null$4"),
+      frame(service, "render"),
+      frame(verticle, "lambda$null$12"),
+      frame(verticle + "$$Lambda$55/1234", "call"),
+      frame("rx.internal.operators.SingleOnSubscribeMap$MapSubscriber", "onSuccess"),
+      frame(verticle, "lambda$apiGetPage$13"),
+      frame("io.netty.channel.nio.NioEventLoop", "run")
+    };
+    assertEquals("WikiDatabaseServiceImpl.render", EventLoopMonitor.handler(javac8));
+    assertEquals("HttpServerVerticle.apiGetPage", EventLoopMonitor.entry(javac8));
+
+    StackTraceElement[] javac9 = {
+      frame(verticle, "lambda$apiGetPage$12"),
+      frame("io.netty.channel.nio.NioEventLoop", "run")
+    };
+    assertEquals("HttpServerVerticle.apiGetPage", EventLoopMonitor.handler(javac9));
+    assertEquals("HttpServerVerticle.apiGetPage", EventLoopMonitor.entry(javac9));
+
+    // Only unnamed frames of the wiki
+    StackTraceElement[] unnamed = {
+      frame(verticle, "lambda$null$3"),
+      frame("io.netty.channel.nio.NioEventLoop", "run")
+    };
+    assertEquals(verticle + ".lambda$null$3", EventLoopMonitor.handler(unnamed));
+    assertEquals(null, EventLoopMonitor.entry(unnamed));
+  }
+
+  @Test
+  public void blockedLoopIsMeasuredAndSampled() throws Exception {
+    EventLoopMonitor monitor = new EventLoopMonitor(5, 2, 20);
+    try {
+      CompletableFuture<Void> blocked = new CompletableFuture<>();
+      // Not nested in the lambda below, so that every javac names it after this method
+      Handler<Long> stall = id -> {
+        block(300);
+        blocked.complete(null);
+      };
+      vertx.runOnContext(v -> {
+        monitor.register();
+        vertx.setTimer(50, stall);
+      });
+      blocked.get(10, TimeUnit.SECONDS);
+      // The probe delayed by the stall runs once the loop is free
+      long deadline = System.currentTimeMillis() + 5000;
+      while (monitor.stats(10).getJsonArray("loops").getJsonObject(0).getDouble("maxLag") < 200
+        && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+
+      JsonObject stats = monitor.stats(10);
+      JsonObject loop = stats.getJsonArray("loops").getJsonObject(0);
+      assertTrue(loop.getLong("probes") > 1);
+      assertTrue(loop.getDouble("maxLag") >= 200);
+      assertTrue(loop.getLong("stalls") >= 1);
+      long counted = 0;
+      for (Object bucket : loop.getJsonArray("histogram")) {
+        counted += ((JsonObject) bucket).getLong("count");
+      }
+      assertEquals((long) loop.getLong("probes"), counted);
+
+      JsonArray offenders = stats.getJsonArray("offenders");
+      assertTrue(stats.getLong("samples") > 10);
+      JsonObject top = offenders.getJsonObject(0);
+      assertEquals("-", top.getString("route"));
+      assertEquals("EventLoopMonitorTest.block", top.getString("handler"));
+      assertEquals("EventLoopMonitorTest.blockedLoopIsMeasuredAndSampled", top.getString("entry"));
+      assertTrue(top.getJsonArray("stack").size() > 0);
+    } finally {
+      monitor.release(vertx);
+    }
+  }
+
+  private static void block(long ms) {
+    long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ms);
+    while (System.nanoTime() < end) {
+      // Spin
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package io.vertx.starter.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class HttpServerVerticleTest {
+
+  @Test
+  public void parseRangeOfFirstAndLastBytes() {
+    assertArrayEquals(new long[]{0, 99}, HttpServerVerticle.parseRange("bytes=0-99", 1000));
+    assertArrayEquals(new long[]{100, 999}, HttpServerVerticle.parseRange("bytes=100-", 1000));
+    assertArrayEquals(new long[]{900, 999}, HttpServerVerticle.parseRange("bytes=900-5000", 1000));
+    assertArrayEquals(new long[]{5, 5}, HttpServerVerticle.parseRange("bytes= 5-5", 1000));
+  }
+
+  @Test
+  public void parseRangeOfSuffix() {
+    assertArrayEquals(new long[]{990, 999}, HttpServerVerticle.parseRange("bytes=-10", 1000));
+    assertArrayEquals(new long[]{0, 999}, HttpServerVerticle.parseRange("bytes=-5000", 1000));
+    assertArrayEquals(new long[0], HttpServerVerticle.parseRange("bytes=-0", 1000));
+  }
+
+  @Test
+  public void parseRangeThatCannotBeSatisfied() {
+    assertArrayEquals(new long[0], HttpServerVerticle.parseRange("bytes=1000-", 1000));
+    assertArrayEquals(new long[0], HttpServerVerticle.parseRange("bytes=0-10", 0));
+  }
+
+  @Test
+  public void parseRangeFallsBackToTheWholeContent() {
+    assertNull(HttpServerVerticle.parseRange(null, 1000));
+    assertNull(HttpServerVerticle.parseRange("items=0-10", 1000));
+    assertNull(HttpServerVerticle.parseRange("bytes=0-10,20-30", 1000));
+    assertNull(HttpServerVerticle.parseRange("bytes=10", 1000));
+    assertNull(HttpServerVerticle.parseRange("bytes=20-10", 1000));
+    assertNull(HttpServerVerticle.parseRange("bytes=a-b", 1000));
+  }
+}
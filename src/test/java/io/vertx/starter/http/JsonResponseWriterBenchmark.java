@@ -0,0 +1,76 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.Benchmark;
+import io.vertx.starter.database.PageSummary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Allocation and time per response of the JSON envelopes written by {@link JsonResponseWriter}, against a
+ * {@link JsonObject} tree encoded to a string and then to bytes, as the responses were built before.
+ * <p>
+ * Arguments: number of pages of the listing (default 500), iterations per case (20000).
+ */
+public class JsonResponseWriterBenchmark {
+
+  public static void main(String[] args) {
+    int count = Benchmark.intArg(args, 0, 500);
+    int iterations = Benchmark.intArg(args, 1, 20000);
+    List<PageSummary> pages = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      pages.add(new PageSummary(i, "Page number " + i));
+    }
+    StringBuilder markdown = new StringBuilder();
+    while (markdown.length() < 4096) {
+      markdown.append("Some *markdown* with a [[Link]] and \"quotes\".\n");
+    }
+    String content = markdown.toString();
+
+    run("page list, tree", iterations, () -> {
+      JsonArray list = new JsonArray();
+      for (PageSummary page : pages) {
+        list.add(new JsonObject().put("id", page.getId()).put("name", page.getName()));
+      }
+      return Buffer.buffer(new JsonObject().put("success", true).put("pages", list).encode());
+    });
+    run("page list, writer", iterations, () -> JsonResponseWriter.success(64 + pages.size() * 48)
+      .field("pages", HttpServerVerticle.pageSummaries(pages)).encode());
+
+    run("page, tree", iterations, () -> Buffer.buffer(new JsonObject().put("success", true)
+      .put("page", new JsonObject().put("id", 1).put("name", "Page").put("markdown", content)).encode()));
+    run("page, writer", iterations, () -> JsonResponseWriter.success(128 + content.length() * 5 / 2)
+      .field("page", generator -> {
+        generator.writeStartObject();
+        generator.writeNumberField("id", 1);
+        generator.writeStringField("name", "Page");
+        generator.writeStringField("markdown", content);
+        generator.writeEndObject();
+      }).encode());
+
+    run("failure, tree", iterations, () -> Buffer.buffer(new JsonObject().put("success", false)
+      .put("error", "There is no page with ID 42").encode()));
+    run("failure, writer", iterations, () -> JsonResponseWriter.failure("There is no page with ID 42", 0).encode());
+  }
+
+  private static void run(String name, int iterations, Supplier<Buffer> response) {
+    long length = 0;
+    // Warm up
+    for (int i = 0; i < iterations; i++) {
+      length += response.get().length();
+    }
+    long allocated = Benchmark.allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      length += response.get().length();
+    }
+    long elapsed = System.nanoTime() - start;
+    allocated = Benchmark.allocatedBytes() - allocated;
+    System.out.println(Benchmark.format("%-18s %8.0f bytes/op %8.2f us/op (%d bytes per response)", name,
+      (double) allocated / iterations, elapsed / 1000.0 / iterations, length / iterations / 2));
+  }
+}
@@ -0,0 +1,66 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.database.PageSummary;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class JsonResponseWriterTest {
+
+  @Test
+  public void successEnvelope() {
+    assertEquals("{\"success\":true}", JsonResponseWriter.success(0).encode().toString());
+  }
+
+  @Test
+  public void fieldsOfAnyType() {
+    JsonObject decoded = new JsonObject(JsonResponseWriter.success(16)
+      .field("object", new JsonObject().put("a", 1))
+      .field("array", new JsonArray().add("x").add(2))
+      .field("string", "quoted \"text\" \u00e9\n")
+      .field("number", 4.5)
+      .field("boolean", false)
+      .field("null", (Object) null)
+      .encode());
+    assertEquals(new JsonObject()
+      .put("success", true)
+      .put("object", new JsonObject().put("a", 1))
+      .put("array", new JsonArray().add("x").add(2))
+      .put("string", "quoted \"text\" \u00e9\n")
+      .put("number", 4.5)
+      .put("boolean", false)
+      .putNull("null"), decoded);
+  }
+
+  @Test
+  public void streamedValues() {
+    JsonObject decoded = new JsonObject(JsonResponseWriter.success(0)
+      .field("pages", HttpServerVerticle.pageSummaries(Arrays.asList(new PageSummary(1, "A"), new PageSummary(2, "B"))))
+      .field("count", generator -> generator.writeNumber(2))
+      .encode());
+    assertEquals(new JsonArray()
+      .add(new JsonObject().put("id", 1).put("name", "A"))
+      .add(new JsonObject().put("id", 2).put("name", "B")), decoded.getJsonArray("pages"));
+    assertEquals(Integer.valueOf(2), decoded.getInteger("count"));
+  }
+
+  @Test
+  public void failureEnvelope() {
+    assertEquals(new JsonObject().put("success", false).put("error", "No \"page\""),
+      new JsonObject(JsonResponseWriter.failure("No \"page\"", 0).encode()));
+    assertEquals(new JsonObject().put("success", false).putNull("error").put("hash", "h"),
+      new JsonObject(JsonResponseWriter.failure(null, 0).field("hash", "h").encode()));
+  }
+
+  @Test
+  public void bufferGrowsPastTheHint() {
+    char[] chars = new char[10000];
+    Arrays.fill(chars, 'x');
+    String value = new String(chars);
+    assertEquals(value, new JsonObject(JsonResponseWriter.success(1).field("value", value).encode()).getString("value"));
+  }
+}
@@ -0,0 +1,72 @@
+package io.vertx.starter.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.starter.Benchmark;
+
+/**
+ * Cost of rendering a large page into response chunks: the renderer against a buffer of the chunk size
+ * allocated for each chunk and grown when a segment overflows it, as it was rendered before. Reports the time
+ * and the bytes allocated per rendering, and the bytes of the chunks handed over.
+ * <p>
+ * Arguments: size of the page in kilobytes (default 256), renderings per case (200), chunk size (16384).
+ */
+public class MarkdownRendererBenchmark {
+
+  public static void main(String[] args) {
+    int size = Benchmark.intArg(args, 0, 256) * 1024;
+    int renderings = Benchmark.intArg(args, 1, 200);
+    int chunkSize = Benchmark.intArg(args, 2, 16 * 1024);
+    StringBuilder page = new StringBuilder(size + 1024);
+    for (int i = 0; page.length() < size; i++) {
+      page.append("## Section ").append(i).append("\n\nSome *emphasis*, a [link](/wiki/Page").append(i)
+        .append(") and a list:\n\n* one\n* two\n\n```\ncode block ").append(i).append("\n```\n\n")
+        .append("A longer paragraph of text to make the segments look like prose, with `code` and **bold** words.\n\n");
+    }
+    String markdown = page.toString();
+    for (int round = 0; round < 2; round++) {
+      // The first round warms up
+      boolean print = round == 1;
+      run("per-chunk buffers", renderings, print, chunks -> renderPerChunk(markdown, chunkSize, chunks));
+      run("renderer", renderings, print, chunks -> MarkdownRenderer.render(markdown, chunkSize, chunks));
+    }
+  }
+
+  private static void run(String name, int renderings, boolean print, Handler<Handler<Buffer>> render) {
+    long[] chunkBytes = {0, 0};
+    long before = Benchmark.allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < renderings; i++) {
+      render.handle(chunk -> {
+        chunkBytes[0] += chunk.length();
+        chunkBytes[1] += chunk.getByteBuf().capacity();
+      });
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocated = Benchmark.allocatedBytes() - before;
+    if (print) {
+      System.out.println(Benchmark.format("%-18s %8.1f us/rendering  %8.0f KB allocated/rendering  %6.0f KB sent  %6.0f KB chunk capacity",
+        name, elapsed / 1e3 / renderings, allocated / 1024.0 / renderings, chunkBytes[0] / 1024.0 / renderings,
+        chunkBytes[1] / 1024.0 / renderings));
+    }
+  }
+
+  /**
+   * The rendering into a new buffer of the chunk size for each chunk
+   */
+  private static void renderPerChunk(String markdown, int chunkSize, Handler<Buffer> chunks) {
+    int size = Math.max(256, chunkSize);
+    ByteBuf[] chunk = {Unpooled.buffer(size)};
+    MarkdownRenderer.render(markdown, html -> {
+      ByteBufUtil.writeUtf8(chunk[0], html);
+      if (chunk[0].readableBytes() >= size) {
+        chunks.handle(Buffer.buffer(chunk[0]));
+        chunk[0] = Unpooled.buffer(size);
+      }
+    });
+    chunks.handle(Buffer.buffer(chunk[0]));
+  }
+}
@@ -0,0 +1,47 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Chunks of the streamed rendering of a page
+ */
+public class MarkdownRendererTest {
+
+  @Test
+  public void chunksAddUpToTheRenderingAndAreAllocatedAtTheirSize() {
+    StringBuilder markdown = new StringBuilder();
+    for (int i = 0; markdown.length() < 64 * 1024; i++) {
+      markdown.append("## Section ").append(i).append("\n\nSome *text* with a [link][home].\n\n* one\n* two\n\n");
+    }
+    markdown.append("[home]: /wiki/Home\n");
+
+    List<Buffer> chunks = new ArrayList<>();
+    MarkdownRenderer.render(markdown.toString(), 4096, chunks::add);
+    Buffer html = Buffer.buffer();
+    for (int i = 0; i < chunks.size(); i++) {
+      Buffer chunk = chunks.get(i);
+      if (i < chunks.size() - 1) {
+        assertTrue(chunk.length() >= 4096);
+      }
+      assertEquals(chunk.length(), chunk.getByteBuf().capacity());
+      html.appendBuffer(chunk);
+    }
+    assertTrue(chunks.size() > 1);
+    assertEquals(MarkdownRenderer.render(markdown.toString()), html.toString("UTF-8"));
+  }
+
+  @Test
+  public void emptyPageEndsWithOneChunk() {
+    List<Buffer> chunks = new ArrayList<>();
+    MarkdownRenderer.render("", 4096, chunks::add);
+    assertEquals(1, chunks.size());
+    assertEquals(MarkdownRenderer.render(""), chunks.get(0).toString("UTF-8"));
+  }
+}
@@ -0,0 +1,80 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.http.PageFragmentCache.PageFragment;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Eviction and invalidation of the page fragments
+ */
+public class PageFragmentCacheTest {
+
+  private static PageFragment fragment(int id) {
+    return new PageFragment(id, "<p>" + id + "</p>", 0);
+  }
+
+  @Test
+  public void leastRecentlyUsedPageIsEvicted() {
+    PageFragmentCache cache = new PageFragmentCache(3);
+    for (int id = 1; id <= 3; id++) {
+      cache.putPage("Page" + id, fragment(id), cache.generation());
+    }
+    // Reading the oldest page makes the second one the least recently used
+    assertNotNull(cache.page("Page1"));
+    cache.putPage("Page4", fragment(4), cache.generation());
+
+    assertNotNull(cache.page("Page1"));
+    assertNull(cache.page("Page2"));
+    assertNotNull(cache.page("Page3"));
+    assertNotNull(cache.page("Page4"));
+    assertEquals(3, (int) cache.stats().getInteger("pages"));
+  }
+
+  @Test
+  public void fragmentsReadBeforeAnInvalidationAreNotCached() {
+    PageFragmentCache cache = new PageFragmentCache(10);
+    long generation = cache.generation();
+    cache.invalidate(1, false);
+    cache.putPage("Page1", fragment(1), generation);
+    cache.putPageList("<ul></ul>", generation);
+    assertNull(cache.page("Page1"));
+    assertNull(cache.pageList());
+
+    cache.putPage("Page1", fragment(1), cache.generation());
+    assertNotNull(cache.page("Page1"));
+  }
+
+  @Test
+  public void invalidationsRemoveThePagesOfTheirIds() {
+    PageFragmentCache cache = new PageFragmentCache(10);
+    cache.putPage("Page1", fragment(1), cache.generation());
+    cache.putPage("Page2", fragment(2), cache.generation());
+    cache.putPageList("<ul></ul>", cache.generation());
+
+    cache.invalidate(1, false);
+    assertNull(cache.page("Page1"));
+    assertNotNull(cache.page("Page2"));
+    assertNotNull(cache.pageList());
+
+    cache.invalidate(new JsonObject().put("changes", new JsonArray()
+      .add(new JsonObject().put("id", 2).put("type", "deleted"))));
+    assertNull(cache.page("Page2"));
+    assertNull(cache.pageList());
+  }
+
+  @Test
+  public void hitsAndMissesAreCounted() {
+    PageFragmentCache cache = new PageFragmentCache(10);
+    cache.putPage("Page1", fragment(1), cache.generation());
+    cache.page("Page1");
+    cache.page("Page2");
+    cache.pageList();
+    assertEquals(1L, (long) cache.stats().getLong("hits"));
+    assertEquals(2L, (long) cache.stats().getLong("misses"));
+  }
+}
@@ -0,0 +1,91 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.database.PageSummary;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Patches of the page list snapshot, and the builds in flight they discard
+ */
+public class PageListSnapshotTest {
+
+  private static JsonObject batch(JsonObject... changes) {
+    return new JsonObject().put("changes", new JsonArray(Arrays.asList(changes)));
+  }
+
+  private static JsonObject change(long sequence, String type, int id, String name) {
+    return new JsonObject().put("sequence", sequence).put("type", type).put("id", id).put("name", name);
+  }
+
+  private static List<String> names(PageListSnapshot.Snapshot snapshot) {
+    return snapshot.pages.stream().map(PageSummary::getName).collect(Collectors.toList());
+  }
+
+  private static PageListSnapshot.Snapshot build(PageListSnapshot pageList, long sequence, String... names) {
+    PageSummary[] pages = new PageSummary[names.length];
+    for (int i = 0; i < names.length; i++) {
+      pages[i] = new PageSummary(i + 1, names[i]);
+    }
+    return pageList.build(sequence, Arrays.asList(pages));
+  }
+
+  @Test
+  public void batchesAreAppliedInOrderOnce() {
+    PageListSnapshot pageList = new PageListSnapshot(false);
+    pageList.put(build(pageList, 2, "A", "C"), pageList.generation());
+
+    JsonObject batch = batch(change(3, "created", 10, "B"), change(4, "updated", 1, "A"), change(5, "deleted", 2, "C"));
+    pageList.patch(batch);
+    PageListSnapshot.Snapshot patched = pageList.get();
+    assertEquals(Arrays.asList("A", "B"), names(patched));
+    assertEquals(5L, patched.sequence);
+    assertEquals(5L, (long) new JsonObject(patched.body.toString()).getLong("sequence"));
+
+    // Applied already by another verticle
+    pageList.patch(batch);
+    assertEquals(patched, pageList.get());
+    assertEquals(1L, (long) pageList.stats().getLong("patches"));
+  }
+
+  @Test
+  public void batchWithoutSnapshotDiscardsTheBuildsInFlight() {
+    PageListSnapshot pageList = new PageListSnapshot(false);
+    long generation = pageList.generation();
+    // Read before the page was created
+    PageListSnapshot.Snapshot built = build(pageList, 1, "A");
+    pageList.patch(batch(change(2, "created", 10, "B")));
+    pageList.put(built, generation);
+    assertNull(pageList.get());
+  }
+
+  @Test
+  public void updatesWithoutSnapshotKeepTheBuildsInFlight() {
+    PageListSnapshot pageList = new PageListSnapshot(false);
+    long generation = pageList.generation();
+    PageListSnapshot.Snapshot built = build(pageList, 1, "A");
+    pageList.patch(batch(change(2, "updated", 1, "A")));
+    pageList.put(built, generation);
+    assertNotNull(pageList.get());
+  }
+
+  @Test
+  public void batchOverlappingTheSnapshotDropsItAndTheBuildsInFlight() {
+    PageListSnapshot pageList = new PageListSnapshot(false);
+    pageList.put(build(pageList, 3, "A", "B"), pageList.generation());
+    long generation = pageList.generation();
+    PageListSnapshot.Snapshot built = build(pageList, 4, "A", "B");
+    pageList.patch(batch(change(3, "created", 2, "B"), change(5, "deleted", 1, "A")));
+    assertNull(pageList.get());
+    pageList.put(built, generation);
+    assertNull(pageList.get());
+  }
+}
@@ -0,0 +1,159 @@
+package io.vertx.starter.http;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.starter.Benchmark;
+import io.vertx.starter.Benchmark.Latencies;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to first byte and time to content of a page view, server side rendered against the single page
+ * application. The SPA view loads <code>/app/index.html</code>, <code>/app/wiki.js</code>, the page list and
+ * then the page, which carries its HTML, one after the other as a browser does; the scripts of the CDNs are
+ * left out. The server side rendered view is measured on the first view of each page, a miss of the fragment
+ * cache, and on the following views.
+ * <p>
+ * Arguments: number of pages (default 200), views of each page once cached (5), size of a page in characters
+ * (4000).
+ */
+public class PageRenderingBenchmark {
+
+  private static final int PORT = 18080;
+
+  private static class View {
+    final long firstByte;
+    final long total;
+
+    View(long firstByte, long total) {
+      this.firstByte = firstByte;
+      this.total = total;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int pages = Benchmark.intArg(args, 0, 200);
+    int views = Benchmark.intArg(args, 1, 5);
+    int size = Benchmark.intArg(args, 2, 4000);
+    Path directory = Files.createTempDirectory("page-rendering-benchmark");
+    Vertx vertx = Vertx.vertx();
+    try {
+      Benchmark.deployWiki(vertx, directory, PORT, new JsonObject()
+        .put(PageFragmentCache.CONFIG_HTTP_SSR_CACHE_MAX_PAGES, 4 * pages));
+      HttpClient client = vertx.createHttpClient(new HttpClientOptions()
+        .setDefaultPort(PORT).setKeepAlive(true).setMaxPoolSize(1));
+      StringBuilder markdown = new StringBuilder();
+      while (markdown.length() < size) {
+        markdown.append("## Section\n\nSome *emphasis*, a [[Link]] and a list:\n\n* one\n* two\n\n");
+      }
+      for (int i = 0; i < 2 * pages; i++) {
+        request(client, HttpMethod.POST, "/api/pages", new JsonObject()
+          .put("name", "Page" + i).put("markdown", markdown.toString()).toBuffer()).get();
+      }
+      JsonArray list = new JsonObject(request(client, HttpMethod.GET, "/api/pages", null).get().toString())
+        .getJsonArray("pages");
+
+      for (int round = 0; round < 2; round++) {
+        // The first round warms up, on pages of its own so that the second one still misses the cache
+        boolean print = round == 1;
+        Latencies ssrColdFirstByte = new Latencies();
+        Latencies ssrColdTotal = new Latencies();
+        Latencies ssrFirstByte = new Latencies();
+        Latencies ssrTotal = new Latencies();
+        Latencies spaFirstByte = new Latencies();
+        Latencies spaTotal = new Latencies();
+        for (int i = round * pages; i < (round + 1) * pages; i++) {
+          View view = ssr(client, "Page" + i);
+          ssrColdFirstByte.add(view.firstByte);
+          ssrColdTotal.add(view.total);
+        }
+        for (int view = 0; view < views; view++) {
+          for (int i = round * pages; i < (round + 1) * pages; i++) {
+            View ssr = ssr(client, "Page" + i);
+            ssrFirstByte.add(ssr.firstByte);
+            ssrTotal.add(ssr.total);
+            View spa = spa(client, pageId(list, "Page" + i));
+            spaFirstByte.add(spa.firstByte);
+            spaTotal.add(spa.total);
+          }
+        }
+        if (print) {
+          System.out.println("first byte");
+          System.out.println(Benchmark.format("  %-16s %s", "SSR, uncached", ssrColdFirstByte));
+          System.out.println(Benchmark.format("  %-16s %s", "SSR, cached", ssrFirstByte));
+          System.out.println(Benchmark.format("  %-16s %s", "SPA", spaFirstByte));
+          System.out.println("content");
+          System.out.println(Benchmark.format("  %-16s %s", "SSR, uncached", ssrColdTotal));
+          System.out.println(Benchmark.format("  %-16s %s", "SSR, cached", ssrTotal));
+          System.out.println(Benchmark.format("  %-16s %s", "SPA", spaTotal));
+        }
+      }
+    } finally {
+      CompletableFuture<Void> closed = new CompletableFuture<>();
+      vertx.close(ar -> closed.complete(null));
+      closed.get(30, TimeUnit.SECONDS);
+      Benchmark.delete(directory);
+    }
+  }
+
+  private static int pageId(JsonArray list, String name) {
+    for (int i = 0; i < list.size(); i++) {
+      if (name.equals(list.getJsonObject(i).getString("name"))) {
+        return list.getJsonObject(i).getInteger("id");
+      }
+    }
+    throw new IllegalStateException("No page " + name);
+  }
+
+  private static View ssr(HttpClient client, String name) throws Exception {
+    long start = System.nanoTime();
+    long[] firstByte = new long[1];
+    request(client, HttpMethod.GET, "/wiki/" + name, null, firstByte).get();
+    return new View(firstByte[0] - start, System.nanoTime() - start);
+  }
+
+  private static View spa(HttpClient client, int id) throws Exception {
+    long start = System.nanoTime();
+    long[] firstByte = new long[1];
+    request(client, HttpMethod.GET, "/app/index.html", null, firstByte).get();
+    long first = firstByte[0];
+    request(client, HttpMethod.GET, "/app/wiki.js", null).get();
+    request(client, HttpMethod.GET, "/api/pages", null).get();
+    request(client, HttpMethod.GET, "/api/pages/" + id, null).get();
+    return new View(first - start, System.nanoTime() - start);
+  }
+
+  private static CompletableFuture<Buffer> request(HttpClient client, HttpMethod method, String uri, Buffer body) {
+    return request(client, method, uri, body, new long[1]);
+  }
+
+  /**
+   * @param client
+   * @param method
+   * @param uri
+   * @param body
+   * @param firstByte set to {@link System#nanoTime()} when the response headers arrive
+   * @return the response body
+   */
+  private static CompletableFuture<Buffer> request(HttpClient client, HttpMethod method, String uri, Buffer body,
+                                                   long[] firstByte) {
+    CompletableFuture<Buffer> result = new CompletableFuture<>();
+    client.request(method, uri, response -> {
+      firstByte[0] = System.nanoTime();
+      if (response.statusCode() >= 300) {
+        result.completeExceptionally(new IllegalStateException(method + " " + uri + ": " + response.statusCode()));
+        return;
+      }
+      response.bodyHandler(result::complete);
+    }).exceptionHandler(result::completeExceptionally).end(body != null ? body : Buffer.buffer());
+    return result;
+  }
+}
@@ -0,0 +1,140 @@
+package io.vertx.starter.http;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Token buckets of the rate limiter, on a simulated clock so that the outcomes do not depend on the speed of
+ * the machine
+ */
+public class RateLimiterTest {
+
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void burstThenRefillAtTheRate() {
+    RateLimiter limiter = new RateLimiter("test", 100, 5, 100, TimeUnit.MINUTES.toNanos(1));
+    for (int i = 0; i < 5; i++) {
+      assertEquals(0, limiter.tryAcquire("a", 0));
+    }
+    assertEquals(10 * MS, limiter.tryAcquire("a", 0));
+    assertEquals(0, limiter.tryAcquire("a", 10 * MS));
+    assertTrue(limiter.tryAcquire("a", 10 * MS) > 0);
+    // Other clients have buckets of their own
+    assertEquals(0, limiter.tryAcquire("b", 0));
+  }
+
+  @Test
+  public void concurrentRequestsOfOneClientNeverExceedItsBucket() throws Exception {
+    RateLimiter limiter = new RateLimiter("test", 100, 50, 100, TimeUnit.MINUTES.toNanos(1));
+    AtomicInteger allowed = new AtomicInteger();
+    runConcurrently(16, thread -> {
+      for (int i = 0; i < 1000; i++) {
+        if (limiter.tryAcquire("a", 0) == 0) {
+          allowed.incrementAndGet();
+        }
+      }
+    });
+    assertEquals(50, allowed.get());
+    assertEquals(50L, (long) limiter.stats().getLong("allowed"));
+    assertEquals(16 * 1000 - 50L, (long) limiter.stats().getLong("limited"));
+  }
+
+  @Test
+  public void greedyClientDoesNotStarvePoliteOnes() throws Exception {
+    // 100 requests per second with a burst of 5, over one simulated second
+    RateLimiter limiter = new RateLimiter("test", 100, 5, 100, TimeUnit.MINUTES.toNanos(1));
+    int greedyThreads = 8;
+    int politeClients = 8;
+    AtomicInteger greedyAllowed = new AtomicInteger();
+    AtomicInteger[] politeAllowed = new AtomicInteger[politeClients];
+    for (int i = 0; i < politeClients; i++) {
+      politeAllowed[i] = new AtomicInteger();
+    }
+    runConcurrently(greedyThreads + politeClients, thread -> {
+      for (int ms = 0; ms < 1000; ms++) {
+        long now = ms * MS;
+        if (thread < greedyThreads) {
+          // Ten attempts per millisecond from each of the greedy threads
+          for (int attempt = 0; attempt < 10; attempt++) {
+            if (limiter.tryAcquire("greedy", now) == 0) {
+              greedyAllowed.incrementAndGet();
+            }
+          }
+        } else if (ms % 10 == 0 && limiter.tryAcquire("polite-" + thread, now) == 0) {
+          // One attempt every 10 milliseconds, the rate of the limiter
+          politeAllowed[thread - greedyThreads].incrementAndGet();
+        }
+      }
+    });
+    for (AtomicInteger polite : politeAllowed) {
+      assertEquals(100, polite.get());
+    }
+    // The greedy client gets its rate and its burst, however many threads it uses
+    assertTrue("greedy got " + greedyAllowed.get(), greedyAllowed.get() >= 95 && greedyAllowed.get() <= 105);
+  }
+
+  @Test
+  public void clientsOverTheLimitShareTheOverflowBucket() {
+    RateLimiter limiter = new RateLimiter("test", 1, 2, 2, TimeUnit.MINUTES.toNanos(1));
+    assertEquals(0, limiter.tryAcquire("a", 0));
+    assertEquals(0, limiter.tryAcquire("b", 0));
+    assertEquals(0, limiter.tryAcquire("c", 0));
+    assertEquals(0, limiter.tryAcquire("d", 0));
+    assertTrue(limiter.tryAcquire("c", 0) > 0);
+    assertEquals(0, limiter.tryAcquire("a", 0));
+    assertEquals(2L, (long) limiter.stats().getInteger("clients"));
+  }
+
+  @Test
+  public void idleBucketsAreEvicted() {
+    long idleTimeout = TimeUnit.SECONDS.toNanos(1);
+    RateLimiter limiter = new RateLimiter("test", 100, 5, 100, idleTimeout);
+    long now = System.nanoTime();
+    limiter.tryAcquire("idle", now - 2 * idleTimeout);
+    limiter.tryAcquire("active", now);
+    limiter.evictIdle();
+    assertEquals(1L, (long) limiter.stats().getInteger("clients"));
+  }
+
+  /**
+   * Run a task on several threads started at the same time
+   *
+   * @param threads
+   * @param task    given the index of its thread
+   */
+  private static void runConcurrently(int threads, IntConsumer task) throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> started = new ArrayList<>();
+    List<Throwable> failures = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      int index = i;
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+          task.accept(index);
+        } catch (Throwable t) {
+          synchronized (failures) {
+            failures.add(t);
+          }
+        }
+      });
+      thread.start();
+      started.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : started) {
+      thread.join();
+    }
+    assertTrue(failures.toString(), failures.isEmpty());
+  }
+}